@@ -21,6 +21,13 @@ public interface AudioDecoder {
     @Nullable
     short[] getNextSampleBlock();
 
+    /**
+     * Returns the number of samples of the blocks returned by {@link #getNextSampleBlock()}.
+     *
+     * @return the number of samples per block
+     */
+    int getSampleBlockSize();
+
     /**
      * Returns the sample rate.
      *
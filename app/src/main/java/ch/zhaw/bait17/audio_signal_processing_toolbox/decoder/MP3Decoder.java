@@ -13,6 +13,7 @@ import javazoom.jl.decoder.BitstreamException;
 import javazoom.jl.decoder.Decoder;
 import javazoom.jl.decoder.DecoderException;
 import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.Obuffer;
 import javazoom.jl.decoder.SampleBuffer;
 
 /**
@@ -101,6 +102,11 @@ public class MP3Decoder implements AudioDecoder {
         return sampleBlock;
     }
 
+    @Override
+    public int getSampleBlockSize() {
+        return Obuffer.OBUFFERSIZE;
+    }
+
     @Override
     public int getSampleRate() {
         return sampleRate;
@@ -146,6 +146,16 @@ public class WaveDecoder implements AudioDecoder {
         return INSTANCE;
     }
 
+    /**
+     * Returns a new WAVE decoder that is independent of the singleton instance,
+     * e.g. to read an impulse response while the singleton is used for playback.
+     *
+     * @return  a new {@code WaveDecoder}
+     */
+    public static WaveDecoder newInstance() {
+        return new WaveDecoder();
+    }
+
     /**
      * Sets the audio source.
      *
@@ -195,6 +205,11 @@ public class WaveDecoder implements AudioDecoder {
         return null;
     }
 
+    @Override
+    public int getSampleBlockSize() {
+        return PCM_SAMPLE_BLOCK_SIZE;
+    }
+
     @Override
     public int getSampleRate() {
         return header != null ? header.getSampleRate() : 0;
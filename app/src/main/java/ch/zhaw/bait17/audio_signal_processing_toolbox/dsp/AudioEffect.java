@@ -3,15 +3,34 @@ package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
 
 /**
+ * <p>
+ * Continuous parameters which are set from the UI thread during playback are
+ * {@link Parameter}s, created with {@link #createParameter(float, int)}. Their target values
+ * are published without locks and ramped by the audio thread. Other parameters are published
+ * through volatile fields and read once per block.
+ * </p>
+ * <p>
+ * The samples are interleaved, {@link #setChannels(int)} sets the number of channels.
+ * Effects with state per channel override it to rebuild their state.
+ * </p>
+ *
  * @author georgrem, stockan1
  */
 
 public abstract class AudioEffect implements Parcelable {
 
     private int samplingFrequency = Constants.DEFAULT_SAMPLE_RATE;
+    private int channels = Constants.DEFAULT_CHANNELS;
+    private final List<Parameter> parameters = new ArrayList<>();
+    // Parameters which tick once per sample, i.e. channels times per frame
+    private final List<Parameter> sampleParameters = new ArrayList<>();
 
     /**
      * <p>
@@ -54,7 +73,152 @@ public abstract class AudioEffect implements Parcelable {
     public void setSamplingFrequency(int samplingFrequency) {
         if (samplingFrequency > 0) {
             this.samplingFrequency = samplingFrequency;
+            for (Parameter parameter : parameters) {
+                parameter.setSamplingFrequency(samplingFrequency);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Sets the number of interleaved channels. Call it while the {@code AudioEffect} is not
+     * applied, effects with state per channel start from silence.
+     * </p>
+     *
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    public void setChannels(int channels) {
+        if (channels < 1) {
+            throw new IllegalArgumentException("Number of channels must be >= 1.");
+        }
+        this.channels = channels;
+        for (Parameter parameter : sampleParameters) {
+            parameter.setTicksPerFrame(channels);
+        }
+    }
+
+    /**
+     * <p>
+     * Returns the number of interleaved channels.
+     * </p>
+     *
+     * @return  number of channels
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * <p>
+     * Sets the number of samples of the blocks the {@code AudioEffect} will be applied to, so
+     * effects with block buffers allocate them here and not in
+     * {@link #apply(float[], float[])}. Blocks of another length are still processed, the
+     * buffers are then reallocated. Call it while the {@code AudioEffect} is not applied.
+     * Does nothing by default.
+     * </p>
+     *
+     * @param samples   number of interleaved samples per block
+     */
+    public void setBlockSize(int samples) {
+    }
+
+    /**
+     * <p>
+     * Sets the ramp time of all {@link Parameter}s of the {@code AudioEffect}.
+     * </p>
+     *
+     * @param rampTime                      ramp time in seconds, 0 for no smoothing
+     * @throws IllegalArgumentException     if rampTime < 0
+     */
+    public void setParameterRampTime(float rampTime) {
+        for (Parameter parameter : parameters) {
+            parameter.setRampTime(rampTime);
+        }
+    }
+
+    /**
+     * <p>
+     * Creates a {@link Parameter} which follows the sampling frequency of the
+     * {@code AudioEffect}.
+     * </p>
+     *
+     * @param initialValue  the initial value
+     * @param ticksPerFrame number of calls of {@link Parameter#next()} per frame
+     * @return              the parameter
+     */
+    protected Parameter createParameter(float initialValue, int ticksPerFrame) {
+        Parameter parameter = new Parameter(initialValue, ticksPerFrame);
+        parameter.setSamplingFrequency(samplingFrequency);
+        parameters.add(parameter);
+        return parameter;
+    }
+
+    /**
+     * <p>
+     * Creates a {@link Parameter} which ticks once per sample, i.e. once per channel and
+     * frame, and follows the sampling frequency and the number of channels of the
+     * {@code AudioEffect}. For memoryless effects which process the interleaved samples one
+     * by one.
+     * </p>
+     *
+     * @param initialValue  the initial value
+     * @return              the parameter
+     */
+    protected Parameter createSampleParameter(float initialValue) {
+        Parameter parameter = createParameter(initialValue, channels);
+        sampleParameters.add(parameter);
+        return parameter;
+    }
+
+    /**
+     * <p>
+     * Returns the tail time, i.e. how long the output of the {@code AudioEffect} stays above
+     * {@link Constants#SILENCE_THRESHOLD} after the input has become silent. An
+     * {@link EffectChain} skips effects with silent input once their tail has expired. </br>
+     * Effects which do not know their tail return {@link Float#POSITIVE_INFINITY} and are
+     * never skipped.
+     * </p>
+     *
+     * @return  tail time in seconds
+     */
+    public float getTailTime() {
+        return Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * <p>
+     * Returns the configuration of the {@code AudioEffect}: its class, the sampling frequency,
+     * the number of channels, the target values of its {@link Parameter}s and the
+     * configuration added by {@link #addConfiguration(List)}. Effects with equal keys have
+     * the same response. The runtime state, e.g. the phase of a modulator or a delay line,
+     * is not part of the key, so it may be read from any thread while the effect is applied.
+     * Compare keys with {@link Arrays#deepEquals(Object[], Object[])}.
+     * </p>
+     *
+     * @return  the configuration key
+     */
+    public Object[] getConfigurationKey() {
+        List<Object> key = new ArrayList<>();
+        key.add(getClass());
+        key.add(samplingFrequency);
+        key.add(channels);
+        for (Parameter parameter : parameters) {
+            key.add(parameter.get());
         }
+        addConfiguration(key);
+        return key.toArray();
+    }
+
+    /**
+     * <p>
+     * Adds the configuration which is not held in {@link Parameter}s to the key, e.g.
+     * settings published through volatile fields or wrapped effects. Adds nothing by default.
+     * </p>
+     *
+     * @param key   the configuration key
+     */
+    protected void addConfiguration(@NonNull List<Object> key) {
     }
 
     /**
@@ -0,0 +1,204 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp;
+
+import android.support.annotation.NonNull;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     A circular delay line for one channel. <br>
+ *     The buffer length is a power of 2, so the read and write positions wrap around with a
+ *     bit mask. Writing a sample and reading a tap costs O(1), independent of the delay.
+ * </p>
+ * <p>
+ *     A delay of d reads the sample written d samples before the most recently written
+ *     one, i.e. after writing x[n], {@code read(d)} returns x[n - d]. Fractional delays are
+ *     read with linear, allpass or cubic interpolation:
+ *     <ul>
+ *         <li>linear: cheap, attenuates high frequencies for fractions around 0.5.</li>
+ *         <li>allpass: flat magnitude response, but the tap has state and suits delays
+ *         that change slowly. Every delay line has one allpass tap, which must be read
+ *         once per written sample.</li>
+ *         <li>cubic: 4 point Lagrange interpolation, flat up to higher frequencies than
+ *         linear interpolation, needs a delay >= 1.</li>
+ *     </ul>
+ *     Taps are not range checked for speed: integer delays must be in [0, maxDelay],
+ *     fractional delays in [1, maxDelay].
+ * </p>
+ * <p>
+ *     See J. O. Smith, Physical Audio Signal Processing, chapter Delay Lines and
+ *     Fractional Delay Filtering. </br>
+ *     <a href="https://ccrma.stanford.edu/~jos/pasp/">ccrma.stanford.edu/~jos/pasp</a>
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class DelayLine {
+
+    private final int maxDelay;
+    private final float[] buffer;
+    private final int mask;
+    // Position of the most recently written sample
+    private int position = 0;
+    private float allpassOutput = 0;
+
+    /**
+     * Creates a delay line filled with zeros.
+     *
+     * @param maxDelay                      the longest delay in samples
+     * @throws IllegalArgumentException     if maxDelay < 0
+     */
+    public DelayLine(int maxDelay) {
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("Maximum delay must be >= 0.");
+        }
+        this.maxDelay = maxDelay;
+        // Two samples more for the cubic interpolation around the longest delay
+        int length = Integer.highestOneBit(maxDelay + 2) << 1;
+        buffer = new float[length];
+        mask = length - 1;
+    }
+
+    /**
+     * Returns the longest delay in samples.
+     *
+     * @return  the maximum delay
+     */
+    public int getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Writes a sample.
+     *
+     * @param sample    the sample
+     */
+    public void write(float sample) {
+        position = (position + 1) & mask;
+        buffer[position] = sample;
+    }
+
+    /**
+     * Writes a block of samples.
+     *
+     * @param input     array of samples
+     * @param offset    index of the first sample
+     * @param length    number of samples
+     */
+    public void write(@NonNull float[] input, int offset, int length) {
+        if (length > buffer.length) {
+            // Only the last samples fit into the buffer
+            offset += length - buffer.length;
+            length = buffer.length;
+        }
+        int start = (position + 1) & mask;
+        int first = Math.min(length, buffer.length - start);
+        System.arraycopy(input, offset, buffer, start, first);
+        System.arraycopy(input, offset + first, buffer, 0, length - first);
+        position = (position + length) & mask;
+    }
+
+    /**
+     * Returns the sample written {@code delay} samples before the most recent one.
+     *
+     * @param delay     delay in samples, in [0, maxDelay]
+     * @return          the delayed sample
+     */
+    public float read(int delay) {
+        return buffer[(position - delay) & mask];
+    }
+
+    /**
+     * <p>
+     *     Reads the delayed samples of the last {@code length} written samples: the first
+     *     output sample is the sample written {@code delay} samples before the first of them.
+     *     Write a block first and read it delayed afterwards.
+     * </p>
+     *
+     * @param output                        array of delayed samples
+     * @param offset                        index of the first output sample
+     * @param length                        number of samples
+     * @param delay                         delay in samples
+     * @throws IllegalArgumentException     if the delayed block is no longer in the buffer
+     */
+    public void read(@NonNull float[] output, int offset, int length, int delay) {
+        if (delay < 0 || length + delay > buffer.length) {
+            throw new IllegalArgumentException("Delayed block is not in the delay line.");
+        }
+        int start = (position - length + 1 - delay) & mask;
+        int first = Math.min(length, buffer.length - start);
+        System.arraycopy(buffer, start, output, offset, first);
+        System.arraycopy(buffer, 0, output, offset + first, length - first);
+    }
+
+    /**
+     * Reads a fractional delay with linear interpolation.
+     *
+     * @param delay     delay in samples, in [0, maxDelay]
+     * @return          the interpolated sample
+     */
+    public float readLinear(float delay) {
+        int integer = (int) delay;
+        float fraction = delay - integer;
+        float a = buffer[(position - integer) & mask];
+        float b = buffer[(position - integer - 1) & mask];
+        return a + fraction * (b - a);
+    }
+
+    /**
+     * <p>
+     *     Reads a fractional delay with first order allpass interpolation: <br>
+     *     y[n] = eta x[n - M] + x[n - M - 1] - eta y[n - 1], eta = (1 - f) / (1 + f) <br>
+     *     The fraction f is kept in [0.5, 1.5), where the allpass is well damped.
+     *     Call this method once per written sample.
+     * </p>
+     *
+     * @param delay     delay in samples, in [1, maxDelay]
+     * @return          the interpolated sample
+     */
+    public float readAllpass(float delay) {
+        int integer = (int) delay;
+        float fraction = delay - integer;
+        if (fraction < 0.5f) {
+            integer--;
+            fraction += 1;
+        }
+        float eta = (1 - fraction) / (1 + fraction);
+        float y = eta * (buffer[(position - integer) & mask] - allpassOutput)
+                + buffer[(position - integer - 1) & mask];
+        // The recursion decays into denormals after the input has become silent
+        allpassOutput = Math.abs(y) < Constants.DENORMAL_THRESHOLD ? 0 : y;
+        return y;
+    }
+
+    /**
+     * Reads a fractional delay with 4 point (3rd order) Lagrange interpolation.
+     *
+     * @param delay     delay in samples, in [1, maxDelay]
+     * @return          the interpolated sample
+     */
+    public float readCubic(float delay) {
+        int integer = (int) delay;
+        float f = delay - integer;
+        // Samples at the delays integer - 1 ... integer + 2
+        float xm1 = buffer[(position - integer + 1) & mask];
+        float x0 = buffer[(position - integer) & mask];
+        float x1 = buffer[(position - integer - 1) & mask];
+        float x2 = buffer[(position - integer - 2) & mask];
+        float fp1 = f + 1;
+        float fm1 = f - 1;
+        float fm2 = f - 2;
+        return -f * fm1 * fm2 / 6 * xm1 + fp1 * fm1 * fm2 / 2 * x0
+                - fp1 * f * fm2 / 2 * x1 + fp1 * f * fm1 / 6 * x2;
+    }
+
+    /**
+     * Fills the delay line with zeros.
+     */
+    public void clear() {
+        for (int i = 0; i < buffer.length; i++) {
+            buffer[i] = 0;
+        }
+        allpassOutput = 0;
+    }
+}
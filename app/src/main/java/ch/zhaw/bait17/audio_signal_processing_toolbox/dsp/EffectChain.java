@@ -0,0 +1,603 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp;
+
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     The chain of {@code AudioEffect}s of the audio player. The effects are applied in place,
+ *     one after another.
+ * </p>
+ * <p>
+ *     A new list of effects may be set from any thread while the audio thread is inside
+ *     {@link #apply(float[], float[])}. The new chain is prepared on the calling thread: the
+ *     effects get the sampling frequency and the number of channels, and effects which are
+ *     not part of a running chain are primed with the most recent input block, so their delay
+ *     lines and filter overlaps are filled. The prepared chain is published through an
+ *     {@link AtomicReference} and taken by the audio thread at the beginning of the next
+ *     block. The output then crossfades linearly from the old to the new chain over
+ *     {@link Constants#EFFECT_CHAIN_CROSSFADE_TIME}, afterwards the old chain is dropped.
+ *     The audio thread neither locks nor allocates.
+ * </p>
+ * <p>
+ *     An effect has one state and cannot run in two chains at once. The effects the old and
+ *     the new chain start with are shared: they run once and feed both chains, only the rest
+ *     of the chains is crossfaded. A shared effect further down the old chain is replaced by
+ *     a fresh copy in the fading out part, made from its parcelled configuration. The copy
+ *     does not depend on the state it was made from, its delay lines and filter states are
+ *     filled during the warm-up.
+ * </p>
+ * <p>
+ *     The most recent input block only matches the signal at the swap if the chain is taken
+ *     right away. So the audio thread warms the new chain up before the crossfade: the new
+ *     effects after the shared ones, and the copies, process the same signal as they will
+ *     during the crossfade while the old chain is still heard. The warm-up lasts until
+ *     their longest {@link AudioEffect#getTailTime() tail} has passed, so that a copy has
+ *     the state of the effect it replaces, but at least one block and at most
+ *     {@link Constants#EFFECT_CHAIN_MAX_WARM_UP_TIME}. A chain set during a crossfade is
+ *     taken after the crossfade.
+ * </p>
+ * <p>
+ *     An effect that throws while it is applied is logged and bypassed for as long as its
+ *     chain runs, so a failing effect cannot stop the playback.
+ * </p>
+ * <p>
+ *     Blocks whose peak is below the silence threshold are detected before every effect.
+ *     An effect whose input has been silent for longer than its
+ *     {@link AudioEffect#getTailTime() tail} would only output silence, so it is skipped and
+ *     the silent input is passed on. The number of skipped blocks shows the CPU time saved.
+ *     The tails are read when a chain is set or the sampling frequency or the number of
+ *     channels changes, and kept in samples per effect. Call {@link #updateTailTimes()}
+ *     after a change of an effect that changes its tail.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+
+public class EffectChain {
+
+    private static final String TAG = EffectChain.class.getSimpleName();
+
+    private final AtomicReference<Chain> pending = new AtomicReference<>();
+    // Chains the audio thread may run, read when a new chain is prepared
+    private volatile Chain current = new Chain(new AudioEffect[0], new float[0], null, 0, null, 0);
+    // Fading out part of the old chain during a crossfade
+    private volatile Chain previous = null;
+    // New chain in its warm-up block
+    private volatile Chain warming = null;
+    // Most recent input block, must not be modified after apply returns
+    private volatile float[] lastInput = null;
+    private volatile int fadeFrames;
+    private volatile int samplingFrequency = Constants.DEFAULT_SAMPLE_RATE;
+    private volatile int channels = Constants.DEFAULT_CHANNELS;
+    private volatile int blockSize = 0;
+    private volatile float silenceThreshold = Constants.SILENCE_THRESHOLD;
+    // Written by the audio thread only
+    private volatile long skippedBlocks = 0;
+    // Audio thread only
+    private int fadePosition = 0;
+    private long warmedSamples = 0;
+
+    /**
+     * Creates an empty {@code EffectChain}, which copies the input to the output.
+     */
+    public EffectChain() {
+        updateFadeFrames();
+    }
+
+    /**
+     * <p>
+     *     Applies the chain to a block of PCM samples. Input and output sample arrays must
+     *     have the same length. The input block is kept to prime the next chain and must not
+     *     be modified afterwards, the output array must not be the input array.
+     * </p>
+     *
+     * @param input  array of {@code float} input samples
+     * @param output array of {@code float} output samples must be of same length as input array
+     */
+    public void apply(@NonNull float[] input, @NonNull float[] output) {
+        if (input.length == output.length) {
+            if (previous == null && warming == null) {
+                Chain next = pending.getAndSet(null);
+                if (next != null) {
+                    if (next.base == current && fadeFrames > 0
+                            && next.buffer.length == input.length) {
+                        warming = next;
+                        warmedSamples = 0;
+                    } else {
+                        // No crossfade, the shared effects continue with their state
+                        current = next;
+                    }
+                }
+            }
+            final Chain next = warming;
+            final Chain old = previous;
+            if (next != null && next.buffer.length != input.length) {
+                // The block length changed, no crossfade
+                current = next;
+                warming = null;
+                apply(next, 0, next.effects.length, input, output);
+            } else if (next != null) {
+                warmUp(next, input, output);
+                warmedSamples += input.length;
+                if (warmedSamples >= next.warmUpSamples) {
+                    previous = next.fadeOut;
+                    current = next;
+                    warming = null;
+                    fadePosition = 0;
+                }
+            } else if (old != null) {
+                final Chain chain = current;
+                if (chain.buffer.length == input.length) {
+                    // The shared effects once, then the rest of the old and of the new chain
+                    apply(chain, 0, chain.prefix, input, output);
+                    apply(old, 0, old.effects.length, output, chain.buffer);
+                    apply(chain, chain.prefix, chain.effects.length, output, output);
+                    crossfade(chain.buffer, output);
+                } else {
+                    previous = null;
+                    apply(chain, 0, chain.effects.length, input, output);
+                }
+            } else {
+                final Chain chain = current;
+                apply(chain, 0, chain.effects.length, input, output);
+            }
+            lastInput = input;
+        }
+    }
+
+    /**
+     * Applies the old chain, which is still heard, and warms up the new effects after the
+     * shared ones and the copies of the fading out part on the signal they will process.
+     */
+    private void warmUp(@NonNull Chain next, @NonNull float[] input, @NonNull float[] output) {
+        final Chain chain = current;
+        final float[] scratch = next.buffer;
+        apply(chain, 0, next.prefix, input, output);
+        System.arraycopy(output, 0, scratch, 0, output.length);
+        for (int k = next.prefix; k < next.warmUpEnd; k++) {
+            apply(next, k, scratch, scratch);
+        }
+        for (int k = next.prefix; k < chain.effects.length; k++) {
+            int copy = next.fadeOutCopies[k - next.prefix];
+            if (copy >= 0) {
+                System.arraycopy(output, 0, scratch, 0, output.length);
+                apply(next.fadeOut, copy, scratch, scratch);
+            }
+            apply(chain, k, output, output);
+        }
+    }
+
+    /**
+     * Applies the effects {@code from} to {@code to} of a chain one after another and skips
+     * effects with silent input and an expired tail. Copies the input if no effect is applied.
+     */
+    private void apply(@NonNull Chain chain, int from, int to, @NonNull float[] input,
+                       @NonNull float[] output) {
+        final float threshold = silenceThreshold;
+        final long[] tails = chain.tailSamples;
+        boolean silent = isSilent(input, threshold);
+        for (int k = from; k < to; k++) {
+            if (silent) {
+                long before = chain.silentSamples[k];
+                chain.silentSamples[k] = before + input.length;
+                if (before >= tails[k]) {
+                    skippedBlocks++;
+                    continue;
+                }
+            } else {
+                chain.silentSamples[k] = 0;
+            }
+            apply(chain, k, input, output);
+            input = output;
+            silent = isSilent(output, threshold);
+        }
+        if (input != output) {
+            System.arraycopy(input, 0, output, 0, input.length);
+        }
+    }
+
+    /**
+     * Applies an effect of a chain. An effect that throws is logged once and bypassed from
+     * then on, the input is copied instead.
+     */
+    private static void apply(@NonNull Chain chain, int k, @NonNull float[] input,
+                              @NonNull float[] output) {
+        if (!chain.failed[k]) {
+            try {
+                chain.effects[k].apply(input, output);
+                return;
+            } catch (RuntimeException e) {
+                chain.failed[k] = true;
+                Log.e(TAG, "Bypassing the failed effect " + chain.effects[k].getLabel(), e);
+            }
+        }
+        if (input != output) {
+            System.arraycopy(input, 0, output, 0, input.length);
+        }
+    }
+
+    private static boolean isSilent(@NonNull float[] samples, float threshold) {
+        for (float sample : samples) {
+            if (sample >= threshold || sample <= -threshold) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Mixes the output of the old chain into the output of the new chain with a linear
+     * crossfade per frame and drops the old chain at the end of the crossfade.
+     */
+    private void crossfade(@NonNull float[] old, @NonNull float[] output) {
+        final int frames = fadeFrames;
+        final float step = 1.0f / frames;
+        for (int frame = 0; frame < output.length && fadePosition < frames;
+             frame += channels, fadePosition++) {
+            float gain = fadePosition * step;
+            int end = Math.min(frame + channels, output.length);
+            for (int i = frame; i < end; i++) {
+                output[i] = old[i] + gain * (output[i] - old[i]);
+            }
+        }
+        if (fadePosition >= frames) {
+            previous = null;
+        }
+    }
+
+    /**
+     * <p>
+     *     Sets the effects of the chain, which are applied in list order from the next block
+     *     on. {@code null} entries are ignored.
+     * </p>
+     *
+     * @param audioEffects  list of {@code AudioEffect}s, may be empty
+     */
+    public synchronized void setAudioEffects(@NonNull List<AudioEffect> audioEffects) {
+        // The chain the new chain will be swapped against
+        final Chain next = warming;
+        final Chain base = next != null ? next : current;
+        Set<AudioEffect> running = Collections.newSetFromMap(
+                new IdentityHashMap<AudioEffect, Boolean>());
+        for (Chain chain : new Chain[] {current, previous, next}) {
+            if (chain != null) {
+                running.addAll(Arrays.asList(chain.effects));
+            }
+        }
+
+        List<AudioEffect> effects = new ArrayList<>();
+        Set<AudioEffect> kept = Collections.newSetFromMap(
+                new IdentityHashMap<AudioEffect, Boolean>());
+        for (AudioEffect effect : audioEffects) {
+            if (effect != null) {
+                effects.add(effect);
+                kept.add(effect);
+                if (!running.contains(effect)) {
+                    prepare(effect);
+                }
+            }
+        }
+
+        int prefix = 0;
+        while (prefix < effects.size() && prefix < base.effects.length
+                && effects.get(prefix) == base.effects[prefix]) {
+            prefix++;
+        }
+        int warmUpEnd = prefix;
+        while (warmUpEnd < effects.size() && !running.contains(effects.get(warmUpEnd))) {
+            warmUpEnd++;
+        }
+        // The new effects and the copies are warmed up until their tails have passed
+        long warmUpSamples = 0;
+        for (int k = prefix; k < warmUpEnd; k++) {
+            warmUpSamples = Math.max(warmUpSamples, getTailSamples(effects.get(k)));
+        }
+        // The rest of the old chain fades out, the effects which continue are copied
+        int[] copies = new int[base.effects.length - prefix];
+        List<AudioEffect> fadeOut = new ArrayList<>();
+        for (int k = prefix; k < base.effects.length; k++) {
+            AudioEffect effect = base.effects[k];
+            copies[k - prefix] = -1;
+            if (kept.contains(effect)) {
+                AudioEffect copy = copy(effect);
+                if (copy != null) {
+                    copies[k - prefix] = fadeOut.size();
+                    fadeOut.add(copy);
+                    warmUpSamples = Math.max(warmUpSamples, getTailSamples(copy));
+                }
+            } else {
+                fadeOut.add(effect);
+            }
+        }
+        warmUpSamples = Math.min(warmUpSamples, (long) Math.ceil(
+                (double) Constants.EFFECT_CHAIN_MAX_WARM_UP_TIME * samplingFrequency) * channels);
+
+        final float[] input = lastInput;
+        float[] buffer = new float[input != null ? input.length : 0];
+        if (input != null && prefix == 0) {
+            // Prime the new effects in chain order up to the first running effect
+            System.arraycopy(input, 0, buffer, 0, input.length);
+            for (int k = 0; k < warmUpEnd; k++) {
+                effects.get(k).apply(buffer, buffer);
+            }
+        }
+        Chain fadeOutChain = new Chain(fadeOut.toArray(new AudioEffect[fadeOut.size()]),
+                new float[0], null, 0, null, 0);
+        updateTailTimes(fadeOutChain);
+        Chain chain = new Chain(effects.toArray(new AudioEffect[effects.size()]), buffer, base,
+                prefix, fadeOutChain, warmUpEnd, copies, warmUpSamples);
+        updateTailTimes(chain);
+        pending.set(chain);
+    }
+
+    /**
+     * <p>
+     *     Reads the tails of all effects again. Call it after a change of an effect, e.g. of
+     *     a feedback parameter, that changes its {@link AudioEffect#getTailTime() tail}.
+     * </p>
+     */
+    public synchronized void updateTailTimes() {
+        for (Chain chain : getChains()) {
+            updateTailTimes(chain);
+        }
+    }
+
+    /**
+     * Publishes the tails of the effects of a chain in samples to the audio thread.
+     */
+    private void updateTailTimes(@NonNull Chain chain) {
+        long[] tails = new long[chain.effects.length];
+        for (int k = 0; k < tails.length; k++) {
+            tails[k] = getTailSamples(chain.effects[k]);
+        }
+        chain.tailSamples = tails;
+    }
+
+    /**
+     * Returns the tail of an effect in interleaved samples, {@link Long#MAX_VALUE} if it
+     * does not end.
+     */
+    private long getTailSamples(@NonNull AudioEffect effect) {
+        double samples = Math.ceil((double) effect.getTailTime() * samplingFrequency * channels);
+        return samples < Long.MAX_VALUE ? (long) samples : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns a fresh copy of an effect made from its parcelled configuration, or null if it
+     * cannot be parcelled. Its state is filled during the warm-up.
+     */
+    @Nullable
+    private AudioEffect copy(@NonNull AudioEffect effect) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(effect, 0);
+            parcel.setDataPosition(0);
+            AudioEffect copy = parcel.readParcelable(AudioEffect.class.getClassLoader());
+            if (copy != null) {
+                prepare(copy);
+            }
+            return copy;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Sets the sampling frequency, the number of channels and the block size of an effect
+     * which is not applied.
+     */
+    private void prepare(@NonNull AudioEffect effect) {
+        effect.setSamplingFrequency(samplingFrequency);
+        if (effect.getChannels() != channels) {
+            effect.setChannels(channels);
+        }
+        if (blockSize > 0) {
+            effect.setBlockSize(blockSize);
+        }
+    }
+
+    /**
+     * Returns the effects of the most recently set chain.
+     *
+     * @return  unmodifiable list of the effects
+     */
+    public List<AudioEffect> getAudioEffects() {
+        Chain chain = pending.get();
+        if (chain == null) {
+            chain = warming;
+        }
+        if (chain == null) {
+            chain = current;
+        }
+        return Collections.unmodifiableList(Arrays.asList(chain.effects));
+    }
+
+    /**
+     * Sets the peak level below which a block is silent.
+     *
+     * @param silenceThreshold              linear level, 0 disables the silence detection
+     * @throws IllegalArgumentException     if silenceThreshold < 0
+     */
+    public void setSilenceThreshold(float silenceThreshold) {
+        if (silenceThreshold < 0) {
+            throw new IllegalArgumentException("Silence threshold must be >= 0.");
+        }
+        this.silenceThreshold = silenceThreshold;
+    }
+
+    /**
+     * Returns the peak level below which a block is silent.
+     *
+     * @return  linear level
+     */
+    public float getSilenceThreshold() {
+        return silenceThreshold;
+    }
+
+    /**
+     * Returns the number of blocks for which an effect was skipped, counted per effect.
+     *
+     * @return  number of skipped blocks
+     */
+    public long getSkippedBlocks() {
+        return skippedBlocks;
+    }
+
+    /**
+     * Returns true while the output crossfades from the old to the new chain.
+     *
+     * @return  true during a crossfade
+     */
+    public boolean isCrossfading() {
+        return previous != null || warming != null;
+    }
+
+    /**
+     * <p>
+     *     Sets the sampling frequency of all effects. Call it while the chain is not applied.
+     * </p>
+     *
+     * @param samplingFrequency sampling frequency
+     */
+    public synchronized void setSamplingFrequency(int samplingFrequency) {
+        if (samplingFrequency > 0) {
+            this.samplingFrequency = samplingFrequency;
+            for (Chain chain : getChains()) {
+                for (AudioEffect effect : chain.effects) {
+                    effect.setSamplingFrequency(samplingFrequency);
+                }
+                updateTailTimes(chain);
+            }
+            updateFadeFrames();
+        }
+    }
+
+    /**
+     * <p>
+     *     Sets the number of interleaved channels of the chain and of all effects, the
+     *     crossfade gain changes once per frame. Effects whose number of channels changes
+     *     rebuild their state per channel. Call it while the chain is not applied.
+     * </p>
+     *
+     * @param channels  number of interleaved channels
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    public synchronized void setChannels(int channels) {
+        if (channels < 1) {
+            throw new IllegalArgumentException("Number of channels must be >= 1.");
+        }
+        this.channels = channels;
+        for (Chain chain : getChains()) {
+            for (AudioEffect effect : chain.effects) {
+                if (effect.getChannels() != channels) {
+                    effect.setChannels(channels);
+                }
+            }
+            updateTailTimes(chain);
+        }
+    }
+
+    /**
+     * <p>
+     *     Sets the number of samples of the blocks the chain will be applied to, so that the
+     *     effects allocate their block buffers beforehand. Call it while the chain is not
+     *     applied.
+     * </p>
+     *
+     * @param samples   number of interleaved samples per block
+     */
+    public synchronized void setBlockSize(int samples) {
+        if (samples > 0) {
+            blockSize = samples;
+            for (Chain chain : getChains()) {
+                for (AudioEffect effect : chain.effects) {
+                    effect.setBlockSize(samples);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the set, running and fading out chains with the fading out parts of the
+     * chains which are not taken yet.
+     */
+    private List<Chain> getChains() {
+        List<Chain> chains = new ArrayList<>();
+        for (Chain chain : new Chain[] {pending.get(), current, previous, warming}) {
+            if (chain != null) {
+                chains.add(chain);
+                if (chain.fadeOut != null) {
+                    chains.add(chain.fadeOut);
+                }
+            }
+        }
+        return chains;
+    }
+
+    private void updateFadeFrames() {
+        fadeFrames = Math.round(Constants.EFFECT_CHAIN_CROSSFADE_TIME * samplingFrequency);
+    }
+
+    /**
+     * Immutable list of effects with the buffer for the output of the old chain during the
+     * crossfade to this chain and the plan to swap it against the chain it was prepared for.
+     */
+    private static final class Chain {
+
+        private final AudioEffect[] effects;
+        private final float[] buffer;
+        // Number of silent input samples of every effect, audio thread only
+        private final long[] silentSamples;
+        // Tail of every effect in samples, replaced as a whole when the tails change
+        private volatile long[] tailSamples;
+        // Chain this chain crossfades from, null if it is swapped without crossfade
+        private final Chain base;
+        // Number of effects this chain starts with which are shared with the base chain
+        private final int prefix;
+        // Effects of the base chain after the prefix, with copies of the shared effects
+        private final Chain fadeOut;
+        // Index in the fading out part of the copy per effect of the base chain after the
+        // prefix, -1 if not shared
+        private final int[] fadeOutCopies;
+        // End of the effects after the prefix which are warmed up before the crossfade
+        private final int warmUpEnd;
+        // Number of samples to warm up before the crossfade
+        private final long warmUpSamples;
+        // Effects which threw and are bypassed, audio thread only
+        private final boolean[] failed;
+
+        Chain(AudioEffect[] effects, float[] buffer, Chain base, int prefix, Chain fadeOut,
+              int warmUpEnd) {
+            this(effects, buffer, base, prefix, fadeOut, warmUpEnd, new int[0], 0);
+        }
+
+        Chain(AudioEffect[] effects, float[] buffer, Chain base, int prefix, Chain fadeOut,
+              int warmUpEnd, int[] fadeOutCopies, long warmUpSamples) {
+            this.effects = effects;
+            this.buffer = buffer;
+            this.base = base;
+            this.prefix = prefix;
+            this.fadeOut = fadeOut;
+            this.warmUpEnd = warmUpEnd;
+            this.fadeOutCopies = fadeOutCopies;
+            this.warmUpSamples = warmUpSamples;
+            silentSamples = new long[effects.length];
+            tailSamples = new long[effects.length];
+            Arrays.fill(tailSamples, Long.MAX_VALUE);
+            failed = new boolean[effects.length];
+        }
+    }
+}
@@ -0,0 +1,750 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp;
+
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     A directed acyclic graph of {@code AudioEffect}s, built with an
+ *     {@link EffectGraph.Builder}. Node {@link #INPUT} is the input of the graph. Effect nodes
+ *     apply an effect to the output of one node, mixer nodes add up the outputs of several
+ *     nodes with a gain per branch, e.g. a wet/dry mix of an effect and the input. A node
+ *     which feeds several nodes splits the signal into parallel branches.
+ * </p>
+ * <p>
+ *     The graph is compiled when it is created: nodes which do not reach the output are left
+ *     out. Every node writes into a buffer of a pool, which is allocated by
+ *     {@link #setBlockSize(int)}. A node reuses the buffer of an earlier node if all nodes
+ *     reading that buffer are predecessors of the node, so they have run in any order of
+ *     processing. The number of buffers is about the largest number of outputs alive at the
+ *     same time, not the number of nodes.
+ * </p>
+ * <p>
+ *     Nodes whose sources are done are independent. When the graph takes more than
+ *     {@link Constants#EFFECT_GRAPH_PARALLEL_LOAD} of the real time of a block and has
+ *     parallel branches, the nodes are processed on a small worker pool shared by all
+ *     instances. Every node counts its unfinished sources, the calling thread and the workers
+ *     claim any node whose sources are done, so a branch continues as soon as its own sources
+ *     are done and does not wait for the other branches. A thread which finds no node ready
+ *     waits on a monitor until a node is done. The calling thread processes nodes itself, so
+ *     the block is never delayed by a busy pool, and the output does not depend on which
+ *     thread processed a node.
+ * </p>
+ * <p>
+ *     The latency of the effects is not compensated, branches with effects of different
+ *     latency are mixed as they are.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+
+public class EffectGraph extends AudioEffect {
+
+    /**
+     * Node id of the graph input.
+     */
+    public static final int INPUT = 0;
+
+    private static final String LABEL = "Effect graph";
+    private static final String DESCRIPTION = "Applies effects in parallel branches and mixes the branches";
+    private static final int EFFECT = 1;
+    private static final int MIXER = 2;
+    // Smoothing factor of the measured load
+    private static final float LOAD_SMOOTHING = 0.2f;
+    private static final int WORKER_THREADS = Math.max(1, Math.min(
+            Runtime.getRuntime().availableProcessors() - 1, Constants.EFFECT_GRAPH_MAX_WORKER_THREADS));
+
+    private static final Executor executor = Executors.newFixedThreadPool(WORKER_THREADS,
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, EffectGraph.class.getSimpleName());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MAX_PRIORITY);
+                    return thread;
+                }
+            });
+
+    private final Node[] nodes;
+    private final int output;
+    // Compiled graph: live node ids in processing order, buffer index per node, -1 for the
+    // input, the live nodes reading every node and the number of sources which are nodes
+    private final int[] order;
+    private final int[] bufferIndex;
+    private final int bufferCount;
+    private final int[][] readers;
+    private final int[] sourceCount;
+    private final int levelCount;
+    // Number of workers helping the calling thread, limited by the widest level
+    private final int helpers;
+    private final Schedule schedule;
+    private float[][] buffers = new float[0][];
+    private float[] input;
+    private float load = 0;
+    private boolean parallel = false;
+
+    private EffectGraph(@NonNull Builder builder, int output) {
+        this.output = output;
+        nodes = new Node[builder.types.size()];
+        for (int id = 0; id < nodes.length; id++) {
+            float[] gains = builder.gains.get(id);
+            Parameter[] parameters = new Parameter[gains.length];
+            for (int i = 0; i < gains.length; i++) {
+                // Mixing is memoryless, the gains are ramped per sample
+                parameters[i] = createSampleParameter(gains[i]);
+            }
+            nodes[id] = new Node(builder.types.get(id), builder.sources.get(id),
+                    builder.effects.get(id), parameters);
+        }
+
+        // Nodes which reach the output
+        boolean[] live = new boolean[nodes.length];
+        live[output] = true;
+        for (int id = output; id > INPUT; id--) {
+            if (live[id]) {
+                for (int source : nodes[id].sources) {
+                    live[source] = true;
+                }
+            }
+        }
+        // Levels, the widest level limits the number of helpers
+        int[] level = new int[nodes.length];
+        int levels = 0;
+        int liveCount = 0;
+        for (int id = INPUT + 1; id < nodes.length; id++) {
+            if (live[id]) {
+                for (int source : nodes[id].sources) {
+                    level[id] = Math.max(level[id], level[source] + 1);
+                }
+                levels = Math.max(levels, level[id]);
+                liveCount++;
+            }
+        }
+        levelCount = levels;
+        int[] width = new int[levels + 1];
+        int maxWidth = 0;
+        order = new int[liveCount];
+        sourceCount = new int[nodes.length];
+        List<List<Integer>> readerIds = new ArrayList<>();
+        for (int id = 0; id < nodes.length; id++) {
+            readerIds.add(new ArrayList<Integer>());
+        }
+        // Node ids are in topological order, a node only reads nodes added before it
+        for (int id = INPUT + 1, n = 0; id < nodes.length; id++) {
+            if (live[id]) {
+                order[n++] = id;
+                maxWidth = Math.max(maxWidth, ++width[level[id]]);
+                for (int source : nodes[id].sources) {
+                    if (source != INPUT) {
+                        readerIds.get(source).add(id);
+                        sourceCount[id]++;
+                    }
+                }
+            }
+        }
+        readers = new int[nodes.length][];
+        for (int id = 0; id < nodes.length; id++) {
+            List<Integer> ids = readerIds.get(id);
+            readers[id] = new int[ids.size()];
+            for (int i = 0; i < ids.size(); i++) {
+                readers[id][i] = ids.get(i);
+            }
+        }
+        helpers = Math.min(maxWidth - 1, WORKER_THREADS);
+
+        // Liveness: a node reuses the buffer of a node whose readers are all predecessors
+        boolean[][] predecessors = new boolean[nodes.length][];
+        bufferIndex = new int[nodes.length];
+        Arrays.fill(bufferIndex, -1);
+        List<Integer> owners = new ArrayList<>();
+        for (int id : order) {
+            predecessors[id] = new boolean[nodes.length];
+            for (int source : nodes[id].sources) {
+                predecessors[id][source] = true;
+                if (source != INPUT) {
+                    for (int p = 0; p < nodes.length; p++) {
+                        predecessors[id][p] |= predecessors[source][p];
+                    }
+                }
+            }
+            int buffer = -1;
+            for (int b = 0; b < owners.size() && buffer < 0; b++) {
+                int owner = owners.get(b);
+                boolean free = owner != output;
+                for (int reader : readers[owner]) {
+                    free &= predecessors[id][reader];
+                }
+                if (free) {
+                    buffer = b;
+                }
+            }
+            if (buffer < 0) {
+                buffer = owners.size();
+                owners.add(id);
+            } else {
+                owners.set(buffer, id);
+            }
+            bufferIndex[id] = buffer;
+        }
+        bufferCount = owners.size();
+        schedule = new Schedule();
+    }
+
+    protected EffectGraph(Parcel in) {
+        this(readBuilder(in), in.readInt());
+        setSamplingFrequency(in.readInt());
+        setChannels(in.readInt());
+    }
+
+    /**
+     * <p>
+     *     Applies the graph to a block of PCM samples.
+     *     Input and output sample arrays must have the same length and may be the same array.
+     * </p>
+     *
+     * @param input  array of {@code float} input samples
+     * @param output array of {@code float} output samples must be of same length as input array
+     */
+    @Override
+    public void apply(@NonNull float[] input, @NonNull float[] output) {
+        if (input.length == output.length && input.length != 0) {
+            if (buffers.length != bufferCount
+                    || (bufferCount != 0 && buffers[0].length != input.length)) {
+                // Not prepared for this block size
+                buffers = new float[bufferCount][input.length];
+            }
+            this.input = input;
+            long start = System.nanoTime();
+            if (parallel) {
+                applyParallel();
+            } else {
+                for (int id : order) {
+                    process(id);
+                }
+            }
+            float seconds = input.length / (float) (getChannels() * getSamplingFrequency());
+            load += LOAD_SMOOTHING * ((System.nanoTime() - start) / (seconds * 1e9f) - load);
+            // Hysteresis, so that a load close to the limit does not toggle every block
+            parallel = helpers > 0
+                    && load > (parallel ? 0.5f : 1f) * Constants.EFFECT_GRAPH_PARALLEL_LOAD;
+
+            System.arraycopy(getBuffer(this.output), 0, output, 0, output.length);
+            this.input = null;
+        }
+    }
+
+    /**
+     * Processes the nodes on the calling thread and on the worker pool and returns when all
+     * nodes are done. A worker may also join late, e.g. in the next block, when it was queued
+     * but the nodes were all done already.
+     */
+    private void applyParallel() {
+        schedule.reset();
+        for (int i = 0; i < helpers; i++) {
+            executor.execute(schedule);
+        }
+        schedule.run();
+        Throwable failure = schedule.failure;
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    /**
+     * Processes a node.
+     */
+    private void process(int id) {
+        Node node = nodes[id];
+        float[] out = buffers[bufferIndex[id]];
+        if (node.type == EFFECT) {
+            node.effect.apply(getBuffer(node.sources[0]), out);
+        } else {
+            mix(node, out);
+        }
+    }
+
+    /**
+     * Adds up the sources of a mixer node with the gains of the branches.
+     */
+    private void mix(@NonNull Node node, @NonNull float[] out) {
+        boolean smoothing = false;
+        for (Parameter gain : node.gains) {
+            gain.update();
+            smoothing |= gain.isSmoothing();
+        }
+        Arrays.fill(out, 0);
+        if (smoothing) {
+            for (int b = 0; b < node.sources.length; b++) {
+                float[] in = getBuffer(node.sources[b]);
+                Parameter gain = node.gains[b];
+                for (int i = 0; i < out.length; i++) {
+                    out[i] += gain.next() * in[i];
+                }
+            }
+        } else {
+            for (int b = 0; b < node.sources.length; b++) {
+                float[] in = getBuffer(node.sources[b]);
+                float gain = node.gains[b].getValue();
+                for (int i = 0; i < out.length; i++) {
+                    out[i] += gain * in[i];
+                }
+            }
+        }
+    }
+
+    private float[] getBuffer(int id) {
+        return id == INPUT ? input : buffers[bufferIndex[id]];
+    }
+
+    /**
+     * Sets the gain of a branch of a mixer node, the gain is ramped.
+     *
+     * @param mixer                         node id of the mixer
+     * @param branch                        index of the source in the sources of the mixer
+     * @param gain                          linear gain
+     * @throws IllegalArgumentException     if the node is not a mixer or the branch does not exist
+     */
+    public void setGain(int mixer, int branch, float gain) {
+        if (mixer < 0 || mixer >= nodes.length || nodes[mixer].type != MIXER
+                || branch < 0 || branch >= nodes[mixer].gains.length) {
+            throw new IllegalArgumentException("No such mixer branch.");
+        }
+        nodes[mixer].gains[branch].set(gain);
+    }
+
+    /**
+     * Returns the effects of the graph in node order.
+     *
+     * @return  unmodifiable list of the effects
+     */
+    public List<AudioEffect> getEffects() {
+        List<AudioEffect> effects = new ArrayList<>();
+        for (Node node : nodes) {
+            if (node.effect != null) {
+                effects.add(node.effect);
+            }
+        }
+        return Collections.unmodifiableList(effects);
+    }
+
+    /**
+     * Returns the number of levels of the compiled graph, i.e. the length of the longest path
+     * from the input to the output.
+     *
+     * @return  number of levels
+     */
+    public int getNumberOfLevels() {
+        return levelCount;
+    }
+
+    /**
+     * Returns the number of buffers used by the compiled graph.
+     *
+     * @return  number of buffers
+     */
+    public int getNumberOfBuffers() {
+        return bufferCount;
+    }
+
+    /**
+     * Returns true if the nodes are currently processed on the worker pool.
+     *
+     * @return  true if parallel
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Returns the longest sum of the tails of the effects on a path from the input to the
+     * output.
+     *
+     * @return  tail time in seconds
+     */
+    @Override
+    public float getTailTime() {
+        float[] tails = new float[nodes.length];
+        for (int id = INPUT + 1; id <= output; id++) {
+            for (int source : nodes[id].sources) {
+                tails[id] = Math.max(tails[id], tails[source]);
+            }
+            if (nodes[id].effect != null) {
+                tails[id] += nodes[id].effect.getTailTime();
+            }
+        }
+        return tails[output];
+    }
+
+    @Override
+    public String getLabel() {
+        return LABEL;
+    }
+
+    @Override
+    public String getDescription() {
+        return DESCRIPTION;
+    }
+
+    /**
+     * <p>
+     *     Sets the sampling frequency of the graph and of all effects.
+     * </p>
+     *
+     * @param samplingFrequency sampling frequency
+     */
+    @Override
+    public void setSamplingFrequency(int samplingFrequency) {
+        super.setSamplingFrequency(samplingFrequency);
+        for (Node node : nodes) {
+            if (node.effect != null) {
+                node.effect.setSamplingFrequency(samplingFrequency);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     *     Sets the number of interleaved channels of the graph and of all effects.
+     * </p>
+     *
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    @Override
+    public void setChannels(int channels) {
+        super.setChannels(channels);
+        for (Node node : nodes) {
+            if (node.effect != null) {
+                node.effect.setChannels(channels);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     *     Allocates the buffers of the graph for blocks of the given length and sets the block
+     *     size of all effects.
+     * </p>
+     *
+     * @param samples   number of interleaved samples per block
+     */
+    @Override
+    public void setBlockSize(int samples) {
+        if (samples > 0 && (buffers.length != bufferCount
+                || (bufferCount != 0 && buffers[0].length != samples))) {
+            buffers = new float[bufferCount][samples];
+        }
+        for (Node node : nodes) {
+            if (node.effect != null) {
+                node.effect.setBlockSize(samples);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     *     Sets the ramp time of the mixer gains and of the parameters of all effects.
+     * </p>
+     *
+     * @param rampTime                      ramp time in seconds, 0 for no smoothing
+     * @throws IllegalArgumentException     if rampTime < 0
+     */
+    @Override
+    public void setParameterRampTime(float rampTime) {
+        super.setParameterRampTime(rampTime);
+        for (Node node : nodes) {
+            if (node.effect != null) {
+                node.effect.setParameterRampTime(rampTime);
+            }
+        }
+    }
+
+    @Override
+    protected void addConfiguration(@NonNull List<Object> key) {
+        for (int id = INPUT + 1; id < nodes.length; id++) {
+            Node node = nodes[id];
+            key.add(node.type);
+            key.add(node.sources);
+            if (node.type == EFFECT) {
+                key.add(node.effect.getConfigurationKey());
+            }
+        }
+        key.add(output);
+    }
+
+    @Override
+    public int describeContents() {
+        return hashCode();
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(nodes.length);
+        for (int id = INPUT + 1; id < nodes.length; id++) {
+            Node node = nodes[id];
+            dest.writeInt(node.type);
+            dest.writeIntArray(node.sources);
+            if (node.type == EFFECT) {
+                dest.writeParcelable(node.effect, flags);
+            } else {
+                float[] gains = new float[node.gains.length];
+                for (int i = 0; i < gains.length; i++) {
+                    gains[i] = node.gains[i].get();
+                }
+                dest.writeFloatArray(gains);
+            }
+        }
+        dest.writeInt(output);
+        dest.writeInt(getSamplingFrequency());
+        dest.writeInt(getChannels());
+    }
+
+    private static Builder readBuilder(Parcel in) {
+        Builder builder = new Builder();
+        int count = in.readInt();
+        for (int id = INPUT + 1; id < count; id++) {
+            int type = in.readInt();
+            int[] sources = in.createIntArray();
+            if (type == EFFECT) {
+                AudioEffect effect = in.readParcelable(AudioEffect.class.getClassLoader());
+                builder.addEffect(effect, sources[0]);
+            } else {
+                builder.addMixer(sources, in.createFloatArray());
+            }
+        }
+        return builder;
+    }
+
+    public static final Creator<EffectGraph> CREATOR = new Creator<EffectGraph>() {
+        @Override
+        public EffectGraph createFromParcel(Parcel source) {
+            return new EffectGraph(source);
+        }
+
+        @Override
+        public EffectGraph[] newArray(int size) {
+            return new EffectGraph[size];
+        }
+    };
+
+    /**
+     * A node of the graph.
+     */
+    private static final class Node {
+
+        private final int type;
+        private final int[] sources;
+        private final AudioEffect effect;
+        private final Parameter[] gains;
+
+        Node(int type, int[] sources, AudioEffect effect, Parameter[] gains) {
+            this.type = type;
+            this.sources = sources;
+            this.effect = effect;
+            this.gains = gains;
+        }
+    }
+
+    /**
+     * Processes the nodes of a block. Every thread running the schedule claims nodes whose
+     * sources are done, until all nodes are done.
+     */
+    private class Schedule implements Runnable {
+
+        // Unfinished sources per node, -1 once the node is claimed
+        private final AtomicIntegerArray remaining = new AtomicIntegerArray(nodes.length);
+        private final AtomicInteger completed = new AtomicInteger();
+        // Incremented whenever a node is done, threads without a ready node wait for it
+        private final AtomicInteger version = new AtomicInteger();
+        private final AtomicInteger waiters = new AtomicInteger();
+        private volatile Throwable failure;
+
+        private void reset() {
+            failure = null;
+            // First, so that a late worker from the previous block cannot count a node twice
+            completed.set(0);
+            for (int id : order) {
+                remaining.set(id, sourceCount[id]);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                int seen = version.get();
+                int id = claim();
+                if (id >= 0) {
+                    try {
+                        process(id);
+                    } catch (RuntimeException | Error e) {
+                        failure = e;
+                    } finally {
+                        for (int reader : readers[id]) {
+                            remaining.decrementAndGet(reader);
+                        }
+                        completed.incrementAndGet();
+                        signal();
+                    }
+                } else if (completed.get() >= order.length) {
+                    return;
+                } else {
+                    await(seen);
+                }
+            }
+        }
+
+        private int claim() {
+            for (int id : order) {
+                if (remaining.get(id) == 0 && remaining.compareAndSet(id, 0, -1)) {
+                    return id;
+                }
+            }
+            return -1;
+        }
+
+        private void signal() {
+            version.incrementAndGet();
+            if (waiters.get() > 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Waits until a node is done after {@code seen} or all nodes are done.
+         */
+        private void await(int seen) {
+            boolean interrupted = false;
+            waiters.incrementAndGet();
+            synchronized (this) {
+                while (version.get() == seen && completed.get() < order.length) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            waiters.decrementAndGet();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     *     Builds an {@code EffectGraph}. Nodes are identified by the ids returned when they
+     *     are added, and can only read from nodes added before them, so the graph has no
+     *     cycles.
+     * </p>
+     */
+    public static class Builder {
+
+        private final List<Integer> types = new ArrayList<>();
+        private final List<int[]> sources = new ArrayList<>();
+        private final List<AudioEffect> effects = new ArrayList<>();
+        private final List<float[]> gains = new ArrayList<>();
+        private final Set<AudioEffect> added = Collections.newSetFromMap(
+                new IdentityHashMap<AudioEffect, Boolean>());
+
+        /**
+         * Creates a builder with the input node {@link #INPUT}.
+         */
+        public Builder() {
+            add(0, new int[0], null, new float[0]);
+        }
+
+        /**
+         * Adds a node which applies an effect to the output of another node.
+         *
+         * @param effect                        the effect, used in no other node
+         * @param source                        id of the source node
+         * @return                              id of the new node
+         * @throws IllegalArgumentException     if the source does not exist or the effect
+         *                                      was already added
+         */
+        public int addEffect(@NonNull AudioEffect effect, int source) {
+            checkSource(source);
+            if (!added.add(effect)) {
+                throw new IllegalArgumentException("An effect can only be used in one node.");
+            }
+            return add(EFFECT, new int[] {source}, effect, new float[0]);
+        }
+
+        /**
+         * Adds a node which adds up the outputs of other nodes, each with its own gain.
+         *
+         * @param sources                       ids of the source nodes
+         * @param gains                         linear gain of every source
+         * @return                              id of the new node
+         * @throws IllegalArgumentException     if a source does not exist or the number of
+         *                                      gains does not match the number of sources
+         */
+        public int addMixer(@NonNull int[] sources, @NonNull float[] gains) {
+            if (sources.length == 0 || sources.length != gains.length) {
+                throw new IllegalArgumentException("One gain per source is required.");
+            }
+            for (int source : sources) {
+                checkSource(source);
+            }
+            return add(MIXER, sources.clone(), null, gains.clone());
+        }
+
+        /**
+         * Adds a wet/dry mixer of the output of a node and the output of a node before it.
+         *
+         * @param dry                           id of the unprocessed node
+         * @param wet                           id of the processed node
+         * @param mix                           wet part in the range [0,1]
+         * @return                              id of the new node
+         * @throws IllegalArgumentException     if a source does not exist
+         */
+        public int addWetDryMixer(int dry, int wet, float mix) {
+            return addMixer(new int[] {dry, wet}, new float[] {1 - mix, mix});
+        }
+
+        /**
+         * Compiles the graph.
+         *
+         * @param output                        id of the output node
+         * @return                              the graph
+         * @throws IllegalArgumentException     if the output node does not exist
+         */
+        public EffectGraph build(int output) {
+            checkSource(output);
+            return new EffectGraph(this, output);
+        }
+
+        private int add(int type, int[] sources, AudioEffect effect, float[] gains) {
+            types.add(type);
+            this.sources.add(sources);
+            effects.add(effect);
+            this.gains.add(gains);
+            return types.size() - 1;
+        }
+
+        private void checkSource(int id) {
+            if (id < 0 || id >= types.size()) {
+                throw new IllegalArgumentException("Node " + id + " does not exist.");
+            }
+        }
+    }
+}
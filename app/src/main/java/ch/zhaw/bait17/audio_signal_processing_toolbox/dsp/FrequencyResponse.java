@@ -0,0 +1,157 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ *     The complex frequency response of a filter or an effect at the bins 0 ... N/2 of an
+ *     N point DFT, i.e. from 0 Hz to the Nyquist frequency. <br>
+ *     Instances are immutable, see {@link FrequencyResponseAnalyser}.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class FrequencyResponse {
+
+    private static final double MIN_MAGNITUDE = 1e-10;
+
+    private final int samplingFrequency;
+    private final double[] real;
+    private final double[] imaginary;
+
+    FrequencyResponse(int samplingFrequency, @NonNull double[] real, @NonNull double[] imaginary) {
+        this.samplingFrequency = samplingFrequency;
+        this.real = real;
+        this.imaginary = imaginary;
+    }
+
+    /**
+     * Returns a flat response with unit gain and zero phase.
+     *
+     * @param samplingFrequency     sampling frequency
+     * @param bins                  number of bins
+     * @return                      the flat response
+     */
+    static FrequencyResponse flat(int samplingFrequency, int bins) {
+        double[] real = new double[bins];
+        Arrays.fill(real, 1);
+        return new FrequencyResponse(samplingFrequency, real, new double[bins]);
+    }
+
+    /**
+     * Returns the number of bins, N/2 + 1.
+     *
+     * @return  number of bins
+     */
+    public int getNumberOfBins() {
+        return real.length;
+    }
+
+    /**
+     * Returns the sampling frequency.
+     *
+     * @return  sampling frequency in Hz
+     */
+    public int getSamplingFrequency() {
+        return samplingFrequency;
+    }
+
+    /**
+     * Returns the frequency of a bin.
+     *
+     * @param bin   bin index
+     * @return      frequency in Hz
+     */
+    public float getFrequency(int bin) {
+        return bin * samplingFrequency / (2f * (real.length - 1));
+    }
+
+    /**
+     * Returns the frequencies of all bins.
+     *
+     * @return  frequencies in Hz
+     */
+    public float[] getFrequencies() {
+        float[] frequencies = new float[real.length];
+        for (int k = 0; k < frequencies.length; k++) {
+            frequencies[k] = getFrequency(k);
+        }
+        return frequencies;
+    }
+
+    /**
+     * Returns the magnitude of a bin.
+     *
+     * @param bin   bin index
+     * @return      linear magnitude
+     */
+    public double getMagnitude(int bin) {
+        return Math.hypot(real[bin], imaginary[bin]);
+    }
+
+    /**
+     * Returns the phase of a bin in the range [-pi, pi].
+     *
+     * @param bin   bin index
+     * @return      phase in radians
+     */
+    public double getPhase(int bin) {
+        return Math.atan2(imaginary[bin], real[bin]);
+    }
+
+    /**
+     * Returns the magnitude response in dB. Magnitudes below -200 dB are clamped.
+     *
+     * @return  magnitude response in dB
+     */
+    public float[] getMagnitudeResponse() {
+        float[] magnitudes = new float[real.length];
+        for (int k = 0; k < magnitudes.length; k++) {
+            magnitudes[k] = (float) (20 * Math.log10(Math.max(getMagnitude(k), MIN_MAGNITUDE)));
+        }
+        return magnitudes;
+    }
+
+    /**
+     * Returns the unwrapped phase response.
+     *
+     * @return  phase response in radians
+     */
+    public float[] getPhaseResponse() {
+        float[] phases = new float[real.length];
+        double previous = 0;
+        double offset = 0;
+        for (int k = 0; k < phases.length; k++) {
+            double phase = getPhase(k);
+            if (k > 0) {
+                double step = phase - previous;
+                offset -= 2 * Math.PI * Math.round(step / (2 * Math.PI));
+            }
+            previous = phase;
+            phases[k] = (float) (phase + offset);
+        }
+        return phases;
+    }
+
+    /**
+     * Returns the response of this and another stage in series.
+     *
+     * @param other                         the response of the other stage
+     * @return                              the product of both responses
+     * @throws IllegalArgumentException     if the number of bins or the sampling frequency differ
+     */
+    public FrequencyResponse multiply(@NonNull FrequencyResponse other) {
+        if (other.real.length != real.length || other.samplingFrequency != samplingFrequency) {
+            throw new IllegalArgumentException("Responses must have the same bins and sampling frequency.");
+        }
+        double[] productReal = new double[real.length];
+        double[] productImaginary = new double[real.length];
+        for (int k = 0; k < real.length; k++) {
+            productReal[k] = real[k] * other.real[k] - imaginary[k] * other.imaginary[k];
+            productImaginary[k] = real[k] * other.imaginary[k] + imaginary[k] * other.real[k];
+        }
+        return new FrequencyResponse(samplingFrequency, productReal, productImaginary);
+    }
+}
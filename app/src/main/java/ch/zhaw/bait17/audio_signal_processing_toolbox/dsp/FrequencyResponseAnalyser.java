@@ -0,0 +1,409 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp;
+
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+
+import org.jtransforms.fft.DoubleFFT_1D;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.FIRFilter;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.IIRFilter;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.LazyFIRFilter;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     Computes the magnitude and phase response of filters and effect chains. <br>
+ *     The response of a FIR filter is the zero-padded FFT of its coefficients, the response
+ *     of an IIR filter is the product of its second order sections evaluated on the unit
+ *     circle. The response of any other {@code AudioEffect} is measured offline on a copy of
+ *     the effect with a {@link MeasurementSignal}, the effect itself is not changed.
+ * </p>
+ * <p>
+ *     The response of a chain is the product of the responses of its stages. This is exact
+ *     for linear time-invariant stages, for non-linear or modulating stages it is the
+ *     response at the measurement level {@link Constants#FREQUENCY_RESPONSE_MEASUREMENT_LEVEL}.
+ * </p>
+ * <p>
+ *     The response of every stage is cached by its configuration: the coefficients of a filter
+ *     or the {@link AudioEffect#getConfigurationKey() configuration key} of an effect, together
+ *     with the sampling frequency. When a parameter of one stage changes only that stage is
+ *     computed again, so a view can redraw the response of a chain while a parameter is moved.
+ *     The key holds no runtime state, so a running modulator is not measured again every
+ *     frame. Only on a cache miss the effect is copied through its parcel and the copy is
+ *     measured.
+ * </p>
+ * <p>
+ *     With {@link MeasurementSignal#SWEEP} the effect is excited with an exponential sine sweep
+ *     and the impulse response is obtained by regularised spectral division. Harmonic
+ *     distortion of the sweep ends up before the linear impulse response and is discarded.
+ *     See A. Farina, Simultaneous measurement of impulse response and distortion with a
+ *     swept-sine technique, AES 108th Convention, 2000.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class FrequencyResponseAnalyser {
+
+    private static final double REGULARISATION = 1e-6;
+    private static final int SWEEP_LENGTH_FACTOR = 4;
+
+    private final int fftSize;
+    private final MeasurementSignal measurementSignal;
+    private final DoubleFFT_1D fft;
+    private final Map<CacheKey, FrequencyResponse> cache =
+            new LinkedHashMap<CacheKey, FrequencyResponse>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CacheKey, FrequencyResponse> eldest) {
+                    return size() > Constants.FREQUENCY_RESPONSE_CACHE_SIZE;
+                }
+            };
+
+    /**
+     * Creates an instance of {@code FrequencyResponseAnalyser} with the default FFT size
+     * that measures effects with a sweep.
+     */
+    public FrequencyResponseAnalyser() {
+        this(Constants.FREQUENCY_RESPONSE_DEFAULT_FFT_SIZE, MeasurementSignal.SWEEP);
+    }
+
+    /**
+     * Creates an instance of {@code FrequencyResponseAnalyser}.
+     *
+     * @param fftSize                       the FFT size, a power of 2, the responses have
+     *                                      fftSize / 2 + 1 bins
+     * @param measurementSignal             the signal used to measure effects
+     * @throws IllegalArgumentException     if the FFT size is not a power of 2 >= 16
+     */
+    public FrequencyResponseAnalyser(int fftSize, @NonNull MeasurementSignal measurementSignal) {
+        if (fftSize < 16 || Integer.bitCount(fftSize) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of 2 >= 16.");
+        }
+        this.fftSize = fftSize;
+        this.measurementSignal = measurementSignal;
+        fft = new DoubleFFT_1D(fftSize);
+    }
+
+    /**
+     * Returns the FFT size.
+     *
+     * @return  FFT size
+     */
+    public int getFFTSize() {
+        return fftSize;
+    }
+
+    /**
+     * <p>
+     *     Returns the response of a chain of effects, {@code null} entries are skipped.
+     *     An empty chain has a flat response.
+     * </p>
+     *
+     * @param chain                         the effects in processing order
+     * @return                              the response of the chain
+     * @throws IllegalArgumentException     if the effects have different sampling frequencies
+     */
+    public synchronized FrequencyResponse getResponse(@NonNull List<AudioEffect> chain) {
+        FrequencyResponse response = null;
+        for (AudioEffect effect : chain) {
+            if (effect != null) {
+                FrequencyResponse stage = getResponse(effect);
+                response = response == null ? stage : response.multiply(stage);
+            }
+        }
+        return response != null ? response
+                : FrequencyResponse.flat(Constants.DEFAULT_SAMPLE_RATE, fftSize / 2 + 1);
+    }
+
+    /**
+     * Returns the response of a filter or an effect from the cache or computes it.
+     *
+     * @param effect    a filter or an effect
+     * @return          the response
+     */
+    public synchronized FrequencyResponse getResponse(@NonNull AudioEffect effect) {
+        if (effect instanceof LazyFIRFilter) {
+            effect = ((LazyFIRFilter) effect).getFilter();
+        }
+        int samplingFrequency = effect.getSamplingFrequency();
+        CacheKey key;
+        boolean measured = false;
+        if (effect instanceof FIRFilter) {
+            key = new CacheKey(FIRFilter.class, samplingFrequency, ((FIRFilter) effect).getCoefficients(), null);
+        } else if (effect instanceof IIRFilter) {
+            key = new CacheKey(IIRFilter.class, samplingFrequency, ((IIRFilter) effect).getSections(), null);
+        } else {
+            measured = true;
+            key = new CacheKey(effect.getClass(), samplingFrequency,
+                    effect.getConfigurationKey(), measurementSignal);
+        }
+        FrequencyResponse response = cache.get(key);
+        if (response == null) {
+            if (!measured) {
+                response = key.content instanceof float[]
+                        ? getFIRResponse((float[]) key.content, samplingFrequency)
+                        : getIIRResponse((double[][]) key.content, samplingFrequency);
+            } else {
+                AudioEffect copy = unmarshall(marshall(effect));
+                copy.setSamplingFrequency(samplingFrequency);
+                response = measure(copy);
+            }
+            cache.put(key, response);
+        }
+        return response;
+    }
+
+    /**
+     * Removes all responses from the cache.
+     */
+    public synchronized void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Returns the response of a FIR filter.
+     *
+     * @param coefficients          the filter coefficients
+     * @param samplingFrequency     the sampling frequency
+     * @return                      the response
+     */
+    public FrequencyResponse getFIRResponse(@NonNull float[] coefficients, int samplingFrequency) {
+        // Longer filters are transformed with a larger FFT and the bins are decimated
+        int size = Math.max(fftSize, Integer.highestOneBit(Math.max(coefficients.length - 1, 1)) * 2);
+        double[] data = new double[2 * size];
+        for (int i = 0; i < coefficients.length; i++) {
+            data[i] = coefficients[i];
+        }
+        if (size == fftSize) {
+            fft.realForwardFull(data);
+        } else {
+            new DoubleFFT_1D(size).realForwardFull(data);
+        }
+        int step = size / fftSize;
+        double[] real = new double[fftSize / 2 + 1];
+        double[] imaginary = new double[real.length];
+        for (int k = 0; k < real.length; k++) {
+            real[k] = data[2 * k * step];
+            imaginary[k] = data[2 * k * step + 1];
+        }
+        return new FrequencyResponse(samplingFrequency, real, imaginary);
+    }
+
+    /**
+     * Returns the response of a cascade of second order sections.
+     *
+     * @param sections              the sections as {b0, b1, b2, a1, a2}
+     * @param samplingFrequency     the sampling frequency
+     * @return                      the response
+     */
+    public FrequencyResponse getIIRResponse(@NonNull double[][] sections, int samplingFrequency) {
+        double[] real = new double[fftSize / 2 + 1];
+        double[] imaginary = new double[real.length];
+        for (int k = 0; k < real.length; k++) {
+            double w = 2 * Math.PI * k / fftSize;
+            // z^-1 and z^-2 on the unit circle
+            double c1 = Math.cos(w);
+            double s1 = -Math.sin(w);
+            double c2 = Math.cos(2 * w);
+            double s2 = -Math.sin(2 * w);
+            double re = 1;
+            double im = 0;
+            for (double[] s : sections) {
+                double numRe = s[0] + s[1] * c1 + s[2] * c2;
+                double numIm = s[1] * s1 + s[2] * s2;
+                double denRe = 1 + s[3] * c1 + s[4] * c2;
+                double denIm = s[3] * s1 + s[4] * s2;
+                double den = denRe * denRe + denIm * denIm;
+                double hRe = (numRe * denRe + numIm * denIm) / den;
+                double hIm = (numIm * denRe - numRe * denIm) / den;
+                double newRe = re * hRe - im * hIm;
+                im = re * hIm + im * hRe;
+                re = newRe;
+            }
+            real[k] = re;
+            imaginary[k] = im;
+        }
+        return new FrequencyResponse(samplingFrequency, real, imaginary);
+    }
+
+    /**
+     * <p>
+     *     Measures the response of an effect with the measurement signal. The signal is fed to
+     *     all channels, the first channel is analysed. The effect is not copied and its state
+     *     changes, the result is not cached.
+     * </p>
+     *
+     * @param effect    the effect
+     * @return          the measured response
+     */
+    public FrequencyResponse measure(@NonNull AudioEffect effect) {
+        float level = Constants.FREQUENCY_RESPONSE_MEASUREMENT_LEVEL;
+        double[] impulseResponse;
+        if (measurementSignal == MeasurementSignal.IMPULSE) {
+            impulseResponse = process(effect, new double[] {level}, fftSize);
+            for (int i = 0; i < impulseResponse.length; i++) {
+                impulseResponse[i] /= level;
+            }
+        } else {
+            double[] sweep = getSweep(SWEEP_LENGTH_FACTOR * fftSize, effect.getSamplingFrequency(), level);
+            impulseResponse = deconvolve(process(effect, sweep, sweep.length + fftSize), sweep);
+        }
+        double[] data = new double[2 * fftSize];
+        System.arraycopy(impulseResponse, 0, data, 0, fftSize);
+        fft.realForwardFull(data);
+        double[] real = new double[fftSize / 2 + 1];
+        double[] imaginary = new double[real.length];
+        for (int k = 0; k < real.length; k++) {
+            real[k] = data[2 * k];
+            imaginary[k] = data[2 * k + 1];
+        }
+        return new FrequencyResponse(effect.getSamplingFrequency(), real, imaginary);
+    }
+
+    /**
+     * Runs the excitation followed by silence through the effect in blocks of fftSize frames.
+     *
+     * @return  {@code length} samples of the first channel of the output
+     */
+    private double[] process(AudioEffect effect, double[] excitation, int length) {
+        int channels = effect.getChannels();
+        float[] input = new float[fftSize * channels];
+        float[] output = new float[input.length];
+        double[] result = new double[length];
+        for (int start = 0; start < length; start += fftSize) {
+            for (int n = 0; n < fftSize; n++) {
+                float x = start + n < excitation.length ? (float) excitation[start + n] : 0;
+                for (int ch = 0; ch < channels; ch++) {
+                    input[n * channels + ch] = x;
+                }
+            }
+            effect.apply(input, output);
+            for (int n = 0; n < fftSize && start + n < length; n++) {
+                result[start + n] = output[n * channels];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Exponential sine sweep from {@link Constants#FREQUENCY_RESPONSE_SWEEP_START} to the
+     * Nyquist frequency.
+     */
+    private static double[] getSweep(int length, int samplingFrequency, float level) {
+        double w1 = 2 * Math.PI * Constants.FREQUENCY_RESPONSE_SWEEP_START / samplingFrequency;
+        double w2 = Math.PI;
+        double rate = Math.log(w2 / w1);
+        double[] sweep = new double[length];
+        for (int n = 0; n < length; n++) {
+            sweep[n] = level * Math.sin(w1 * length / rate * (Math.exp(n * rate / length) - 1));
+        }
+        return sweep;
+    }
+
+    /**
+     * Computes the impulse response from the output of a sweep by regularised division of the
+     * spectra. The FFT is long enough that the harmonic responses, which appear at negative
+     * times, wrap around to the end and do not overlap the first fftSize samples.
+     *
+     * @return  the first fftSize samples of the impulse response
+     */
+    private double[] deconvolve(double[] response, double[] sweep) {
+        int size = Integer.highestOneBit(response.length + sweep.length) * 2;
+        DoubleFFT_1D transform = new DoubleFFT_1D(size);
+        double[] x = new double[2 * size];
+        double[] y = new double[2 * size];
+        System.arraycopy(sweep, 0, x, 0, sweep.length);
+        System.arraycopy(response, 0, y, 0, response.length);
+        transform.realForwardFull(x);
+        transform.realForwardFull(y);
+        double maxPower = 0;
+        for (int k = 0; k < size; k++) {
+            maxPower = Math.max(maxPower, x[2 * k] * x[2 * k] + x[2 * k + 1] * x[2 * k + 1]);
+        }
+        double epsilon = REGULARISATION * maxPower;
+        for (int k = 0; k < size; k++) {
+            double xRe = x[2 * k];
+            double xIm = x[2 * k + 1];
+            double yRe = y[2 * k];
+            double yIm = y[2 * k + 1];
+            double power = xRe * xRe + xIm * xIm + epsilon;
+            // Y conj(X) / (|X|^2 + epsilon)
+            y[2 * k] = (yRe * xRe + yIm * xIm) / power;
+            y[2 * k + 1] = (yIm * xRe - yRe * xIm) / power;
+        }
+        transform.complexInverse(y, true);
+        double[] impulseResponse = new double[fftSize];
+        for (int n = 0; n < fftSize; n++) {
+            impulseResponse[n] = y[2 * n];
+        }
+        return impulseResponse;
+    }
+
+    private static byte[] marshall(AudioEffect effect) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(effect, 0);
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static AudioEffect unmarshall(byte[] content) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(content, 0, content.length);
+            parcel.setDataPosition(0);
+            return parcel.readParcelable(AudioEffect.class.getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Configuration of a stage: the class, the sampling frequency, the content that
+     * determines the response, compared element by element, and the measurement signal
+     * if the response is measured.
+     */
+    private static class CacheKey {
+
+        private final Class<?> type;
+        private final int samplingFrequency;
+        private final Object content;
+        private final MeasurementSignal signal;
+        private final int hash;
+
+        private CacheKey(Class<?> type, int samplingFrequency, Object content,
+                         MeasurementSignal signal) {
+            this.type = type;
+            this.samplingFrequency = samplingFrequency;
+            this.content = content;
+            this.signal = signal;
+            hash = 31 * (31 * type.hashCode() + samplingFrequency)
+                    + Arrays.deepHashCode(new Object[] {content, signal});
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey that = (CacheKey) o;
+            return type == that.type && samplingFrequency == that.samplingFrequency
+                    && signal == that.signal
+                    && Arrays.deepEquals(new Object[] {content}, new Object[] {that.content});
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
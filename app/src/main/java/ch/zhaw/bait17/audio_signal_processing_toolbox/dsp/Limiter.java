@@ -2,30 +2,232 @@ package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp;
 
 import android.support.annotation.NonNull;
 
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.PolyphaseDecimator;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.PolyphaseInterpolator;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
 /**
  * <p>
- *     Limiter </br>
+ *     Look-ahead brickwall limiter </br>
  *
  *     Provides control over the highest peaks in the audio signal and at the same time
  *     changes the dynamics of the audio signal as little as possible. </br>
  *
- *     The output level will never exceed the threshold {@link #limit}. </br>
+ *     The output level will never exceed the {@link #setCeiling(float) ceiling}. </br>
+ * </p>
+ * <p>
+ *     The samples are delayed by the look-ahead, so the gain is already reduced when a peak
+ *     reaches the output. For every frame the gain required to keep the loudest peak of the
+ *     look-ahead window below the ceiling is computed. The maximum of the sliding window is
+ *     kept in a monotonic deque: a new peak removes all smaller peaks from the back, the
+ *     front leaves the deque when it falls out of the window. Every peak enters and leaves
+ *     the deque once, so the cost is O(1) amortised per frame, independent of the look-ahead.
  * </p>
  * <p>
- *     From DAFX Digital Audio Effects, second edition, page 109. </br>
- *     Author: Martin Holters
+ *     The gain recovers exponentially with {@link Constants#LIMITER_RELEASE_TIME} and is
+ *     smoothed by a moving average over the look-ahead, which turns a gain step into a
+ *     linear ramp. Every averaged gain belongs to a window which contains the delayed frame,
+ *     so the average never exceeds the gain the frame requires. The output is clamped to the
+ *     ceiling to catch rounding errors.
  * </p>
+ * <p>
+ *     The gain is shared by all channels, so the stereo image does not move. Optionally the
+ *     peaks between the samples are detected on a {@link Constants#LIMITER_TRUE_PEAK_FACTOR}
+ *     times oversampled signal, which keeps the reconstructed analog signal close to the
+ *     ceiling as well. A peak may fall between the oversampled values and still exceed the
+ *     ceiling slightly, by up to 0.7 dB for a sine near the Nyquist frequency. The delay of
+ *     the interpolation filter is added to the window in either case, so switching the
+ *     true-peak detection does not change the latency.
+ * </p>
+ *
+ * @author georgrem, stockan1
  */
 public class Limiter {
 
-    private static final int DELAY = 5;
+    private final int truePeakDelay;
+    private final Parameter inputGain;
+    private final float[] interpolationFilter;
+    private int channels;
+    private PolyphaseInterpolator[] interpolators;
+    private final float[] oversampled;
+    private volatile float ceiling = Constants.LIMITER_DEFAULT_CEILING;
+    private volatile float lookAhead = Constants.LIMITER_DEFAULT_LOOK_AHEAD;
+    private volatile boolean truePeak = false;
+    private int samplingFrequency = Constants.DEFAULT_SAMPLE_RATE;
 
-    private float[] buffer = new float[DELAY];
-    private float limit = 1.0f;
-    private float gain = 1.0f;
+    // Audio thread only
+    private DelayLine delayLine;
+    // Monotonic deque of the peaks in the window, decreasing from the front to the back
+    private float[] dequePeaks;
+    private int[] dequeFrames;
+    private int dequeHead;
+    private int dequeSize;
+    private int frameCount;
+    // Moving average of the gain over the look-ahead
+    private float[] gains;
+    private int gainPosition;
+    private double gainSum;
+    private int lookAheadFrames;
+    private int windowFrames;
+    private float activeLookAhead;
+    private boolean activeTruePeak = false;
+    private float release;
+    private float envelope = 1;
 
+    /**
+     * Creates a limiter for {@link Constants#DEFAULT_CHANNELS} interleaved channels.
+     */
     public Limiter() {
+        this(Constants.DEFAULT_CHANNELS);
+    }
+
+    /**
+     * Creates a limiter.
+     *
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    public Limiter(int channels) {
+        if (channels < 1) {
+            throw new IllegalArgumentException("Number of channels must be >= 1.");
+        }
+        this.channels = channels;
+        inputGain = new Parameter(1, channels);
+        // Cut-off at the input Nyquist frequency as in a true-peak meter: the passband
+        // reaches as high as possible, images just above it barely change the peaks
+        interpolationFilter = PolyphaseDecimator.designLowPassFilter(
+                Constants.LIMITER_TRUE_PEAK_FILTER_LENGTH,
+                0.5 / Constants.LIMITER_TRUE_PEAK_FACTOR);
+        createInterpolators();
+        oversampled = new float[Constants.LIMITER_TRUE_PEAK_FACTOR];
+        // The interpolated samples lag behind by half the filter length at the higher rate
+        truePeakDelay = (int) Math.ceil((Constants.LIMITER_TRUE_PEAK_FILTER_LENGTH - 1)
+                / (2.0 * Constants.LIMITER_TRUE_PEAK_FACTOR));
+        allocate();
+    }
+
+    /**
+     * <p>
+     *     Sets the sampling frequency, which sets the length of the look-ahead and the number
+     *     of samples of the input gain ramp. Call it while the limiter is not applied.
+     * </p>
+     *
+     * @param samplingFrequency     sampling frequency in Hz
+     */
+    public void setSamplingFrequency(int samplingFrequency) {
+        if (samplingFrequency > 0) {
+            this.samplingFrequency = samplingFrequency;
+            inputGain.setSamplingFrequency(samplingFrequency);
+            allocate();
+        }
+    }
+
+    /**
+     * <p>
+     *     Sets the number of interleaved channels. The look-ahead starts empty.
+     *     Call it while the limiter is not applied.
+     * </p>
+     *
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    public void setChannels(int channels) {
+        if (channels < 1) {
+            throw new IllegalArgumentException("Number of channels must be >= 1.");
+        }
+        if (channels != this.channels) {
+            this.channels = channels;
+            inputGain.setTicksPerFrame(channels);
+            createInterpolators();
+            allocate();
+        }
+    }
+
+    /**
+     * Returns the number of interleaved channels.
+     *
+     * @return  number of channels
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Sets the look-ahead, the time by which the gain reduction precedes a peak. A longer
+     * look-ahead reduces the gain more smoothly but adds latency.
+     *
+     * @param lookAhead                     look-ahead in seconds
+     * @throws IllegalArgumentException     if the look-ahead is not within
+     *                                      [{@link Constants#LIMITER_MIN_LOOK_AHEAD},
+     *                                      {@link Constants#LIMITER_MAX_LOOK_AHEAD}]
+     */
+    public void setLookAhead(float lookAhead) {
+        if (lookAhead < Constants.LIMITER_MIN_LOOK_AHEAD
+                || lookAhead > Constants.LIMITER_MAX_LOOK_AHEAD) {
+            throw new IllegalArgumentException(String.format(
+                    "Look-ahead must be within [%.3f, %.3f] seconds.",
+                    Constants.LIMITER_MIN_LOOK_AHEAD, Constants.LIMITER_MAX_LOOK_AHEAD));
+        }
+        this.lookAhead = lookAhead;
+    }
+
+    /**
+     * Returns the look-ahead.
+     *
+     * @return  look-ahead in seconds
+     */
+    public float getLookAhead() {
+        return lookAhead;
+    }
+
+    /**
+     * Sets the ceiling, the highest absolute value of the output samples.
+     *
+     * @param ceiling                       linear level
+     * @throws IllegalArgumentException     if ceiling <= 0
+     */
+    public void setCeiling(float ceiling) {
+        if (ceiling <= 0) {
+            throw new IllegalArgumentException("Ceiling must be > 0.");
+        }
+        this.ceiling = ceiling;
+    }
 
+    /**
+     * Returns the ceiling.
+     *
+     * @return  linear level
+     */
+    public float getCeiling() {
+        return ceiling;
+    }
+
+    /**
+     * Switches the detection of the peaks between the samples on or off.
+     *
+     * @param truePeak  true to detect the peaks on the oversampled signal
+     */
+    public void setTruePeakDetection(boolean truePeak) {
+        this.truePeak = truePeak;
+    }
+
+    /**
+     * Returns true if the peaks between the samples are detected.
+     *
+     * @return  true if the true-peak detection is on
+     */
+    public boolean isTruePeakDetection() {
+        return truePeak;
+    }
+
+    /**
+     * Returns the delay of the output in frames, the look-ahead plus the delay of the
+     * true-peak detection.
+     *
+     * @return  the latency in samples per channel
+     */
+    public int getLatency() {
+        return getWindowFrames(getLookAheadFrames(lookAhead)) - 1;
     }
 
     /**
@@ -34,35 +236,126 @@ public class Limiter {
      * </p>
      *
      * @param input         array of {@code float} input samples
-     * @param inputGain     input gain applied to each sample
+     * @param inputGain     input gain applied to each sample, a change is ramped
      */
     public void apply(@NonNull float[] input, float inputGain) {
-        float attackTime = 0.0002f;
-        float releaseTime = 0.001f;
-        float peak = 0.f;
-        float[] output = new float[input.length];
-
-        for (int i = 0; i < input.length; i++) {
-            input[i] *= inputGain;
+        this.inputGain.set(inputGain);
+        this.inputGain.update();
+        if (lookAhead != activeLookAhead) {
+            configure();
+        }
+        final boolean truePeak = this.truePeak;
+        if (truePeak != activeTruePeak) {
+            for (PolyphaseInterpolator interpolator : interpolators) {
+                interpolator.reset();
+            }
+            activeTruePeak = truePeak;
+        }
+        final float ceiling = this.ceiling;
+        final int delay = (windowFrames - 1) * channels;
 
-            float coeff = releaseTime;
-            float a = Math.abs(input[i]);
+        for (int frame = 0; frame < input.length; frame += channels) {
+            final int end = Math.min(frame + channels, input.length);
+            float peak = 0;
+            for (int i = frame; i < end; i++) {
+                float sample = input[i] * this.inputGain.next();
+                delayLine.write(sample);
+                peak = Math.max(peak, Math.abs(sample));
+                if (truePeak) {
+                    interpolators[i - frame].processSample(sample, oversampled, 0);
+                    for (float value : oversampled) {
+                        peak = Math.max(peak, Math.abs(value));
+                    }
+                }
+            }
 
-            if (a > peak) {
-                coeff = attackTime;
+            float maximum = pushPeak(peak);
+            float gain = maximum > ceiling ? ceiling / maximum : 1;
+            envelope = gain < envelope ? gain : envelope + release * (gain - envelope);
+            gainSum += envelope - gains[gainPosition];
+            gains[gainPosition] = envelope;
+            if (++gainPosition == lookAheadFrames) {
+                gainPosition = 0;
+                // Recompute the sum once per look-ahead, so rounding errors do not accumulate
+                gainSum = 0;
+                for (int k = 0; k < lookAheadFrames; k++) {
+                    gainSum += gains[k];
+                }
             }
-            peak = (1 - coeff) * peak + coeff * a;
-            float f = Math.min(1.0f, limit / peak);
-            if (f < gain) {
-                coeff = attackTime;
-            } else {
-                coeff = releaseTime;
+            float smoothed = (float) Math.min(1, gainSum / lookAheadFrames);
+
+            for (int i = frame; i < end; i++) {
+                float sample = smoothed * delayLine.read(delay + end - 1 - i);
+                input[i] = Math.max(-ceiling, Math.min(ceiling, sample));
             }
-            gain = (1 - coeff) * gain + coeff * f;
-            output[i] = gain * buffer[buffer.length - 1];
-            System.arraycopy(buffer, 0, buffer, 1, buffer.length - 1);
-            buffer[0] = input[i];
         }
-        System.arraycopy(output, 0, input, 0, input.length);
     }
-}
\ No newline at end of file
+
+    /**
+     * Adds the peak of the newest frame to the window and returns the maximum of the window.
+     */
+    private float pushPeak(float peak) {
+        final int capacity = dequePeaks.length;
+        while (dequeSize > 0 && dequePeaks[(dequeHead + dequeSize - 1) % capacity] <= peak) {
+            dequeSize--;
+        }
+        int back = (dequeHead + dequeSize) % capacity;
+        dequePeaks[back] = peak;
+        dequeFrames[back] = frameCount;
+        dequeSize++;
+        // Only the front can be out of the window, several frames after a shorter look-ahead
+        while (frameCount - dequeFrames[dequeHead] >= windowFrames) {
+            dequeHead = (dequeHead + 1) % capacity;
+            dequeSize--;
+        }
+        frameCount++;
+        return dequePeaks[dequeHead];
+    }
+
+    private void createInterpolators() {
+        interpolators = new PolyphaseInterpolator[channels];
+        for (int c = 0; c < channels; c++) {
+            interpolators[c] = new PolyphaseInterpolator(Constants.LIMITER_TRUE_PEAK_FACTOR,
+                    interpolationFilter);
+        }
+    }
+
+    /**
+     * Allocates the buffers for the longest look-ahead at the current sampling frequency.
+     */
+    private void allocate() {
+        int capacity = getWindowFrames(getLookAheadFrames(Constants.LIMITER_MAX_LOOK_AHEAD));
+        delayLine = new DelayLine(capacity * channels);
+        dequePeaks = new float[capacity + 1];
+        dequeFrames = new int[capacity + 1];
+        gains = new float[getLookAheadFrames(Constants.LIMITER_MAX_LOOK_AHEAD)];
+        dequeHead = 0;
+        dequeSize = 0;
+        release = (float) (1 - Math.exp(-1.0 / (Constants.LIMITER_RELEASE_TIME
+                * samplingFrequency)));
+        configure();
+    }
+
+    /**
+     * Sets the length of the window to the current look-ahead. The moving average starts
+     * at the current gain, the peaks in the deque are kept.
+     */
+    private void configure() {
+        activeLookAhead = lookAhead;
+        lookAheadFrames = getLookAheadFrames(activeLookAhead);
+        windowFrames = getWindowFrames(lookAheadFrames);
+        for (int k = 0; k < lookAheadFrames; k++) {
+            gains[k] = envelope;
+        }
+        gainPosition = 0;
+        gainSum = (double) envelope * lookAheadFrames;
+    }
+
+    private int getLookAheadFrames(float lookAhead) {
+        return Math.max(1, Math.round(lookAhead * samplingFrequency));
+    }
+
+    private int getWindowFrames(int lookAheadFrames) {
+        return lookAheadFrames + truePeakDelay;
+    }
+}
@@ -0,0 +1,21 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp;
+
+/**
+ * <p>
+ *     Test signals for measuring the frequency response of an {@link AudioEffect},
+ *     see {@link FrequencyResponseAnalyser}.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public enum MeasurementSignal {
+    /**
+     * A single impulse, exact for linear effects and fast.
+     */
+    IMPULSE,
+    /**
+     * An exponential sine sweep, harmonic distortion of non-linear effects is separated
+     * from the linear response.
+     */
+    SWEEP
+}
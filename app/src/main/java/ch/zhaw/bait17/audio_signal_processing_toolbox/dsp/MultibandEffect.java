@@ -0,0 +1,455 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp;
+
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.LinkwitzRileyCrossover;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     Splits the signal into frequency bands with a {@link LinkwitzRileyCrossover}, applies a
+ *     chain of {@code AudioEffect}s to every band and adds the bands up again. <br>
+ *     E.g. distortion only on the mids or tremolo only on the highs. Bands without effects
+ *     pass unchanged, with all chains empty the output is an allpass filtered copy of the input.
+ * </p>
+ * <p>
+ *     The chains of the bands are independent of each other. When they take more than
+ *     {@link Constants#MULTIBAND_PARALLEL_LOAD} of the real time of a block, the bands are
+ *     processed in parallel on a small worker pool shared by all instances. The calling thread
+ *     processes one band itself and then waits for the other bands in band order. The bands
+ *     are always added up in the same order, so the output does not depend on whether and
+ *     how the bands were processed in parallel.
+ * </p>
+ * <p>
+ *     The effects of a band are applied in place, one after another, like the chain of the
+ *     audio player.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+
+public class MultibandEffect extends AudioEffect {
+
+    private static final String LABEL = "Multiband";
+    private static final String DESCRIPTION = "Applies a chain of effects to every band of a Linkwitz-Riley crossover";
+    private static final AudioEffect[] NO_EFFECTS = new AudioEffect[0];
+    // Smoothing factor of the measured load
+    private static final float LOAD_SMOOTHING = 0.2f;
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1,
+                    Constants.MULTIBAND_MAX_WORKER_THREADS)),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, MultibandEffect.class.getSimpleName());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MAX_PRIORITY);
+                    return thread;
+                }
+            });
+
+    private LinkwitzRileyCrossover crossover;
+    private volatile AudioEffect[][] bandEffects;
+    private final BandTask[] tasks;
+    private final Future<?>[] futures;
+    private float[][] bands;
+    private float load = 0;
+    private int blockSize = 0;
+    private boolean parallel = false;
+
+    /**
+     * Creates an instance of {@code MultibandEffect} without effects.
+     *
+     * @param crossoverFrequencies          ascending crossover frequencies in Hz,
+     *                                      one less than the number of bands
+     * @throws IllegalArgumentException     if the crossover frequencies are not valid
+     */
+    public MultibandEffect(@NonNull float[] crossoverFrequencies) {
+        crossover = new LinkwitzRileyCrossover(crossoverFrequencies, getChannels());
+        crossover.setSamplingFrequency(getSamplingFrequency());
+        int count = crossover.getNumberOfBands();
+        bandEffects = new AudioEffect[count][];
+        Arrays.fill(bandEffects, NO_EFFECTS);
+        tasks = new BandTask[count];
+        for (int b = 0; b < count; b++) {
+            tasks[b] = new BandTask(b);
+        }
+        futures = new Future<?>[count];
+    }
+
+    protected MultibandEffect(Parcel in) {
+        this(in.createFloatArray());
+        setSamplingFrequency(in.readInt());
+        setChannels(in.readInt());
+        for (int b = 0; b < bandEffects.length; b++) {
+            AudioEffect[] effects = new AudioEffect[in.readInt()];
+            for (int i = 0; i < effects.length; i++) {
+                effects[i] = in.readParcelable(AudioEffect.class.getClassLoader());
+            }
+            bandEffects[b] = effects;
+        }
+    }
+
+    /**
+     * <p>
+     *     Splits a block of PCM samples into bands, applies the effects of every band and
+     *     adds the bands up. Input and output sample arrays must have the same length.
+     * </p>
+     *
+     * @param input  array of {@code float} input samples
+     * @param output array of {@code float} output samples must be of same length as input array
+     */
+    @Override
+    public void apply(@NonNull float[] input, @NonNull float[] output) {
+        if (input.length == output.length && input.length != 0) {
+            if (bands == null || bands[0].length != input.length) {
+                bands = new float[bandEffects.length][input.length];
+            }
+            crossover.split(input, bands);
+            AudioEffect[][] effects = bandEffects;
+            long time = parallel ? applyParallel(effects) : applySerial(effects);
+            float seconds = input.length / (float) (getChannels() * getSamplingFrequency());
+            load += LOAD_SMOOTHING * (time / (seconds * 1e9f) - load);
+            // Hysteresis, so that a load close to the limit does not toggle every block
+            parallel = load > (parallel ? 0.5f : 1f) * Constants.MULTIBAND_PARALLEL_LOAD;
+
+            System.arraycopy(bands[0], 0, output, 0, output.length);
+            for (int b = 1; b < bands.length; b++) {
+                float[] band = bands[b];
+                for (int i = 0; i < output.length; i++) {
+                    output[i] += band[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the effects of all bands on the calling thread.
+     *
+     * @return  time spent in the effects in nanoseconds
+     */
+    private long applySerial(AudioEffect[][] effects) {
+        long time = 0;
+        for (int b = 0; b < tasks.length; b++) {
+            tasks[b].effects = effects[b];
+            tasks[b].run();
+            time += tasks[b].time;
+        }
+        return time;
+    }
+
+    /**
+     * Submits all bands with effects but the first to the worker pool, applies the effects
+     * of the first band on the calling thread and waits for the other bands in band order.
+     *
+     * @return  time spent in the effects in nanoseconds, summed over all threads
+     */
+    private long applyParallel(AudioEffect[][] effects) {
+        int first = -1;
+        for (int b = 0; b < tasks.length; b++) {
+            tasks[b].effects = effects[b];
+            if (effects[b].length != 0) {
+                if (first < 0) {
+                    first = b;
+                } else {
+                    futures[b] = executor.submit(tasks[b]);
+                }
+            }
+        }
+        long time = 0;
+        Throwable failure = null;
+        if (first >= 0) {
+            try {
+                tasks[first].run();
+                time += tasks[first].time;
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            }
+        }
+        // Wait for every band, even after a failure, the bands must not be touched afterwards
+        for (int b = 0; b < futures.length; b++) {
+            if (futures[b] != null) {
+                try {
+                    Uninterruptibles.getUninterruptibly(futures[b]);
+                    time += tasks[b].time;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+                futures[b] = null;
+            }
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return time;
+    }
+
+    /**
+     * Returns the number of bands.
+     *
+     * @return  number of bands
+     */
+    public int getNumberOfBands() {
+        return bandEffects.length;
+    }
+
+    /**
+     * Returns the crossover frequencies.
+     *
+     * @return  crossover frequencies in Hz
+     */
+    public float[] getCrossoverFrequencies() {
+        return crossover.getCrossoverFrequencies();
+    }
+
+    /**
+     * Returns the effects of a band.
+     *
+     * @param band  band index, 0 is the lowest band
+     * @return      unmodifiable list of the effects
+     */
+    public List<AudioEffect> getBandEffects(int band) {
+        return Collections.unmodifiableList(Arrays.asList(bandEffects[band]));
+    }
+
+    /**
+     * <p>
+     *     Sets the effects of a band. The effects are applied in list order from the next
+     *     block on, {@code null} entries are ignored. An effect must not be used in more
+     *     than one band or chain.
+     * </p>
+     *
+     * @param band      band index, 0 is the lowest band
+     * @param effects   effects of the band, may be empty
+     */
+    public synchronized void setBandEffects(int band, @NonNull List<AudioEffect> effects) {
+        List<AudioEffect> chain = new ArrayList<>();
+        for (AudioEffect effect : effects) {
+            if (effect != null) {
+                effect.setSamplingFrequency(getSamplingFrequency());
+                effect.setChannels(getChannels());
+                if (blockSize > 0) {
+                    effect.setBlockSize(blockSize);
+                }
+                chain.add(effect);
+            }
+        }
+        AudioEffect[][] newBandEffects = bandEffects.clone();
+        newBandEffects[band] = chain.toArray(new AudioEffect[chain.size()]);
+        bandEffects = newBandEffects;
+    }
+
+    /**
+     * Returns true if the bands are currently processed on the worker pool.
+     *
+     * @return  true if parallel
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Clears the state of the crossover.
+     */
+    public void reset() {
+        crossover.reset();
+    }
+
+    /**
+     * <p>
+     *     Returns the decay of the crossover plus the longest tail of the band effects.
+     * </p>
+     *
+     * @return  tail time in seconds
+     */
+    @Override
+    public float getTailTime() {
+        float tail = 0;
+        for (AudioEffect[] effects : bandEffects) {
+            float band = 0;
+            for (AudioEffect effect : effects) {
+                band += effect.getTailTime();
+            }
+            tail = Math.max(tail, band);
+        }
+        return tail + (float) (crossover.getDecayLength(Constants.SILENCE_THRESHOLD)
+                / getSamplingFrequency());
+    }
+
+    @Override
+    public String getLabel() {
+        return LABEL;
+    }
+
+    @Override
+    public String getDescription() {
+        return DESCRIPTION;
+    }
+
+    /**
+     * <p>
+     *     Sets the sampling frequency of the crossover and of all effects.
+     * </p>
+     *
+     * @param samplingFrequency             sampling frequency
+     * @throws IllegalArgumentException     if a crossover frequency is not below the
+     *                                      Nyquist frequency
+     */
+    @Override
+    public synchronized void setSamplingFrequency(int samplingFrequency) {
+        if (samplingFrequency > 0) {
+            crossover.setSamplingFrequency(samplingFrequency);
+        }
+        super.setSamplingFrequency(samplingFrequency);
+        for (AudioEffect[] effects : bandEffects) {
+            for (AudioEffect effect : effects) {
+                effect.setSamplingFrequency(samplingFrequency);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     *     Sets the number of interleaved channels of the crossover and of all effects.
+     *     The crossover starts from silence.
+     * </p>
+     *
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    @Override
+    public synchronized void setChannels(int channels) {
+        super.setChannels(channels);
+        crossover = new LinkwitzRileyCrossover(crossover.getCrossoverFrequencies(), channels);
+        crossover.setSamplingFrequency(getSamplingFrequency());
+        bands = null;
+        for (AudioEffect[] effects : bandEffects) {
+            for (AudioEffect effect : effects) {
+                effect.setChannels(channels);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     *     Allocates the band buffers for blocks of the given length and sets the block size
+     *     of the effects of all bands.
+     * </p>
+     *
+     * @param samples   number of interleaved samples per block
+     */
+    @Override
+    public synchronized void setBlockSize(int samples) {
+        if (samples > 0) {
+            blockSize = samples;
+            bands = new float[bandEffects.length][samples];
+            for (AudioEffect[] effects : bandEffects) {
+                for (AudioEffect effect : effects) {
+                    effect.setBlockSize(samples);
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     *     Sets the ramp time of the parameters of all effects.
+     * </p>
+     *
+     * @param rampTime                      ramp time in seconds, 0 for no smoothing
+     * @throws IllegalArgumentException     if rampTime < 0
+     */
+    @Override
+    public synchronized void setParameterRampTime(float rampTime) {
+        super.setParameterRampTime(rampTime);
+        for (AudioEffect[] effects : bandEffects) {
+            for (AudioEffect effect : effects) {
+                effect.setParameterRampTime(rampTime);
+            }
+        }
+    }
+
+    @Override
+    protected void addConfiguration(@NonNull List<Object> key) {
+        key.add(crossover.getCrossoverFrequencies());
+        for (AudioEffect[] effects : bandEffects) {
+            Object[] band = new Object[effects.length];
+            for (int i = 0; i < effects.length; i++) {
+                band[i] = effects[i].getConfigurationKey();
+            }
+            key.add(band);
+        }
+    }
+
+    @Override
+    public int describeContents() {
+        return hashCode();
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeFloatArray(crossover.getCrossoverFrequencies());
+        dest.writeInt(getSamplingFrequency());
+        dest.writeInt(getChannels());
+        for (AudioEffect[] effects : bandEffects) {
+            dest.writeInt(effects.length);
+            for (AudioEffect effect : effects) {
+                dest.writeParcelable(effect, flags);
+            }
+        }
+    }
+
+    public static final Creator<MultibandEffect> CREATOR = new Creator<MultibandEffect>() {
+        @Override
+        public MultibandEffect createFromParcel(Parcel source) {
+            return new MultibandEffect(source);
+        }
+
+        @Override
+        public MultibandEffect[] newArray(int size) {
+            return new MultibandEffect[size];
+        }
+    };
+
+    /**
+     * Applies the effects of one band in place and measures the time.
+     */
+    private class BandTask implements Runnable {
+
+        private final int band;
+        private AudioEffect[] effects = NO_EFFECTS;
+        private long time;
+
+        private BandTask(int band) {
+            this.band = band;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            float[] samples = bands[band];
+            for (AudioEffect effect : effects) {
+                effect.apply(samples, samples);
+            }
+            time = System.nanoTime() - start;
+        }
+    }
+}
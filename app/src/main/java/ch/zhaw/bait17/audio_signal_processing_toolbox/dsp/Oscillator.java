@@ -0,0 +1,295 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp;
+
+import android.support.annotation.NonNull;
+
+import org.jtransforms.fft.FloatFFT_1D;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     Wavetable oscillator with direct digital synthesis (DDS), see MATLAB/dds.m. </br>
+ *     The phase is a 32 bit fixed-point accumulator: one period is 2^32, the accumulator
+ *     wraps around by integer overflow and never loses precision, however long it runs.
+ *     The tuning word added per sample is M = f / fs * 2^32. The upper
+ *     {@link Constants#OSCILLATOR_TABLE_BITS} bits of the phase index the lookup table,
+ *     the lower bits interpolate linearly between two entries.
+ * </p>
+ * <p>
+ *     The tables are band-limited: there is one table per octave, which only holds the
+ *     harmonics below the Nyquist frequency of the highest fundamental frequency of that
+ *     octave. The table is chosen when the frequency is set. The tables are built once
+ *     per waveform with an inverse FFT and shared by all oscillators.
+ * </p>
+ * <p>
+ *     Changing the frequency only changes the tuning word, the phase continues, so there
+ *     are no discontinuities. An oscillator is not thread-safe, it is owned by the audio
+ *     thread. Effects publish new frequencies through volatile fields and pass them to the
+ *     oscillator at the beginning of a block.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class Oscillator {
+
+    private static final int TABLE_BITS = Constants.OSCILLATOR_TABLE_BITS;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+    private static final int FRACTION_BITS = 32 - TABLE_BITS;
+    private static final int FRACTION_MASK = (1 << FRACTION_BITS) - 1;
+    private static final float FRACTION_SCALE = 1.0f / (1 << FRACTION_BITS);
+    // The harmonics of level l go up to 2^l, the highest level holds TABLE_SIZE / 2 harmonics
+    private static final int LEVELS = TABLE_BITS;
+    private static final double PHASE_SCALE = 4294967296.0;
+    private static final float[][][] TABLES = new float[Waveform.values().length][][];
+
+    private Waveform waveform;
+    private float[] table;
+    private float frequency;
+    private int samplingFrequency;
+    private int phase = 0;
+    private int increment;
+
+    /**
+     * Creates an oscillator starting at phase 0.
+     *
+     * @param waveform                      the waveform
+     * @param frequency                     frequency in Hz, must be in [0, fs / 2]
+     * @param samplingFrequency             sampling frequency in Hz
+     * @throws IllegalArgumentException     if the frequency is out of range or the sampling
+     *                                      frequency <= 0
+     */
+    public Oscillator(@NonNull Waveform waveform, float frequency, int samplingFrequency) {
+        this.waveform = waveform;
+        this.frequency = frequency;
+        setSamplingFrequency(samplingFrequency);
+    }
+
+    /**
+     * Returns the current value and advances the phase by one sample.
+     *
+     * @return  the current value in [-1, 1]
+     */
+    public float next() {
+        float value = getValue(0);
+        phase += increment;
+        return value;
+    }
+
+    /**
+     * <p>
+     *     Returns the value at the current phase plus an offset, without advancing. Several
+     *     taps with different offsets read the same oscillator, see {@link #toPhase(double)}.
+     * </p>
+     *
+     * @param phaseOffset   fixed-point phase offset
+     * @return              the value in [-1, 1]
+     */
+    public float getValue(int phaseOffset) {
+        final float[] table = this.table;
+        final int p = phase + phaseOffset;
+        final int index = p >>> FRACTION_BITS;
+        final float fraction = (p & FRACTION_MASK) * FRACTION_SCALE;
+        final float a = table[index];
+        return a + fraction * (table[index + 1] - a);
+    }
+
+    /**
+     * Advances the phase by one sample.
+     */
+    public void advance() {
+        phase += increment;
+    }
+
+    /**
+     * Advances the phase by a number of samples.
+     *
+     * @param samples   number of samples
+     */
+    public void advance(int samples) {
+        phase += samples * increment;
+    }
+
+    /**
+     * Writes the next {@code length} values and advances the phase.
+     *
+     * @param output    array of values
+     * @param offset    index of the first value
+     * @param length    number of values
+     */
+    public void generate(@NonNull float[] output, int offset, int length) {
+        final float[] table = this.table;
+        final int increment = this.increment;
+        int p = phase;
+        for (int i = offset; i < offset + length; i++) {
+            final int index = p >>> FRACTION_BITS;
+            final float fraction = (p & FRACTION_MASK) * FRACTION_SCALE;
+            final float a = table[index];
+            output[i] = a + fraction * (table[index + 1] - a);
+            p += increment;
+        }
+        phase = p;
+    }
+
+    /**
+     * Sets the frequency. The phase is kept.
+     *
+     * @param frequency                     frequency in Hz, must be in [0, fs / 2]
+     * @throws IllegalArgumentException     if the frequency is out of range
+     */
+    public void setFrequency(float frequency) {
+        if (frequency < 0 || frequency > samplingFrequency / 2.0f) {
+            throw new IllegalArgumentException("Frequency must be in [0, fs / 2].");
+        }
+        this.frequency = frequency;
+        long tuningWord = Math.round(frequency / (double) samplingFrequency * PHASE_SCALE);
+        table = getTable(waveform, tuningWord);
+        increment = (int) tuningWord;
+    }
+
+    /**
+     * Returns the frequency.
+     *
+     * @return  frequency in Hz
+     */
+    public float getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * Sets the sampling frequency, the frequency in Hz is kept.
+     *
+     * @param samplingFrequency             sampling frequency in Hz
+     * @throws IllegalArgumentException     if the sampling frequency <= 0 or less than twice
+     *                                      the frequency
+     */
+    public void setSamplingFrequency(int samplingFrequency) {
+        if (samplingFrequency <= 0) {
+            throw new IllegalArgumentException("Sampling frequency must be > 0.");
+        }
+        this.samplingFrequency = samplingFrequency;
+        setFrequency(frequency);
+    }
+
+    /**
+     * Sets the waveform. The phase is kept.
+     *
+     * @param waveform  the waveform
+     */
+    public void setWaveform(@NonNull Waveform waveform) {
+        this.waveform = waveform;
+        setFrequency(frequency);
+    }
+
+    /**
+     * Returns the waveform.
+     *
+     * @return  the waveform
+     */
+    public Waveform getWaveform() {
+        return waveform;
+    }
+
+    /**
+     * Returns the fixed-point phase, one period is 2^32.
+     *
+     * @return  the phase
+     */
+    public int getPhase() {
+        return phase;
+    }
+
+    /**
+     * Sets the fixed-point phase, one period is 2^32.
+     *
+     * @param phase the phase
+     */
+    public void setPhase(int phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * Converts a phase in periods to the fixed-point phase. Whole periods are dropped.
+     *
+     * @param periods   phase in periods, e.g. 0.25 for 90 degrees
+     * @return          the fixed-point phase
+     */
+    public static int toPhase(double periods) {
+        return (int) (long) Math.floor((periods - Math.floor(periods)) * PHASE_SCALE);
+    }
+
+    /**
+     * Returns the band-limited table for a tuning word.
+     */
+    private static float[] getTable(Waveform waveform, long tuningWord) {
+        float[][] levels;
+        synchronized (TABLES) {
+            levels = TABLES[waveform.ordinal()];
+            if (levels == null) {
+                levels = createTables(waveform);
+                TABLES[waveform.ordinal()] = levels;
+            }
+        }
+        // Highest harmonic below the Nyquist frequency
+        long harmonics = tuningWord > 0 ? (1L << 31) / tuningWord : TABLE_SIZE;
+        int level = 63 - Long.numberOfLeadingZeros(Math.max(harmonics, 1));
+        return levels[Math.min(level, LEVELS - 1)];
+    }
+
+    /**
+     * <p>
+     *     Builds the tables of all levels from the Fourier series of the waveform.
+     *     The harmonics are weighted with the Lanczos sigma factors, which reduce the Gibbs
+     *     overshoot at the jumps from about 9% to about 1%. Every table has a guard entry
+     *     for the interpolation and is normalised to a peak value of 1.
+     * </p>
+     */
+    private static float[][] createTables(Waveform waveform) {
+        float[][] levels = new float[LEVELS][];
+        FloatFFT_1D fft = new FloatFFT_1D(TABLE_SIZE);
+        for (int level = 0; level < LEVELS; level++) {
+            if (waveform == Waveform.SINE && level > 0) {
+                levels[level] = levels[0];
+                continue;
+            }
+            int harmonics = 1 << level;
+            float[] spectrum = new float[TABLE_SIZE];
+            for (int k = 1; k <= harmonics && k < TABLE_SIZE / 2; k++) {
+                double x = Math.PI * k / (harmonics + 1);
+                double sigma = Math.sin(x) / x;
+                // b = amplitude of sin(k * phi), packed as the negative imaginary part
+                spectrum[2 * k + 1] = (float) (-sigma * getSineCoefficient(waveform, k));
+            }
+            fft.realInverse(spectrum, false);
+            float peak = 0;
+            for (float value : spectrum) {
+                peak = Math.max(peak, Math.abs(value));
+            }
+            float[] table = new float[TABLE_SIZE + 1];
+            for (int i = 0; i < TABLE_SIZE; i++) {
+                table[i] = spectrum[i] / peak;
+            }
+            table[TABLE_SIZE] = table[0];
+            levels[level] = table;
+        }
+        return levels;
+    }
+
+    /**
+     * Returns the coefficient of sin(k * phi) in the Fourier series of the waveform.
+     */
+    private static double getSineCoefficient(Waveform waveform, int k) {
+        switch (waveform) {
+            case TRIANGLE:
+                if (k % 2 == 0) {
+                    return 0;
+                }
+                return ((k / 2) % 2 == 0 ? 8 : -8) / (Math.PI * Math.PI * k * k);
+            case SAWTOOTH:
+                return -2 / (Math.PI * k);
+            case SQUARE:
+                return k % 2 == 0 ? 0 : 4 / (Math.PI * k);
+            default:
+                return k == 1 ? 1 : 0;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp;
+
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.HalfBandDecimator;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.HalfBandInterpolator;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     Runs an {@code AudioEffect} at 2, 4 or 8 times the sampling frequency. <br>
+ *     Non-linear effects create harmonics above the Nyquist frequency, which alias back into
+ *     the audio band. At the higher rate the harmonics up to the new Nyquist frequency are
+ *     removed by the decimation filter instead.
+ * </p>
+ * <p>
+ *     Every channel is interpolated by a cascade of {@link HalfBandInterpolator}s, the wrapped
+ *     effect processes the interleaved samples at the high rate and a cascade of
+ *     {@link HalfBandDecimator}s returns to the base rate. The first stage has a long filter
+ *     of {@link Constants#OVERSAMPLING_HALF_BAND_LENGTH} taps, the upper stages only have to
+ *     suppress the images far above the audio band and use
+ *     {@link Constants#OVERSAMPLING_UPPER_HALF_BAND_LENGTH} taps.
+ * </p>
+ * <p>
+ *     The buffers are allocated by {@link #setBlockSize(int)}, a block of another length
+ *     reallocates them. The linear phase filters delay the signal by {@link #getLatency()}.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+
+public class OversampledEffect extends AudioEffect {
+
+    private static final String DESCRIPTION = "Runs an effect at a higher sampling frequency to reduce aliasing";
+
+    private final AudioEffect effect;
+    private final int factor;
+    private final int stages;
+    private HalfBandInterpolator[][] interpolators;
+    private HalfBandDecimator[][] decimators;
+    // One buffer per rate, buffers[s] holds the samples of one channel at 2^s times the base rate
+    private float[][] buffers;
+    private float[] highRate;
+    private int blockSize = 0;
+
+    /**
+     * Creates an instance of {@code OversampledEffect} for {@link Constants#DEFAULT_CHANNELS}
+     * interleaved channels.
+     *
+     * @param effect                        the wrapped effect
+     * @param factor                        oversampling factor, 2, 4 or 8
+     * @throws IllegalArgumentException     if the factor is not supported
+     */
+    public OversampledEffect(@NonNull AudioEffect effect, int factor) {
+        this(effect, factor, Constants.DEFAULT_CHANNELS);
+    }
+
+    /**
+     * Creates an instance of {@code OversampledEffect}.
+     *
+     * @param effect                        the wrapped effect
+     * @param factor                        oversampling factor, 2, 4 or 8
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if the factor is not supported or channels < 1
+     */
+    public OversampledEffect(@NonNull AudioEffect effect, int factor, int channels) {
+        if (factor < 2 || factor > Constants.OVERSAMPLING_MAX_FACTOR || Integer.bitCount(factor) != 1) {
+            throw new IllegalArgumentException("Oversampling factor must be 2, 4 or 8.");
+        }
+        super.setChannels(channels);
+        this.effect = effect;
+        this.factor = factor;
+        stages = Integer.numberOfTrailingZeros(factor);
+        createFilters();
+        effect.setSamplingFrequency(getSamplingFrequency() * factor);
+        effect.setChannels(channels);
+    }
+
+    protected OversampledEffect(Parcel in) {
+        this((AudioEffect) in.readParcelable(AudioEffect.class.getClassLoader()),
+                in.readInt(), in.readInt());
+        setSamplingFrequency(in.readInt());
+    }
+
+    /**
+     * <p>
+     *     Applies the wrapped effect at the higher sampling frequency to a block of
+     *     interleaved PCM samples. Input and output sample arrays must have the same length,
+     *     a multiple of the number of channels, and may be the same array.
+     * </p>
+     *
+     * @param input  array of {@code float} input samples
+     * @param output arary of {@code float} output samples must be of same length as input array
+     * @throws IllegalArgumentException if the length is not a multiple of the number of channels
+     */
+    @Override
+    public void apply(@NonNull float[] input, @NonNull float[] output) {
+        final int channels = getChannels();
+        if (input.length % channels != 0) {
+            throw new IllegalArgumentException(
+                    "Block length must be a multiple of the number of channels.");
+        }
+        if (input.length == output.length && input.length != 0) {
+            final int frames = input.length / channels;
+            if (buffers == null || buffers[0].length != frames) {
+                // Not prepared for this block size
+                allocateBuffers(frames);
+            }
+            final float[][] buffers = this.buffers;
+            final float[] highRate = this.highRate;
+            final float[] top = buffers[stages];
+
+            for (int ch = 0; ch < channels; ch++) {
+                float[] base = buffers[0];
+                for (int i = 0, j = ch; i < frames; i++, j += channels) {
+                    base[i] = input[j];
+                }
+                for (int s = 0; s < stages; s++) {
+                    interpolators[ch][s].process(buffers[s], buffers[s + 1]);
+                }
+                for (int i = 0, j = ch; i < top.length; i++, j += channels) {
+                    highRate[j] = top[i];
+                }
+            }
+
+            effect.apply(highRate, highRate);
+
+            for (int ch = 0; ch < channels; ch++) {
+                for (int i = 0, j = ch; i < top.length; i++, j += channels) {
+                    top[i] = highRate[j];
+                }
+                for (int s = stages - 1; s >= 0; s--) {
+                    decimators[ch][s].process(buffers[s + 1], buffers[s]);
+                }
+                float[] base = buffers[0];
+                for (int i = 0, j = ch; i < frames; i++, j += channels) {
+                    output[j] = base[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     *     Returns the delay added by the interpolation and decimation filters, in samples
+     *     at the base sampling frequency. A linear phase half-band filter of length N
+     *     delays by (N - 1) / 2 samples at the higher rate of its stage, once for the
+     *     interpolation and once for the decimation. The delay of the wrapped effect
+     *     itself is not included.
+     * </p>
+     *
+     * @return  the latency in samples per channel, may be fractional
+     */
+    public float getLatency() {
+        float latency = 0;
+        for (int s = 0; s < stages; s++) {
+            latency += (getFilterLength(s) - 1) / (float) (2 << s);
+        }
+        return latency;
+    }
+
+    /**
+     * Returns the wrapped effect.
+     *
+     * @return  the wrapped effect
+     */
+    public AudioEffect getEffect() {
+        return effect;
+    }
+
+    /**
+     * Returns the oversampling factor.
+     *
+     * @return  2, 4 or 8
+     */
+    public int getFactor() {
+        return factor;
+    }
+
+    /**
+     * Clears the history of the interpolation and decimation filters.
+     */
+    public void reset() {
+        for (int ch = 0; ch < getChannels(); ch++) {
+            for (int s = 0; s < stages; s++) {
+                interpolators[ch][s].reset();
+                decimators[ch][s].reset();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Sets the sampling frequency, the wrapped effect runs at factor times the sampling
+     * frequency.
+     * </p>
+     *
+     * @param samplingFrequency sampling frequency
+     */
+    @Override
+    public void setSamplingFrequency(int samplingFrequency) {
+        super.setSamplingFrequency(samplingFrequency);
+        effect.setSamplingFrequency(getSamplingFrequency() * factor);
+    }
+
+    /**
+     * <p>
+     * Sets the number of interleaved channels of this and the wrapped effect. The
+     * interpolation and decimation filters start from silence.
+     * </p>
+     *
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    @Override
+    public void setChannels(int channels) {
+        super.setChannels(channels);
+        effect.setChannels(channels);
+        createFilters();
+        buffers = null;
+        if (blockSize % channels == 0) {
+            setBlockSize(blockSize);
+        }
+    }
+
+    /**
+     * <p>
+     * Allocates the buffers for blocks of the given length and sets the block size of the
+     * wrapped effect.
+     * </p>
+     *
+     * @param samples   number of interleaved samples per block
+     */
+    @Override
+    public void setBlockSize(int samples) {
+        if (samples > 0) {
+            blockSize = samples;
+            effect.setBlockSize(samples * factor);
+            if (samples % getChannels() == 0) {
+                allocateBuffers(samples / getChannels());
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Sets the ramp time of the parameters of the wrapped effect.
+     * </p>
+     *
+     * @param rampTime                      ramp time in seconds, 0 for no smoothing
+     * @throws IllegalArgumentException     if rampTime < 0
+     */
+    @Override
+    public void setParameterRampTime(float rampTime) {
+        super.setParameterRampTime(rampTime);
+        effect.setParameterRampTime(rampTime);
+    }
+
+    /**
+     * <p>
+     * The tail of the wrapped effect plus the interpolation and decimation filters, which are
+     * twice as long as their latency.
+     * </p>
+     *
+     * @return  tail time in seconds
+     */
+    @Override
+    public float getTailTime() {
+        return effect.getTailTime() + 2 * getLatency() / getSamplingFrequency();
+    }
+
+    @Override
+    public String getLabel() {
+        return effect.getLabel() + " (" + factor + "x)";
+    }
+
+    @Override
+    public String getDescription() {
+        return DESCRIPTION;
+    }
+
+    @Override
+    protected void addConfiguration(@NonNull List<Object> key) {
+        key.add(factor);
+        key.add(effect.getConfigurationKey());
+    }
+
+    @Override
+    public int describeContents() {
+        return hashCode();
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeParcelable(effect, flags);
+        dest.writeInt(factor);
+        dest.writeInt(getChannels());
+        dest.writeInt(getSamplingFrequency());
+    }
+
+    public static final Creator<OversampledEffect> CREATOR = new Creator<OversampledEffect>() {
+        @Override
+        public OversampledEffect createFromParcel(Parcel source) {
+            return new OversampledEffect(source);
+        }
+
+        @Override
+        public OversampledEffect[] newArray(int size) {
+            return new OversampledEffect[size];
+        }
+    };
+
+    private void allocateBuffers(int frames) {
+        float[][] buffers = new float[stages + 1][];
+        for (int s = 0; s <= stages; s++) {
+            buffers[s] = new float[frames << s];
+        }
+        highRate = new float[frames * getChannels() * factor];
+        this.buffers = buffers;
+    }
+
+    private void createFilters() {
+        final int channels = getChannels();
+        interpolators = new HalfBandInterpolator[channels][stages];
+        decimators = new HalfBandDecimator[channels][stages];
+        for (int s = 0; s < stages; s++) {
+            float[] halfBand = HalfBandDecimator.designHalfBand(getFilterLength(s));
+            for (int ch = 0; ch < channels; ch++) {
+                interpolators[ch][s] = new HalfBandInterpolator(halfBand);
+                decimators[ch][s] = new HalfBandDecimator(halfBand);
+            }
+        }
+    }
+
+    /**
+     * Returns the half-band filter length of a stage, stage 0 is next to the base rate.
+     */
+    private static int getFilterLength(int stage) {
+        return stage == 0 ? Constants.OVERSAMPLING_HALF_BAND_LENGTH
+                : Constants.OVERSAMPLING_UPPER_HALF_BAND_LENGTH;
+    }
+}
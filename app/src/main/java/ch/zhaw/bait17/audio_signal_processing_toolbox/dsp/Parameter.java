@@ -0,0 +1,185 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     A continuous parameter of an {@link AudioEffect}, which is set from any thread, e.g. the
+ *     UI thread, while the audio thread is inside {@link AudioEffect#apply(float[], float[])}.
+ * </p>
+ * <p>
+ *     {@link #set(float)} only publishes the target value through a volatile field, it never
+ *     blocks. The audio thread picks up the target once per block with {@link #update()} and
+ *     ramps linearly from the current value to the target over the ramp time, one step per
+ *     call of {@link #next()}. A change in the middle of a ramp starts a new ramp from the
+ *     current value, so the parameter never jumps and step changes cause no zipper noise.
+ *     Values set before the first block take effect without a ramp.
+ *     All other fields are only accessed by the audio thread.
+ * </p>
+ * <p>
+ *     {@link #next()} is called once per tick. Effects with state per channel tick once
+ *     per frame, memoryless effects which process the interleaved samples one by one tick
+ *     once per sample, i.e. channels times per frame.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class Parameter {
+
+    private int ticksPerFrame;
+    private volatile float target;
+    private volatile float rampTime = Constants.PARAMETER_DEFAULT_RAMP_TIME;
+    private int samplingFrequency = Constants.DEFAULT_SAMPLE_RATE;
+    // Audio thread only
+    private float rampTarget;
+    private float value;
+    private float step;
+    private int remaining = 0;
+    private boolean started = false;
+
+    /**
+     * Creates a parameter which ticks once per frame.
+     *
+     * @param initialValue  the initial value
+     */
+    public Parameter(float initialValue) {
+        this(initialValue, 1);
+    }
+
+    /**
+     * Creates a parameter.
+     *
+     * @param initialValue                  the initial value
+     * @param ticksPerFrame                 number of calls of {@link #next()} per frame
+     * @throws IllegalArgumentException     if ticksPerFrame < 1
+     */
+    public Parameter(float initialValue, int ticksPerFrame) {
+        if (ticksPerFrame < 1) {
+            throw new IllegalArgumentException("Ticks per frame must be >= 1.");
+        }
+        this.ticksPerFrame = ticksPerFrame;
+        target = initialValue;
+        rampTarget = initialValue;
+        value = initialValue;
+    }
+
+    /**
+     * Sets the target value, may be called from any thread.
+     *
+     * @param target    the target value
+     */
+    public void set(float target) {
+        this.target = target;
+    }
+
+    /**
+     * Returns the most recently set target value.
+     *
+     * @return  the target value
+     */
+    public float get() {
+        return target;
+    }
+
+    /**
+     * Picks up the target value, called by the audio thread at the beginning of a block.
+     */
+    public void update() {
+        if (!started) {
+            started = true;
+            reset();
+            return;
+        }
+        final float t = target;
+        if (t != rampTarget) {
+            rampTarget = t;
+            int ticks = Math.round(rampTime * samplingFrequency * ticksPerFrame);
+            if (ticks <= 0) {
+                value = t;
+                remaining = 0;
+            } else {
+                step = (t - value) / ticks;
+                remaining = ticks;
+            }
+        }
+    }
+
+    /**
+     * Advances the ramp by one tick.
+     *
+     * @return  the current value
+     */
+    public float next() {
+        if (remaining > 0) {
+            if (--remaining == 0) {
+                value = rampTarget;
+            } else {
+                value += step;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the current value without advancing.
+     *
+     * @return  the current value
+     */
+    public float getValue() {
+        return value;
+    }
+
+    /**
+     * Returns true while the value ramps to the target.
+     *
+     * @return  true while ramping
+     */
+    public boolean isSmoothing() {
+        return remaining > 0;
+    }
+
+    /**
+     * Jumps to the target value, called by the audio thread.
+     */
+    public void reset() {
+        rampTarget = target;
+        value = rampTarget;
+        remaining = 0;
+    }
+
+    /**
+     * Sets the ramp time, takes effect with the next change of the target.
+     *
+     * @param rampTime                      ramp time in seconds, 0 for no smoothing
+     * @throws IllegalArgumentException     if rampTime < 0
+     */
+    public void setRampTime(float rampTime) {
+        if (rampTime < 0) {
+            throw new IllegalArgumentException("Ramp time must be >= 0.");
+        }
+        this.rampTime = rampTime;
+    }
+
+    /**
+     * Sets the number of calls of {@link #next()} per frame, takes effect with the next
+     * change of the target.
+     *
+     * @param ticksPerFrame                 number of calls of {@link #next()} per frame
+     * @throws IllegalArgumentException     if ticksPerFrame < 1
+     */
+    public void setTicksPerFrame(int ticksPerFrame) {
+        if (ticksPerFrame < 1) {
+            throw new IllegalArgumentException("Ticks per frame must be >= 1.");
+        }
+        this.ticksPerFrame = ticksPerFrame;
+    }
+
+    /**
+     * Sets the sampling frequency.
+     *
+     * @param samplingFrequency     sampling frequency in Hz
+     */
+    public void setSamplingFrequency(int samplingFrequency) {
+        this.samplingFrequency = samplingFrequency;
+    }
+}
@@ -0,0 +1,22 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp;
+
+/**
+ * <p>
+ *     Periodic waveforms of an {@link Oscillator}. All waveforms start at phase 0 with the
+ *     value 0 (sawtooth: -1) and the same direction as a sine.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public enum Waveform {
+    SINE,
+    TRIANGLE,
+    /**
+     * Rising sawtooth from -1 to 1.
+     */
+    SAWTOOTH,
+    /**
+     * +1 in the first half of the period, -1 in the second half.
+     */
+    SQUARE
+}
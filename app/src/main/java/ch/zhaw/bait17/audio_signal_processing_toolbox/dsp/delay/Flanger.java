@@ -3,7 +3,13 @@ package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.delay;
 import android.os.Parcel;
 import android.support.annotation.NonNull;
 
+import java.util.List;
+
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.DelayLine;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.Oscillator;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.Parameter;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.Waveform;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
 
 /**
@@ -13,6 +19,27 @@ import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
  * <p>
  * Source: <a href="http://users.cs.cf.ac.uk/Dave.Marshall/CM0268/PDF/10_CM0268_Audio_FX.pdf">link</a>
  * </p>
+ * <p>
+ * Every channel is delayed by its own {@link DelayLine}, which keeps the past samples across
+ * blocks. The delay lines hold {@link Constants#FLANGER_MAX_DELAY} and are only reallocated
+ * when the sampling frequency changes or a longer maximum delay is set.
+ * </p>
+ * <p>
+ * The delay time d[n] = |cos(phi[n] + k * stereoPhase)| * maxDelay of channel k is fractional
+ * and read with linear interpolation, so the delay sweeps without zipper noise.
+ * The cosine comes from an {@link Oscillator}, advanced once per frame. Every channel reads
+ * it at its own phase offset.
+ * The delayed signal is fed back into the delay line with the feedback gain:
+ * <pre>
+ *     v[n] = x[n] + feedback * v[n - d[n]]
+ *     y[n] = amplitude * (x[n] + v[n - d[n]])
+ * </pre>
+ * </p>
+ * <p>
+ * Amplitude, maximum delay and feedback are {@link Parameter}s ramped per frame. A new rate
+ * is passed to the oscillator at the beginning of a block, new delay lines and phase offsets
+ * are published as a whole through volatile fields.
+ * </p>
  */
 
 public class Flanger extends AudioEffect {
@@ -20,14 +47,19 @@ public class Flanger extends AudioEffect {
     private static final String LABEL = "Flanger";
     private static final String DESCRIPTION = "A single FIR delay with an oscillating delay time";
 
-    private float rate = Constants.FLANGER_DEFAULT_RATE;
-    private float amplitude = Constants.FLANGER_DEFAULT_AMPLITUDE;
-    private float maxDelay = Constants.FLANGER_DEFAULT_DELAY;
-    private int maxDelayInSamples;
-    private long index = 0;
+    private volatile float rate = Constants.FLANGER_DEFAULT_RATE;
+    private final Parameter amplitude;
+    private final Parameter maxDelay;
+    private final Parameter feedback;
+    private volatile float stereoPhase = Constants.FLANGER_DEFAULT_STEREO_PHASE;
+    private volatile DelayLine[] delayLines;
+    private final Oscillator lfo;
+    // Fixed-point LFO phase offset of every channel
+    private volatile int[] phaseOffsets;
 
     /**
-     * * Creates an instance of {@code Flanger}.
+     * Creates an instance of {@code Flanger} for {@link Constants#DEFAULT_CHANNELS}
+     * interleaved channels.
      *
      * @param rate                      the flanger rate must be >= 0
      * @param amplitude                 the modulation amplitude
@@ -35,23 +67,48 @@ public class Flanger extends AudioEffect {
      * @throws IllegalArgumentException if rate < 0 or maxDelay < 0
      */
     public Flanger(float rate, float amplitude, float maxDelay) throws IllegalArgumentException {
+        this(rate, amplitude, maxDelay, Constants.DEFAULT_CHANNELS);
+    }
+
+    /**
+     * Creates an instance of {@code Flanger}.
+     *
+     * @param rate                      the flanger rate must be >= 0
+     * @param amplitude                 the modulation amplitude
+     * @param maxDelay                  the maximum delay in seconds must be >= 0
+     * @param channels                  number of interleaved channels
+     * @throws IllegalArgumentException if rate < 0, maxDelay < 0 or channels < 1
+     */
+    public Flanger(float rate, float amplitude, float maxDelay, int channels)
+            throws IllegalArgumentException {
         if (rate < 0) {
             throw new IllegalArgumentException("Flanger rate must be >= 0.");
         }
         if (maxDelay < 0) {
             throw new IllegalArgumentException("Maximum delay in seconds must be >= 0.");
         }
-        this.amplitude = amplitude;
-        setRate(rate);
-        setMaxDelay(maxDelay);
+        super.setChannels(channels);
+        this.rate = rate;
+        this.amplitude = createParameter(amplitude, 1);
+        this.maxDelay = createParameter(maxDelay, 1);
+        this.feedback = createParameter(Constants.FLANGER_DEFAULT_FEEDBACK, 1);
+        lfo = new Oscillator(Waveform.SINE, rate, getSamplingFrequency());
+        allocateDelayLines(maxDelay);
+        setStereoPhase(stereoPhase);
     }
 
     protected Flanger(Parcel in) {
+        super.setChannels(in.readInt());
+        super.setSamplingFrequency(in.readInt());
+        this.amplitude = createParameter(in.readFloat(), 1);
+        this.feedback = createParameter(in.readFloat(), 1);
+        int phase = in.readInt();
         this.rate = in.readFloat();
-        this.amplitude = in.readFloat();
-        this.maxDelay = in.readFloat();
-        this.maxDelayInSamples = in.readInt();
-        this.index = in.readLong();
+        this.maxDelay = createParameter(in.readFloat(), 1);
+        lfo = new Oscillator(Waveform.SINE, rate, getSamplingFrequency());
+        lfo.setPhase(phase);
+        allocateDelayLines(maxDelay.get());
+        setStereoPhase(in.readFloat());
     }
 
     /**
@@ -62,21 +119,56 @@ public class Flanger extends AudioEffect {
     @Override
     public void apply(@NonNull float[] input, @NonNull float[] output) {
         if (input.length == output.length) {
-            for (int i = 0; i < input.length; i++) {
-                double phase = Math.abs(Math.cos(2 * Math.PI * index++ *
-                        (rate / (float) getSamplingFrequency())));
-                if (index == getSamplingFrequency()) {
-                    index = 0;
-                }
-                int currentDelay = (int) Math.ceil(phase * maxDelayInSamples);
-                output[i] = amplitude * input[i];
-                if (i - currentDelay >= 0) {
-                    output[i] += amplitude * input[i - currentDelay];
+            final DelayLine[] lines = delayLines;
+            final int[] offsets = phaseOffsets;
+            final int channels = getChannels();
+            final float fs = getSamplingFrequency();
+            final float capacity = lines[0].getMaxDelay();
+            float rate = Math.min(this.rate, fs / 2);
+            if (rate != lfo.getFrequency()) {
+                lfo.setFrequency(rate);
+            }
+            amplitude.update();
+            maxDelay.update();
+            feedback.update();
+            for (int frame = 0; frame < input.length; frame += channels) {
+                final float gain = amplitude.next();
+                final float depth = Math.min(maxDelay.next() * fs, capacity);
+                final float g = feedback.next();
+                int end = Math.min(frame + channels, input.length);
+                for (int i = frame; i < end; i++) {
+                    int ch = i - frame;
+                    DelayLine delayLine = lines[ch];
+                    float modulation = Math.abs(lfo.getValue(offsets[ch]));
+                    // Read before writing: the tap starts one sample before the current one
+                    float delayed = delayLine.readLinear(modulation * depth);
+                    float x = input[i];
+                    float v = x + g * delayed;
+                    // The feedback loop decays into denormals after the input has become silent
+                    delayLine.write(Math.abs(v) < Constants.DENORMAL_THRESHOLD ? 0 : v);
+                    output[i] = gain * (x + delayed);
                 }
+                lfo.advance();
             }
         }
     }
 
+    /**
+     * Returns the time until the feedback loop has decayed below
+     * {@link Constants#SILENCE_THRESHOLD}, with the longest delay the delay lines hold.
+     *
+     * @return  tail time in seconds
+     */
+    @Override
+    public float getTailTime() {
+        float delay = delayLines[0].getMaxDelay() / (float) getSamplingFrequency();
+        float g = Math.abs(feedback.get());
+        if (g < Constants.SILENCE_THRESHOLD) {
+            return delay;
+        }
+        return delay * (1 + (float) (Math.log(Constants.SILENCE_THRESHOLD) / Math.log(g)));
+    }
+
     @Override
     public String getLabel() {
         return LABEL;
@@ -88,7 +180,7 @@ public class Flanger extends AudioEffect {
     }
 
     /**
-     * Sets the flanging rate in Hz.
+     * Sets the flanging rate in Hz. The LFO continues from its current phase.
      *
      * @param rate  flanging rate in interval [0,1] [Hz]
      */
@@ -97,13 +189,16 @@ public class Flanger extends AudioEffect {
     }
 
     /**
-     * Sets the maximum amount of delay time.
+     * Sets the maximum amount of delay time. The delay lines are only reallocated, and
+     * cleared, if the delay exceeds {@link Constants#FLANGER_MAX_DELAY}.
      *
      * @param maxDelay  maximum delay in seconds.
      */
     public void setMaxDelay(float maxDelay) {
-        this.maxDelay = maxDelay;
-        maxDelayInSamples = Math.round(maxDelay * getSamplingFrequency());
+        if (delayLines[0].getMaxDelay() < Math.ceil(maxDelay * getSamplingFrequency())) {
+            allocateDelayLines(maxDelay);
+        }
+        this.maxDelay.set(maxDelay);
     }
 
     /**
@@ -112,18 +207,85 @@ public class Flanger extends AudioEffect {
      * @param amplitude the modulation amplitude in interval [0,1]
      */
     public void setAmplitude(float amplitude) {
-        this.amplitude = amplitude;
+        this.amplitude.set(amplitude);
     }
 
     /**
-     * Sets the sample rate.
+     * Sets the gain of the delayed signal fed back into the delay line.
+     *
+     * @param feedback                      feedback gain in interval
+     *                                      [-{@link Constants#FLANGER_MAX_FEEDBACK}, {@link Constants#FLANGER_MAX_FEEDBACK}]
+     * @throws IllegalArgumentException     if the feedback gain is out of range
+     */
+    public void setFeedback(float feedback) {
+        if (Math.abs(feedback) > Constants.FLANGER_MAX_FEEDBACK) {
+            throw new IllegalArgumentException("Feedback gain out of range.");
+        }
+        this.feedback.set(feedback);
+    }
+
+    /**
+     * Sets the LFO phase offset between neighbouring channels.
+     *
+     * @param stereoPhase   phase offset in degrees, 0 modulates all channels in phase
+     */
+    public void setStereoPhase(float stereoPhase) {
+        this.stereoPhase = stereoPhase;
+        final int channels = getChannels();
+        int[] offsets = new int[channels];
+        for (int ch = 0; ch < channels; ch++) {
+            // A quarter period turns the sine into a cosine
+            offsets[ch] = Oscillator.toPhase(0.25 + ch * stereoPhase / 360.0);
+        }
+        phaseOffsets = offsets;
+    }
+
+    /**
+     * Sets the sample rate. The delay lines are reallocated for the new sample rate.
      *
      * @param sampleRate sample rate
      */
+    @Override
     public void setSamplingFrequency(int sampleRate) {
         if (sampleRate > 0) {
-            setMaxDelay(maxDelay);
+            super.setSamplingFrequency(sampleRate);
+            allocateDelayLines(maxDelay.get());
+            lfo.setSamplingFrequency(sampleRate);
+        }
+    }
+
+    /**
+     * Sets the number of interleaved channels. The delay lines start empty, the LFO
+     * continues from its current phase.
+     *
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    @Override
+    public void setChannels(int channels) {
+        super.setChannels(channels);
+        allocateDelayLines(maxDelay.get());
+        setStereoPhase(stereoPhase);
+    }
+
+    /**
+     * Publishes new delay lines for at least {@link Constants#FLANGER_MAX_DELAY}.
+     */
+    private void allocateDelayLines(float maxDelay) {
+        int length = (int) Math.ceil(Math.max(maxDelay, Constants.FLANGER_MAX_DELAY)
+                * getSamplingFrequency());
+        final int channels = getChannels();
+        DelayLine[] lines = new DelayLine[channels];
+        for (int ch = 0; ch < channels; ch++) {
+            lines[ch] = new DelayLine(length);
         }
+        delayLines = lines;
+    }
+
+    @Override
+    protected void addConfiguration(@NonNull List<Object> key) {
+        key.add(rate);
+        key.add(stereoPhase);
     }
 
     @Override
@@ -133,11 +295,14 @@ public class Flanger extends AudioEffect {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(getChannels());
+        dest.writeInt(getSamplingFrequency());
+        dest.writeFloat(this.amplitude.get());
+        dest.writeFloat(this.feedback.get());
+        dest.writeInt(lfo.getPhase());
         dest.writeFloat(this.rate);
-        dest.writeInt(this.maxDelayInSamples);
-        dest.writeFloat(this.amplitude);
-        dest.writeFloat(this.maxDelay);
-        dest.writeLong(this.index);
+        dest.writeFloat(this.maxDelay.get());
+        dest.writeFloat(this.stereoPhase);
     }
 
     public static final Creator<Flanger> CREATOR = new Creator<Flanger>() {
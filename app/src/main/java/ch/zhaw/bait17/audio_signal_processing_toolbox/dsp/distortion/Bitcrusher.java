@@ -3,12 +3,16 @@ package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion;
 import android.os.Parcel;
 import android.support.annotation.NonNull;
 
+import java.util.List;
+
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.Parameter;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
 
 /**
  * Quantizer / decimator with smooth control. By David Lowenfels, MusicDSP forum (www.musicdsp.com)
- *
+ * The normalised frequency is ramped per sample, the phasor and the held sample are kept
+ * from block to block.
  */
 
 public class Bitcrusher extends AudioEffect {
@@ -16,8 +20,10 @@ public class Bitcrusher extends AudioEffect {
     private static final String LABEL = "Bitcrusher";
     private static final String DESCRIPTION = "Lo-fi distortion effect, reduces the amplitude resolution";
 
-    private float normFrequency;
-    private int bits;
+    private final Parameter normFrequency;
+    private volatile int bits;
+    private double phasor = 0;
+    private double last = 0;
 
     /**
      *
@@ -25,12 +31,12 @@ public class Bitcrusher extends AudioEffect {
      * @param bits              the number of bits in the range [1,16]
      */
     public Bitcrusher(float normFrequency, int bits) {
-        this.normFrequency = normFrequency;
+        this.normFrequency = createSampleParameter(normFrequency);
         this.bits = bits;
     }
 
     protected Bitcrusher(Parcel in) {
-        this.normFrequency = in.readFloat();
+        this.normFrequency = createSampleParameter(in.readFloat());
         this.bits = in.readInt();
     }
 
@@ -41,11 +47,11 @@ public class Bitcrusher extends AudioEffect {
      */
     public void setNormFrequency(float normFrequency) {
         if (normFrequency < Constants.BITCRUSHER_MIN_NORM_FREQ) {
-            this.normFrequency = Constants.BITCRUSHER_MIN_NORM_FREQ;
+            this.normFrequency.set(Constants.BITCRUSHER_MIN_NORM_FREQ);
         } else if (normFrequency > Constants.BITCRUSHER_MAX_NORM_FREQ) {
-            this.normFrequency = Constants.BITCRUSHER_MAX_NORM_FREQ;
+            this.normFrequency.set(Constants.BITCRUSHER_MAX_NORM_FREQ);
         } else {
-            this.normFrequency = normFrequency;
+            this.normFrequency.set(normFrequency);
         }
     }
 
@@ -55,7 +61,7 @@ public class Bitcrusher extends AudioEffect {
      * @return      normalised frequency (freq. / fs)
      */
     public float getNormalisedFrequency() {
-        return normFrequency;
+        return normFrequency.get();
     }
 
 
@@ -91,10 +97,9 @@ public class Bitcrusher extends AudioEffect {
     public void apply(@NonNull float[] input, @NonNull float[] output) {
         if (input.length == output.length) {
             double step = Math.pow(0.5, bits);
-            double phasor = 0;
-            double last = 0;
+            normFrequency.update();
             for (int i = 0; i < input.length; i++) {
-                phasor += normFrequency;
+                phasor += normFrequency.next();
                 if (phasor >= 1) {
                     phasor -= 1;
                     // Quantize
@@ -106,6 +111,16 @@ public class Bitcrusher extends AudioEffect {
         }
     }
 
+    /**
+     * The held sample is kept until the next quantisation, at most 1 / normFrequency samples.
+     *
+     * @return  tail time in seconds
+     */
+    @Override
+    public float getTailTime() {
+        return 1 / (normFrequency.get() * getSamplingFrequency());
+    }
+
     @Override
     public String getLabel() {
         return LABEL;
@@ -114,6 +129,11 @@ public class Bitcrusher extends AudioEffect {
     @Override
     public String getDescription() { return DESCRIPTION; }
 
+    @Override
+    protected void addConfiguration(@NonNull List<Object> key) {
+        key.add(bits);
+    }
+
     @Override
     public int describeContents() {
         return hashCode();
@@ -121,7 +141,7 @@ public class Bitcrusher extends AudioEffect {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
-        dest.writeFloat(this.normFrequency);
+        dest.writeFloat(this.normFrequency.get());
         dest.writeInt(this.bits);
     }
 
@@ -4,16 +4,17 @@ import android.os.Parcel;
 import android.support.annotation.NonNull;
 
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.Parameter;
 
 /**
  * Simple Fold-back distortion filter. By hellfire@upb.de, MusicDSP forum (www.musicdsp.com)
- *
+ * The threshold is ramped per sample.
  */
 public class FoldBackDistortion extends AudioEffect {
 
     private static final String LABEL = "Fold-back distortion";
     private static final String DESCRIPTION = "";
-    private float threshold;
+    private final Parameter threshold;
 
     /**
      * Creates a new FoldBackDistortion instance.
@@ -21,7 +22,7 @@ public class FoldBackDistortion extends AudioEffect {
      * @param threshold         value > 0
      */
     public FoldBackDistortion(float threshold) {
-        this.threshold = threshold;
+        this.threshold = createSampleParameter(threshold);
     }
 
     /**
@@ -30,7 +31,7 @@ public class FoldBackDistortion extends AudioEffect {
      * @param threshold
      */
     public void setThreshold(float threshold) {
-        this.threshold = threshold;
+        this.threshold.set(threshold);
     }
 
     /**
@@ -45,15 +46,29 @@ public class FoldBackDistortion extends AudioEffect {
     @Override
     public void apply(@NonNull float[] input, @NonNull float[] output) {
         if (input.length == output.length) {
+            this.threshold.update();
             for (int i = 0; i < input.length; i++) {
+                final float threshold = this.threshold.next();
                 if (input[i] > threshold || input[i] < -threshold) {
                     output[i] = Math.abs((input[i] - threshold % 4 * threshold) -
                             (2 * threshold)) - threshold;
+                } else {
+                    output[i] = input[i];
                 }
             }
         }
     }
 
+    /**
+     * Samples below the threshold pass unchanged, there is no tail.
+     *
+     * @return  0
+     */
+    @Override
+    public float getTailTime() {
+        return 0;
+    }
+
     @Override
     public String getLabel() {
         return LABEL;
@@ -72,11 +87,11 @@ public class FoldBackDistortion extends AudioEffect {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
-        dest.writeFloat(this.threshold);
+        dest.writeFloat(this.threshold.get());
     }
 
     protected FoldBackDistortion(Parcel in) {
-        this.threshold = in.readFloat();
+        this.threshold = createSampleParameter(in.readFloat());
     }
 
     public static final Creator<FoldBackDistortion> CREATOR = new Creator<FoldBackDistortion>() {
@@ -6,8 +6,13 @@ import android.support.annotation.NonNull;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
 
 /**
+ * <p>
  * Another waveshaper function. Algorithm by Laurent de Soras from Ohm Force (www.ohmforce.com).
- *
+ * </p>
+ * <p>
+ * The function has no parameters, it is read from a {@link TableWaveshaper} instead of
+ * evaluating four exponential functions and a square root per sample.
+ * </p>
  */
 
 public class GloubiBoulga extends AudioEffect {
@@ -15,6 +20,10 @@ public class GloubiBoulga extends AudioEffect {
     private static final double GLOUBI_BOULGA_CONST = 0.686306;
     private static final String LABEL = "Waveshaper";
     private static final String DESCRIPTION = "Another waveshaper function. Algorithm by Laurent de Soras from Ohm Force (www.ohmforce.com)";
+    // Covers the input range [-1, 1] with a margin, in units of x = input * GLOUBI_BOULGA_CONST
+    private static final float TABLE_RANGE = 8;
+
+    private final TableWaveshaper waveshaper = new TableWaveshaper(new Shape(), TABLE_RANGE);
 
     public GloubiBoulga() {
 
@@ -27,14 +36,20 @@ public class GloubiBoulga extends AudioEffect {
      */
     public void apply(@NonNull float[] input, @NonNull float[] output) {
         if (input.length == output.length) {
-            for (int i = 0; i < input.length; i++) {
-                double x = input[i] * GLOUBI_BOULGA_CONST;
-                double a = 1 + Math.exp(Math.sqrt(Math.abs(x)) * -0.75);
-                output[i] = (float) ((Math.exp(x) - Math.exp(-x * a)) / (Math.exp(x) + Math.exp(-x)));
-            }
+            waveshaper.apply(input, output, (float) GLOUBI_BOULGA_CONST);
         }
     }
 
+    /**
+     * The waveshaper is memoryless, it has no tail.
+     *
+     * @return  0
+     */
+    @Override
+    public float getTailTime() {
+        return 0;
+    }
+
     @Override
     public String getLabel() {
         return LABEL;
@@ -60,6 +75,28 @@ public class GloubiBoulga extends AudioEffect {
 
     }
 
+    /**
+     * The transfer function of x = input * GLOUBI_BOULGA_CONST. For large positive x the
+     * function is 1 within e^(-2x), for large negative x it approaches
+     * -e^(-x * (a - 1)).
+     */
+    private static class Shape extends TransferFunction {
+
+        @Override
+        public double evaluate(double x) {
+            double a = 1 + Math.exp(Math.sqrt(Math.abs(x)) * -0.75);
+            return (Math.exp(x) - Math.exp(-x * a)) / (Math.exp(x) + Math.exp(-x));
+        }
+
+        @Override
+        public float asymptote(float x) {
+            if (x > 0) {
+                return 1;
+            }
+            return (float) -Math.exp(-x * Math.exp(Math.sqrt(-x) * -0.75));
+        }
+    }
+
     public static final Creator<GloubiBoulga> CREATOR = new Creator<GloubiBoulga>() {
         @Override
         public GloubiBoulga createFromParcel(Parcel source) {
@@ -3,6 +3,8 @@ package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion;
 import android.os.Parcel;
 import android.support.annotation.NonNull;
 
+import java.util.List;
+
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
 
 /**
@@ -48,6 +50,16 @@ public class Saturation extends AudioEffect {
         }
     }
 
+    /**
+     * Saturation is applied per sample, there is no tail.
+     *
+     * @return  0
+     */
+    @Override
+    public float getTailTime() {
+        return 0;
+    }
+
     @Override
     public String getLabel() {
         return LABEL;
@@ -58,6 +70,11 @@ public class Saturation extends AudioEffect {
         return DESCRIPTION;
     }
 
+    @Override
+    protected void addConfiguration(@NonNull List<Object> key) {
+        key.add(threshold);
+    }
+
     @Override
     public int describeContents() {
         return hashCode();
@@ -4,17 +4,27 @@ import android.os.Parcel;
 import android.support.annotation.NonNull;
 
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.Parameter;
 
 /**
+ * <p>
  * Soft clipping function. By scoofy@inf.elte.hu, MusicDSP forum (www.musicdsp.com)
- *
+ * </p>
+ * <p>
+ * The arctangent is read from a {@link TableWaveshaper} at clippingFactor * x, so the
+ * table does not depend on the clipping factor and is never rebuilt.
+ * While the clipping factor is ramped, the samples are shaped one by one.
+ * </p>
  */
 
 public class SoftClipper extends AudioEffect {
 
     private static final String LABEL = "Soft clipper";
     private static final String DESCRIPTION = "Infinite limiter, rounds the signal shape before the absolute clipping threshold";
-    private float clippingFactor;
+    // Beyond the table the error of the asymptotic series is below 1e-9
+    private static final float TABLE_RANGE = 16;
+    private final Parameter clippingFactor;
+    private final TableWaveshaper waveshaper = new TableWaveshaper(new Arctangent(), TABLE_RANGE);
 
     /**
      * Creates a new SoftClipper instance.
@@ -22,7 +32,7 @@ public class SoftClipper extends AudioEffect {
      * @param clippingFactor    value should be in the range [1,1000]
      */
     public SoftClipper(float clippingFactor) {
-        this.clippingFactor = clippingFactor;
+        this.clippingFactor = createSampleParameter(clippingFactor);
     }
 
     /**
@@ -31,7 +41,7 @@ public class SoftClipper extends AudioEffect {
      * @param clippingFactor    value should be in the range [{1,1000]
      */
     public void setClippingFactor(float clippingFactor) {
-        this.clippingFactor = clippingFactor;
+        this.clippingFactor.set(clippingFactor);
     }
 
     /**
@@ -42,13 +52,34 @@ public class SoftClipper extends AudioEffect {
     @Override
     public void apply(@NonNull float[] input, @NonNull float[] output) {
         if (input.length == output.length) {
+            clippingFactor.update();
+            if (clippingFactor.isSmoothing()) {
+                waveshaper.update();
+                for (int i = 0; i < input.length; i++) {
+                    final float k = clippingFactor.next();
+                    output[i] = waveshaper.shape(k * input[i]) / waveshaper.shape(k);
+                }
+                return;
+            }
+            final float clippingFactor = this.clippingFactor.getValue();
             float invAtanShape = 1.0f / (float) Math.atan(clippingFactor);
-            for (int i = 0; i < input.length; i++) {
-                output[i] = invAtanShape * (float) Math.atan(input[i] * clippingFactor);
+            waveshaper.apply(input, output, clippingFactor);
+            for (int i = 0; i < output.length; i++) {
+                output[i] *= invAtanShape;
             }
         }
     }
 
+    /**
+     * The clipper is memoryless, it has no tail.
+     *
+     * @return  0
+     */
+    @Override
+    public float getTailTime() {
+        return 0;
+    }
+
     @Override
     public String getLabel() {
         return LABEL;
@@ -64,11 +95,31 @@ public class SoftClipper extends AudioEffect {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
-        dest.writeFloat(this.clippingFactor);
+        dest.writeFloat(this.clippingFactor.get());
     }
 
     protected SoftClipper(Parcel in) {
-        this.clippingFactor = in.readFloat();
+        this.clippingFactor = createSampleParameter(in.readFloat());
+    }
+
+    /**
+     * Arctangent with the asymptotic series atan(x) = pi/2 - 1/x + 1/(3x^3) - 1/(5x^5)
+     * for large x.
+     */
+    private static class Arctangent extends TransferFunction {
+
+        @Override
+        public double evaluate(double x) {
+            return Math.atan(x);
+        }
+
+        @Override
+        public float asymptote(float x) {
+            float v = 1 / x;
+            float v2 = v * v;
+            return (x > 0 ? (float) (Math.PI / 2) : (float) (-Math.PI / 2))
+                    - v * (1 - v2 * (1.0f / 3 - v2 / 5));
+        }
     }
 
     public static final Creator<SoftClipper> CREATOR = new Creator<SoftClipper>() {
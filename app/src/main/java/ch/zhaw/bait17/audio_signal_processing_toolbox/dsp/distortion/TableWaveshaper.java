@@ -0,0 +1,150 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion;
+
+import android.support.annotation.NonNull;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     Waveshaper with a lookup table. The {@link TransferFunction} is sampled at
+ *     {@code size + 1} equidistant points in [-range, range], including 0, and interpolated
+ *     linearly in between. Inputs outside the range are passed to
+ *     {@link TransferFunction#asymptote(float)}.
+ * </p>
+ * <p>
+ *     A sample costs one multiplication, one table lookup and one interpolation, instead
+ *     of the transcendental functions of the exact transfer function. The interpolation
+ *     error is bounded by h^2 / 8 * max|f''| with the step h = 2 * range / size.
+ * </p>
+ * <p>
+ *     The table is built lazily: {@link #setFunction(TransferFunction)} may be called from
+ *     any thread, the table is rebuilt at the beginning of the next block on the audio
+ *     thread. As long as the function does not change, the table is reused.
+ *     {@link #shape(float)} shapes single samples, e.g. with a time varying input gain,
+ *     after {@link #update()} at the beginning of the block.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class TableWaveshaper {
+
+    private final float range;
+    private final int size;
+    private final float scale;
+    private final float[] table;
+    private volatile TransferFunction pendingFunction;
+    private TransferFunction function;
+
+    /**
+     * Creates a waveshaper with {@link Constants#WAVESHAPER_TABLE_SIZE} table intervals.
+     *
+     * @param function                      the transfer function
+     * @param range                         the table covers [-range, range]
+     * @throws IllegalArgumentException     if range <= 0
+     */
+    public TableWaveshaper(@NonNull TransferFunction function, float range) {
+        this(function, range, Constants.WAVESHAPER_TABLE_SIZE);
+    }
+
+    /**
+     * Creates a waveshaper.
+     *
+     * @param function                      the transfer function
+     * @param range                         the table covers [-range, range]
+     * @param size                          number of table intervals, must be even and >= 2
+     * @throws IllegalArgumentException     if range <= 0 or size is odd or < 2
+     */
+    public TableWaveshaper(@NonNull TransferFunction function, float range, int size) {
+        if (range <= 0) {
+            throw new IllegalArgumentException("Table range must be > 0.");
+        }
+        if (size < 2 || size % 2 != 0) {
+            throw new IllegalArgumentException("Table size must be even and >= 2.");
+        }
+        this.range = range;
+        this.size = size;
+        scale = size / (2 * range);
+        table = new float[size + 1];
+        pendingFunction = function;
+    }
+
+    /**
+     * Sets the transfer function, the table is rebuilt before the next block.
+     *
+     * @param function  the transfer function
+     */
+    public void setFunction(@NonNull TransferFunction function) {
+        pendingFunction = function;
+    }
+
+    /**
+     * <p>
+     *     Shapes a block of samples: output[i] = f(inputGain * input[i]).
+     *     Input and output may be the same array.
+     * </p>
+     *
+     * @param input         array of input samples
+     * @param output        array of output samples, at least as long as the input
+     * @param inputGain     gain applied to the input before shaping
+     */
+    public void apply(@NonNull float[] input, @NonNull float[] output, float inputGain) {
+        update();
+        final TransferFunction f = function;
+        final float[] table = this.table;
+        final float gain = inputGain * scale;
+        final float offset = size / 2;
+        final int size = this.size;
+        for (int i = 0; i < input.length; i++) {
+            final float t = input[i] * gain + offset;
+            if (t >= 0 && t < size) {
+                final int index = (int) t;
+                final float a = table[index];
+                output[i] = a + (t - index) * (table[index + 1] - a);
+            } else {
+                output[i] = f.asymptote(input[i] * inputGain);
+            }
+        }
+    }
+
+    /**
+     * Shapes a single sample with the table built by the last {@link #update()}.
+     *
+     * @param x     input value
+     * @return      f(x)
+     */
+    public float shape(float x) {
+        final float t = x * scale + size / 2;
+        if (t >= 0 && t < size) {
+            final int index = (int) t;
+            final float a = table[index];
+            return a + (t - index) * (table[index + 1] - a);
+        }
+        return function.asymptote(x);
+    }
+
+    /**
+     * Shapes a single value, for tests and occasional use.
+     *
+     * @param x     input value
+     * @return      f(x)
+     */
+    public float evaluate(float x) {
+        update();
+        return shape(x);
+    }
+
+    /**
+     * Rebuilds the table if the transfer function changed, called by the audio thread at
+     * the beginning of a block.
+     */
+    public void update() {
+        final TransferFunction pending = pendingFunction;
+        if (pending != function) {
+            final double step = 2.0 * range / size;
+            for (int i = 0; i <= size; i++) {
+                table[i] = (float) pending.evaluate((i - size / 2) * step);
+            }
+            function = pending;
+        }
+    }
+}
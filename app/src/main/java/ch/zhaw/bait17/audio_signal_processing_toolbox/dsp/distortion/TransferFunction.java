@@ -0,0 +1,35 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion;
+
+/**
+ * <p>
+ *     Static transfer function y = f(x) of a waveshaper, see {@link TableWaveshaper}.
+ * </p>
+ * <p>
+ *     {@link #evaluate(double)} is the exact function, it is only called to build the
+ *     lookup table and may be expensive. {@link #asymptote(float)} is called per sample for
+ *     inputs outside the range of the table and should be cheap. It defaults to the exact
+ *     function.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public abstract class TransferFunction {
+
+    /**
+     * Evaluates the exact transfer function.
+     *
+     * @param x     input value
+     * @return      output value
+     */
+    public abstract double evaluate(double x);
+
+    /**
+     * Evaluates the transfer function outside the range of the lookup table.
+     *
+     * @param x     input value outside the table range
+     * @return      output value
+     */
+    public float asymptote(float x) {
+        return (float) evaluate(x);
+    }
+}
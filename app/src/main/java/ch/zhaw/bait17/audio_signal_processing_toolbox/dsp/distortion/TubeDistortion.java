@@ -3,7 +3,10 @@ package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion;
 import android.os.Parcel;
 import android.support.annotation.NonNull;
 
+import java.util.List;
+
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.Parameter;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
 
 /**
@@ -12,6 +15,14 @@ import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
  * </br>
  * Authors: Bendiksen, Dutilleux, Zölzer
  * </p>
+ * <p>
+ * The static characteristic is read from a {@link TableWaveshaper} over the normalised input
+ * range [-{@link Constants#TUBE_DISTORTION_MAX_GAIN}, {@link Constants#TUBE_DISTORTION_MAX_GAIN}].
+ * The table is rebuilt when q or dist change.
+ * </p>
+ * <p>
+ * Gain and mix are ramped per sample, q and dist are published as a new transfer function.
+ * </p>
  */
 
 public class TubeDistortion extends AudioEffect {
@@ -23,22 +34,28 @@ public class TubeDistortion extends AudioEffect {
         Work point, controls the linearity of the transfer function for low input levels,
         more negative = more linear.
      */
-    private float q = -0.1f;
+    private volatile float q = -0.1f;
     /*
         Controls the distortion's character, a higher number gives a harder distortion,
         dist > 0.
      */
-    private int dist = 8;
+    private volatile int dist = 8;
 
     /*
         Mix of original and distorted sound, 1 = only distorted
      */
-    private float mix = Constants.TUBE_DISTORTION_DEFAULT_MIX;
+    private final Parameter mix = createSampleParameter(
+            Constants.TUBE_DISTORTION_DEFAULT_MIX);
 
     /*
         The amount of distortion, > 0
      */
-    private float gain = Constants.TUBE_DISTORTION_DEFAULT_GAIN;
+    private final Parameter gain = createSampleParameter(
+            Constants.TUBE_DISTORTION_DEFAULT_GAIN);
+
+    private final TableWaveshaper waveshaper = new TableWaveshaper(new Characteristic(q, dist),
+            Constants.TUBE_DISTORTION_MAX_GAIN);
+    private float[] z = new float[0];
 
     public TubeDistortion() {
 
@@ -47,8 +64,34 @@ public class TubeDistortion extends AudioEffect {
     protected TubeDistortion(Parcel in) {
         this.q = in.readFloat();
         this.dist = in.readInt();
-        this.mix = in.readFloat();
-        this.gain = in.readFloat();
+        this.mix.set(in.readFloat());
+        this.gain.set(in.readFloat());
+        waveshaper.setFunction(new Characteristic(q, dist));
+    }
+
+    /**
+     * Sets the work point, which controls the linearity of the transfer function for low
+     * input levels, more negative = more linear.
+     *
+     * @param q     the work point
+     */
+    public void setQ(float q) {
+        this.q = q;
+        waveshaper.setFunction(new Characteristic(q, dist));
+    }
+
+    /**
+     * Sets the distortion's character, a higher number gives a harder distortion.
+     *
+     * @param dist                          the distortion's character, > 0
+     * @throws IllegalArgumentException     if dist <= 0
+     */
+    public void setDist(int dist) {
+        if (dist <= 0) {
+            throw new IllegalArgumentException("Distortion character must be > 0.");
+        }
+        this.dist = dist;
+        waveshaper.setFunction(new Characteristic(q, dist));
     }
 
     /**
@@ -57,7 +100,7 @@ public class TubeDistortion extends AudioEffect {
      * @param gain    the amount of distortion, > 0
      */
     public void setGain(float gain) {
-        this.gain = gain;
+        this.gain.set(gain);
     }
 
     /**
@@ -73,7 +116,7 @@ public class TubeDistortion extends AudioEffect {
         if (mix > 1) {
             mix = 1;
         }
-        this.mix = mix;
+        this.mix.set(mix);
     }
 
     /**
@@ -90,30 +133,31 @@ public class TubeDistortion extends AudioEffect {
                     max = Math.abs(input[i]);
                 }
             }
-            float[] z = new float[input.length];
+            if (z.length != input.length) {
+                z = new float[input.length];
+            }
+            final float[] z = this.z;
+            gain.update();
+            if (gain.isSmoothing()) {
+                waveshaper.update();
+                final float invMax = 1 / max;
+                for (int i = 0; i < input.length; i++) {
+                    z[i] = waveshaper.shape(input[i] * gain.next() * invMax);
+                }
+            } else {
+                waveshaper.apply(input, z, gain.getValue() / max);
+            }
             float maxZ = 0.01f;
             for (int i = 0; i < input.length; i++) {
-                float normalisation = input[i] * gain / max;
-
-                if (q == 0.0f) {
-                    z[i] = (float) (normalisation / (1 - Math.exp(-dist * normalisation)));
-                    if (Math.abs(normalisation - q) < 0.001) {
-                        z[i] = 1.0f / dist;
-                    }
-                } else {
-                    z[i] = (float) ((normalisation - q) / (1 - Math.exp(-dist * (normalisation - q))) + q / (1 - Math.exp(dist * q)));
-                    if (Math.abs(normalisation - q) < 0.001) {
-                        z[i] = (float) ((1.0f / dist) + (q / (1 - Math.exp(dist * q))));
-                    }
-                }
-
                 if (Math.abs(z[i]) > maxZ) {
                     maxZ = Math.abs(z[i]);
                 }
             }
 
+            mix.update();
             float maxOut = 0.01f;
             for (int i = 0; i < output.length; i++) {
+                final float mix = this.mix.next();
                 output[i] = mix * z[i] * max / maxZ + (1 - mix) * input[i];
                 if (Math.abs(output[i]) > maxOut) {
                     maxOut = Math.abs(output[i]);
@@ -126,6 +170,16 @@ public class TubeDistortion extends AudioEffect {
         }
     }
 
+    /**
+     * The static characteristic goes through the origin, silent input stays silent.
+     *
+     * @return  0
+     */
+    @Override
+    public float getTailTime() {
+        return 0;
+    }
+
     @Override
     public String getLabel() {
         return LABEL;
@@ -134,6 +188,12 @@ public class TubeDistortion extends AudioEffect {
     @Override
     public String getDescription() { return DESCRIPTION; }
 
+    @Override
+    protected void addConfiguration(@NonNull List<Object> key) {
+        key.add(q);
+        key.add(dist);
+    }
+
     @Override
     public int describeContents() {
         return hashCode();
@@ -143,8 +203,47 @@ public class TubeDistortion extends AudioEffect {
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeFloat(this.q);
         dest.writeInt(this.dist);
-        dest.writeFloat(this.mix);
-        dest.writeFloat(this.gain);
+        dest.writeFloat(this.mix.get());
+        dest.writeFloat(this.gain.get());
+    }
+
+    /**
+     * <p>
+     * Static characteristic of the normalised input x, with v = x - q:
+     * f(x) = v / (1 - e^(-dist * v)) + q / (1 - e^(dist * q)). The second term is 0 for
+     * q = 0, and f(q) is the limit 1 / dist + q / (1 - e^(dist * q)).
+     * For dist * |v| > 30, f is v + c for positive and c for negative v within 1e-11.
+     * </p>
+     */
+    private static class Characteristic extends TransferFunction {
+
+        private final float q;
+        private final int dist;
+        private final double c;
+
+        Characteristic(float q, int dist) {
+            this.q = q;
+            this.dist = dist;
+            c = q == 0 ? 0 : q / (1 - Math.exp(dist * q));
+        }
+
+        @Override
+        public double evaluate(double x) {
+            double v = x - q;
+            if (Math.abs(v) < 1e-9) {
+                return 1.0 / dist + c;
+            }
+            return v / (1 - Math.exp(-dist * v)) + c;
+        }
+
+        @Override
+        public float asymptote(float x) {
+            float v = x - q;
+            if (dist * Math.abs(v) > 30) {
+                return (float) (v > 0 ? v + c : c);
+            }
+            return (float) evaluate(x);
+        }
     }
 
     public static final Creator<TubeDistortion> CREATOR = new Creator<TubeDistortion>() {
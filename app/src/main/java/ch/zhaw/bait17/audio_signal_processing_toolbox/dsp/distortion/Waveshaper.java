@@ -4,17 +4,18 @@ import android.os.Parcel;
 import android.support.annotation.NonNull;
 
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.Parameter;
 
 /**
  * Waveshaper algorithm. By Bram de Jong, MusicDSP forum (www.musicdsp.com)
- *
+ * The threshold is ramped per sample.
  */
 
 public class Waveshaper extends AudioEffect {
 
     private static final String LABEL = "Waveshaper";
     private static final String DESCRIPTION = "Shaping function f(x,a) = x*(abs(x) + a)/(x^2 + (a-1)*abs(x) + 1)";
-    private float threshold;
+    private final Parameter threshold;
 
     /**
      * Creates a new {@code Waveshaper} instance.
@@ -22,11 +23,11 @@ public class Waveshaper extends AudioEffect {
      * @param threshold     value >= 1.0
      */
     public Waveshaper(float threshold) {
-        this.threshold = threshold;
+        this.threshold = createSampleParameter(threshold);
     }
 
     protected Waveshaper(Parcel in) {
-        this.threshold = in.readFloat();
+        this.threshold = createSampleParameter(in.readFloat());
     }
 
     /**
@@ -35,7 +36,7 @@ public class Waveshaper extends AudioEffect {
      * @param threshold    value > 1.0
      */
     public void setThreshold(float threshold) {
-        this.threshold = threshold;
+        this.threshold.set(threshold);
     }
 
     /**
@@ -49,13 +50,25 @@ public class Waveshaper extends AudioEffect {
      */
     public void apply(@NonNull float[] input, @NonNull float[] output) {
         if (input.length == output.length) {
+            threshold.update();
             for (int i = 0; i < input.length; i++) {
-                output[i] = input[i] * (Math.abs(input[i]) + threshold) /
-                        ((input[i] * input[i]) + (threshold - 1) * Math.abs(input[i]) + 1);
+                final float a = threshold.next();
+                output[i] = input[i] * (Math.abs(input[i]) + a) /
+                        ((input[i] * input[i]) + (a - 1) * Math.abs(input[i]) + 1);
             }
         }
     }
 
+    /**
+     * The shaping function is memoryless and maps 0 to 0, so there is no tail.
+     *
+     * @return  0
+     */
+    @Override
+    public float getTailTime() {
+        return 0;
+    }
+
     @Override
     public String getLabel() {
         return LABEL;
@@ -73,7 +86,7 @@ public class Waveshaper extends AudioEffect {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
-        dest.writeFloat(this.threshold);
+        dest.writeFloat(this.threshold.get());
     }
 
     public static final Creator<Waveshaper> CREATOR = new Creator<Waveshaper>() {
@@ -0,0 +1,300 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+import android.support.annotation.NonNull;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     A cascade of second order sections (biquads) in transposed direct form II: <br>
+ *     y = b0 x + z1, z1 = b1 x - a1 y + z2, z2 = b2 x - a2 y <br>
+ *     The samples are interleaved, every channel has its own state. Coefficients and state
+ *     are kept in double precision, which keeps the round-off noise of high-Q sections at
+ *     low frequencies well below the float resolution of the samples.
+ * </p>
+ * <p>
+ *     New coefficients can be faded in over a number of frames. The coefficients are
+ *     interpolated linearly in steps of {@link #SMOOTHING_STEP} frames. The stability region
+ *     of a biquad (|a2| < 1, |a1| < 1 + a2) is convex, so every intermediate section between
+ *     two stable sections is stable as well. If the number of sections changes, the shorter
+ *     cascade is padded with pass-through sections.
+ * </p>
+ * <p>
+ *     States below {@link Constants#DENORMAL_THRESHOLD} are flushed to zero after every block, so
+ *     that the decaying tail of the filter never runs into denormal numbers.
+ * </p>
+ * <p>
+ *     The cascade is not thread-safe, set the coefficients on the thread that processes
+ *     the samples.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class BiquadCascade {
+
+    // Coefficients per section: b0, b1, b2, a1, a2
+    private static final int COEFFICIENTS_PER_SECTION = 5;
+    private static final double[] PASS_THROUGH = {1, 0, 0, 0, 0};
+    private static final int SMOOTHING_STEP = 32;
+
+    private final int channels;
+    private int sections = 0;
+    private double[] coefficients = new double[0];
+    // state[(channel * sections + section) * 2 + {0, 1}] = z1, z2
+    private double[] state = new double[0];
+
+    private double[] increments;
+    private double[] targetCoefficients;
+    private int targetSections;
+    private int smoothingSteps = 0;
+    private boolean settled = true;
+
+    /**
+     * Creates an instance of {@code BiquadCascade} without sections.
+     *
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    public BiquadCascade(int channels) {
+        if (channels < 1) {
+            throw new IllegalArgumentException("Number of channels must be >= 1.");
+        }
+        this.channels = channels;
+    }
+
+    /**
+     * <p>
+     *     Sets the coefficients of the cascade. Every section is given as
+     *     {b0, b1, b2, a1, a2} with a0 = 1. <br>
+     *     With a smoothing length > 0 the current coefficients are faded to the new ones,
+     *     otherwise they are replaced immediately. The state of the sections is kept.
+     * </p>
+     *
+     * @param sections                      coefficients of the sections
+     * @param smoothingFrames               number of frames to fade the coefficients
+     * @throws IllegalArgumentException     if a section has not 5 coefficients
+     */
+    public void setCoefficients(@NonNull double[][] sections, int smoothingFrames) {
+        double[] target = new double[sections.length * COEFFICIENTS_PER_SECTION];
+        for (int s = 0; s < sections.length; s++) {
+            if (sections[s].length != COEFFICIENTS_PER_SECTION) {
+                throw new IllegalArgumentException("A section needs 5 coefficients: b0, b1, b2, a1, a2.");
+            }
+            System.arraycopy(sections[s], 0, target, s * COEFFICIENTS_PER_SECTION,
+                    COEFFICIENTS_PER_SECTION);
+        }
+        if (smoothingFrames <= 0 || this.sections == 0) {
+            smoothingSteps = 0;
+            targetSections = sections.length;
+            resize(sections.length);
+            coefficients = target;
+            return;
+        }
+        int length = Math.max(this.sections, sections.length);
+        resize(length);
+        targetCoefficients = pad(target, length);
+        targetSections = sections.length;
+        smoothingSteps = (smoothingFrames + SMOOTHING_STEP - 1) / SMOOTHING_STEP;
+        increments = new double[coefficients.length];
+        for (int i = 0; i < coefficients.length; i++) {
+            increments[i] = (targetCoefficients[i] - coefficients[i]) / smoothingSteps;
+        }
+    }
+
+    /**
+     * <p>
+     *     Filters a block of interleaved samples. Input and output may be the same array.
+     * </p>
+     *
+     * @param input     interleaved input samples
+     * @param output    interleaved output samples, at least as long as the input
+     */
+    public void process(@NonNull float[] input, @NonNull float[] output) {
+        if (sections == 0) {
+            System.arraycopy(input, 0, output, 0, input.length);
+            return;
+        }
+        if (settled && targetSections < sections) {
+            // Trailing pass-through sections have flushed their state in the last block
+            resize(targetSections);
+        }
+        int frames = input.length / channels;
+        int frame = 0;
+        while (smoothingSteps > 0 && frame < frames) {
+            int length = Math.min(SMOOTHING_STEP, frames - frame);
+            process(input, output, frame * channels, length * channels);
+            frame += length;
+            stepCoefficients();
+        }
+        process(input, output, frame * channels, input.length - frame * channels);
+        // A pass-through section has no state left after two frames
+        settled = smoothingSteps == 0 && frames - frame >= 2;
+        flushDenormals();
+    }
+
+    /**
+     * Returns the number of sections.
+     *
+     * @return  number of sections
+     */
+    public int getNumberOfSections() {
+        return sections;
+    }
+
+    /**
+     * Returns the number of interleaved channels.
+     *
+     * @return  number of channels
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Returns true while the coefficients are being faded to new values.
+     *
+     * @return  true if smoothing
+     */
+    public boolean isSmoothing() {
+        return smoothingSteps > 0;
+    }
+
+    /**
+     * <p>
+     *     Returns the number of frames until the impulse response of the cascade has decayed
+     *     below a level. The decay of a section is set by its largest pole radius r, the
+     *     envelope r^n falls below the level after ln(level) / ln(r) frames. The lengths of
+     *     the sections are added up.
+     * </p>
+     *
+     * @param level     level relative to the impulse, in (0,1)
+     * @return          decay length in frames, {@link Double#POSITIVE_INFINITY} if a section
+     *                  is not stable
+     */
+    public double getDecayLength(double level) {
+        return getDecayLength(smoothingSteps > 0 ? targetCoefficients : coefficients, level);
+    }
+
+    /**
+     * Returns the number of frames until the impulse response of a cascade with the given
+     * sections has decayed below a level, see {@link #getDecayLength(double)}.
+     *
+     * @param sections  coefficients of the sections, every section as {b0, b1, b2, a1, a2}
+     * @param level     level relative to the impulse, in (0,1)
+     * @return          decay length in frames, {@link Double#POSITIVE_INFINITY} if a section
+     *                  is not stable
+     */
+    public static double getDecayLength(@NonNull double[][] sections, double level) {
+        double[] c = new double[sections.length * COEFFICIENTS_PER_SECTION];
+        for (int s = 0; s < sections.length; s++) {
+            System.arraycopy(sections[s], 0, c, s * COEFFICIENTS_PER_SECTION,
+                    COEFFICIENTS_PER_SECTION);
+        }
+        return getDecayLength(c, level);
+    }
+
+    private static double getDecayLength(double[] c, double level) {
+        double length = 0;
+        for (int s = 0; s < c.length / COEFFICIENTS_PER_SECTION; s++) {
+            double a1 = c[s * COEFFICIENTS_PER_SECTION + 3];
+            double a2 = c[s * COEFFICIENTS_PER_SECTION + 4];
+            // Poles are the roots of z^2 + a1 z + a2
+            double discriminant = a1 * a1 - 4 * a2;
+            double radius = discriminant < 0 ? Math.sqrt(a2)
+                    : (Math.abs(a1) + Math.sqrt(discriminant)) / 2;
+            if (radius >= 1) {
+                return Double.POSITIVE_INFINITY;
+            }
+            // Two frames of the feed forward part
+            length += 2 + (radius > 0 ? Math.log(level) / Math.log(radius) : 0);
+        }
+        return length;
+    }
+
+    /**
+     * Clears the state of all sections.
+     */
+    public void reset() {
+        for (int i = 0; i < state.length; i++) {
+            state[i] = 0;
+        }
+    }
+
+    /**
+     * Runs all sections over {@code length} samples starting at {@code offset}. The first
+     * section reads the input, the following sections filter the output in place.
+     */
+    private void process(float[] input, float[] output, int offset, int length) {
+        final int end = offset + length;
+        for (int ch = 0; ch < channels; ch++) {
+            float[] source = input;
+            for (int s = 0; s < sections; s++) {
+                final int c = s * COEFFICIENTS_PER_SECTION;
+                final double b0 = coefficients[c];
+                final double b1 = coefficients[c + 1];
+                final double b2 = coefficients[c + 2];
+                final double a1 = coefficients[c + 3];
+                final double a2 = coefficients[c + 4];
+                final int z = (ch * sections + s) * 2;
+                double z1 = state[z];
+                double z2 = state[z + 1];
+                for (int i = offset + ch; i < end; i += channels) {
+                    double x = source[i];
+                    double y = b0 * x + z1;
+                    z1 = b1 * x - a1 * y + z2;
+                    z2 = b2 * x - a2 * y;
+                    output[i] = (float) y;
+                }
+                state[z] = z1;
+                state[z + 1] = z2;
+                source = output;
+            }
+        }
+    }
+
+    private void stepCoefficients() {
+        if (--smoothingSteps > 0) {
+            for (int i = 0; i < coefficients.length; i++) {
+                coefficients[i] += increments[i];
+            }
+        } else {
+            coefficients = targetCoefficients;
+        }
+    }
+
+    private void flushDenormals() {
+        for (int i = 0; i < state.length; i++) {
+            if (Math.abs(state[i]) < Constants.DENORMAL_THRESHOLD) {
+                state[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * Changes the number of sections, the state of the remaining sections is kept and
+     * added sections pass the signal through.
+     */
+    private void resize(int length) {
+        if (length == sections) {
+            return;
+        }
+        double[] newState = new double[channels * length * 2];
+        int common = Math.min(sections, length);
+        for (int ch = 0; ch < channels; ch++) {
+            System.arraycopy(state, ch * sections * 2, newState, ch * length * 2, common * 2);
+        }
+        state = newState;
+        coefficients = pad(coefficients, length);
+        sections = length;
+    }
+
+    private static double[] pad(double[] coefficients, int length) {
+        double[] result = new double[length * COEFFICIENTS_PER_SECTION];
+        int common = Math.min(coefficients.length, result.length);
+        System.arraycopy(coefficients, 0, result, 0, common);
+        for (int i = common; i < result.length; i += COEFFICIENTS_PER_SECTION) {
+            System.arraycopy(PASS_THROUGH, 0, result, i, COEFFICIENTS_PER_SECTION);
+        }
+        return result;
+    }
+}
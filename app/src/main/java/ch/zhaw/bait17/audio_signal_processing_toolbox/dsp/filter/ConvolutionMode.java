@@ -0,0 +1,24 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+/**
+ * Enumerator for the convolution algorithms of a {@link FIRFilter}.
+ *
+ * @author georgrem, stockan1
+ */
+
+public enum ConvolutionMode {
+
+    AUTO("Automatic"), DIRECT("Direct form"), FFT("FFT overlap-save");
+
+    private String label;
+
+    ConvolutionMode(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+
+}
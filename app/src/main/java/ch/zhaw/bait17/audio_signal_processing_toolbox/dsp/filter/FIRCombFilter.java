@@ -4,8 +4,21 @@ import android.os.Parcel;
 import android.support.annotation.NonNull;
 
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.DelayLine;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.Parameter;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
 
 /**
+ * <p>
+ *     Every channel has its own {@link DelayLine}, long enough for
+ *     {@link Constants#FIR_COMB_FILTER_MAX_DELAY}, so the delay can be changed without
+ *     allocating and the cost per sample does not depend on the delay.
+ * </p>
+ * <p>
+ *     The delay is a {@link Parameter} ramped per frame and read with linear interpolation,
+ *     so changing it sweeps the notches instead of clicking.
+ * </p>
+ *
  * @author georgrem, stockan1
  */
 
@@ -15,31 +28,48 @@ public class FIRCombFilter extends AudioEffect {
     private static final String DESCRIPTION = "Simulates a single delay. The response of this filter is made up of the direct and the delayed signal.";
     private static final float DELAY_GAIN = 0.5f;
 
-    private float[] delayLine;
-    private int delayInSamples;
+    private volatile DelayLine[] delayLines;
+    private final Parameter delay;
 
     /**
-     * * Creates an instance of {@code FIRCombFilter}.
+     * Creates an instance of {@code FIRCombFilter} for {@link Constants#DEFAULT_CHANNELS}
+     * interleaved channels.
      *
      * @param delay                     the amount of delay time in seconds must be >= 0
      * @throws IllegalArgumentException if delay in ms is < 0
      */
     public FIRCombFilter(float delay) throws IllegalArgumentException {
+        this(delay, Constants.DEFAULT_CHANNELS);
+    }
+
+    /**
+     * Creates an instance of {@code FIRCombFilter}.
+     *
+     * @param delay                     the amount of delay time in seconds must be >= 0
+     * @param channels                  number of interleaved channels
+     * @throws IllegalArgumentException if delay in ms is < 0 or channels < 1
+     */
+    public FIRCombFilter(float delay, int channels) throws IllegalArgumentException {
         if (delay < 0) {
             throw new IllegalArgumentException("Delay in seconds must be >= 0.");
         }
-        setDelay(delay);
+        super.setChannels(channels);
+        this.delay = createParameter(delay, 1);
+        allocateDelayLines(delay);
     }
 
     protected FIRCombFilter(Parcel in) {
-        this.delayLine = in.createFloatArray();
-        this.delayInSamples = in.readInt();
+        super.setChannels(in.readInt());
+        super.setSamplingFrequency(in.readInt());
+        float delay = in.readFloat();
+        this.delay = createParameter(delay, 1);
+        allocateDelayLines(delay);
     }
 
     /**
      * <p>
      * Applies the {@code AudioEffect} to a block of PCM samples.
-     * Input and output sample arrays must have the same length.
+     * Input and output sample arrays must have the same length and may be the same array.
      * </p>
      *
      * @param input  array of {@code float} input samples
@@ -48,13 +78,32 @@ public class FIRCombFilter extends AudioEffect {
     @Override
     public void apply(@NonNull float[] input, @NonNull float[] output) {
         if (input.length == output.length) {
-            for (int i = 0; i < input.length; i++) {
-                output[i] = input[i];
-                if (delayLine != null && delayLine.length > 1) {
-                    output[i] += DELAY_GAIN * delayLine[delayLine.length - 1];
-                    // shift right one element in delay line
-                    System.arraycopy(delayLine, 0, delayLine, 1, delayLine.length - 1);
-                    delayLine[0] = input[i];
+            delay.update();
+            final DelayLine[] lines = delayLines;
+            final int channels = getChannels();
+            if (delay.getValue() == 0 && !delay.isSmoothing()) {
+                // The delay lines are still written, a delay ramped up later reads this input
+                for (int frame = 0; frame < input.length; frame += channels) {
+                    int end = Math.min(frame + channels, input.length);
+                    for (int i = frame; i < end; i++) {
+                        lines[i - frame].write(input[i]);
+                    }
+                }
+                if (input != output) {
+                    System.arraycopy(input, 0, output, 0, input.length);
+                }
+                return;
+            }
+            final float fs = getSamplingFrequency();
+            final float capacity = lines[0].getMaxDelay();
+            for (int frame = 0; frame < input.length; frame += channels) {
+                final float d = Math.min(delay.next() * fs, capacity);
+                int end = Math.min(frame + channels, input.length);
+                for (int i = frame; i < end; i++) {
+                    final DelayLine delayLine = lines[i - frame];
+                    final float x = input[i];
+                    delayLine.write(x);
+                    output[i] = x + DELAY_GAIN * delayLine.readLinear(d);
                 }
             }
         }
@@ -66,8 +115,63 @@ public class FIRCombFilter extends AudioEffect {
      * @param delay  delay in seconds
      */
     public void setDelay(float delay) {
-        delayInSamples = Math.round(delay * getSamplingFrequency());
-        delayLine = new float[delayInSamples];
+        if (delayLines[0].getMaxDelay() < Math.ceil(delay * getSamplingFrequency())) {
+            allocateDelayLines(delay);
+        }
+        this.delay.set(delay);
+    }
+
+    /**
+     * <p>
+     * Sets the sampling frequency, the delay time is kept.
+     * </p>
+     *
+     * @param samplingFrequency sampling frequency
+     */
+    @Override
+    public void setSamplingFrequency(int samplingFrequency) {
+        super.setSamplingFrequency(samplingFrequency);
+        allocateDelayLines(delay.get());
+    }
+
+    /**
+     * <p>
+     * Sets the number of interleaved channels, the delay lines start empty.
+     * </p>
+     *
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    @Override
+    public void setChannels(int channels) {
+        super.setChannels(channels);
+        allocateDelayLines(delay.get());
+    }
+
+    /**
+     * Publishes new delay lines for at least {@link Constants#FIR_COMB_FILTER_MAX_DELAY}.
+     */
+    private void allocateDelayLines(float delay) {
+        int maxDelay = (int) Math.ceil(Math.max(delay, Constants.FIR_COMB_FILTER_MAX_DELAY)
+                * getSamplingFrequency());
+        final int channels = getChannels();
+        DelayLine[] lines = new DelayLine[channels];
+        for (int ch = 0; ch < channels; ch++) {
+            lines[ch] = new DelayLine(maxDelay);
+        }
+        delayLines = lines;
+    }
+
+    /**
+     * <p>
+     * Returns the longest delay the delay lines hold, the delay may be ramped up to it.
+     * </p>
+     *
+     * @return  tail time in seconds
+     */
+    @Override
+    public float getTailTime() {
+        return delayLines[0].getMaxDelay() / (float) getSamplingFrequency();
     }
 
     /**
@@ -103,8 +207,9 @@ public class FIRCombFilter extends AudioEffect {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
-        dest.writeFloatArray(this.delayLine);
-        dest.writeInt(this.delayInSamples);
+        dest.writeInt(getChannels());
+        dest.writeInt(getSamplingFrequency());
+        dest.writeFloat(this.delay.get());
     }
 
     public static final Creator<FIRCombFilter> CREATOR = new Creator<FIRCombFilter>() {
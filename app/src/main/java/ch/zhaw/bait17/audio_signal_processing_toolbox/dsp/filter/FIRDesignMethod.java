@@ -0,0 +1,24 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+/**
+ * Enumerator for the FIR filter design methods of {@link FIRDesigner}.
+ *
+ * @author georgrem, stockan1
+ */
+
+public enum FIRDesignMethod {
+
+    KAISER("Kaiser window"), PARKS_MCCLELLAN("Parks-McClellan");
+
+    private String label;
+
+    FIRDesignMethod(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+
+}
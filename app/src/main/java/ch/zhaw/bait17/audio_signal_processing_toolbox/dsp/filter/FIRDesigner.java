@@ -0,0 +1,695 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     Designs linear phase FIR filters from a {@link FilterSpec} at runtime. <br>
+ *     The same pass band and stop band specifications as in the MATLAB designs shipped as raw
+ *     resources are used: band edges fpass/fstop in Hz, pass band ripple Apass and stop band
+ *     attenuation Astop in dB. If the order of the specification is 0, the order is estimated
+ *     from the narrowest transition band and the required deviations.
+ * </p>
+ * <p>
+ *     Two methods are available:
+ *     <ul>
+ *         <li>{@link FIRDesignMethod#KAISER}: windowed-sinc design with a Kaiser window.
+ *         Order: N = (A - 7.95) / (14.36 df), A = -20 log10(min(dp, ds)).</li>
+ *         <li>{@link FIRDesignMethod#PARKS_MCCLELLAN}: equiripple design with the Remez exchange
+ *         algorithm. Order: N = (-20 log10(sqrt(dp ds)) - 13) / (14.6 df).
+ *         Falls back to the Kaiser design if the exchange does not converge.</li>
+ *     </ul>
+ *     All designs are type I filters (odd length), odd orders are rounded up.
+ * </p>
+ * <p>
+ *     Designs are memoised by specification, sample rate and method. A design that is not yet
+ *     in the cache is computed on the calling thread, use {@link #prefetch(FilterSpec, int, FIRDesignMethod)}
+ *     to compute it on a background thread in advance, e.g. when presets are listed or the
+ *     sample rate of the next track is known. Only successful designs stay in the cache: a
+ *     design that failed or fell back to the Kaiser window because the exchange did not
+ *     converge is computed again on the next request.
+ * </p>
+ * <p>
+ *     See J. H. McClellan, T. W. Parks and L. R. Rabiner, A computer program for designing
+ *     optimum FIR linear phase digital filters, IEEE Trans. Audio Electroacoust., 1973 and
+ *     A. V. Oppenheim, R. W. Schafer, Discrete-Time Signal Processing, chapter 7.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public final class FIRDesigner {
+
+    private static final int MAX_ORDER = 4096;
+    private static final int GRID_DENSITY = 16;
+    private static final int MAX_ITERATIONS = 40;
+    private static final double CONVERGENCE_TOLERANCE = 1e-4;
+
+    private static final ConcurrentHashMap<DesignKey, DesignTask> cache =
+            new ConcurrentHashMap<>();
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, FIRDesigner.class.getSimpleName());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+
+    private FIRDesigner() {
+
+    }
+
+    /**
+     * Designs a FIR filter with the Parks-McClellan method.
+     *
+     * @param filterSpec                    the filter specification
+     * @param sampleRate                    the sample rate in Hz
+     * @return                              the designed filter
+     * @throws IllegalArgumentException     if the specification is not valid at this sample rate
+     */
+    public static FIRFilter design(@NonNull FilterSpec filterSpec, int sampleRate) {
+        return design(filterSpec, sampleRate, FIRDesignMethod.PARKS_MCCLELLAN);
+    }
+
+    /**
+     * <p>
+     *     Designs a FIR filter. The result is memoised, every call returns a new
+     *     {@code FIRFilter} with its own state but the design is only computed once.
+     * </p>
+     *
+     * @param filterSpec                    the filter specification
+     * @param sampleRate                    the sample rate in Hz
+     * @param method                        the design method
+     * @return                              the designed filter
+     * @throws IllegalArgumentException     if the specification is not valid at this sample rate
+     */
+    public static FIRFilter design(@NonNull FilterSpec filterSpec, int sampleRate,
+                                   @NonNull FIRDesignMethod method) {
+        DesignTask task = getTask(filterSpec, sampleRate, method);
+        // Runs the design on this thread unless it is already done or running elsewhere
+        task.run();
+        float[] coefficients;
+        try {
+            coefficients = task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for filter design.");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Filter design failed.", e.getCause());
+        }
+        FilterSpec spec = new FilterSpec.Builder(filterSpec.getFilterType(), coefficients.length - 1)
+                .frequencyPassBand1(filterSpec.getFpass1())
+                .frequencyPassBand2(filterSpec.getFpass2())
+                .amountRipplePassBand1(filterSpec.getApass1())
+                .amountRipplePassBand2(filterSpec.getApass2())
+                .frequencyStopBand1(filterSpec.getFstop1())
+                .frequencyStopBand2(filterSpec.getFstop2())
+                .attenuationStopBand1(filterSpec.getAstop1())
+                .attenuationStopBand2(filterSpec.getAstop2())
+                .build();
+        FIRFilter filter = new FIRFilter(spec, coefficients);
+        filter.setSamplingFrequency(sampleRate);
+        return filter;
+    }
+
+    /**
+     * Starts the design on a background thread if it is not in the cache yet.
+     *
+     * @param filterSpec                    the filter specification
+     * @param sampleRate                    the sample rate in Hz
+     * @param method                        the design method
+     * @throws IllegalArgumentException     if the specification is not valid at this sample rate
+     */
+    public static void prefetch(@NonNull FilterSpec filterSpec, int sampleRate,
+                                @NonNull FIRDesignMethod method) {
+        prefetch(filterSpec, sampleRate, method, null);
+    }
+
+    /**
+     * <p>
+     *     Starts the design on a background thread if it is not in the cache yet and runs
+     *     the listener on the same thread afterwards. The listener may call
+     *     {@link #design(FilterSpec, int, FIRDesignMethod)}, which returns without computing
+     *     unless the design failed.
+     * </p>
+     *
+     * @param filterSpec                    the filter specification
+     * @param sampleRate                    the sample rate in Hz
+     * @param method                        the design method
+     * @param listener                      runs when the design is done, may be null
+     * @throws IllegalArgumentException     if the specification is not valid at this sample rate
+     */
+    public static void prefetch(@NonNull FilterSpec filterSpec, int sampleRate,
+                                @NonNull FIRDesignMethod method, @Nullable Runnable listener) {
+        DesignTask task = getTask(filterSpec, sampleRate, method);
+        if (!task.isDone()) {
+            executor.execute(task);
+        }
+        if (listener != null) {
+            // The executor has a single thread, the listener runs after the design
+            executor.execute(listener);
+        }
+    }
+
+    /**
+     * Returns true if the design is available without computation.
+     *
+     * @param filterSpec    the filter specification
+     * @param sampleRate    the sample rate in Hz
+     * @param method        the design method
+     * @return              true if the design is cached
+     */
+    public static boolean isDesigned(@NonNull FilterSpec filterSpec, int sampleRate,
+                                     @NonNull FIRDesignMethod method) {
+        DesignTask task = cache.get(new DesignKey(filterSpec, sampleRate, method));
+        return task != null && task.isSuccessful();
+    }
+
+    /**
+     * Removes all designs from the cache.
+     */
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    private static DesignTask getTask(FilterSpec filterSpec, int sampleRate,
+                                      FIRDesignMethod method) {
+        Bands bands = new Bands(filterSpec, sampleRate);
+        DesignKey key = new DesignKey(filterSpec, sampleRate, method);
+        DesignTask task = cache.get(key);
+        if (task == null) {
+            DesignTask newTask = new DesignTask(key, bands, filterSpec.getOrder(), method);
+            task = cache.putIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Windowed-sinc design. The ideal response changes at the centre of each transition band.
+     */
+    private static float[] kaiser(Bands bands, int order) {
+        final int length = order + 1;
+        final int m = order / 2;
+        double attenuation = -20 * Math.log10(bands.getMinDeviation());
+        double beta;
+        if (attenuation > 50) {
+            beta = 0.1102 * (attenuation - 8.7);
+        } else if (attenuation >= 21) {
+            beta = 0.5842 * Math.pow(attenuation - 21, 0.4) + 0.07886 * (attenuation - 21);
+        } else {
+            beta = 0;
+        }
+        double i0Beta = besselI0(beta);
+
+        float[] h = new float[length];
+        for (int n = 0; n < length; n++) {
+            int k = n - m;
+            double ideal = 0;
+            for (int b = 0; b < bands.count; b++) {
+                double lower = b == 0 ? 0 : (bands.upper[b - 1] + bands.lower[b]) / 2;
+                double upper = b == bands.count - 1 ? 0.5 : (bands.upper[b] + bands.lower[b + 1]) / 2;
+                ideal += bands.desired[b] * (idealLowpass(upper, k) - idealLowpass(lower, k));
+            }
+            double r = (double) k / m;
+            double window = besselI0(beta * Math.sqrt(Math.max(0, 1 - r * r))) / i0Beta;
+            h[n] = (float) (ideal * window);
+        }
+        return h;
+    }
+
+    /**
+     * Impulse response of an ideal low-pass filter with normalised cut-off f (0 .. 0.5).
+     */
+    private static double idealLowpass(double f, int k) {
+        if (k == 0) {
+            return 2 * f;
+        }
+        return Math.sin(2 * Math.PI * f * k) / (Math.PI * k);
+    }
+
+    /**
+     * Zeroth order modified Bessel function of the first kind.
+     */
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        double half = x / 2;
+        for (int k = 1; k < 50; k++) {
+            term *= (half / k) * (half / k);
+            sum += term;
+            if (term < 1e-12 * sum) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Parks-McClellan design with the Remez exchange algorithm.
+     *
+     * @return  the filter coefficients or null if the algorithm did not converge
+     */
+    private static float[] remez(Bands bands, int order) {
+        final int m = order / 2;
+        final int r = m + 2;
+
+        // Dense frequency grid over all bands
+        double step = 0.5 / (GRID_DENSITY * (m + 1));
+        List<Double> gridList = new ArrayList<>();
+        List<Integer> bandList = new ArrayList<>();
+        for (int b = 0; b < bands.count; b++) {
+            int points = Math.max(2, (int) Math.ceil((bands.upper[b] - bands.lower[b]) / step) + 1);
+            for (int i = 0; i < points; i++) {
+                gridList.add(bands.lower[b] + (bands.upper[b] - bands.lower[b]) * i / (points - 1));
+                bandList.add(b);
+            }
+        }
+        final int gridSize = gridList.size();
+        if (gridSize < 2 * r) {
+            return null;
+        }
+        double[] x = new double[gridSize];
+        double[] desired = new double[gridSize];
+        double[] weight = new double[gridSize];
+        int[] band = new int[gridSize];
+        double minDeviation = bands.getMinDeviation();
+        for (int i = 0; i < gridSize; i++) {
+            x[i] = Math.cos(2 * Math.PI * gridList.get(i));
+            band[i] = bandList.get(i);
+            desired[i] = bands.desired[band[i]];
+            weight[i] = minDeviation / bands.deviation[band[i]];
+        }
+
+        // Start with the extremals of the Kaiser design, a much better guess than equal spacing
+        double[] error = new double[gridSize];
+        float[] initial = kaiser(bands, order);
+        for (int i = 0; i < gridSize; i++) {
+            double w = 2 * Math.PI * gridList.get(i);
+            double amplitude = initial[m];
+            for (int k = 1; k <= m; k++) {
+                amplitude += 2 * initial[m - k] * Math.cos(k * w);
+            }
+            error[i] = weight[i] * (desired[i] - amplitude);
+        }
+        int[] extremals = findExtremals(error, band, r, true);
+        double[] xk = new double[r - 1];
+        double[] ck = new double[r - 1];
+        double[] betak = new double[r - 1];
+
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            // Deviation on the current extremals
+            double numerator = 0;
+            double denominator = 0;
+            for (int i = 0; i < r; i++) {
+                double b = barycentricWeight(x, extremals, i, r);
+                int g = extremals[i];
+                numerator += b * desired[g];
+                denominator += b * (i % 2 == 0 ? 1 : -1) / weight[g];
+            }
+            double delta = numerator / denominator;
+
+            // Interpolate through the first r - 1 extremals
+            for (int k = 0; k < r - 1; k++) {
+                int g = extremals[k];
+                xk[k] = x[g];
+                ck[k] = desired[g] - (k % 2 == 0 ? 1 : -1) * delta / weight[g];
+            }
+            for (int k = 0; k < r - 1; k++) {
+                double product = 1;
+                for (int j = 0; j < r - 1; j++) {
+                    if (j != k) {
+                        product *= 2 * (xk[k] - xk[j]);
+                    }
+                }
+                betak[k] = 1 / product;
+            }
+            double maxError = 0;
+            for (int i = 0; i < gridSize; i++) {
+                error[i] = weight[i] * (desired[i] - interpolate(x[i], xk, ck, betak));
+                maxError = Math.max(maxError, Math.abs(error[i]));
+            }
+
+            int[] next = findExtremals(error, band, r, false);
+            if (next == null) {
+                return null;
+            }
+            if (Arrays.equals(next, extremals)
+                    || (maxError - Math.abs(delta)) <= CONVERGENCE_TOLERANCE * Math.abs(delta)) {
+                return impulseResponse(m, xk, ck, betak);
+            }
+            extremals = next;
+        }
+        return null;
+    }
+
+    private static double barycentricWeight(double[] x, int[] extremals, int i, int r) {
+        double product = 1;
+        double xi = x[extremals[i]];
+        for (int j = 0; j < r; j++) {
+            if (j != i) {
+                product *= 2 * (xi - x[extremals[j]]);
+            }
+        }
+        return 1 / product;
+    }
+
+    /**
+     * Barycentric Lagrange interpolation of the amplitude response in x = cos(w).
+     */
+    private static double interpolate(double x, double[] xk, double[] ck, double[] betak) {
+        double numerator = 0;
+        double denominator = 0;
+        for (int k = 0; k < xk.length; k++) {
+            double diff = x - xk[k];
+            if (diff == 0) {
+                return ck[k];
+            }
+            double t = betak[k] / diff;
+            numerator += t * ck[k];
+            denominator += t;
+        }
+        return numerator / denominator;
+    }
+
+    /**
+     * Finds r alternating extremals of the weighted error, local extrema are searched
+     * within each band including the band edges.
+     *
+     * @param complete  true to fill up missing extremals in the largest gaps, used for the
+     *                  initial guess
+     * @return          grid indices of the extremals or null if there are less than r
+     */
+    private static int[] findExtremals(double[] error, int[] band, int r, boolean complete) {
+        final int gridSize = error.length;
+        List<Integer> candidates = new ArrayList<>();
+        for (int i = 0; i < gridSize; i++) {
+            // Local maxima of the positive and local minima of the negative error
+            double sign = error[i] >= 0 ? 1 : -1;
+            double e = Math.abs(error[i]);
+            boolean left = i == 0 || band[i - 1] != band[i] || e >= sign * error[i - 1];
+            boolean right = i == gridSize - 1 || band[i + 1] != band[i] || e > sign * error[i + 1];
+            if (left && right) {
+                int last = candidates.size() - 1;
+                if (last >= 0 && Math.signum(error[candidates.get(last)]) == Math.signum(error[i])) {
+                    // Keep the larger of two extrema with the same sign
+                    if (e > Math.abs(error[candidates.get(last)])) {
+                        candidates.set(last, i);
+                    }
+                } else {
+                    candidates.add(i);
+                }
+            }
+        }
+        while (candidates.size() > r) {
+            int last = candidates.size() - 1;
+            if (Math.abs(error[candidates.get(0)]) < Math.abs(error[candidates.get(last)])) {
+                candidates.remove(0);
+            } else {
+                candidates.remove(last);
+            }
+        }
+        while (complete && candidates.size() < r) {
+            // Insert a point in the middle of the largest gap
+            int gapStart = -1;
+            int gapEnd = candidates.isEmpty() ? gridSize : candidates.get(0);
+            int position = 0;
+            for (int i = 0; i <= candidates.size(); i++) {
+                int start = i == 0 ? -1 : candidates.get(i - 1);
+                int end = i == candidates.size() ? gridSize : candidates.get(i);
+                if (end - start > gapEnd - gapStart) {
+                    gapStart = start;
+                    gapEnd = end;
+                    position = i;
+                }
+            }
+            if (gapEnd - gapStart < 2) {
+                break;
+            }
+            candidates.add(position, (gapStart + gapEnd) / 2);
+        }
+        if (candidates.size() < r) {
+            return null;
+        }
+        int[] extremals = new int[r];
+        for (int i = 0; i < r; i++) {
+            extremals[i] = candidates.get(i);
+        }
+        return extremals;
+    }
+
+    /**
+     * Computes the impulse response of length 2m + 1 from the amplitude response by
+     * sampling it at the frequencies j / (2m + 1).
+     */
+    private static float[] impulseResponse(int m, double[] xk, double[] ck, double[] betak) {
+        final int length = 2 * m + 1;
+        double[] amplitude = new double[m + 1];
+        for (int j = 0; j <= m; j++) {
+            amplitude[j] = interpolate(Math.cos(2 * Math.PI * j / length), xk, ck, betak);
+        }
+        float[] h = new float[length];
+        for (int n = 0; n <= m; n++) {
+            double sum = amplitude[0];
+            for (int j = 1; j <= m; j++) {
+                sum += 2 * amplitude[j] * Math.cos(2 * Math.PI * j * (n - m) / length);
+            }
+            h[n] = (float) (sum / length);
+            h[length - 1 - n] = h[n];
+        }
+        return h;
+    }
+
+    /**
+     * Pass and stop bands of a specification, frequencies normalised to the sample rate.
+     */
+    private static final class Bands {
+
+        private final int count;
+        private final double[] lower;
+        private final double[] upper;
+        private final double[] desired;
+        private final double[] deviation;
+
+        Bands(FilterSpec spec, int sampleRate) {
+            if (sampleRate <= 0) {
+                throw new IllegalArgumentException("Sample rate must be greater than 0.");
+            }
+            if (spec.getFilterType() == null) {
+                throw new IllegalArgumentException("Filter type must not be null.");
+            }
+            double fs = sampleRate;
+            double passRipple1 = passDeviation(spec.getApass1());
+            double passRipple2 = spec.getApass2() > 0 ? passDeviation(spec.getApass2()) : passRipple1;
+            double stop1 = stopDeviation(spec.getAstop1());
+            double stop2 = spec.getAstop2() > 0 ? stopDeviation(spec.getAstop2()) : stop1;
+            double[] edges;
+            switch (spec.getFilterType()) {
+                case LOWPASS:
+                    edges = new double[]{0, spec.getFpass1() / fs, spec.getFstop1() / fs, 0.5};
+                    desired = new double[]{1, 0};
+                    deviation = new double[]{passRipple1, stop1};
+                    break;
+                case HIGHPASS:
+                    edges = new double[]{0, spec.getFstop1() / fs, spec.getFpass1() / fs, 0.5};
+                    desired = new double[]{0, 1};
+                    deviation = new double[]{stop1, passRipple1};
+                    break;
+                case BANDPASS:
+                    edges = new double[]{0, spec.getFstop1() / fs, spec.getFpass1() / fs,
+                            spec.getFpass2() / fs, spec.getFstop2() / fs, 0.5};
+                    desired = new double[]{0, 1, 0};
+                    deviation = new double[]{stop1, passRipple1, stop2};
+                    break;
+                default:
+                    edges = new double[]{0, spec.getFpass1() / fs, spec.getFstop1() / fs,
+                            spec.getFstop2() / fs, spec.getFpass2() / fs, 0.5};
+                    desired = new double[]{1, 0, 1};
+                    deviation = new double[]{passRipple1, stop1, passRipple2};
+                    break;
+            }
+            for (int i = 1; i < edges.length; i++) {
+                if (edges[i] <= edges[i - 1]) {
+                    throw new IllegalArgumentException(
+                            "Band edges must be increasing and lie in (0, fs/2).");
+                }
+            }
+            count = desired.length;
+            lower = new double[count];
+            upper = new double[count];
+            for (int b = 0; b < count; b++) {
+                lower[b] = edges[2 * b];
+                upper[b] = edges[2 * b + 1];
+            }
+        }
+
+        double getMinDeviation() {
+            double min = 1;
+            for (double d : deviation) {
+                min = Math.min(min, d);
+            }
+            return min;
+        }
+
+        double getMinTransitionWidth() {
+            double min = 0.5;
+            for (int b = 1; b < count; b++) {
+                min = Math.min(min, lower[b] - upper[b - 1]);
+            }
+            return min;
+        }
+
+        int estimateKaiserOrder() {
+            double attenuation = -20 * Math.log10(getMinDeviation());
+            return (int) Math.ceil((attenuation - 7.95) / (14.36 * getMinTransitionWidth()));
+        }
+
+        int estimateParksMcClellanOrder() {
+            double pass = 1;
+            double stop = 1;
+            for (int b = 0; b < count; b++) {
+                if (desired[b] > 0) {
+                    pass = Math.min(pass, deviation[b]);
+                } else {
+                    stop = Math.min(stop, deviation[b]);
+                }
+            }
+            return (int) Math.ceil((-20 * Math.log10(Math.sqrt(pass * stop)) - 13)
+                    / (14.6 * getMinTransitionWidth()));
+        }
+
+        private static double passDeviation(float apass) {
+            double ripple = Math.pow(10, (apass > 0 ? apass : Constants.FILTER_DEFAULT_PASS_BAND_RIPPLE) / 20);
+            return (ripple - 1) / (ripple + 1);
+        }
+
+        private static double stopDeviation(float astop) {
+            return Math.pow(10, -(astop > 0 ? astop : Constants.FILTER_DEFAULT_STOP_BAND_ATTENUATION) / 20);
+        }
+    }
+
+    /**
+     * Computes a design and removes it from the cache when it is done unless it succeeded.
+     */
+    private static final class DesignTask extends FutureTask<float[]> {
+
+        private final DesignKey key;
+        private final Design design;
+
+        DesignTask(DesignKey key, Bands bands, int order, FIRDesignMethod method) {
+            this(key, new Design(bands, order, method));
+        }
+
+        private DesignTask(DesignKey key, Design design) {
+            super(design);
+            this.key = key;
+            this.design = design;
+        }
+
+        /**
+         * Returns true if the design is done and met the requested method.
+         */
+        boolean isSuccessful() {
+            return isDone() && design.successful;
+        }
+
+        @Override
+        protected void done() {
+            if (!design.successful) {
+                cache.remove(key, this);
+            }
+        }
+    }
+
+    /**
+     * Designs the coefficients of a filter.
+     */
+    private static final class Design implements Callable<float[]> {
+
+        private final Bands bands;
+        private final int order;
+        private final FIRDesignMethod method;
+        // False if the design failed or the exchange did not converge
+        private volatile boolean successful = false;
+
+        Design(Bands bands, int order, FIRDesignMethod method) {
+            this.bands = bands;
+            this.order = order;
+            this.method = method;
+        }
+
+        @Override
+        public float[] call() {
+            int order = this.order;
+            if (order <= 0) {
+                order = method == FIRDesignMethod.KAISER ? bands.estimateKaiserOrder()
+                        : bands.estimateParksMcClellanOrder();
+            }
+            // Type I: even order
+            order = Math.min(MAX_ORDER, Math.max(2, order + order % 2));
+            if (method == FIRDesignMethod.PARKS_MCCLELLAN) {
+                float[] h = remez(bands, order);
+                if (h != null) {
+                    successful = true;
+                    return h;
+                }
+                return kaiser(bands, order);
+            }
+            float[] h = kaiser(bands, order);
+            successful = true;
+            return h;
+        }
+    }
+
+    /**
+     * Cache key of a design.
+     */
+    private static final class DesignKey {
+
+        private final FilterSpec filterSpec;
+        private final int sampleRate;
+        private final FIRDesignMethod method;
+
+        DesignKey(FilterSpec filterSpec, int sampleRate, FIRDesignMethod method) {
+            this.filterSpec = filterSpec;
+            this.sampleRate = sampleRate;
+            this.method = method;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DesignKey)) {
+                return false;
+            }
+            DesignKey that = (DesignKey) o;
+            return sampleRate == that.sampleRate && method == that.method
+                    && filterSpec.equals(that.filterSpec);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * filterSpec.hashCode() + sampleRate) + method.hashCode();
+        }
+    }
+}
@@ -3,10 +3,21 @@ package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
 import android.os.Parcel;
 import android.support.annotation.NonNull;
 
+import java.util.Arrays;
+import java.util.List;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
 /**
  * <p>
  *     A class representing a Nth-order discrete-time FIR filter.
  * </p>
+ * <p>
+ *     The samples are interleaved, every channel has its own input history. A block is
+ *     deinterleaved one channel at a time into a contiguous buffer, filtered and written
+ *     back to its interleaved positions, so the channels never mix and the order of the
+ *     filter is the same for mono and stereo signals.
+ * </p>
  *
  * @author georgrem, stockan1
  */
@@ -17,20 +28,44 @@ public class FIRFilter extends Filter {
     private FilterSpec filterSpec;
     private final int ORDER;
     private final float[] COEFFICIENTS;         // The impulse response of the filter
-    private float[] overlap;
+    private final boolean symmetric;
+    // Per channel: the last ORDER input samples (oldest first) followed by the current block
+    private float[][] samples;
+    private ConvolutionMode convolutionMode = ConvolutionMode.AUTO;
+    // One convolver per channel while FFT convolution is active
+    private OverlapSaveConvolver[] fastConvolvers;
+    private int blockLength = 0;
+    // One channel of the current block, only used with more than one channel
+    private float[] channelInput = new float[0];
+    private float[] channelOutput = new float[0];
 
     /**
-     * Creates a new instance of {@code FIRFilter}.
+     * Creates a new instance of {@code FIRFilter} for {@link Constants#DEFAULT_CHANNELS}
+     * interleaved channels.
      *
      * @param filterSpec        a filter specification
      * @param coefficients      filter coefficients
      */
     public FIRFilter(@NonNull FilterSpec filterSpec, @NonNull float[] coefficients) {
+        this(filterSpec, coefficients, Constants.DEFAULT_CHANNELS);
+    }
+
+    /**
+     * Creates a new instance of {@code FIRFilter}.
+     *
+     * @param filterSpec                    a filter specification
+     * @param coefficients                  filter coefficients
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    public FIRFilter(@NonNull FilterSpec filterSpec, @NonNull float[] coefficients, int channels) {
+        super.setChannels(channels);
         this.filterSpec = filterSpec;
         COEFFICIENTS = new float[coefficients.length];
         System.arraycopy(coefficients, 0, COEFFICIENTS, 0, coefficients.length);
         ORDER = COEFFICIENTS.length - 1;
-        overlap = new float[coefficients.length];
+        symmetric = isSymmetric(COEFFICIENTS);
+        samples = new float[channels][ORDER];
     }
 
     /**
@@ -53,6 +88,15 @@ public class FIRFilter extends Filter {
         return ORDER;
     }
 
+    /**
+     * Returns a copy of the filter coefficients (impulse response).
+     *
+     * @return      the filter coefficients
+     */
+    public float[] getCoefficients() {
+        return COEFFICIENTS.clone();
+    }
+
     /**
      * Returns the label that identifies this filter in e.g. a view.
      *
@@ -73,12 +117,102 @@ public class FIRFilter extends Filter {
         return filterSpec.getDescription();
     }
 
+    /**
+     * <p>
+     *     Sets the number of interleaved channels. The input history of every channel is
+     *     cleared.
+     * </p>
+     *
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    @Override
+    public void setChannels(int channels) {
+        super.setChannels(channels);
+        samples = new float[channels][ORDER];
+        fastConvolvers = null;
+        blockLength = 0;
+    }
+
+    /**
+     * <p>
+     *     Selects the convolution algorithm for blocks of the given length and allocates its
+     *     buffers, so the first block of this length does not allocate.
+     * </p>
+     *
+     * @param samples   number of interleaved samples per block
+     */
+    @Override
+    public void setBlockSize(int samples) {
+        if (samples > 0 && samples % getChannels() == 0 && samples != blockLength) {
+            blockLength = samples;
+            selectConvolution();
+        }
+    }
+
+    /**
+     * <p>
+     *     Takes over the input history of another filter with the same number of channels,
+     *     so a filter that replaces it continues without a click. If the other filter is
+     *     shorter, the older samples are cleared.
+     * </p>
+     *
+     * @param source    the filter to take the input history from
+     */
+    void copyHistory(@NonNull FIRFilter source) {
+        if (source.getChannels() != getChannels()) {
+            return;
+        }
+        int common = Math.min(source.ORDER, ORDER);
+        for (int ch = 0; ch < getChannels(); ch++) {
+            float[] from = source.getHistory(ch);
+            float[] to = getHistory(ch);
+            Arrays.fill(to, 0, ORDER - common, 0);
+            System.arraycopy(from, source.ORDER - common, to, ORDER - common, common);
+        }
+    }
+
+    /**
+     * <p>
+     *     Selects the convolution algorithm. In {@code AUTO} mode the FFT overlap-save
+     *     convolution is used when its estimated cost per sample is lower than the cost of
+     *     the direct form for the current block length. </br>
+     *     The filter state is carried over, switching does not interrupt the output.
+     * </p>
+     *
+     * @param convolutionMode   the convolution mode
+     */
+    public void setConvolutionMode(@NonNull ConvolutionMode convolutionMode) {
+        this.convolutionMode = convolutionMode;
+        blockLength = 0;
+    }
+
+    /**
+     * Returns the selected convolution mode.
+     *
+     * @return      the convolution mode
+     */
+    public ConvolutionMode getConvolutionMode() {
+        return convolutionMode;
+    }
+
+    /**
+     * Returns true if the last block was processed with FFT convolution.
+     *
+     * @return      true if FFT convolution is in use
+     */
+    public boolean isFFTConvolutionActive() {
+        return fastConvolvers != null;
+    }
+
     /**
      * <p>
      *     Process a block of PCM samples with discrete convolution.
-     *     Calculates the full convolution and takes advantage of symmetry of FIR filters
-     *     to reduce multiplications. </br>
-     *     Input and output samples arrays must have the same length.
+     *     Depending on the order of the filter and the block length either the direct form
+     *     or the FFT overlap-save convolution is used, see {@link #setConvolutionMode(ConvolutionMode)}.
+     *     Both produce the same output within float precision. </br>
+     *     Input and output samples arrays must have the same length and may be the same array.
+     *     The length must be a multiple of the number of channels.
      * </p>
      * <p>
      *     See The Scientist and Engineer's Guide to Digital Signal Processing for detailed
@@ -86,69 +220,240 @@ public class FIRFilter extends Filter {
      *     <a href="http://www.dspguide.com/ch6/4.htm">www.dspguide.com</a>
      * </p>
      *
-     * @param input     {@code float} array of filter input samples
-     * @param output    {@code float} array of filter output samples
+     * @param input                         {@code float} array of filter input samples
+     * @param output                        {@code float} array of filter output samples
+     * @throws IllegalArgumentException     if the length is not a multiple of the number of
+     *                                      channels
      */
     public void apply(@NonNull float[] input, @NonNull float[] output) {
+        final int channels = getChannels();
+        if (input.length % channels != 0) {
+            throw new IllegalArgumentException(
+                    "Block length must be a multiple of the number of channels.");
+        }
         if (input.length == output.length && input.length != 0 && getOrder() > 0) {
-            float[] fullConvolution = new float[input.length + getOrder()];
-            convolveInputSide(input, fullConvolution, input.length);
-            System.arraycopy(fullConvolution, 0, output, 0, output.length);
+            if (input.length != blockLength) {
+                blockLength = input.length;
+                selectConvolution();
+            }
+            final int frames = input.length / channels;
+            if (channels == 1) {
+                if (fastConvolvers != null) {
+                    fastConvolvers[0].process(input, output);
+                } else {
+                    System.arraycopy(input, 0, samples[0], ORDER, frames);
+                    convolveOutputSide(samples[0], output, frames);
+                }
+                return;
+            }
+            for (int ch = 0; ch < channels; ch++) {
+                // Only the positions of this channel are written, the other channels of
+                // the input are still intact when input and output are the same array
+                if (fastConvolvers != null) {
+                    deinterleave(input, ch, channelInput, 0, frames);
+                    fastConvolvers[ch].process(channelInput, channelOutput);
+                } else {
+                    deinterleave(input, ch, samples[ch], ORDER, frames);
+                    convolveOutputSide(samples[ch], channelOutput, frames);
+                }
+                for (int n = 0, i = ch; n < frames; n++, i += channels) {
+                    output[i] = channelOutput[n];
+                }
+            }
         }
     }
 
     /**
-     * <p>
-     *     Discrete convolution using the input side algorithm.
-     *     FIR filters have symmetrical impulse response. Full convolution is performed but
-     *     not needed calculations due to symmetry in impulse response are eliminated. </br>
-     *     Input and output samples arrays must have the same length.
-     * </p>
-     * <p>
-     *     Source: <a href="https://christianfloisand.wordpress.com/2013/02/18/the-different-sides-of-convolution/">christianfloisand.wordpress.com</a>
-     * </p>
-     *
-     * @param input             array of input samples
-     * @param output            array that will hold the output samples
-     * @param inputLength       the length of the input samples array
-     */
-    private void convolveInputSide(@NonNull float[] input, @NonNull float[] output, int inputLength) {
-        int i,j;
-        float temp = 0;
-        int halfOrder = getOrder() / 2;
-        for (i = 0; i < inputLength; ++i) {
-            for (j = 0; j < halfOrder; ++j) {
-                temp = COEFFICIENTS[j] * input[i];
-                output[i + j] += temp;
-                output[i + COEFFICIENTS.length - j - 1] += temp;   // Symmetry
+     * Copies one channel of interleaved samples to a contiguous range of {@code destination}.
+     */
+    private void deinterleave(float[] input, int channel, float[] destination, int offset,
+                              int frames) {
+        final int channels = getChannels();
+        for (int n = 0, i = channel; n < frames; n++, i += channels) {
+            destination[offset + n] = input[i];
+        }
+    }
+
+    /**
+     * Chooses direct or FFT convolution for the current block length. Both algorithms keep
+     * the last {@code ORDER} input samples of every channel as state, which is handed over
+     * on a switch.
+     */
+    private void selectConvolution() {
+        final int channels = getChannels();
+        final int frames = blockLength / channels;
+        if (channels > 1 && channelInput.length != frames) {
+            channelInput = new float[frames];
+            channelOutput = new float[frames];
+        }
+        for (int ch = 0; ch < channels; ch++) {
+            if (samples[ch].length < ORDER + frames) {
+                float[] buffer = new float[ORDER + frames];
+                System.arraycopy(samples[ch], 0, buffer, 0, ORDER);
+                samples[ch] = buffer;
+            }
+        }
+        int fftSize = OverlapSaveConvolver.getOptimalFFTSize(COEFFICIENTS.length, frames);
+        boolean useFFT;
+        switch (convolutionMode) {
+            case DIRECT:
+                useFFT = false;
+                break;
+            case FFT:
+                useFFT = true;
+                break;
+            default:
+                useFFT = ORDER >= Constants.FIR_FFT_CONVOLUTION_MIN_ORDER
+                        && OverlapSaveConvolver.getCostPerSample(fftSize, COEFFICIENTS.length,
+                        frames) < getDirectCostPerSample();
+                break;
+        }
+
+        if (useFFT && fastConvolvers != null && fastConvolvers[0].getFFTSize() == fftSize) {
+            return;
+        }
+        if (fastConvolvers != null) {
+            for (int ch = 0; ch < channels; ch++) {
+                System.arraycopy(fastConvolvers[ch].getHistory(), 0, samples[ch], 0, ORDER);
             }
-            output[i + j] += COEFFICIENTS[j] * input[i];           // Midpoint value
+            fastConvolvers = null;
         }
+        if (useFFT) {
+            fastConvolvers = new OverlapSaveConvolver[channels];
+            for (int ch = 0; ch < channels; ch++) {
+                fastConvolvers[ch] = new OverlapSaveConvolver(COEFFICIENTS, fftSize);
+                System.arraycopy(samples[ch], 0, fastConvolvers[ch].getHistory(), 0, ORDER);
+            }
+        }
+    }
 
-        // Kind of "Overlap-add" in time-domain convolution
-        for (int k = 0; k < COEFFICIENTS.length; ++k) {
-            output[k] += overlap[k];
-            overlap[k] = output[inputLength + k - 1];
+    /**
+     * Returns the last {@code ORDER} input samples of every channel, oldest first,
+     * one channel after the other.
+     *
+     * @return  the input history
+     */
+    private float[] getHistory() {
+        final int channels = getChannels();
+        float[] result = new float[channels * ORDER];
+        for (int ch = 0; ch < channels; ch++) {
+            System.arraycopy(getHistory(ch), 0, result, ch * ORDER, ORDER);
         }
+        return result;
+    }
+
+    /**
+     * Returns the buffer that starts with the last {@code ORDER} input samples of a channel.
+     */
+    private float[] getHistory(int channel) {
+        return fastConvolvers != null ? fastConvolvers[channel].getHistory() : samples[channel];
     }
 
     /**
+     * Returns the number of multiply-adds per output sample of the direct form.
+     *
+     * @return  cost per sample
+     */
+    private float getDirectCostPerSample() {
+        // The symmetric form adds two samples per multiplication
+        return symmetric ? COEFFICIENTS.length / 2 + 1 : COEFFICIENTS.length;
+    }
+
+    /**
+     * <p>
+     *     Discrete convolution using the output side algorithm:
+     *     y[n] = h[0] x[n] + h[1] x[n - 1] + ... + h[N] x[n - N]. </br>
+     *     The block of one channel has been appended to the last {@code ORDER} input samples
+     *     of the channel, so every coefficient multiplies a contiguous range of this buffer
+     *     and the inner loops run over the output samples without wrap-around checks.
+     *     Afterwards the last {@code ORDER} samples are moved to the front as history for
+     *     the next block.
+     * </p>
      * <p>
-     *     Discrete convolution using the output side algorithm.
-     *     FIR filters have symmetrical impulse response. Full convolution is performed but
-     *     not needed calculations due to symmetry in impulse response are eliminated. </br>
-     *     Input and output samples arrays must have the same length.
+     *     With a symmetric impulse response, h[k] = h[N - k], the two samples that share a
+     *     coefficient are added first, which halves the multiplications. Four coefficients
+     *     are applied per pass over the output, the partial sums stay in registers and every
+     *     output sample is loaded and stored only once per four coefficients.
      * </p>
      * <p>
      *     Source: <a href="https://christianfloisand.wordpress.com/2013/02/18/the-different-sides-of-convolution/">christianfloisand.wordpress.com</a>
      * </p>
      *
-     * @param input             array of input samples
+     * @param x                 history of the channel followed by the block
      * @param output            array that will hold the output samples
-     * @param inputLength       the length of the input samples array
+     * @param length            number of samples in the block
      */
-    private void convolveOutputSide(@NonNull float[] input, @NonNull float[] output, int inputLength) {
+    private void convolveOutputSide(@NonNull float[] x, @NonNull float[] output, final int length) {
+        final float[] h = COEFFICIENTS;
 
+        // x[ORDER + n - k] is the input sample x[n - k]
+        int k = 0;
+        if (symmetric) {
+            final int half = h.length / 2;
+            if (h.length % 2 != 0) {
+                final float c = h[half];
+                for (int n = 0; n < length; n++) {
+                    output[n] = c * x[half + n];
+                }
+            } else {
+                Arrays.fill(output, 0, length, 0);
+            }
+            for (; k + 3 < half; k += 4) {
+                final float c0 = h[k];
+                final float c1 = h[k + 1];
+                final float c2 = h[k + 2];
+                final float c3 = h[k + 3];
+                final int a = ORDER - k;
+                for (int n = 0; n < length; n++) {
+                    output[n] += c0 * (x[a + n] + x[k + n])
+                            + c1 * (x[a - 1 + n] + x[k + 1 + n])
+                            + c2 * (x[a - 2 + n] + x[k + 2 + n])
+                            + c3 * (x[a - 3 + n] + x[k + 3 + n]);
+                }
+            }
+            for (; k < half; k++) {
+                final float c = h[k];
+                final int a = ORDER - k;
+                for (int n = 0; n < length; n++) {
+                    output[n] += c * (x[a + n] + x[k + n]);
+                }
+            }
+        } else {
+            Arrays.fill(output, 0, length, 0);
+            for (; k + 3 < h.length; k += 4) {
+                final float c0 = h[k];
+                final float c1 = h[k + 1];
+                final float c2 = h[k + 2];
+                final float c3 = h[k + 3];
+                final int a = ORDER - k;
+                for (int n = 0; n < length; n++) {
+                    output[n] += c0 * x[a + n] + c1 * x[a - 1 + n]
+                            + c2 * x[a - 2 + n] + c3 * x[a - 3 + n];
+                }
+            }
+            for (; k < h.length; k++) {
+                final float c = h[k];
+                final int a = ORDER - k;
+                for (int n = 0; n < length; n++) {
+                    output[n] += c * x[a + n];
+                }
+            }
+        }
+        System.arraycopy(x, length, x, 0, ORDER);
+    }
+
+    private static boolean isSymmetric(float[] coefficients) {
+        for (int i = 0, j = coefficients.length - 1; i < j; i++, j--) {
+            if (coefficients[i] != coefficients[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void addConfiguration(@NonNull List<Object> key) {
+        key.add(COEFFICIENTS);
     }
 
     @Override
@@ -161,14 +466,22 @@ public class FIRFilter extends Filter {
         dest.writeParcelable(this.filterSpec, flags);
         dest.writeInt(this.ORDER);
         dest.writeFloatArray(this.COEFFICIENTS);
-        dest.writeFloatArray(this.overlap);
+        dest.writeInt(getChannels());
+        dest.writeFloatArray(getHistory());
     }
 
     protected FIRFilter(Parcel in) {
         this.filterSpec = in.readParcelable(FilterSpec.class.getClassLoader());
         this.ORDER = in.readInt();
         this.COEFFICIENTS = in.createFloatArray();
-        this.overlap = in.createFloatArray();
+        this.symmetric = isSymmetric(COEFFICIENTS);
+        int channels = in.readInt();
+        super.setChannels(channels);
+        float[] history = in.createFloatArray();
+        this.samples = new float[channels][];
+        for (int ch = 0; ch < channels; ch++) {
+            samples[ch] = Arrays.copyOfRange(history, ch * ORDER, (ch + 1) * ORDER);
+        }
     }
 
     public static final Creator<FIRFilter> CREATOR = new Creator<FIRFilter>() {
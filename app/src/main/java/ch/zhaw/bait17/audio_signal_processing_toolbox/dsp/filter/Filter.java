@@ -16,13 +16,24 @@ public abstract class Filter extends AudioEffect {
      *
      * @return filter order
      */
-    abstract int getOrder();
+    public abstract int getOrder();
+
+    /**
+     * Returns the length of the impulse response of a filter of the given order. IIR filters
+     * override it.
+     *
+     * @return tail time in seconds
+     */
+    @Override
+    public float getTailTime() {
+        return getOrder() / (float) getSamplingFrequency();
+    }
 
     /**
      * Returns the filter specification.
      *
      * @return
      */
-    abstract FilterSpec getFilterSpec();
+    public abstract FilterSpec getFilterSpec();
 
 }
@@ -0,0 +1,205 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ *     A set of FIR filters in a compact binary format. The format is written at build time
+ *     by the {@code convertFilterBank} task of the app module from the text filter files.
+ * </p>
+ * <p>
+ *     All values are big-endian:
+ *     <pre>
+ *     int      magic "FBNK"
+ *     int      version
+ *     int      number of filters
+ *     per filter, 48 bytes:
+ *         int      filter type: 0 lowpass, 1 highpass, 2 bandpass, 3 bandstop
+ *         int      order
+ *         float    fpass1, fpass2, Apass1, Apass2, fstop1, fstop2, Astop1, Astop2
+ *         int      number of coefficients
+ *         int      offset of the coefficients from the start of the file in bytes
+ *     float[]  coefficients of all filters
+ *     </pre>
+ * </p>
+ * <p>
+ *     Only the table of contents is parsed when the filter bank is opened. The coefficients
+ *     stay in the buffer, usually a memory-mapped asset, until a filter is used, see
+ *     {@link LazyFIRFilter}.
+ * </p>
+ * <p>
+ *     A filter bank opened with a name can be found again by {@link #getOpened(String)},
+ *     so a {@link LazyFIRFilter} is parcelled by name and index instead of its coefficients.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class FilterBank {
+
+    public static final int MAGIC = 0x46424E4B;
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int ENTRY_SIZE = 48;
+    private static final FilterType[] FILTER_TYPES = {FilterType.LOWPASS, FilterType.HIGHPASS,
+            FilterType.BANDPASS, FilterType.BANDSTOP};
+
+    private static final Map<String, FilterBank> OPENED = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final ByteBuffer buffer;
+    private final FilterSpec[] filterSpecs;
+    private final int[] coefficientCounts;
+    private final int[] coefficientOffsets;
+
+    /**
+     * Opens a filter bank and reads its table of contents.
+     *
+     * @param buffer                        the content of a filter bank file
+     * @throws IllegalArgumentException     if the buffer does not hold a valid filter bank
+     */
+    public FilterBank(@NonNull ByteBuffer buffer) {
+        this(null, buffer);
+    }
+
+    /**
+     * Opens a filter bank, reads its table of contents and registers it under its name.
+     *
+     * @param name                          the name of the filter bank, e.g. the asset name
+     * @param buffer                        the content of a filter bank file
+     * @throws IllegalArgumentException     if the buffer does not hold a valid filter bank
+     */
+    public FilterBank(@Nullable String name, @NonNull ByteBuffer buffer) {
+        this.name = name;
+        this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        this.buffer.position(0);
+        try {
+            if (this.buffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a filter bank.");
+            }
+            if (this.buffer.getInt() != VERSION) {
+                throw new IllegalArgumentException("Unsupported filter bank version.");
+            }
+            int count = this.buffer.getInt();
+            if (count < 0 || count > (this.buffer.limit() - HEADER_SIZE) / ENTRY_SIZE) {
+                throw new IllegalArgumentException("Invalid number of filters.");
+            }
+            filterSpecs = new FilterSpec[count];
+            coefficientCounts = new int[count];
+            coefficientOffsets = new int[count];
+            for (int i = 0; i < count; i++) {
+                readEntry(i);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Filter bank is truncated.");
+        }
+        if (name != null) {
+            OPENED.put(name, this);
+        }
+    }
+
+    /**
+     * Returns the filter bank last opened under a name in this process.
+     *
+     * @param name      the name of the filter bank
+     * @return          the filter bank or null if it has not been opened
+     */
+    @Nullable
+    public static FilterBank getOpened(@NonNull String name) {
+        return OPENED.get(name);
+    }
+
+    /**
+     * Returns the name of the filter bank.
+     *
+     * @return  the name or null if the filter bank was opened without a name
+     */
+    @Nullable
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of filters.
+     *
+     * @return  number of filters
+     */
+    public int size() {
+        return filterSpecs.length;
+    }
+
+    /**
+     * Returns the specification of a filter.
+     *
+     * @param index     index of the filter
+     * @return          the filter specification
+     */
+    public FilterSpec getFilterSpec(int index) {
+        return filterSpecs[index];
+    }
+
+    /**
+     * Returns the number of coefficients of a filter.
+     *
+     * @param index     index of the filter
+     * @return          the number of coefficients
+     */
+    public int getCoefficientCount(int index) {
+        return coefficientCounts[index];
+    }
+
+    /**
+     * Reads the coefficients of a filter with a bulk read from the buffer.
+     *
+     * @param index     index of the filter
+     * @return          the filter coefficients
+     */
+    public float[] getCoefficients(int index) {
+        float[] coefficients = new float[coefficientCounts[index]];
+        ByteBuffer view = buffer.duplicate();
+        view.position(coefficientOffsets[index]);
+        view.order(ByteOrder.BIG_ENDIAN).asFloatBuffer().get(coefficients);
+        return coefficients;
+    }
+
+    /**
+     * Returns a filter that reads its coefficients when it is used for the first time.
+     *
+     * @param index     index of the filter
+     * @return          the filter
+     */
+    public LazyFIRFilter getFilter(int index) {
+        return new LazyFIRFilter(this, index);
+    }
+
+    private void readEntry(int index) {
+        int type = buffer.getInt();
+        if (type < 0 || type >= FILTER_TYPES.length) {
+            throw new IllegalArgumentException("Unknown filter type " + type + ".");
+        }
+        FilterSpec.Builder builder = new FilterSpec.Builder(FILTER_TYPES[type], buffer.getInt());
+        builder.frequencyPassBand1(buffer.getFloat())
+                .frequencyPassBand2(buffer.getFloat())
+                .amountRipplePassBand1(buffer.getFloat())
+                .amountRipplePassBand2(buffer.getFloat())
+                .frequencyStopBand1(buffer.getFloat())
+                .frequencyStopBand2(buffer.getFloat())
+                .attenuationStopBand1(buffer.getFloat())
+                .attenuationStopBand2(buffer.getFloat());
+        filterSpecs[index] = builder.build();
+        int count = buffer.getInt();
+        int offset = buffer.getInt();
+        if (count < 1 || offset < HEADER_SIZE || offset % 4 != 0
+                || (long) offset + 4L * count > buffer.limit()) {
+            throw new IllegalArgumentException("Invalid coefficients of filter " + index + ".");
+        }
+        coefficientCounts[index] = count;
+        coefficientOffsets[index] = offset;
+    }
+}
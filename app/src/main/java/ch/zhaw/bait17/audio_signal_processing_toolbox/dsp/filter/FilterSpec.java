@@ -40,6 +40,10 @@ public class FilterSpec implements Parcelable {
         return filterType;
     }
 
+    public int getOrder() {
+        return order;
+    }
+
     public float getFpass1() {
         return fpass1;
     }
@@ -77,29 +81,71 @@ public class FilterSpec implements Parcelable {
         return getDescription();
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        FilterSpec that = (FilterSpec) o;
+        return filterType == that.filterType && order == that.order
+                && Float.compare(fpass1, that.fpass1) == 0 && Float.compare(fpass2, that.fpass2) == 0
+                && Float.compare(Apass1, that.Apass1) == 0 && Float.compare(Apass2, that.Apass2) == 0
+                && Float.compare(fstop1, that.fstop1) == 0 && Float.compare(fstop2, that.fstop2) == 0
+                && Float.compare(Astop1, that.Astop1) == 0 && Float.compare(Astop2, that.Astop2) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = filterType != null ? filterType.hashCode() : 0;
+        result = 31 * result + order;
+        result = 31 * result + Float.floatToIntBits(fpass1);
+        result = 31 * result + Float.floatToIntBits(fpass2);
+        result = 31 * result + Float.floatToIntBits(Apass1);
+        result = 31 * result + Float.floatToIntBits(Apass2);
+        result = 31 * result + Float.floatToIntBits(fstop1);
+        result = 31 * result + Float.floatToIntBits(fstop2);
+        result = 31 * result + Float.floatToIntBits(Astop1);
+        result = 31 * result + Float.floatToIntBits(Astop2);
+        return result;
+    }
+
     public String getDescription() {
+        return getDescription("FIR", order);
+    }
+
+    /**
+     * Returns a description of the specification for a filter of the given structure and order.
+     *
+     * @param structure     filter structure, e.g. "FIR" or "IIR elliptic"
+     * @param order         order of the filter that implements the specification
+     * @return              description
+     */
+    public String getDescription(@NonNull String structure, int order) {
         String output = "";
         Locale locale = Locale.getDefault();
         switch (filterType) {
             case LOWPASS:
                 output = String.format(locale,
-                        "FIR, order %d, fpass %5.0f Hz, Apass %.2f dB, fstop %5.0f Hz, Astop %3.0f dB",
-                        order, fpass1, Apass1, fstop1, Astop1);
+                        "%s, order %d, fpass %5.0f Hz, Apass %.2f dB, fstop %5.0f Hz, Astop %3.0f dB",
+                        structure, order, fpass1, Apass1, fstop1, Astop1);
                 break;
             case HIGHPASS:
                 output = String.format(locale,
-                        "FIR, order %d, fstop %5.0f Hz, Astop %3.0f dB, fpass %5.0f Hz, Apass %.2f dB",
-                        order, fstop1, Astop1, fpass1, Apass1);
+                        "%s, order %d, fstop %5.0f Hz, Astop %3.0f dB, fpass %5.0f Hz, Apass %.2f dB",
+                        structure, order, fstop1, Astop1, fpass1, Apass1);
                 break;
             case BANDPASS:
                 output = String.format(locale,
-                        "FIR, order %d, fstop1 %5.0f Hz, Astop1 %3.0f dB, fpass1 %5.0f Hz, Apass %.2f dB, fpass2 %5.0f Hz, fstop2 %5.0f Hz, Astop2 %3.0f dB",
-                        order, fstop1, Astop1, fpass1, Apass1, fpass2, fstop2, Astop2);
+                        "%s, order %d, fstop1 %5.0f Hz, Astop1 %3.0f dB, fpass1 %5.0f Hz, Apass %.2f dB, fpass2 %5.0f Hz, fstop2 %5.0f Hz, Astop2 %3.0f dB",
+                        structure, order, fstop1, Astop1, fpass1, Apass1, fpass2, fstop2, Astop2);
                 break;
             case BANDSTOP:
                 output = String.format(locale,
-                        "FIR, order %d, fpass1 %5.0f Hz, Apass1 %.2f dB, fstop1 %5.0f Hz, Astop %3.0f dB, fstop2 %5.0f Hz, fpass2 %5.0f Hz, Apass2 %.2f dB",
-                        order, fpass1, Apass1, fstop1, Astop1, fstop2, fpass2, Apass2);
+                        "%s, order %d, fpass1 %5.0f Hz, Apass1 %.2f dB, fstop1 %5.0f Hz, Astop %3.0f dB, fstop2 %5.0f Hz, fpass2 %5.0f Hz, Apass2 %.2f dB",
+                        structure, order, fpass1, Apass1, fstop1, Astop1, fstop2, fpass2, Apass2);
                 break;
             default:
                 break;
@@ -1,23 +1,32 @@
 package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
 
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 import android.widget.Toast;
 
+import com.google.common.io.ByteStreams;
 import com.google.common.primitives.Floats;
 
 import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import ch.zhaw.bait17.audio_signal_processing_toolbox.decoder.WaveDecoder;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.util.ApplicationContext;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.PCMUtil;
 
 /**
  * <p>
@@ -49,6 +58,94 @@ public class FilterUtil {
         return filter;
     }
 
+    /**
+     * <p>
+     *     Opens a filter bank asset, see {@link FilterBank}. The asset is memory-mapped if it
+     *     is stored uncompressed in the APK, otherwise it is read with a single bulk read.
+     *     Only the table of contents is parsed.
+     * </p>
+     *
+     * @param assets    the asset manager
+     * @param name      the name of the filter bank asset
+     * @return          the filter bank or null if it could not be read
+     */
+    @Nullable
+    public static FilterBank getFilterBank(@NonNull AssetManager assets, @NonNull String name) {
+        try {
+            ByteBuffer buffer;
+            try (AssetFileDescriptor fd = assets.openFd(name);
+                 FileInputStream is = fd.createInputStream()) {
+                buffer = is.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        fd.getStartOffset(), fd.getLength());
+            } catch (FileNotFoundException ex) {
+                // Compressed assets cannot be mapped
+                try (InputStream is = assets.open(name)) {
+                    buffer = ByteBuffer.wrap(ByteStreams.toByteArray(is));
+                }
+            }
+            return new FilterBank(name, buffer);
+        } catch (IOException | IllegalArgumentException ex) {
+            Toast.makeText(ApplicationContext.getAppContext(),
+                    "Failed to read filter bank.\n" + ex.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+        return null;
+    }
+
+    /**
+     * <p>
+     *     Creates an IIR filter that meets the specification of the given filter.
+     * </p>
+     *
+     * @param filter        a filter, e.g. a FIR filter read by {@link #getFilter(InputStream)}
+     * @param method        the IIR design method
+     * @return              the IIR filter or null if the specification cannot be met
+     */
+    @Nullable
+    public static IIRFilter getIIRFilter(@NonNull Filter filter, @NonNull IIRDesignMethod method) {
+        try {
+            return new IIRFilter(filter.getFilterSpec(), method);
+        } catch (IllegalArgumentException ex) {
+            Log.e(TAG, "Failed to design IIR filter: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * <p>
+     *     Reads an impulse response from a 16 bit PCM WAVE file. Multi-channel impulse responses
+     *     are mixed down to mono.
+     * </p>
+     *
+     * @param is    the {@code InputStream} of the WAVE file
+     * @return      the impulse response or null if the file could not be read
+     */
+    @Nullable
+    public static float[] getImpulseResponse(InputStream is) {
+        WaveDecoder decoder = WaveDecoder.newInstance();
+        decoder.setSource(is);
+        if (!decoder.isInitialised()) {
+            return null;
+        }
+        int channels = decoder.getChannels();
+        List<Float> impulseResponse = new ArrayList<>();
+        short[] samples;
+        while ((samples = decoder.getNextSampleBlock()) != null) {
+            for (int i = 0; i + channels <= samples.length; i += channels) {
+                float sum = 0;
+                for (int c = 0; c < channels; c++) {
+                    sum += PCMUtil.short2Float(samples[i + c]);
+                }
+                impulseResponse.add(sum / channels);
+            }
+        }
+        if (impulseResponse.isEmpty()) {
+            Toast.makeText(ApplicationContext.getAppContext(),
+                    "Impulse response is empty.", Toast.LENGTH_SHORT).show();
+            return null;
+        }
+        return Floats.toArray(impulseResponse);
+    }
+
     private static float[] getParsedCoefficients(String[] coeffs) {
         List<Float> coefficients = new ArrayList<>();
         for (String s : coeffs) {
@@ -0,0 +1,150 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+import android.support.annotation.NonNull;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.fft.Window;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.fft.WindowType;
+
+/**
+ * <p>
+ *     Decimates a signal by 2 with a half-band low-pass filter. <br>
+ *     Every second coefficient of a half-band filter apart from the centre tap is zero and
+ *     the filter is symmetric. Only every second output is computed, the zero taps are skipped
+ *     and symmetric taps share one multiplication, so an output sample of a filter of length N
+ *     costs about N / 4 multiplications.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class HalfBandDecimator {
+
+    private final float[] coefficients;
+    private final int length;
+    private final int centre;
+    // Doubled history so that the last <length> samples are always contiguous
+    private final float[] history;
+    private int position = 0;
+    // The first input sample produces an output, as in PolyphaseDecimator
+    private boolean skip = true;
+    private float output;
+
+    /**
+     * Creates an instance of {@code HalfBandDecimator} with a Blackman-windowed half-band filter.
+     *
+     * @param length                        number of filter coefficients, length = 4k + 3
+     * @throws IllegalArgumentException     if length is not of the form 4k + 3
+     */
+    public HalfBandDecimator(int length) {
+        this(designHalfBand(length));
+    }
+
+    /**
+     * Creates an instance of {@code HalfBandDecimator} with the given half-band filter.
+     * Coefficients at odd distance from the centre are used, all others apart from the
+     * centre tap are assumed to be zero.
+     *
+     * @param coefficients                  symmetric half-band filter of length 4k + 3
+     * @throws IllegalArgumentException     if the length is not of the form 4k + 3
+     */
+    public HalfBandDecimator(@NonNull float[] coefficients) {
+        if (coefficients.length % 4 != 3) {
+            throw new IllegalArgumentException("Half-band filter length must be 4k + 3.");
+        }
+        this.coefficients = coefficients.clone();
+        length = coefficients.length;
+        centre = length / 2;
+        history = new float[2 * length];
+    }
+
+    /**
+     * Pushes one input sample into the decimator.
+     *
+     * @param sample    input sample
+     * @return          true if an output sample was produced, see {@link #getOutput()}
+     */
+    public boolean processSample(float sample) {
+        position = position == 0 ? length - 1 : position - 1;
+        history[position] = sample;
+        history[position + length] = sample;
+        skip = !skip;
+        if (skip) {
+            return false;
+        }
+        int mid = position + centre;
+        float acc = coefficients[centre] * history[mid];
+        for (int k = 1; k <= centre; k += 2) {
+            acc += coefficients[centre + k] * (history[mid + k] + history[mid - k]);
+        }
+        output = acc;
+        return true;
+    }
+
+    /**
+     * Decimates a block of samples.
+     *
+     * @param input     input samples
+     * @param output    output samples, must hold at least input.length / 2 + 1 samples
+     * @return          number of output samples written
+     */
+    public int process(@NonNull float[] input, @NonNull float[] output) {
+        int count = 0;
+        for (float sample : input) {
+            if (processSample(sample)) {
+                output[count++] = this.output;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the most recent output sample.
+     *
+     * @return  output sample
+     */
+    public float getOutput() {
+        return output;
+    }
+
+    /**
+     * Clears the history.
+     */
+    public void reset() {
+        for (int i = 0; i < history.length; i++) {
+            history[i] = 0;
+        }
+        position = 0;
+        skip = true;
+    }
+
+    /**
+     * Designs a Blackman-windowed half-band low-pass filter with cut-off at a quarter of the
+     * sample rate and unity gain at DC. Every second coefficient apart from the centre tap is zero.
+     *
+     * @param length                        number of coefficients, length = 4k + 3
+     * @return                              filter coefficients
+     * @throws IllegalArgumentException     if length is not of the form 4k + 3
+     */
+    public static float[] designHalfBand(int length) {
+        if (length % 4 != 3) {
+            throw new IllegalArgumentException("Half-band filter length must be 4k + 3.");
+        }
+        float[] w = new Window(WindowType.BLACKMAN).getWindow(length);
+        float[] h = new float[length];
+        int centre = length / 2;
+        float sum = 0;
+        for (int n = 0; n < length; n++) {
+            int k = n - centre;
+            if (k == 0) {
+                h[n] = 0.5f * w[n];
+            } else if (k % 2 != 0) {
+                h[n] = (float) (Math.sin(Math.PI * k / 2) / (Math.PI * k)) * w[n];
+            }
+            sum += h[n];
+        }
+        // Unity gain at DC
+        for (int n = 0; n < length; n++) {
+            h[n] /= sum;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,103 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+import android.support.annotation.NonNull;
+
+/**
+ * <p>
+ *     Interpolates a signal by 2 with a half-band low-pass filter. <br>
+ *     Of the two polyphase branches of a half-band filter of length 4k + 3 one contains only
+ *     the centre tap, its output is a delayed copy of the input. The other branch contains the
+ *     non-zero symmetric taps, which share one multiplication per pair. Two output samples
+ *     cost about N / 4 multiplications for a filter of length N.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class HalfBandInterpolator {
+
+    // Non-zero taps of the even branch, scaled by 2: 2 * h[2i] for i = 0 .. k
+    private final float[] taps;
+    private final int branchLength;
+    private final int delay;
+    private final float centreTap;
+    // Doubled history so that the last <branchLength> samples are always contiguous
+    private final float[] history;
+    private int position = 0;
+
+    /**
+     * Creates an instance of {@code HalfBandInterpolator} with a Blackman-windowed half-band filter.
+     *
+     * @param length                        number of filter coefficients, length = 4k + 3
+     * @throws IllegalArgumentException     if length is not of the form 4k + 3
+     */
+    public HalfBandInterpolator(int length) {
+        this(HalfBandDecimator.designHalfBand(length));
+    }
+
+    /**
+     * Creates an instance of {@code HalfBandInterpolator} with the given half-band filter.
+     *
+     * @param coefficients                  symmetric half-band filter of length 4k + 3
+     * @throws IllegalArgumentException     if the length is not of the form 4k + 3
+     */
+    public HalfBandInterpolator(@NonNull float[] coefficients) {
+        if (coefficients.length % 4 != 3) {
+            throw new IllegalArgumentException("Half-band filter length must be 4k + 3.");
+        }
+        int k = coefficients.length / 4;
+        branchLength = 2 * k + 2;
+        delay = k;
+        taps = new float[k + 1];
+        for (int i = 0; i <= k; i++) {
+            taps[i] = 2 * coefficients[2 * i];
+        }
+        centreTap = 2 * coefficients[coefficients.length / 2];
+        history = new float[2 * branchLength];
+    }
+
+    /**
+     * Interpolates a block of samples.
+     *
+     * @param input     input samples
+     * @param output    output samples, must hold at least 2 * input.length samples
+     * @return          number of output samples written
+     */
+    public int process(@NonNull float[] input, @NonNull float[] output) {
+        int count = 0;
+        for (float sample : input) {
+            processSample(sample, output, count);
+            count += 2;
+        }
+        return count;
+    }
+
+    /**
+     * Pushes one input sample into the interpolator and writes two output samples.
+     *
+     * @param sample    input sample
+     * @param output    output array
+     * @param offset    index of the first output sample
+     */
+    public void processSample(float sample, @NonNull float[] output, int offset) {
+        position = position == 0 ? branchLength - 1 : position - 1;
+        history[position] = sample;
+        history[position + branchLength] = sample;
+        float acc = 0;
+        final int last = position + branchLength - 1;
+        for (int i = 0; i < taps.length; i++) {
+            acc += taps[i] * (history[position + i] + history[last - i]);
+        }
+        output[offset] = acc;
+        output[offset + 1] = centreTap * history[position + delay];
+    }
+
+    /**
+     * Clears the history.
+     */
+    public void reset() {
+        for (int i = 0; i < history.length; i++) {
+            history[i] = 0;
+        }
+        position = 0;
+    }
+}
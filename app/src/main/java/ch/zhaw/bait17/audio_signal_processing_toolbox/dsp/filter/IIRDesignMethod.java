@@ -0,0 +1,24 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+/**
+ * Enumerator for the IIR filter design methods of {@link IIRDesigner}.
+ *
+ * @author georgrem, stockan1
+ */
+
+public enum IIRDesignMethod {
+
+    BUTTERWORTH("Butterworth"), CHEBYSHEV("Chebyshev"), ELLIPTIC("elliptic");
+
+    private String label;
+
+    IIRDesignMethod(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+
+}
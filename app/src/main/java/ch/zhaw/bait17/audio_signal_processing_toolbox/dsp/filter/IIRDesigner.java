@@ -0,0 +1,563 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+import android.support.annotation.NonNull;
+
+import org.apache.commons.math3.complex.Complex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     Designs IIR filters as cascades of second order sections from a {@link FilterSpec}. <br>
+ *     The minimum order that meets the pass band ripple Apass and the stop band attenuation
+ *     Astop at the band edges is estimated for the design method, the order of the
+ *     specification itself refers to a FIR design and is ignored.
+ * </p>
+ * <p>
+ *     The design follows the classical steps:
+ *     <ul>
+ *         <li>analog low-pass prototype with the pass band edge at 1 rad/s
+ *         ({@link IIRDesignMethod#BUTTERWORTH}, {@link IIRDesignMethod#CHEBYSHEV} type I or
+ *         {@link IIRDesignMethod#ELLIPTIC})</li>
+ *         <li>analog frequency transformation to low-pass, high-pass, band-pass or band-stop
+ *         with pre-warped band edges</li>
+ *         <li>bilinear transformation</li>
+ *         <li>grouping of poles and zeros into second order sections, the poles closest to the
+ *         unit circle are paired with their nearest zeros and placed last in the cascade</li>
+ *     </ul>
+ *     Every section is scaled to unity gain in the centre of the pass band, the first section
+ *     carries the pass band gain of the prototype.
+ * </p>
+ * <p>
+ *     See S. J. Orfanidis, Lecture Notes on Elliptic Filter Design, Rutgers University, 2006 and
+ *     A. V. Oppenheim, R. W. Schafer, Discrete-Time Signal Processing, chapter 7.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public final class IIRDesigner {
+
+    private static final double REAL_TOLERANCE = 1e-9;
+    private static final double LANDEN_TOLERANCE = 1e-15;
+    private static final int LANDEN_MAX_ITERATIONS = 16;
+
+    private IIRDesigner() {
+    }
+
+    /**
+     * Returns the order of the digital filter that meets the specification.
+     *
+     * @param filterSpec                    filter specification
+     * @param sampleRate                    sample rate in Hz
+     * @param method                        design method
+     * @return                              filter order
+     * @throws IllegalArgumentException     if the specification is not valid
+     */
+    public static int getOrder(@NonNull FilterSpec filterSpec, int sampleRate,
+                               @NonNull IIRDesignMethod method) {
+        Edges edges = new Edges(filterSpec, sampleRate);
+        return edges.getOrderMultiplier() * estimatePrototypeOrder(edges, method);
+    }
+
+    /**
+     * <p>
+     *     Designs the second order sections of an IIR filter. Every section is returned as
+     *     {b0, b1, b2, a1, a2} with a0 = 1, see {@link BiquadCascade}.
+     * </p>
+     *
+     * @param filterSpec                    filter specification
+     * @param sampleRate                    sample rate in Hz
+     * @param method                        design method
+     * @return                              coefficients of the sections
+     * @throws IllegalArgumentException     if the specification is not valid
+     */
+    public static double[][] design(@NonNull FilterSpec filterSpec, int sampleRate,
+                                    @NonNull IIRDesignMethod method) {
+        Edges edges = new Edges(filterSpec, sampleRate);
+        int order = estimatePrototypeOrder(edges, method);
+
+        List<Complex> zeros = new ArrayList<>();
+        List<Complex> poles = new ArrayList<>();
+        double passBandGain;
+        switch (method) {
+            case BUTTERWORTH:
+                passBandGain = butterworth(order, edges.passRipple, poles);
+                break;
+            case CHEBYSHEV:
+                passBandGain = chebyshev(order, edges.passRipple, poles);
+                break;
+            default:
+                passBandGain = elliptic(order, edges.passRipple, edges.stopRipple, zeros, poles);
+                break;
+        }
+        int infiniteZeros = edges.transform(zeros, poles);
+        bilinear(zeros, infiniteZeros);
+        bilinear(poles, 0);
+        return createSections(zeros, poles, edges.getReferenceFrequency(), passBandGain);
+    }
+
+    private static int estimatePrototypeOrder(Edges edges, IIRDesignMethod method) {
+        double selectivity = edges.getPrototypeStopEdge();
+        double ratio = edges.stopRipple / edges.passRipple;
+        double order;
+        switch (method) {
+            case BUTTERWORTH:
+                order = Math.log(ratio) / Math.log(selectivity);
+                break;
+            case CHEBYSHEV:
+                order = acosh(ratio) / acosh(selectivity);
+                break;
+            default:
+                double k = 1 / selectivity;
+                double k1 = 1 / ratio;
+                order = ellipk(k) * ellipk(complement(k1)) / (ellipk(complement(k)) * ellipk(k1));
+                break;
+        }
+        // Guard against orders like 4.0000000001 caused by rounding
+        int n = (int) Math.ceil(order - 1e-9);
+        return Math.max(1, Math.min(n, Constants.IIR_MAX_PROTOTYPE_ORDER));
+    }
+
+    /**
+     * Butterworth prototype, the attenuation at 1 rad/s equals the pass band ripple.
+     */
+    private static double butterworth(int order, double passRipple, List<Complex> poles) {
+        double radius = Math.pow(passRipple, -1.0 / order);
+        for (int k = 0; k < order; k++) {
+            double theta = Math.PI * (2 * k + 1) / (2 * order);
+            poles.add(new Complex(-radius * Math.sin(theta), radius * Math.cos(theta)));
+        }
+        return 1;
+    }
+
+    /**
+     * Chebyshev type I prototype with equiripple pass band up to 1 rad/s.
+     */
+    private static double chebyshev(int order, double passRipple, List<Complex> poles) {
+        double mu = asinh(1 / passRipple) / order;
+        for (int k = 0; k < order; k++) {
+            double theta = Math.PI * (2 * k + 1) / (2 * order);
+            poles.add(new Complex(-Math.sinh(mu) * Math.sin(theta), Math.cosh(mu) * Math.cos(theta)));
+        }
+        return order % 2 == 1 ? 1 : 1 / Math.sqrt(1 + passRipple * passRipple);
+    }
+
+    /**
+     * Elliptic prototype with equiripple pass band up to 1 rad/s and equiripple stop band.
+     * The selectivity is raised to the value the order allows, the attenuation is met exactly.
+     */
+    private static double elliptic(int order, double passRipple, double stopRipple,
+                                   List<Complex> zeros, List<Complex> poles) {
+        double k1 = passRipple / stopRipple;
+        double k = ellipdeg(order, k1);
+        Complex v0 = asne(new Complex(0, 1 / passRipple), k1).multiply(new Complex(0, -1.0 / order));
+        for (int i = 1; i <= order / 2; i++) {
+            double u = (2.0 * i - 1) / order;
+            Complex zeta = cde(new Complex(u, 0), k);
+            Complex zero = Complex.I.divide(zeta.multiply(k));
+            Complex pole = Complex.I.multiply(cde(new Complex(u, 0).subtract(Complex.I.multiply(v0)), k));
+            zeros.add(zero);
+            zeros.add(zero.conjugate());
+            poles.add(pole);
+            poles.add(pole.conjugate());
+        }
+        if (order % 2 == 1) {
+            Complex pole = Complex.I.multiply(sne(Complex.I.multiply(v0), k));
+            poles.add(new Complex(pole.getReal(), 0));
+        }
+        return order % 2 == 1 ? 1 : 1 / Math.sqrt(1 + passRipple * passRipple);
+    }
+
+    /**
+     * Maps the roots from the s-plane (pre-warped frequencies) to the z-plane with
+     * z = (1 + s) / (1 - s). Roots at infinity are mapped to z = -1.
+     */
+    private static void bilinear(List<Complex> roots, int infiniteRoots) {
+        for (int i = 0; i < roots.size(); i++) {
+            Complex s = roots.get(i);
+            roots.set(i, Complex.ONE.add(s).divide(Complex.ONE.subtract(s)));
+        }
+        for (int i = 0; i < infiniteRoots; i++) {
+            roots.add(new Complex(-1, 0));
+        }
+    }
+
+    /**
+     * Groups the roots into second order sections and scales the sections to unity gain
+     * at the reference frequency.
+     */
+    private static double[][] createSections(List<Complex> zeros, List<Complex> poles,
+                                             double referenceFrequency, double passBandGain) {
+        List<double[]> poleFactors = factorise(poles);
+        List<double[]> zeroFactors = factorise(zeros);
+        // Poles closest to the unit circle first, they choose their zeros first
+        Collections.sort(poleFactors, new Comparator<double[]>() {
+            @Override
+            public int compare(double[] a, double[] b) {
+                return Double.compare(Math.abs(b[2]), Math.abs(a[2]));
+            }
+        });
+
+        int count = poleFactors.size();
+        double[][] sections = new double[count][];
+        Complex z = Complex.I.multiply(referenceFrequency).exp();
+        for (int i = 0; i < count; i++) {
+            double[] denominator = poleFactors.get(i);
+            double[] numerator = takeNearest(zeroFactors, denominator);
+            Complex h = evaluate(numerator, z).divide(evaluate(denominator, z));
+            double scale = 1 / h.abs();
+            // Highest Q section last in the cascade
+            sections[count - 1 - i] = new double[]{numerator[0] * scale, numerator[1] * scale,
+                    numerator[2] * scale, denominator[1], denominator[2]};
+        }
+        for (int i = 0; i < 3; i++) {
+            sections[0][i] *= passBandGain;
+        }
+        return sections;
+    }
+
+    /**
+     * Combines the roots to real polynomials {1, c1, c2} of first or second order in z^-1.
+     * Complex roots are combined with their conjugate, real roots in pairs of similar value.
+     * The fourth element holds the root with the largest imaginary part, used for pairing.
+     */
+    private static List<double[]> factorise(List<Complex> roots) {
+        List<double[]> factors = new ArrayList<>();
+        List<Double> reals = new ArrayList<>();
+        for (Complex root : roots) {
+            if (Math.abs(root.getImaginary()) <= REAL_TOLERANCE * (1 + root.abs())) {
+                reals.add(root.getReal());
+            } else if (root.getImaginary() > 0) {
+                factors.add(new double[]{1, -2 * root.getReal(), root.abs() * root.abs(),
+                        root.getReal(), root.getImaginary()});
+            }
+        }
+        Collections.sort(reals);
+        for (int i = 0; i < reals.size(); i += 2) {
+            double r1 = reals.get(i);
+            if (i + 1 < reals.size()) {
+                double r2 = reals.get(i + 1);
+                factors.add(new double[]{1, -(r1 + r2), r1 * r2, Math.abs(r1) > Math.abs(r2) ? r1 : r2, 0});
+            } else {
+                factors.add(new double[]{1, -r1, 0, r1, 0});
+            }
+        }
+        return factors;
+    }
+
+    /**
+     * Removes and returns the factor whose root is nearest to the root of the given factor.
+     * A first order factor prefers a first order factor.
+     */
+    private static double[] takeNearest(List<double[]> factors, double[] factor) {
+        int best = -1;
+        double bestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < factors.size(); i++) {
+            double[] candidate = factors.get(i);
+            double distance = Math.hypot(candidate[3] - factor[3], candidate[4] - factor[4]);
+            if (isFirstOrder(candidate) != isFirstOrder(factor)) {
+                distance += 1e3;
+            }
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return factors.remove(best);
+    }
+
+    private static boolean isFirstOrder(double[] factor) {
+        return factor[2] == 0 && factor[4] == 0;
+    }
+
+    /**
+     * Evaluates c0 + c1 z^-1 + c2 z^-2.
+     */
+    private static Complex evaluate(double[] c, Complex z) {
+        Complex zInv = z.reciprocal();
+        return zInv.multiply(c[2]).add(c[1]).multiply(zInv).add(c[0]);
+    }
+
+    // Jacobi elliptic functions with Landen transformations, see Orfanidis
+
+    private static double complement(double k) {
+        return Math.sqrt(1 - k * k);
+    }
+
+    private static double[] landen(double k) {
+        List<Double> moduli = new ArrayList<>();
+        while (k > LANDEN_TOLERANCE && moduli.size() < LANDEN_MAX_ITERATIONS) {
+            double kc = complement(k);
+            k = (k / (1 + kc)) * (k / (1 + kc));
+            moduli.add(k);
+        }
+        double[] v = new double[moduli.size()];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = moduli.get(i);
+        }
+        return v;
+    }
+
+    /**
+     * Complete elliptic integral of the first kind K(k).
+     */
+    private static double ellipk(double k) {
+        double product = 1;
+        for (double v : landen(k)) {
+            product *= 1 + v;
+        }
+        return Math.PI / 2 * product;
+    }
+
+    /**
+     * cd(uK, k), u normalised to the quarter period K.
+     */
+    private static Complex cde(Complex u, double k) {
+        return descend(u.multiply(Math.PI / 2).cos(), k);
+    }
+
+    /**
+     * sn(uK, k), u normalised to the quarter period K.
+     */
+    private static Complex sne(Complex u, double k) {
+        return descend(u.multiply(Math.PI / 2).sin(), k);
+    }
+
+    private static Complex descend(Complex w, double k) {
+        double[] v = landen(k);
+        for (int n = v.length - 1; n >= 0; n--) {
+            w = w.multiply(1 + v[n]).divide(w.multiply(w).multiply(v[n]).add(1));
+        }
+        return w;
+    }
+
+    /**
+     * Inverse of {@link #sne(Complex, double)}.
+     */
+    private static Complex asne(Complex w, double k) {
+        double[] v = landen(k);
+        for (int n = 0; n < v.length; n++) {
+            double v1 = n == 0 ? k : v[n - 1];
+            Complex root = Complex.ONE.subtract(w.multiply(w).multiply(v1 * v1)).sqrt();
+            w = w.divide(root.add(1)).multiply(2 / (1 + v[n]));
+        }
+        return Complex.ONE.subtract(w.acos().multiply(2 / Math.PI));
+    }
+
+    /**
+     * Solves the degree equation for the selectivity k of an elliptic filter of the given
+     * order and discrimination k1.
+     */
+    private static double ellipdeg(int order, double k1) {
+        double k1c = complement(k1);
+        double product = 1;
+        for (int i = 1; i <= order / 2; i++) {
+            product *= sne(new Complex((2.0 * i - 1) / order, 0), k1c).getReal();
+        }
+        double kc = Math.pow(k1c, order) * Math.pow(product, 4);
+        return complement(kc);
+    }
+
+    private static double acosh(double x) {
+        return Math.log(x + Math.sqrt(x * x - 1));
+    }
+
+    private static double asinh(double x) {
+        return Math.log(x + Math.sqrt(x * x + 1));
+    }
+
+    /**
+     * Pre-warped band edges of a specification and the analog frequency transformation
+     * from the low-pass prototype.
+     */
+    private static final class Edges {
+
+        private final FilterType filterType;
+        private final double pass1;
+        private final double pass2;
+        private final double stop1;
+        private final double stop2;
+        private final double passRipple;
+        private final double stopRipple;
+
+        Edges(FilterSpec spec, int sampleRate) {
+            if (sampleRate <= 0) {
+                throw new IllegalArgumentException("Sample rate must be greater than 0.");
+            }
+            if (spec.getFilterType() == null) {
+                throw new IllegalArgumentException("Filter type must not be null.");
+            }
+            filterType = spec.getFilterType();
+            double fs = sampleRate;
+            double[] edges;
+            switch (filterType) {
+                case LOWPASS:
+                    edges = new double[]{spec.getFpass1() / fs, spec.getFstop1() / fs};
+                    break;
+                case HIGHPASS:
+                    edges = new double[]{spec.getFstop1() / fs, spec.getFpass1() / fs};
+                    break;
+                case BANDPASS:
+                    edges = new double[]{spec.getFstop1() / fs, spec.getFpass1() / fs,
+                            spec.getFpass2() / fs, spec.getFstop2() / fs};
+                    break;
+                default:
+                    edges = new double[]{spec.getFpass1() / fs, spec.getFstop1() / fs,
+                            spec.getFstop2() / fs, spec.getFpass2() / fs};
+                    break;
+            }
+            for (int i = 0; i < edges.length; i++) {
+                if (edges[i] <= 0 || edges[i] >= 0.5 || (i > 0 && edges[i] <= edges[i - 1])) {
+                    throw new IllegalArgumentException(
+                            "Band edges must be increasing and lie in (0, fs/2).");
+                }
+            }
+            pass1 = prewarp(spec.getFpass1() / fs);
+            pass2 = prewarp(spec.getFpass2() / fs);
+            stop1 = prewarp(spec.getFstop1() / fs);
+            stop2 = prewarp(spec.getFstop2() / fs);
+
+            float apass = Math.min(positiveOr(spec.getApass1(), Float.MAX_VALUE),
+                    positiveOr(spec.getApass2(), Float.MAX_VALUE));
+            float astop = Math.max(spec.getAstop1(), spec.getAstop2());
+            passRipple = Math.sqrt(Math.pow(10, positiveOr(apass,
+                    Constants.FILTER_DEFAULT_PASS_BAND_RIPPLE) / 10) - 1);
+            stopRipple = Math.sqrt(Math.pow(10, positiveOr(astop,
+                    Constants.FILTER_DEFAULT_STOP_BAND_ATTENUATION) / 10) - 1);
+            if (stopRipple <= passRipple) {
+                throw new IllegalArgumentException(
+                        "Stop band attenuation must be larger than the pass band ripple.");
+            }
+        }
+
+        int getOrderMultiplier() {
+            return filterType == FilterType.BANDPASS || filterType == FilterType.BANDSTOP ? 2 : 1;
+        }
+
+        /**
+         * Returns the stop band edge of the low-pass prototype (pass band edge 1 rad/s).
+         */
+        double getPrototypeStopEdge() {
+            double centre = pass1 * pass2;
+            double bandwidth = pass2 - pass1;
+            switch (filterType) {
+                case LOWPASS:
+                    return stop1 / pass1;
+                case HIGHPASS:
+                    return pass1 / stop1;
+                case BANDPASS:
+                    return Math.min(Math.abs((stop1 * stop1 - centre) / (bandwidth * stop1)),
+                            Math.abs((stop2 * stop2 - centre) / (bandwidth * stop2)));
+                default:
+                    return Math.min(Math.abs(bandwidth * stop1 / (centre - stop1 * stop1)),
+                            Math.abs(bandwidth * stop2 / (centre - stop2 * stop2)));
+            }
+        }
+
+        /**
+         * Returns the digital frequency in rad/sample that the prototype frequency 0 maps to.
+         */
+        double getReferenceFrequency() {
+            switch (filterType) {
+                case HIGHPASS:
+                    return Math.PI;
+                case BANDPASS:
+                    return 2 * Math.atan(Math.sqrt(pass1 * pass2));
+                default:
+                    return 0;
+            }
+        }
+
+        /**
+         * Transforms the prototype roots in place and returns the number of zeros at infinity.
+         */
+        int transform(List<Complex> zeros, List<Complex> poles) {
+            int degree = poles.size() - zeros.size();
+            double centre = pass1 * pass2;
+            double bandwidth = pass2 - pass1;
+            switch (filterType) {
+                case LOWPASS:
+                    scale(zeros, pass1);
+                    scale(poles, pass1);
+                    return degree;
+                case HIGHPASS:
+                    invert(zeros, pass1);
+                    invert(poles, pass1);
+                    addRoots(zeros, Complex.ZERO, degree);
+                    return 0;
+                case BANDPASS:
+                    toBandPass(zeros, centre, bandwidth);
+                    toBandPass(poles, centre, bandwidth);
+                    addRoots(zeros, Complex.ZERO, degree);
+                    return degree;
+                default:
+                    toBandStop(zeros, centre, bandwidth);
+                    toBandStop(poles, centre, bandwidth);
+                    addRoots(zeros, new Complex(0, Math.sqrt(centre)), degree);
+                    addRoots(zeros, new Complex(0, -Math.sqrt(centre)), degree);
+                    return 0;
+            }
+        }
+
+        private static void scale(List<Complex> roots, double factor) {
+            for (int i = 0; i < roots.size(); i++) {
+                roots.set(i, roots.get(i).multiply(factor));
+            }
+        }
+
+        private static void invert(List<Complex> roots, double factor) {
+            for (int i = 0; i < roots.size(); i++) {
+                roots.set(i, roots.get(i).reciprocal().multiply(factor));
+            }
+        }
+
+        /**
+         * s -> (s^2 + w0^2) / (B s): each root r becomes the roots of s^2 - r B s + w0^2.
+         */
+        private static void toBandPass(List<Complex> roots, double centre, double bandwidth) {
+            List<Complex> result = new ArrayList<>();
+            for (Complex root : roots) {
+                Complex b = root.multiply(bandwidth);
+                Complex d = b.multiply(b).subtract(4 * centre).sqrt();
+                result.add(b.add(d).divide(2));
+                result.add(b.subtract(d).divide(2));
+            }
+            roots.clear();
+            roots.addAll(result);
+        }
+
+        /**
+         * s -> B s / (s^2 + w0^2): each root r becomes the roots of s^2 - (B / r) s + w0^2.
+         */
+        private static void toBandStop(List<Complex> roots, double centre, double bandwidth) {
+            List<Complex> result = new ArrayList<>();
+            for (Complex root : roots) {
+                Complex b = root.reciprocal().multiply(bandwidth);
+                Complex d = b.multiply(b).subtract(4 * centre).sqrt();
+                result.add(b.add(d).divide(2));
+                result.add(b.subtract(d).divide(2));
+            }
+            roots.clear();
+            roots.addAll(result);
+        }
+
+        private static void addRoots(List<Complex> roots, Complex root, int count) {
+            for (int i = 0; i < count; i++) {
+                roots.add(root);
+            }
+        }
+
+        private static double prewarp(double normalisedFrequency) {
+            return Math.tan(Math.PI * normalisedFrequency);
+        }
+
+        private static float positiveOr(float value, float fallback) {
+            return value > 0 ? value : fallback;
+        }
+    }
+}
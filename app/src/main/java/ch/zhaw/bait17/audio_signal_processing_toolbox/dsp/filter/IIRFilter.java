@@ -0,0 +1,279 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     A class representing a discrete-time IIR filter designed from a {@link FilterSpec}. <br>
+ *     The filter is designed by {@link IIRDesigner} with the minimum order for the chosen
+ *     design method and runs as a {@link BiquadCascade} with separate state for every
+ *     interleaved channel. A steep specification that needs some hundred coefficients as
+ *     {@link FIRFilter} is met with a few second order sections, at the cost of a non-linear
+ *     phase response.
+ * </p>
+ * <p>
+ *     The sections are designed when the filter is created and redesigned on the calling
+ *     thread when the sampling frequency or the specification changes. A new design is
+ *     handed over to the audio thread as an immutable array of sections, which picks it up
+ *     at the start of the next block and fades the coefficients to it within
+ *     {@link Constants#IIR_SMOOTHING_TIME}. Retuning while playing neither clicks nor
+ *     touches the cascade while it is processing.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+
+public class IIRFilter extends Filter {
+
+    private FilterSpec filterSpec;
+    private final IIRDesignMethod designMethod;
+    private volatile BiquadCascade cascade;
+    // The current design, never modified once published
+    private volatile double[][] sections;
+    private volatile float tailTime;
+    // A new design not yet picked up by the audio thread
+    private final AtomicReference<double[][]> pendingSections = new AtomicReference<>();
+    private int order;
+
+    /**
+     * Creates a new instance of {@code IIRFilter}.
+     *
+     * @param filterSpec                    a filter specification
+     * @param designMethod                  the design method
+     * @throws IllegalArgumentException     if the specification is not valid
+     */
+    public IIRFilter(@NonNull FilterSpec filterSpec, @NonNull IIRDesignMethod designMethod) {
+        this.filterSpec = filterSpec;
+        this.designMethod = designMethod;
+        design();
+        cascade = createCascade(getChannels());
+    }
+
+    /**
+     * Returns the filter specification.
+     *
+     * @return      the filter specification
+     */
+    @Override
+    public FilterSpec getFilterSpec() {
+        return filterSpec;
+    }
+
+    /**
+     * <p>
+     *     Sets a new filter specification. The filter is redesigned and the coefficients are
+     *     faded to the new design.
+     * </p>
+     *
+     * @param filterSpec                    a filter specification
+     * @throws IllegalArgumentException     if the specification is not valid
+     */
+    public void setFilterSpec(@NonNull FilterSpec filterSpec) {
+        FilterSpec previous = this.filterSpec;
+        this.filterSpec = filterSpec;
+        try {
+            retune();
+        } catch (IllegalArgumentException e) {
+            this.filterSpec = previous;
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the filter order.
+     *
+     * @return      the filter order
+     */
+    @Override
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns the design method.
+     *
+     * @return      the design method
+     */
+    public IIRDesignMethod getDesignMethod() {
+        return designMethod;
+    }
+
+    /**
+     * <p>
+     *     Returns the second order sections designed for the current specification and
+     *     sampling frequency, every section as {b0, b1, b2, a1, a2}. The returned arrays
+     *     are shared with the filter and must not be modified.
+     * </p>
+     *
+     * @return      the coefficients of the sections
+     */
+    public double[][] getSections() {
+        return sections;
+    }
+
+    /**
+     * Returns the label that identifies this filter in e.g. a view.
+     *
+     * @return      label
+     */
+    @Override
+    public String getLabel() {
+        return filterSpec.getFilterType().getLabel() + " IIR";
+    }
+
+    /**
+     * Returns a description of the filter.
+     *
+     * @return      filter description
+     */
+    @Override
+    public String getDescription() {
+        return filterSpec.getDescription("IIR " + designMethod, order);
+    }
+
+    /**
+     * <p>
+     *     Sets the sampling frequency and redesigns the filter for it.
+     * </p>
+     *
+     * @param samplingFrequency sampling frequency
+     */
+    @Override
+    public void setSamplingFrequency(int samplingFrequency) {
+        int previous = getSamplingFrequency();
+        super.setSamplingFrequency(samplingFrequency);
+        if (getSamplingFrequency() != previous) {
+            retune();
+        }
+    }
+
+    /**
+     * <p>
+     *     Sets the number of interleaved channels. A new cascade with the current design
+     *     and cleared state replaces the old one.
+     * </p>
+     *
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    @Override
+    public void setChannels(int channels) {
+        super.setChannels(channels);
+        cascade = createCascade(channels);
+    }
+
+    /**
+     * <p>
+     *     Filters a block of interleaved PCM samples.
+     *     Input and output samples arrays must have the same length. A new design is
+     *     picked up before the block is filtered.
+     * </p>
+     *
+     * @param input     {@code float} array of filter input samples
+     * @param output    {@code float} array of filter output samples
+     */
+    @Override
+    public void apply(@NonNull float[] input, @NonNull float[] output) {
+        if (input.length == output.length && input.length != 0) {
+            BiquadCascade cascade = this.cascade;
+            double[][] retuned = pendingSections.getAndSet(null);
+            if (retuned != null) {
+                cascade.setCoefficients(retuned,
+                        Math.round(Constants.IIR_SMOOTHING_TIME * getSamplingFrequency()));
+            }
+            cascade.process(input, output);
+        }
+    }
+
+    /**
+     * Returns the time until the impulse response of the cascade has decayed below
+     * {@link Constants#SILENCE_THRESHOLD}.
+     *
+     * @return  tail time in seconds
+     */
+    @Override
+    public float getTailTime() {
+        return tailTime;
+    }
+
+    /**
+     * Clears the state of the filter.
+     */
+    public void reset() {
+        cascade.reset();
+    }
+
+    /**
+     * Designs the sections for the current specification and sampling frequency.
+     *
+     * @throws IllegalArgumentException     if the specification is not valid
+     */
+    private void design() {
+        int sampleRate = getSamplingFrequency();
+        double[][] designed = IIRDesigner.design(filterSpec, sampleRate, designMethod);
+        order = IIRDesigner.getOrder(filterSpec, sampleRate, designMethod);
+        sections = designed;
+        tailTime = (float) (BiquadCascade.getDecayLength(designed, Constants.SILENCE_THRESHOLD)
+                / sampleRate);
+    }
+
+    /**
+     * Designs the sections and hands them over to the audio thread.
+     */
+    private void retune() {
+        design();
+        pendingSections.set(sections);
+    }
+
+    private BiquadCascade createCascade(int channels) {
+        BiquadCascade cascade = new BiquadCascade(channels);
+        cascade.setCoefficients(sections, 0);
+        return cascade;
+    }
+
+    @Override
+    protected void addConfiguration(@NonNull List<Object> key) {
+        key.add(getSections());
+    }
+
+    @Override
+    public int describeContents() {
+        return hashCode();
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeParcelable(this.filterSpec, flags);
+        dest.writeInt(this.designMethod.ordinal());
+        dest.writeInt(getSamplingFrequency());
+        dest.writeInt(getChannels());
+    }
+
+    protected IIRFilter(Parcel in) {
+        this.filterSpec = in.readParcelable(FilterSpec.class.getClassLoader());
+        this.designMethod = IIRDesignMethod.values()[in.readInt()];
+        super.setSamplingFrequency(in.readInt());
+        super.setChannels(in.readInt());
+        design();
+        cascade = createCascade(getChannels());
+    }
+
+    public static final Creator<IIRFilter> CREATOR = new Creator<IIRFilter>() {
+        @Override
+        public IIRFilter createFromParcel(Parcel source) {
+            return new IIRFilter(source);
+        }
+
+        @Override
+        public IIRFilter[] newArray(int size) {
+            return new IIRFilter[size];
+        }
+    };
+
+}
@@ -0,0 +1,331 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     A FIR filter of a {@link FilterBank} that is created on first use. <br>
+ *     Label, description, specification and order are known from the table of contents of the
+ *     filter bank, so a list of filters can be shown without reading any coefficients. The
+ *     {@link FIRFilter} is created when its sampling frequency or number of channels is set
+ *     for the first time, until then the samples are passed through.
+ * </p>
+ * <p>
+ *     The coefficients of the filter bank are designed at
+ *     {@link Constants#FILTER_BANK_SAMPLE_RATE}. At any other sampling frequency the band
+ *     edges would move, so the specification is designed again for the sampling frequency
+ *     with {@link FIRDesigner} on its background thread. The filter bank coefficients are
+ *     applied until the design is done. The audio thread then replaces them with the
+ *     designed filter at the start of a block, which takes over the input history, so the
+ *     output continues without a click. If the
+ *     specification cannot be met at the sampling frequency, e.g. because a band edge lies
+ *     above the Nyquist frequency, the filter bank coefficients are kept.
+ * </p>
+ * <p>
+ *     The filter is parcelled by the name of its filter bank, its index and its
+ *     specification, so writing it does not read any coefficients. The coefficients are
+ *     loaded when the filter is read. If the filter bank has not been opened in the reading
+ *     process, they are designed from the specification at
+ *     {@link Constants#FILTER_BANK_SAMPLE_RATE} instead.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+
+public class LazyFIRFilter extends Filter {
+
+    private final FilterBank filterBank;
+    private final int index;
+    private final FilterSpec filterSpec;
+    private final int order;
+    // Filter with the coefficients of the filter bank
+    private volatile FIRFilter bankFilter;
+    // Applied filter: the filter bank filter or a design for the sampling frequency
+    private volatile FIRFilter filter;
+    // Filter that replaces the applied filter at the start of the next block
+    private final AtomicReference<FIRFilter> pendingFilter = new AtomicReference<>();
+    private int blockSize = 0;
+    // Sampling frequency the filter is designed for
+    private volatile int designSampleRate = Constants.FILTER_BANK_SAMPLE_RATE;
+
+    LazyFIRFilter(@NonNull FilterBank filterBank, int index) {
+        this.filterBank = filterBank;
+        this.index = index;
+        filterSpec = filterBank.getFilterSpec(index);
+        order = filterBank.getCoefficientCount(index) - 1;
+    }
+
+    protected LazyFIRFilter(Parcel in) {
+        String name = in.readString();
+        this.index = in.readInt();
+        this.filterSpec = in.readParcelable(FilterSpec.class.getClassLoader());
+        this.order = in.readInt();
+        this.filterBank = name == null ? null : FilterBank.getOpened(name);
+        // Loaded here, so neither the UI nor the audio thread designs it later
+        bankFilter = filterBank != null ? new FIRFilter(filterSpec, filterBank.getCoefficients(index))
+                : FIRDesigner.design(filterSpec, Constants.FILTER_BANK_SAMPLE_RATE,
+                FIRDesignMethod.PARKS_MCCLELLAN);
+    }
+
+    /**
+     * Returns the filter specification.
+     *
+     * @return      the filter specification
+     */
+    @Override
+    public FilterSpec getFilterSpec() {
+        return filterSpec;
+    }
+
+    /**
+     * Returns the filter order.
+     *
+     * @return      the filter order
+     */
+    @Override
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns the label that identifies this filter in e.g. a view.
+     *
+     * @return      label
+     */
+    @Override
+    public String getLabel() {
+        return filterSpec.getFilterType().getLabel();
+    }
+
+    /**
+     * Returns a description of the filter.
+     *
+     * @return      filter description
+     */
+    @Override
+    public String getDescription() {
+        return filterSpec.getDescription("FIR", order);
+    }
+
+    /**
+     * Returns true if the coefficients have been read and the {@link FIRFilter} exists.
+     *
+     * @return      true if the filter has been created
+     */
+    public boolean isLoaded() {
+        return filter != null || pendingFilter.get() != null;
+    }
+
+    /**
+     * Returns the {@link FIRFilter} applied from the next block on, reading the coefficients
+     * from the filter bank on first call.
+     *
+     * @return      the FIR filter
+     */
+    public FIRFilter getFilter() {
+        FIRFilter result = pendingFilter.get();
+        if (result != null) {
+            return result;
+        }
+        result = filter;
+        if (result == null) {
+            synchronized (this) {
+                result = filter;
+                if (result == null) {
+                    result = getBankFilter();
+                    filter = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private synchronized FIRFilter getBankFilter() {
+        if (bankFilter == null) {
+            // A filter read from a parcel has its coefficients already
+            bankFilter = new FIRFilter(filterSpec, filterBank.getCoefficients(index));
+            bankFilter.setSamplingFrequency(getSamplingFrequency());
+            bankFilter.setChannels(getChannels());
+            bankFilter.setBlockSize(blockSize);
+        }
+        return bankFilter;
+    }
+
+    /**
+     * <p>
+     *     Sets the sampling frequency of the filter and creates it if necessary. At a
+     *     sampling frequency other than {@link Constants#FILTER_BANK_SAMPLE_RATE} the
+     *     specification is designed again in the background.
+     * </p>
+     *
+     * @param samplingFrequency sampling frequency
+     */
+    @Override
+    public void setSamplingFrequency(int samplingFrequency) {
+        super.setSamplingFrequency(samplingFrequency);
+        if (samplingFrequency > 0 && samplingFrequency != designSampleRate) {
+            designSampleRate = samplingFrequency;
+            if (samplingFrequency == Constants.FILTER_BANK_SAMPLE_RATE) {
+                FIRFilter bank = getBankFilter();
+                if (filter == null) {
+                    filter = bank;
+                } else {
+                    bank.setChannels(getChannels());
+                    bank.setBlockSize(blockSize);
+                    pendingFilter.set(bank);
+                }
+            } else {
+                redesign(samplingFrequency);
+            }
+        }
+        getFilter().setSamplingFrequency(samplingFrequency);
+    }
+
+    /**
+     * <p>
+     *     Sets the number of interleaved channels of the filter and creates it if necessary.
+     * </p>
+     *
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    @Override
+    public synchronized void setChannels(int channels) {
+        super.setChannels(channels);
+        FIRFilter active = getFilter();
+        active.setChannels(channels);
+        active.setBlockSize(blockSize);
+        FIRFilter current = filter;
+        if (current != null && current != active) {
+            current.setChannels(channels);
+        }
+        if (bankFilter != null && bankFilter != active) {
+            bankFilter.setChannels(channels);
+            bankFilter.setBlockSize(blockSize);
+        }
+    }
+
+    /**
+     * <p>
+     *     Sets the block size of the filter, see {@link FIRFilter#setBlockSize(int)}. A
+     *     filter designed later gets the block size before it is applied.
+     * </p>
+     *
+     * @param samples   number of interleaved samples per block
+     */
+    @Override
+    public synchronized void setBlockSize(int samples) {
+        blockSize = samples;
+        FIRFilter active = getFilter();
+        active.setBlockSize(samples);
+        FIRFilter current = filter;
+        if (current != null && current != active) {
+            current.setBlockSize(samples);
+        }
+    }
+
+    /**
+     * Starts the design of the specification for the sampling frequency, the designed filter
+     * is applied when it is done unless the sampling frequency changed in the meantime.
+     */
+    private void redesign(final int sampleRate) {
+        try {
+            FIRDesigner.prefetch(filterSpec, sampleRate, FIRDesignMethod.PARKS_MCCLELLAN,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            if (sampleRate != designSampleRate) {
+                                return;
+                            }
+                            try {
+                                FIRFilter designed = FIRDesigner.design(filterSpec, sampleRate,
+                                        FIRDesignMethod.PARKS_MCCLELLAN);
+                                // A Kaiser fallback is worse than the filter bank design
+                                if (sampleRate == designSampleRate && FIRDesigner.isDesigned(
+                                        filterSpec, sampleRate, FIRDesignMethod.PARKS_MCCLELLAN)) {
+                                    synchronized (LazyFIRFilter.this) {
+                                        designed.setChannels(getChannels());
+                                        designed.setBlockSize(blockSize);
+                                        pendingFilter.set(designed);
+                                    }
+                                }
+                            } catch (IllegalStateException ex) {
+                                // Keep the filter bank coefficients
+                            }
+                        }
+                    });
+        } catch (IllegalArgumentException ex) {
+            // The specification cannot be met at this sampling frequency
+        }
+    }
+
+    /**
+     * <p>
+     *     Filters a block of PCM samples, see {@link FIRFilter#apply(float[], float[])}.
+     *     A filter designed in the meantime takes over the input history of the applied
+     *     filter and replaces it before the block is filtered. The samples are passed
+     *     through until the filter is created.
+     * </p>
+     *
+     * @param input     {@code float} array of filter input samples
+     * @param output    {@code float} array of filter output samples
+     */
+    @Override
+    public void apply(@NonNull float[] input, @NonNull float[] output) {
+        FIRFilter current = filter;
+        FIRFilter next = pendingFilter.getAndSet(null);
+        if (next != null && next != current) {
+            if (current != null) {
+                next.copyHistory(current);
+            }
+            filter = next;
+            current = next;
+        }
+        if (current != null) {
+            current.apply(input, output);
+        } else if (input != output) {
+            System.arraycopy(input, 0, output, 0, Math.min(input.length, output.length));
+        }
+    }
+
+    @Override
+    protected void addConfiguration(@NonNull List<Object> key) {
+        key.add(getFilter().getConfigurationKey());
+    }
+
+    @Override
+    public int describeContents() {
+        return hashCode();
+    }
+
+    /**
+     * The filter is written by the name of its filter bank and its index, the coefficients
+     * are not read.
+     */
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(filterBank == null ? null : filterBank.getName());
+        dest.writeInt(this.index);
+        dest.writeParcelable(this.filterSpec, flags);
+        dest.writeInt(this.order);
+    }
+
+    public static final Creator<LazyFIRFilter> CREATOR = new Creator<LazyFIRFilter>() {
+        @Override
+        public LazyFIRFilter createFromParcel(Parcel source) {
+            return new LazyFIRFilter(source);
+        }
+
+        @Override
+        public LazyFIRFilter[] newArray(int size) {
+            return new LazyFIRFilter[size];
+        }
+    };
+
+}
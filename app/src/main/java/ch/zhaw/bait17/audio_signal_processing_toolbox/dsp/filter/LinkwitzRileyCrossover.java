@@ -0,0 +1,199 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+import android.support.annotation.NonNull;
+
+/**
+ * <p>
+ *     A 4th order Linkwitz-Riley crossover that splits a signal into N bands. <br>
+ *     Every crossover frequency has a lowpass and a highpass made of two cascaded 2nd order
+ *     Butterworth sections. The sum of both is the 2nd order allpass
+ *     (s² - √2 s + 1) / (s² + √2 s + 1), so the two outputs are in phase at all frequencies.
+ * </p>
+ * <p>
+ *     The bands are split off one after another: band i is the lowpass of the highpass output
+ *     of the crossovers below it. The phase of every band is aligned with allpasses of the
+ *     crossovers above it, so the bands add up to an allpass with a flat magnitude response:
+ *     <pre>
+ *     band 0:      LP1 AP2 ... APn
+ *     band 1:      HP1 LP2 AP3 ... APn
+ *     band n:      HP1 HP2 ... HPn
+ *     </pre>
+ *     The sections are designed with the bilinear transform and pre-warped cutoff
+ *     frequencies, so the allpass identity holds for the discrete-time filters as well.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class LinkwitzRileyCrossover {
+
+    private static final double Q = Math.sqrt(0.5);
+
+    private final float[] crossoverFrequencies;
+    private final int channels;
+    // Lowpass of crossover i followed by the allpasses of the crossovers above it
+    private final BiquadCascade[] lowpasses;
+    private final BiquadCascade[] highpasses;
+    private int samplingFrequency = 0;
+
+    /**
+     * Creates an instance of {@code LinkwitzRileyCrossover}.
+     *
+     * @param crossoverFrequencies          ascending crossover frequencies in Hz
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if there is no crossover frequency, a frequency is
+     *                                      not positive or the frequencies are not ascending
+     */
+    public LinkwitzRileyCrossover(@NonNull float[] crossoverFrequencies, int channels) {
+        if (crossoverFrequencies.length == 0) {
+            throw new IllegalArgumentException("At least one crossover frequency is needed.");
+        }
+        for (int i = 0; i < crossoverFrequencies.length; i++) {
+            if (crossoverFrequencies[i] <= 0
+                    || (i > 0 && crossoverFrequencies[i] <= crossoverFrequencies[i - 1])) {
+                throw new IllegalArgumentException("Crossover frequencies must be positive and ascending.");
+            }
+        }
+        this.crossoverFrequencies = crossoverFrequencies.clone();
+        this.channels = channels;
+        lowpasses = new BiquadCascade[crossoverFrequencies.length];
+        highpasses = new BiquadCascade[crossoverFrequencies.length];
+        for (int i = 0; i < crossoverFrequencies.length; i++) {
+            lowpasses[i] = new BiquadCascade(channels);
+            highpasses[i] = new BiquadCascade(channels);
+        }
+    }
+
+    /**
+     * <p>
+     *     Designs the sections for a sampling frequency. The state of the filters is kept
+     *     when the frequency does not change.
+     * </p>
+     *
+     * @param samplingFrequency             sampling frequency in Hz
+     * @throws IllegalArgumentException     if the highest crossover frequency is not below
+     *                                      the Nyquist frequency
+     */
+    public void setSamplingFrequency(int samplingFrequency) {
+        if (samplingFrequency == this.samplingFrequency) {
+            return;
+        }
+        if (crossoverFrequencies[crossoverFrequencies.length - 1] >= samplingFrequency / 2.0) {
+            throw new IllegalArgumentException("Crossover frequencies must be below the Nyquist frequency.");
+        }
+        this.samplingFrequency = samplingFrequency;
+        int count = crossoverFrequencies.length;
+        for (int i = 0; i < count; i++) {
+            double[][] low = new double[2 + count - 1 - i][];
+            low[0] = lowpass(crossoverFrequencies[i], samplingFrequency);
+            low[1] = low[0];
+            for (int j = i + 1; j < count; j++) {
+                low[1 + j - i] = allpass(crossoverFrequencies[j], samplingFrequency);
+            }
+            lowpasses[i].setCoefficients(low, 0);
+            double[] high = highpass(crossoverFrequencies[i], samplingFrequency);
+            highpasses[i].setCoefficients(new double[][] {high, high}, 0);
+        }
+    }
+
+    /**
+     * Returns the number of bands, one more than the number of crossover frequencies.
+     *
+     * @return  number of bands
+     */
+    public int getNumberOfBands() {
+        return crossoverFrequencies.length + 1;
+    }
+
+    /**
+     * Returns the crossover frequencies.
+     *
+     * @return  crossover frequencies in Hz
+     */
+    public float[] getCrossoverFrequencies() {
+        return crossoverFrequencies.clone();
+    }
+
+    /**
+     * Returns the number of interleaved channels.
+     *
+     * @return  number of channels
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * <p>
+     *     Splits a block of interleaved samples into bands. The input array is not changed.
+     * </p>
+     *
+     * @param input     interleaved input samples
+     * @param bands     one array per band, each at least as long as the input
+     * @throws IllegalStateException    if no sampling frequency has been set
+     */
+    public void split(@NonNull float[] input, @NonNull float[][] bands) {
+        if (samplingFrequency == 0) {
+            throw new IllegalStateException("Sampling frequency has not been set.");
+        }
+        int last = crossoverFrequencies.length;
+        float[] rest = input;
+        for (int i = 0; i < last; i++) {
+            lowpasses[i].process(rest, bands[i]);
+            highpasses[i].process(rest, bands[last]);
+            rest = bands[last];
+        }
+    }
+
+    /**
+     * Returns the number of frames until the impulse response of every band has decayed
+     * below a level. A band passes at most all highpasses and one lowpass.
+     *
+     * @param level     level relative to the impulse, in (0,1)
+     * @return          decay length in frames
+     */
+    public double getDecayLength(double level) {
+        double highpass = 0;
+        double lowpass = 0;
+        for (int i = 0; i < lowpasses.length; i++) {
+            highpass += highpasses[i].getDecayLength(level);
+            lowpass = Math.max(lowpass, lowpasses[i].getDecayLength(level));
+        }
+        return highpass + lowpass;
+    }
+
+    /**
+     * Clears the state of all filters.
+     */
+    public void reset() {
+        for (int i = 0; i < lowpasses.length; i++) {
+            lowpasses[i].reset();
+            highpasses[i].reset();
+        }
+    }
+
+    // Biquads from the Audio EQ Cookbook by Robert Bristow-Johnson, normalised to a0 = 1
+
+    private static double[] lowpass(double frequency, int samplingFrequency) {
+        double w = 2 * Math.PI * frequency / samplingFrequency;
+        double cos = Math.cos(w);
+        double a0 = 1 + Math.sin(w) / (2 * Q);
+        double b = (1 - cos) / 2 / a0;
+        return new double[] {b, 2 * b, b, -2 * cos / a0, (2 - a0) / a0};
+    }
+
+    private static double[] highpass(double frequency, int samplingFrequency) {
+        double w = 2 * Math.PI * frequency / samplingFrequency;
+        double cos = Math.cos(w);
+        double a0 = 1 + Math.sin(w) / (2 * Q);
+        double b = (1 + cos) / 2 / a0;
+        return new double[] {b, -2 * b, b, -2 * cos / a0, (2 - a0) / a0};
+    }
+
+    private static double[] allpass(double frequency, int samplingFrequency) {
+        double w = 2 * Math.PI * frequency / samplingFrequency;
+        double cos = Math.cos(w);
+        double a0 = 1 + Math.sin(w) / (2 * Q);
+        double a2 = (2 - a0) / a0;
+        return new double[] {a2, -2 * cos / a0, 1, -2 * cos / a0, a2};
+    }
+}
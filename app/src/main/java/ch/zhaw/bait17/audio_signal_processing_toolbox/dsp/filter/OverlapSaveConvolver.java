@@ -0,0 +1,186 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+import android.support.annotation.NonNull;
+
+import org.jtransforms.fft.FloatFFT_1D;
+
+/**
+ * <p>
+ *     Fast convolution of a sample stream with a fixed impulse response using the
+ *     overlap-save method. <br>
+ *     The FFT of the impulse response is computed once. All buffers are allocated in the
+ *     constructor, processing a block does not allocate memory.
+ * </p>
+ * <p>
+ *     Input is processed in chunks of at most N - L + 1 samples, where N is the FFT size and
+ *     L the length of the impulse response. Each chunk is prepended with the last L - 1 input
+ *     samples, so the output has no additional latency and blocks of any length can be processed.
+ * </p>
+ * <p>
+ *     See The Scientist and Engineer's Guide to Digital Signal Processing, chapter 18. </br>
+ *     <a href="http://www.dspguide.com/ch18/2.htm">www.dspguide.com</a>
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class OverlapSaveConvolver {
+
+    // Rough cost of a real FFT of size N relative to N * log2(N) multiply-adds
+    private static final float FFT_COST_FACTOR = 1.5f;
+
+    private final int impulseResponseLength;
+    private final int fftSize;
+    private final int chunkSize;
+    private final FloatFFT_1D fft;
+    private final float[] impulseResponseSpectrum;
+    private final float[] buffer;
+    private final float[] history;
+
+    /**
+     * Creates an instance of {@code OverlapSaveConvolver}.
+     *
+     * @param impulseResponse               the impulse response
+     * @param fftSize                       the FFT size, a power of 2 >= 2 * impulse response length
+     * @throws IllegalArgumentException     if the impulse response is empty or the FFT size is
+     *                                      not a power of 2 or too small
+     */
+    public OverlapSaveConvolver(@NonNull float[] impulseResponse, int fftSize) {
+        if (impulseResponse.length == 0) {
+            throw new IllegalArgumentException("Impulse response must not be empty.");
+        }
+        if (Integer.bitCount(fftSize) != 1 || fftSize < 2 * impulseResponse.length) {
+            throw new IllegalArgumentException("FFT size must be a power of 2 >= 2 * impulse response length.");
+        }
+        impulseResponseLength = impulseResponse.length;
+        this.fftSize = fftSize;
+        chunkSize = fftSize - impulseResponseLength + 1;
+        fft = new FloatFFT_1D(fftSize);
+        buffer = new float[fftSize];
+        history = new float[impulseResponseLength - 1];
+
+        impulseResponseSpectrum = new float[fftSize];
+        System.arraycopy(impulseResponse, 0, impulseResponseSpectrum, 0, impulseResponse.length);
+        fft.realForward(impulseResponseSpectrum);
+    }
+
+    /**
+     * Convolves a block of samples with the impulse response.
+     * Input and output arrays may be the same array.
+     *
+     * @param input     array of input samples
+     * @param output    array of output samples, at least as long as the input
+     */
+    public void process(@NonNull float[] input, @NonNull float[] output) {
+        for (int offset = 0; offset < input.length; offset += chunkSize) {
+            processChunk(input, output, offset, Math.min(chunkSize, input.length - offset));
+        }
+    }
+
+    /**
+     * Clears the input history.
+     */
+    public void reset() {
+        for (int i = 0; i < history.length; i++) {
+            history[i] = 0;
+        }
+    }
+
+    /**
+     * Returns the FFT size.
+     *
+     * @return  FFT size
+     */
+    public int getFFTSize() {
+        return fftSize;
+    }
+
+    /**
+     * <p>
+     *     Chooses the FFT size with the lowest estimated cost per output sample for an
+     *     impulse response of the given length and blocks of the given length.
+     * </p>
+     *
+     * @param impulseResponseLength     length of the impulse response
+     * @param blockLength               number of samples processed per call
+     * @return                          FFT size
+     */
+    public static int getOptimalFFTSize(int impulseResponseLength, int blockLength) {
+        int best = 0;
+        float bestCost = Float.MAX_VALUE;
+        int n = Integer.highestOneBit(Math.max(1, 2 * impulseResponseLength - 1)) << 1;
+        // Larger FFTs than necessary to process a whole block in one chunk do not help
+        int limit = Math.max(n, Integer.highestOneBit(impulseResponseLength + blockLength - 1) << 1);
+        for (; n <= limit; n <<= 1) {
+            float cost = getCostPerSample(n, impulseResponseLength, blockLength);
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = n;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the estimated number of multiply-adds per output sample.
+     *
+     * @param fftSize                   FFT size
+     * @param impulseResponseLength     length of the impulse response
+     * @param blockLength               number of samples processed per call
+     * @return                          estimated cost per sample
+     */
+    public static float getCostPerSample(int fftSize, int impulseResponseLength, int blockLength) {
+        int chunk = Math.max(1, Math.min(fftSize - impulseResponseLength + 1, blockLength));
+        float log2 = 31 - Integer.numberOfLeadingZeros(fftSize);
+        // Forward and inverse FFT plus complex multiplication and buffer handling
+        float cost = 2 * FFT_COST_FACTOR * fftSize * log2 + 3 * fftSize;
+        return cost / chunk;
+    }
+
+    /**
+     * Returns the last L - 1 input samples, oldest first.
+     *
+     * @return  the input history, not a copy
+     */
+    float[] getHistory() {
+        return history;
+    }
+
+    private void processChunk(float[] input, float[] output, int offset, int length) {
+        final int historyLength = history.length;
+        System.arraycopy(history, 0, buffer, 0, historyLength);
+        System.arraycopy(input, offset, buffer, historyLength, length);
+        for (int i = historyLength + length; i < fftSize; i++) {
+            buffer[i] = 0;
+        }
+
+        // Update the history before the output may overwrite the input
+        if (length >= historyLength) {
+            System.arraycopy(input, offset + length - historyLength, history, 0, historyLength);
+        } else {
+            System.arraycopy(history, length, history, 0, historyLength - length);
+            System.arraycopy(input, offset, history, historyLength - length, length);
+        }
+
+        fft.realForward(buffer);
+        multiplySpectra(buffer, impulseResponseSpectrum);
+        fft.realInverse(buffer, true);
+
+        // The first L - 1 samples are corrupted by circular convolution and discarded
+        System.arraycopy(buffer, historyLength, output, offset, length);
+    }
+
+    /**
+     * Multiplies two spectra in the packed format of {@link FloatFFT_1D#realForward(float[])}.
+     * The result is written to {@code a}.
+     */
+    private static void multiplySpectra(float[] a, float[] b) {
+        a[0] *= b[0];
+        a[1] *= b[1];
+        for (int i = 2; i < a.length; i += 2) {
+            float re = a[i] * b[i] - a[i + 1] * b[i + 1];
+            float im = a[i] * b[i + 1] + a[i + 1] * b[i];
+            a[i] = re;
+            a[i + 1] = im;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     Convolution with a measured impulse response, e.g. of a room or a guitar cabinet. <br>
+ *     Impulse responses of several seconds are processed with a {@link PartitionedConvolver}.
+ *     The latency equals the partition size. The impulse response is scaled to unit energy so
+ *     that long room responses do not overload the output.
+ * </p>
+ * <p>
+ *     The samples are interleaved, every channel is convolved by its own convolvers. A block
+ *     is deinterleaved one channel at a time, so the impulse response never spreads from one
+ *     channel into another.
+ * </p>
+ * <p>
+ *     With non-uniform partitioning the head of the impulse response is processed with the
+ *     small partition size and later segments with partitions growing by a factor of 4 up to
+ *     {@link Constants#CONVOLUTION_MAX_PARTITION_SIZE}. Every segment is delayed with leading zero
+ *     partitions, which are skipped, so that the segments add up to the full impulse response.
+ *     This reduces the work per sample for very long impulse responses.
+ * </p>
+ * <p>
+ *     Load an impulse response from a WAVE file with {@link FilterUtil#getImpulseResponse(java.io.InputStream)}.
+ *     The impulse response should be recorded at the sample rate of the audio being processed.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+
+public class PartitionedConvolution extends AudioEffect {
+
+    private static final String LABEL = "Convolution";
+    private static final String DESCRIPTION = "Convolves the signal with a measured impulse response of a room or a speaker cabinet.";
+
+    private final float[] impulseResponse;
+    private final int partitionSize;
+    private final boolean nonUniform;
+    // Per channel: the convolvers of the segments of the impulse response
+    private PartitionedConvolver[][] segments;
+    // One channel of the current block
+    private float[] channelInput = new float[0];
+    private float[] channelOutput = new float[0];
+    private float[] segmentOutput = new float[0];
+
+    /**
+     * <p>
+     *     Creates an instance of {@code PartitionedConvolution} for
+     *     {@link Constants#DEFAULT_CHANNELS} interleaved channels.
+     * </p>
+     * <p>
+     *     An impulse response of up to {@link Constants#CONVOLUTION_PARTITIONS_PER_SEGMENT}
+     *     partitions is convolved with uniform partitions. A longer impulse response uses
+     *     non-uniform partitions, so the work per sample grows with the logarithm of its
+     *     length instead of linearly.
+     * </p>
+     *
+     * @param impulseResponse               the impulse response
+     * @param partitionSize                 the partition size in samples, a power of 2
+     * @throws IllegalArgumentException     if the impulse response is empty or the partition
+     *                                      size is not a power of 2
+     */
+    public PartitionedConvolution(@NonNull float[] impulseResponse, int partitionSize) {
+        this(impulseResponse, partitionSize, partitionSize > 0 && impulseResponse.length
+                > (long) partitionSize * Constants.CONVOLUTION_PARTITIONS_PER_SEGMENT);
+    }
+
+    /**
+     * Creates an instance of {@code PartitionedConvolution}.
+     *
+     * @param impulseResponse               the impulse response
+     * @param partitionSize                 the (smallest) partition size in samples, a power of 2
+     * @param nonUniform                    true to use growing partitions for the tail of the
+     *                                      impulse response
+     * @throws IllegalArgumentException     if the impulse response is empty or the partition
+     *                                      size is not a power of 2
+     */
+    public PartitionedConvolution(@NonNull float[] impulseResponse, int partitionSize,
+                                  boolean nonUniform) {
+        this(impulseResponse, partitionSize, nonUniform, Constants.DEFAULT_CHANNELS);
+    }
+
+    /**
+     * Creates an instance of {@code PartitionedConvolution}.
+     *
+     * @param impulseResponse               the impulse response
+     * @param partitionSize                 the (smallest) partition size in samples, a power of 2
+     * @param nonUniform                    true to use growing partitions for the tail of the
+     *                                      impulse response
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if the impulse response is empty, the partition
+     *                                      size is not a power of 2 or channels < 1
+     */
+    public PartitionedConvolution(@NonNull float[] impulseResponse, int partitionSize,
+                                  boolean nonUniform, int channels) {
+        super.setChannels(channels);
+        if (impulseResponse.length == 0) {
+            throw new IllegalArgumentException("Impulse response must not be empty.");
+        }
+        if (partitionSize < 2 || Integer.bitCount(partitionSize) != 1) {
+            throw new IllegalArgumentException("Partition size must be a power of 2.");
+        }
+        this.impulseResponse = normalise(impulseResponse);
+        this.partitionSize = partitionSize;
+        this.nonUniform = nonUniform;
+        createSegments();
+    }
+
+    protected PartitionedConvolution(Parcel in) {
+        this.impulseResponse = in.createFloatArray();
+        this.partitionSize = in.readInt();
+        this.nonUniform = in.readInt() != 0;
+        super.setChannels(in.readInt());
+        createSegments();
+    }
+
+    /**
+     * <p>
+     * Applies the {@code AudioEffect} to a block of PCM samples.
+     * Input and output sample arrays must have the same length and may be the same array.
+     * The length must be a multiple of the number of channels.
+     * </p>
+     *
+     * @param input  array of {@code float} input samples
+     * @param output arary of {@code float} output samples must be of same length as input array
+     * @throws IllegalArgumentException if the length is not a multiple of the number of channels
+     */
+    @Override
+    public void apply(@NonNull float[] input, @NonNull float[] output) {
+        final int channels = getChannels();
+        if (input.length % channels != 0) {
+            throw new IllegalArgumentException(
+                    "Block length must be a multiple of the number of channels.");
+        }
+        if (input.length == output.length && input.length != 0) {
+            final int frames = input.length / channels;
+            if (channelInput.length != frames) {
+                channelInput = new float[frames];
+                channelOutput = new float[frames];
+                segmentOutput = new float[frames];
+            }
+            for (int ch = 0; ch < channels; ch++) {
+                // Only the positions of this channel are written, the other channels of
+                // the input are still intact when input and output are the same array
+                for (int n = 0, i = ch; n < frames; n++, i += channels) {
+                    channelInput[n] = input[i];
+                }
+                convolve(segments[ch]);
+                for (int n = 0, i = ch; n < frames; n++, i += channels) {
+                    output[i] = channelOutput[n];
+                }
+            }
+        }
+    }
+
+    /**
+     * Convolves {@link #channelInput} with all segments and adds up their outputs in
+     * {@link #channelOutput}.
+     */
+    private void convolve(PartitionedConvolver[] channelSegments) {
+        channelSegments[0].process(channelInput, channelOutput);
+        for (int s = 1; s < channelSegments.length; s++) {
+            channelSegments[s].process(channelInput, segmentOutput);
+            for (int n = 0; n < channelOutput.length; n++) {
+                channelOutput[n] += segmentOutput[n];
+            }
+        }
+    }
+
+    /**
+     * Returns the latency of the convolution.
+     *
+     * @return  latency in samples
+     */
+    public int getLatency() {
+        return partitionSize;
+    }
+
+    /**
+     * Returns the number of partitioned segments, 1 for uniform partitioning.
+     *
+     * @return  number of segments
+     */
+    public int getNumberOfSegments() {
+        return segments[0].length;
+    }
+
+    /**
+     * Sets the number of interleaved channels, the convolution of every channel starts from
+     * silence.
+     *
+     * @param channels                      number of interleaved channels
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    @Override
+    public void setChannels(int channels) {
+        super.setChannels(channels);
+        createSegments();
+    }
+
+    /**
+     * Clears the state of the convolution.
+     */
+    public void reset() {
+        for (PartitionedConvolver[] channelSegments : segments) {
+            for (PartitionedConvolver segment : channelSegments) {
+                segment.reset();
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * Returns the label of the {@code AudioEffect}. </br>
+     * This label will be displayed in the {@code AudioEffect} drop down list.
+     * </p>
+     *
+     * @return label
+     */
+    @Override
+    public String getLabel() {
+        return LABEL;
+    }
+
+    /**
+     * The tail is the length of the impulse response plus the latency, the last partition
+     * is still queued when the input becomes silent.
+     *
+     * @return  tail time in seconds
+     */
+    @Override
+    public float getTailTime() {
+        return (impulseResponse.length + getLatency()) / (float) getSamplingFrequency();
+    }
+
+    /**
+     * <p>
+     * Returns the description of the {@code AudioEffect}. </br>
+     * This description will be displayed in the {@code AudioEffect} drop down list.
+     * </p>
+     *
+     * @return description
+     */
+    @Override
+    public String getDescription() {
+        return DESCRIPTION;
+    }
+
+    private void createSegments() {
+        final int channels = getChannels();
+        segments = new PartitionedConvolver[channels][];
+        for (int ch = 0; ch < channels; ch++) {
+            segments[ch] = createChannelSegments();
+        }
+    }
+
+    /**
+     * Splits the impulse response into segments with growing partition sizes.
+     * A segment with partition size Bs starting at offset o is preceded by
+     * o + B - Bs zeros, which compensates its additional latency Bs - B.
+     */
+    private PartitionedConvolver[] createChannelSegments() {
+        if (!nonUniform) {
+            return new PartitionedConvolver[]{
+                    new PartitionedConvolver(impulseResponse, partitionSize)};
+        }
+        List<PartitionedConvolver> list = new ArrayList<>();
+        int offset = 0;
+        int size = partitionSize;
+        while (offset < impulseResponse.length) {
+            int length = size * Constants.CONVOLUTION_PARTITIONS_PER_SEGMENT;
+            int nextSize = Math.min(4 * size, Math.max(partitionSize,
+                    Constants.CONVOLUTION_MAX_PARTITION_SIZE));
+            if (size == nextSize || offset + length >= impulseResponse.length) {
+                length = impulseResponse.length - offset;
+            }
+            int leadingZeros = offset + partitionSize - size;
+            float[] segment = new float[leadingZeros + length];
+            System.arraycopy(impulseResponse, offset, segment, leadingZeros, length);
+            list.add(new PartitionedConvolver(segment, size));
+            offset += length;
+            size = nextSize;
+        }
+        return list.toArray(new PartitionedConvolver[list.size()]);
+    }
+
+    private static float[] normalise(float[] impulseResponse) {
+        double energy = 0;
+        for (float h : impulseResponse) {
+            energy += h * h;
+        }
+        float[] result = impulseResponse.clone();
+        if (energy > 0) {
+            float scale = (float) (1 / Math.sqrt(energy));
+            for (int i = 0; i < result.length; i++) {
+                result[i] *= scale;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    protected void addConfiguration(@NonNull List<Object> key) {
+        key.add(impulseResponse);
+        key.add(partitionSize);
+        key.add(nonUniform);
+    }
+
+    @Override
+    public int describeContents() {
+        return hashCode();
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeFloatArray(this.impulseResponse);
+        dest.writeInt(this.partitionSize);
+        dest.writeInt(this.nonUniform ? 1 : 0);
+        dest.writeInt(getChannels());
+    }
+
+    public static final Creator<PartitionedConvolution> CREATOR = new Creator<PartitionedConvolution>() {
+        @Override
+        public PartitionedConvolution createFromParcel(Parcel source) {
+            return new PartitionedConvolution(source);
+        }
+
+        @Override
+        public PartitionedConvolution[] newArray(int size) {
+            return new PartitionedConvolution[size];
+        }
+    };
+}
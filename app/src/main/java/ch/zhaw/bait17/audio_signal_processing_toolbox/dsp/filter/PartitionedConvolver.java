@@ -0,0 +1,179 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+import android.support.annotation.NonNull;
+
+import org.jtransforms.fft.FloatFFT_1D;
+
+/**
+ * <p>
+ *     Uniformly partitioned convolution of a sample stream with a long impulse response. <br>
+ *     The impulse response is split into partitions of B samples. The spectra of the last
+ *     P input blocks are kept in a frequency-domain delay line and multiplied with the
+ *     precomputed spectra of the P partitions. One FFT and one inverse FFT of size 2B per
+ *     block are needed, independent of the length of the impulse response.
+ * </p>
+ * <p>
+ *     The output is delayed by exactly B samples. Blocks of any length can be processed,
+ *     the samples are collected internally. Partitions that contain only zeros are skipped.
+ * </p>
+ * <p>
+ *     See W. G. Gardner, Efficient Convolution without Input-Output Delay, JAES 43(3), 1995 and
+ *     F. Wefers, Partitioned convolution algorithms for real-time auralization, 2015.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class PartitionedConvolver {
+
+    private final int partitionSize;
+    private final int partitions;
+    private final FloatFFT_1D fft;
+    private final float[][] partitionSpectra;
+    private final boolean[] zeroPartition;
+    // Frequency-domain delay line: spectra of the last <partitions> input blocks
+    private final float[][] delayLine;
+    private int delayLineIndex = 0;
+
+    private final float[] inputBuffer;
+    private final float[] outputBuffer;
+    private final float[] fftBuffer;
+    private final float[] accumulator;
+    private int position = 0;
+
+    /**
+     * Creates an instance of {@code PartitionedConvolver}.
+     *
+     * @param impulseResponse               the impulse response
+     * @param partitionSize                 the partition size B, a power of 2
+     * @throws IllegalArgumentException     if the impulse response is empty or the partition
+     *                                      size is not a power of 2
+     */
+    public PartitionedConvolver(@NonNull float[] impulseResponse, int partitionSize) {
+        if (impulseResponse.length == 0) {
+            throw new IllegalArgumentException("Impulse response must not be empty.");
+        }
+        if (partitionSize < 2 || Integer.bitCount(partitionSize) != 1) {
+            throw new IllegalArgumentException("Partition size must be a power of 2.");
+        }
+        this.partitionSize = partitionSize;
+        partitions = (impulseResponse.length + partitionSize - 1) / partitionSize;
+        fft = new FloatFFT_1D(2 * partitionSize);
+        partitionSpectra = new float[partitions][];
+        zeroPartition = new boolean[partitions];
+        delayLine = new float[partitions][2 * partitionSize];
+        inputBuffer = new float[partitionSize];
+        outputBuffer = new float[partitionSize];
+        fftBuffer = new float[2 * partitionSize];
+        accumulator = new float[2 * partitionSize];
+
+        for (int p = 0; p < partitions; p++) {
+            int offset = p * partitionSize;
+            int length = Math.min(partitionSize, impulseResponse.length - offset);
+            float[] spectrum = new float[2 * partitionSize];
+            boolean zero = true;
+            for (int i = 0; i < length; i++) {
+                spectrum[i] = impulseResponse[offset + i];
+                zero &= spectrum[i] == 0;
+            }
+            zeroPartition[p] = zero;
+            if (!zero) {
+                fft.realForward(spectrum);
+                partitionSpectra[p] = spectrum;
+            }
+        }
+    }
+
+    /**
+     * Convolves a block of samples with the impulse response. The output is delayed by
+     * {@link #getLatency()} samples. Input and output arrays may be the same array.
+     *
+     * @param input     array of input samples
+     * @param output    array of output samples, at least as long as the input
+     */
+    public void process(@NonNull float[] input, @NonNull float[] output) {
+        int offset = 0;
+        while (offset < input.length) {
+            int length = Math.min(partitionSize - position, input.length - offset);
+            // Read the input before the output overwrites it when both are the same array
+            System.arraycopy(input, offset, inputBuffer, position, length);
+            System.arraycopy(outputBuffer, position, output, offset, length);
+            position += length;
+            offset += length;
+            if (position == partitionSize) {
+                position = 0;
+                processPartition();
+            }
+        }
+    }
+
+    /**
+     * Returns the latency, which equals the partition size.
+     *
+     * @return  latency in samples
+     */
+    public int getLatency() {
+        return partitionSize;
+    }
+
+    /**
+     * Returns the number of partitions.
+     *
+     * @return  number of partitions
+     */
+    public int getNumberOfPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Clears the delay line and all buffers.
+     */
+    public void reset() {
+        for (float[] spectrum : delayLine) {
+            clear(spectrum);
+        }
+        clear(inputBuffer);
+        clear(outputBuffer);
+        clear(fftBuffer);
+        position = 0;
+    }
+
+    private void processPartition() {
+        // Overlap-save: the previous block is still in the upper half of the FFT buffer
+        System.arraycopy(fftBuffer, partitionSize, fftBuffer, 0, partitionSize);
+        System.arraycopy(inputBuffer, 0, fftBuffer, partitionSize, partitionSize);
+
+        delayLineIndex = delayLineIndex == 0 ? partitions - 1 : delayLineIndex - 1;
+        float[] spectrum = delayLine[delayLineIndex];
+        System.arraycopy(fftBuffer, 0, spectrum, 0, spectrum.length);
+        fft.realForward(spectrum);
+
+        clear(accumulator);
+        for (int p = 0; p < partitions; p++) {
+            if (!zeroPartition[p]) {
+                multiplyAccumulate(delayLine[(delayLineIndex + p) % partitions],
+                        partitionSpectra[p], accumulator);
+            }
+        }
+        fft.realInverse(accumulator, true);
+        System.arraycopy(accumulator, partitionSize, outputBuffer, 0, partitionSize);
+    }
+
+    /**
+     * Multiplies two spectra in the packed format of {@link FloatFFT_1D#realForward(float[])}
+     * and adds the product to {@code result}.
+     */
+    private static void multiplyAccumulate(float[] a, float[] b, float[] result) {
+        result[0] += a[0] * b[0];
+        result[1] += a[1] * b[1];
+        for (int i = 2; i < a.length; i += 2) {
+            result[i] += a[i] * b[i] - a[i + 1] * b[i + 1];
+            result[i + 1] += a[i] * b[i + 1] + a[i + 1] * b[i];
+        }
+    }
+
+    private static void clear(float[] array) {
+        for (int i = 0; i < array.length; i++) {
+            array[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+import android.support.annotation.NonNull;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.fft.Window;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.fft.WindowType;
+
+/**
+ * <p>
+ *     Decimates a signal by an integer factor M with an anti-aliasing FIR filter. <br>
+ *     Only every M-th output of the filter is computed, the discarded outputs are never
+ *     calculated. The cost is one dot product of the filter length per output sample.
+ * </p>
+ * <p>
+ *     The filter is either given as coefficients, as a {@link FIRFilter} designed from a
+ *     {@link FilterSpec} or designed as a windowed-sinc low-pass whose stopband starts at
+ *     the output Nyquist frequency fs / (2M).
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class PolyphaseDecimator {
+
+    // Transition width of a Blackman-windowed sinc times the filter length
+    private static final double BLACKMAN_TRANSITION_WIDTH = 5.5;
+
+    private final int factor;
+    private final float[] coefficients;
+    private final int length;
+    // Doubled history so that the last <length> samples are always contiguous
+    private final float[] history;
+    private int position = 0;
+    private int phase = 0;
+    private float output;
+
+    /**
+     * Creates an instance of {@code PolyphaseDecimator} with a windowed-sinc anti-aliasing filter.
+     *
+     * @param factor                        decimation factor M >= 1
+     * @param length                        number of filter coefficients
+     * @throws IllegalArgumentException     if factor < 1 or length < 1
+     */
+    public PolyphaseDecimator(int factor, int length) {
+        this(factor, designAntiAliasingFilter(factor, length));
+    }
+
+    /**
+     * Creates an instance of {@code PolyphaseDecimator} with the coefficients of a FIR filter.
+     *
+     * @param factor                        decimation factor M >= 1
+     * @param filter                        anti-aliasing filter
+     * @throws IllegalArgumentException     if factor < 1
+     */
+    public PolyphaseDecimator(int factor, @NonNull FIRFilter filter) {
+        this(factor, filter.getCoefficients());
+    }
+
+    /**
+     * Creates an instance of {@code PolyphaseDecimator}.
+     *
+     * @param factor                        decimation factor M >= 1
+     * @param coefficients                  coefficients of the anti-aliasing filter
+     * @throws IllegalArgumentException     if factor < 1 or no coefficients are given
+     */
+    public PolyphaseDecimator(int factor, @NonNull float[] coefficients) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("Decimation factor must be >= 1.");
+        }
+        if (coefficients.length == 0) {
+            throw new IllegalArgumentException("Filter coefficients must not be empty.");
+        }
+        this.factor = factor;
+        this.coefficients = coefficients.clone();
+        length = coefficients.length;
+        history = new float[2 * length];
+    }
+
+    /**
+     * Pushes one input sample into the decimator.
+     *
+     * @param sample    input sample
+     * @return          true if an output sample was produced, see {@link #getOutput()}
+     */
+    public boolean processSample(float sample) {
+        position = position == 0 ? length - 1 : position - 1;
+        history[position] = sample;
+        history[position + length] = sample;
+        if (phase != 0) {
+            phase = phase == factor - 1 ? 0 : phase + 1;
+            return false;
+        }
+        phase = factor == 1 ? 0 : 1;
+        float acc = 0;
+        for (int k = 0; k < length; k++) {
+            acc += coefficients[k] * history[position + k];
+        }
+        output = acc;
+        return true;
+    }
+
+    /**
+     * Decimates a block of samples.
+     *
+     * @param input     input samples
+     * @param output    output samples, must hold at least input.length / factor + 1 samples
+     * @return          number of output samples written
+     */
+    public int process(@NonNull float[] input, @NonNull float[] output) {
+        int count = 0;
+        for (float sample : input) {
+            if (processSample(sample)) {
+                output[count++] = this.output;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the most recent output sample.
+     *
+     * @return  output sample
+     */
+    public float getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns the decimation factor.
+     *
+     * @return  decimation factor
+     */
+    public int getFactor() {
+        return factor;
+    }
+
+    /**
+     * Clears the history.
+     */
+    public void reset() {
+        for (int i = 0; i < history.length; i++) {
+            history[i] = 0;
+        }
+        position = 0;
+        phase = 0;
+    }
+
+    /**
+     * <p>
+     *     Designs a Blackman-windowed sinc low-pass filter with unity gain at DC. The
+     *     transition band of the Blackman window is about 5.5 / length of the sampling
+     *     frequency wide. The cut-off is placed half a transition width below the output
+     *     Nyquist frequency fs / (2 * factor), so the stopband starts at the output Nyquist
+     *     frequency and nothing above it aliases at full strength. For short filters the
+     *     cut-off does not drop below half the output Nyquist frequency. A factor of 1 gives
+     *     an all-pass delay.
+     * </p>
+     *
+     * @param factor                        resampling factor >= 1
+     * @param length                        number of coefficients
+     * @return                              filter coefficients
+     * @throws IllegalArgumentException     if factor < 1 or length < 1
+     */
+    public static float[] designAntiAliasingFilter(int factor, int length) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("Factor must be >= 1.");
+        }
+        if (length < 1) {
+            throw new IllegalArgumentException("Filter length must be >= 1.");
+        }
+        double cutoff = 0.5;
+        if (factor > 1) {
+            double nyquist = 0.5 / factor;
+            cutoff = Math.max(nyquist - BLACKMAN_TRANSITION_WIDTH / (2.0 * length),
+                    nyquist / 2);
+        }
+        return designLowPassFilter(length, cutoff);
+    }
+
+    /**
+     * <p>
+     *     Designs a Blackman-windowed sinc low-pass filter with unity gain at DC. The gain at
+     *     the cut-off frequency is -6 dB.
+     * </p>
+     *
+     * @param length                        number of coefficients
+     * @param cutoff                        cut-off frequency relative to the sampling
+     *                                      frequency, in (0, 0.5]
+     * @return                              filter coefficients
+     * @throws IllegalArgumentException     if length < 1 or the cut-off is out of range
+     */
+    public static float[] designLowPassFilter(int length, double cutoff) {
+        if (length < 1) {
+            throw new IllegalArgumentException("Filter length must be >= 1.");
+        }
+        if (cutoff <= 0 || cutoff > 0.5) {
+            throw new IllegalArgumentException("Cut-off must be within (0, 0.5].");
+        }
+        float[] w = new Window(WindowType.BLACKMAN).getWindow(length);
+        float[] h = new float[length];
+        double centre = (length - 1) / 2.0;
+        double sum = 0;
+        for (int n = 0; n < length; n++) {
+            double x = 2 * cutoff * (n - centre);
+            double sinc = x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+            h[n] = (float) sinc * (length > 2 ? w[n] : 1);
+            sum += h[n];
+        }
+        for (int n = 0; n < length; n++) {
+            h[n] /= sum;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,129 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter;
+
+import android.support.annotation.NonNull;
+
+/**
+ * <p>
+ *     Interpolates a signal by an integer factor L with an anti-imaging FIR filter. <br>
+ *     The filter is split into L polyphase branches h[iL + p]. Every input sample produces
+ *     L output samples, each computed from one branch only, so the zeros of the zero-stuffed
+ *     input are never multiplied. The cost per output sample is the filter length / L.
+ * </p>
+ * <p>
+ *     The coefficients are scaled by L, so a filter with unity gain at DC keeps the
+ *     amplitude of the signal.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class PolyphaseInterpolator {
+
+    private final int factor;
+    private final int branchLength;
+    // branches[p][i] = L * h[i * L + p]
+    private final float[][] branches;
+    // Doubled history so that the last <branchLength> samples are always contiguous
+    private final float[] history;
+    private int position = 0;
+
+    /**
+     * Creates an instance of {@code PolyphaseInterpolator} with a windowed-sinc anti-imaging filter.
+     *
+     * @param factor                        interpolation factor L >= 1
+     * @param length                        number of filter coefficients
+     * @throws IllegalArgumentException     if factor < 1 or length < 1
+     */
+    public PolyphaseInterpolator(int factor, int length) {
+        this(factor, PolyphaseDecimator.designAntiAliasingFilter(factor, length));
+    }
+
+    /**
+     * Creates an instance of {@code PolyphaseInterpolator} with the coefficients of a FIR filter.
+     *
+     * @param factor                        interpolation factor L >= 1
+     * @param filter                        anti-imaging filter
+     * @throws IllegalArgumentException     if factor < 1
+     */
+    public PolyphaseInterpolator(int factor, @NonNull FIRFilter filter) {
+        this(factor, filter.getCoefficients());
+    }
+
+    /**
+     * Creates an instance of {@code PolyphaseInterpolator}.
+     *
+     * @param factor                        interpolation factor L >= 1
+     * @param coefficients                  coefficients of the anti-imaging filter
+     * @throws IllegalArgumentException     if factor < 1 or no coefficients are given
+     */
+    public PolyphaseInterpolator(int factor, @NonNull float[] coefficients) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("Interpolation factor must be >= 1.");
+        }
+        if (coefficients.length == 0) {
+            throw new IllegalArgumentException("Filter coefficients must not be empty.");
+        }
+        this.factor = factor;
+        branchLength = (coefficients.length + factor - 1) / factor;
+        branches = new float[factor][branchLength];
+        for (int n = 0; n < coefficients.length; n++) {
+            branches[n % factor][n / factor] = factor * coefficients[n];
+        }
+        history = new float[2 * branchLength];
+    }
+
+    /**
+     * Interpolates a block of samples.
+     *
+     * @param input     input samples
+     * @param output    output samples, must hold at least input.length * factor samples
+     * @return          number of output samples written
+     */
+    public int process(@NonNull float[] input, @NonNull float[] output) {
+        int count = 0;
+        for (float sample : input) {
+            processSample(sample, output, count);
+            count += factor;
+        }
+        return count;
+    }
+
+    /**
+     * Pushes one input sample into the interpolator and writes {@code factor} output samples.
+     *
+     * @param sample    input sample
+     * @param output    output array
+     * @param offset    index of the first output sample
+     */
+    public void processSample(float sample, @NonNull float[] output, int offset) {
+        position = position == 0 ? branchLength - 1 : position - 1;
+        history[position] = sample;
+        history[position + branchLength] = sample;
+        for (int p = 0; p < factor; p++) {
+            final float[] branch = branches[p];
+            float acc = 0;
+            for (int i = 0; i < branchLength; i++) {
+                acc += branch[i] * history[position + i];
+            }
+            output[offset + p] = acc;
+        }
+    }
+
+    /**
+     * Returns the interpolation factor.
+     *
+     * @return  interpolation factor
+     */
+    public int getFactor() {
+        return factor;
+    }
+
+    /**
+     * Clears the history.
+     */
+    public void reset() {
+        for (int i = 0; i < history.length; i++) {
+            history[i] = 0;
+        }
+        position = 0;
+    }
+}
@@ -3,10 +3,23 @@ package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.modulation;
 import android.os.Parcel;
 import android.support.annotation.NonNull;
 
+import java.util.List;
+
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.Oscillator;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.Waveform;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
 
 /**
+ * <p>
  * Ring modulation is a multiplication of the input signal with a carrier signal.
+ * </p>
+ * <p>
+ * The carrier comes from an {@link Oscillator}, a cosine by default, and is advanced once
+ * per frame. The band-limited tables keep non-sinusoidal carriers free of aliasing.
+ * A new carrier frequency or waveform is passed to the oscillator at the beginning of a
+ * block, the phase continues.
+ * </p>
  *
  * @author georgrem, stockan1
  */
@@ -16,25 +29,46 @@ public class RingModulation extends AudioEffect {
     private static final String LABEL = "Ring modulation";
     private static final String DESCRIPTION = "Amplitude modulation without the original signal, duplicates and shifts the spectrum, modifies pitch and timbre";
 
-    private double modulationFrequency;
-    private long index = 0;
+    private volatile float modulationFrequency;
+    private volatile Waveform waveform = Waveform.SINE;
+    private final Oscillator oscillator;
 
     /**
-     * * Creates an instance of {@code RingModulation}.
+     * Creates an instance of {@code RingModulation} for {@link Constants#DEFAULT_CHANNELS}
+     * interleaved channels.
      *
      * @param carrierFrequency          the carrier frequency (modulation frequency) must be >= 0
      * @throws IllegalArgumentException if carrier frequency < 0
      */
     public RingModulation(double carrierFrequency) throws IllegalArgumentException {
+        this(carrierFrequency, Constants.DEFAULT_CHANNELS);
+    }
+
+    /**
+     * Creates an instance of {@code RingModulation}.
+     *
+     * @param carrierFrequency          the carrier frequency (modulation frequency) must be >= 0
+     * @param channels                  number of interleaved channels
+     * @throws IllegalArgumentException if carrier frequency < 0 or channels < 1
+     */
+    public RingModulation(double carrierFrequency, int channels) throws IllegalArgumentException {
         if (carrierFrequency < 0) {
             throw new IllegalArgumentException("Carrier frequency must be >= 0.");
         }
-        setModulationFrequency(carrierFrequency);
+        super.setChannels(channels);
+        this.modulationFrequency = (float) carrierFrequency;
+        oscillator = new Oscillator(waveform, modulationFrequency, getSamplingFrequency());
+        // Cosine carrier
+        oscillator.setPhase(Oscillator.toPhase(0.25));
     }
 
     protected RingModulation(Parcel in) {
-        this.modulationFrequency = in.readDouble();
-        this.index = in.readLong();
+        super.setChannels(in.readInt());
+        super.setSamplingFrequency(in.readInt());
+        this.waveform = Waveform.values()[in.readInt()];
+        this.modulationFrequency = in.readFloat();
+        oscillator = new Oscillator(waveform, modulationFrequency, getSamplingFrequency());
+        oscillator.setPhase(in.readInt());
     }
 
     /**
@@ -45,16 +79,28 @@ public class RingModulation extends AudioEffect {
     @Override
     public void apply(@NonNull float[] input, @NonNull float[] output) {
         if (input.length == output.length) {
-            for (int i = 0; i < input.length; i++) {
-                output[i] = (float) (input[i] * Math.cos(2 * Math.PI * modulationFrequency *
-                        (index++ / (float) getSamplingFrequency())));
-                if (index == getSamplingFrequency()) {
-                    index = 0;
+            updateOscillator();
+            final int channels = getChannels();
+            for (int frame = 0; frame < input.length; frame += channels) {
+                float carrier = oscillator.next();
+                int end = Math.min(frame + channels, input.length);
+                for (int i = frame; i < end; i++) {
+                    output[i] = input[i] * carrier;
                 }
             }
         }
     }
 
+    /**
+     * The carrier is multiplied with the input, there is no tail.
+     *
+     * @return  0
+     */
+    @Override
+    public float getTailTime() {
+        return 0;
+    }
+
     @Override
     public String getLabel() {
         return LABEL;
@@ -65,8 +111,52 @@ public class RingModulation extends AudioEffect {
         return DESCRIPTION;
     }
 
+    /**
+     * Sets the carrier frequency, the oscillator continues with its current phase.
+     *
+     * @param modFreq                       the carrier frequency must be >= 0
+     * @throws IllegalArgumentException     if carrier frequency < 0
+     */
     public void setModulationFrequency(double modFreq) {
-        modulationFrequency = modFreq;
+        if (modFreq < 0) {
+            throw new IllegalArgumentException("Carrier frequency must be >= 0.");
+        }
+        modulationFrequency = (float) modFreq;
+    }
+
+    /**
+     * Sets the waveform of the carrier.
+     *
+     * @param waveform  the waveform
+     */
+    public void setWaveform(@NonNull Waveform waveform) {
+        this.waveform = waveform;
+    }
+
+    /**
+     * Passes a new frequency or waveform to the oscillator, on the audio thread.
+     */
+    private void updateOscillator() {
+        float frequency = Math.min(modulationFrequency, getSamplingFrequency() / 2.0f);
+        Waveform waveform = this.waveform;
+        if (waveform != oscillator.getWaveform()) {
+            oscillator.setWaveform(waveform);
+        }
+        if (frequency != oscillator.getFrequency()) {
+            oscillator.setFrequency(frequency);
+        }
+    }
+
+    @Override
+    public void setSamplingFrequency(int samplingFrequency) {
+        super.setSamplingFrequency(samplingFrequency);
+        oscillator.setSamplingFrequency(getSamplingFrequency());
+    }
+
+    @Override
+    protected void addConfiguration(@NonNull List<Object> key) {
+        key.add(waveform);
+        key.add(modulationFrequency);
     }
 
     @Override
@@ -76,8 +166,11 @@ public class RingModulation extends AudioEffect {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
-        dest.writeDouble(this.modulationFrequency);
-        dest.writeLong(this.index);
+        dest.writeInt(getChannels());
+        dest.writeInt(getSamplingFrequency());
+        dest.writeInt(this.waveform.ordinal());
+        dest.writeFloat(this.modulationFrequency);
+        dest.writeInt(oscillator.getPhase());
     }
 
     public static final Creator<RingModulation> CREATOR = new Creator<RingModulation>() {
@@ -3,7 +3,12 @@ package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.modulation;
 import android.os.Parcel;
 import android.support.annotation.NonNull;
 
+import java.util.List;
+
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.Oscillator;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.Parameter;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.Waveform;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
 
 /**
@@ -13,6 +18,11 @@ import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
  * <p>
  * Source: <a href="http://users.cs.cf.ac.uk/Dave.Marshall/CM0268/PDF/10_CM0268_Audio_FX.pdf">link</a>
  * </p>
+ * <p>
+ * The modulation signal comes from an {@link Oscillator} and is advanced once per frame,
+ * all channels are modulated with the same gain. The amplitude is ramped per frame, a new
+ * modulation frequency or waveform is passed to the oscillator at the beginning of a block.
+ * </p>
  */
 
 public class Tremolo extends AudioEffect {
@@ -20,29 +30,50 @@ public class Tremolo extends AudioEffect {
     private static final String LABEL = "Tremolo";
     private static final String DESCRIPTION = "Amplitude modulation";
 
-    private float modulationFrequency;
-    private float amplitude = Constants.TREMOLO_DEFAULT_AMPLITUDE;
-    private long index = 0;
+    private final Parameter amplitude;
+    private volatile float modulationFrequency;
+    private volatile Waveform waveform = Waveform.SINE;
+    private final Oscillator oscillator;
 
     /**
-     * * Creates an instance of {@code Tremolo}.
+     * Creates an instance of {@code Tremolo} for {@link Constants#DEFAULT_CHANNELS}
+     * interleaved channels.
      *
      * @param modulationFrequency       the modulation frequency (modulation frequency) must be >= 0
      * @param amplitude                 the modulation amplitude
      * @throws IllegalArgumentException if modulation frequency < 0
      */
     public Tremolo(float modulationFrequency, float amplitude) throws IllegalArgumentException {
+        this(modulationFrequency, amplitude, Constants.DEFAULT_CHANNELS);
+    }
+
+    /**
+     * Creates an instance of {@code Tremolo}.
+     *
+     * @param modulationFrequency       the modulation frequency (modulation frequency) must be >= 0
+     * @param amplitude                 the modulation amplitude
+     * @param channels                  number of interleaved channels
+     * @throws IllegalArgumentException if modulation frequency < 0 or channels < 1
+     */
+    public Tremolo(float modulationFrequency, float amplitude, int channels)
+            throws IllegalArgumentException {
         if (modulationFrequency < 0) {
             throw new IllegalArgumentException("Modulation frequency must be >= 0.");
         }
-        this.amplitude = amplitude;
-        setModulationFrequency(modulationFrequency);
+        super.setChannels(channels);
+        this.amplitude = createParameter(amplitude, 1);
+        this.modulationFrequency = modulationFrequency;
+        oscillator = new Oscillator(waveform, modulationFrequency, getSamplingFrequency());
     }
 
     protected Tremolo(Parcel in) {
+        super.setChannels(in.readInt());
+        super.setSamplingFrequency(in.readInt());
+        this.amplitude = createParameter(in.readFloat(), 1);
+        this.waveform = Waveform.values()[in.readInt()];
         this.modulationFrequency = in.readFloat();
-        this.amplitude = in.readFloat();
-        this.index = in.readLong();
+        oscillator = new Oscillator(waveform, modulationFrequency, getSamplingFrequency());
+        oscillator.setPhase(in.readInt());
     }
 
     /**
@@ -53,13 +84,29 @@ public class Tremolo extends AudioEffect {
     @Override
     public void apply(@NonNull float[] input, @NonNull float[] output) {
         if (input.length == output.length) {
-            for (int i = 0; i < input.length; i++) {
-                output[i] = input[i] * (float) (1 + amplitude * Math.sin(2 * Math.PI * index++ *
-                        (modulationFrequency / (float) getSamplingFrequency())));
+            amplitude.update();
+            updateOscillator();
+            final int channels = getChannels();
+            for (int frame = 0; frame < input.length; frame += channels) {
+                float gain = 1 + amplitude.next() * oscillator.next();
+                int end = Math.min(frame + channels, input.length);
+                for (int i = frame; i < end; i++) {
+                    output[i] = input[i] * gain;
+                }
             }
         }
     }
 
+    /**
+     * The modulation only scales the input, there is no tail.
+     *
+     * @return  0
+     */
+    @Override
+    public float getTailTime() {
+        return 0;
+    }
+
     @Override
     public String getLabel() {
         return LABEL;
@@ -70,12 +117,56 @@ public class Tremolo extends AudioEffect {
         return DESCRIPTION;
     }
 
+    /**
+     * Sets the modulation frequency, the oscillator continues with its current phase.
+     *
+     * @param modulationFrequency           the modulation frequency must be >= 0
+     * @throws IllegalArgumentException     if modulation frequency < 0
+     */
     public void setModulationFrequency(float modulationFrequency) {
+        if (modulationFrequency < 0) {
+            throw new IllegalArgumentException("Modulation frequency must be >= 0.");
+        }
         this.modulationFrequency = modulationFrequency;
     }
 
     public void setAmplitude(float amplitude) {
-        this.amplitude = amplitude;
+        this.amplitude.set(amplitude);
+    }
+
+    /**
+     * Sets the waveform of the modulation signal.
+     *
+     * @param waveform  the waveform
+     */
+    public void setWaveform(@NonNull Waveform waveform) {
+        this.waveform = waveform;
+    }
+
+    /**
+     * Passes a new frequency or waveform to the oscillator, on the audio thread.
+     */
+    private void updateOscillator() {
+        float frequency = Math.min(modulationFrequency, getSamplingFrequency() / 2.0f);
+        Waveform waveform = this.waveform;
+        if (waveform != oscillator.getWaveform()) {
+            oscillator.setWaveform(waveform);
+        }
+        if (frequency != oscillator.getFrequency()) {
+            oscillator.setFrequency(frequency);
+        }
+    }
+
+    @Override
+    public void setSamplingFrequency(int samplingFrequency) {
+        super.setSamplingFrequency(samplingFrequency);
+        oscillator.setSamplingFrequency(getSamplingFrequency());
+    }
+
+    @Override
+    protected void addConfiguration(@NonNull List<Object> key) {
+        key.add(waveform);
+        key.add(modulationFrequency);
     }
 
     @Override
@@ -85,9 +176,12 @@ public class Tremolo extends AudioEffect {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(getChannels());
+        dest.writeInt(getSamplingFrequency());
+        dest.writeFloat(this.amplitude.get());
+        dest.writeInt(this.waveform.ordinal());
         dest.writeFloat(this.modulationFrequency);
-        dest.writeFloat(this.amplitude);
-        dest.writeLong(this.index);
+        dest.writeInt(oscillator.getPhase());
     }
 
     public static final Creator<Tremolo> CREATOR = new Creator<Tremolo>() {
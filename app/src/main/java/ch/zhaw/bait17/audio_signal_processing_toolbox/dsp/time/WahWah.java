@@ -3,7 +3,10 @@ package ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.time;
 import android.os.Parcel;
 import android.support.annotation.NonNull;
 
+import java.util.List;
+
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
 
 /**
  * <p>
@@ -35,7 +38,7 @@ public class WahWah extends AudioEffect {
 
 
     /**
-     * * Creates an instance of {@code WahWah}.
+     * Creates an instance of {@code WahWah}.
      */
     public WahWah() {
         currentTriangleWaveFrequency = minCenterCutoffFrequency;
@@ -102,12 +105,29 @@ public class WahWah extends AudioEffect {
                     output[i] = yb[i];
                 }
             }
-            yh_previous = yh[input.length - 1];
-            yb_previous = yb[input.length - 1];
-            yl_previous = yl[input.length - 1];
+            // Flush the decaying state to zero before it becomes denormal
+            yh_previous = flushDenormal(yh[input.length - 1]);
+            yb_previous = flushDenormal(yb[input.length - 1]);
+            yl_previous = flushDenormal(yl[input.length - 1]);
         }
     }
 
+    /**
+     * The resonance decays with the damping factor at the lowest centre frequency, about
+     * ln(1 / {@link Constants#SILENCE_THRESHOLD}) / (damping * 2 * pi * fc).
+     *
+     * @return  tail time in seconds
+     */
+    @Override
+    public float getTailTime() {
+        return (float) (Math.log(1 / Constants.SILENCE_THRESHOLD)
+                / (dampingFactor * 2 * Math.PI * minCenterCutoffFrequency));
+    }
+
+    private static float flushDenormal(float value) {
+        return Math.abs(value) < Constants.DENORMAL_THRESHOLD ? 0 : value;
+    }
+
     @Override
     public String getLabel() {
         return LABEL;
@@ -132,6 +152,15 @@ public class WahWah extends AudioEffect {
         }
     }
 
+    @Override
+    protected void addConfiguration(@NonNull List<Object> key) {
+        key.add(sampleRate);
+        key.add(dampingFactor);
+        key.add(minCenterCutoffFrequency);
+        key.add(maxCenterCutoffFrequency);
+        key.add(whaFrequency);
+    }
+
     @Override
     public int describeContents() {
         return hashCode();
@@ -0,0 +1,22 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.fft;
+
+/**
+ * Spectral averaging modes supported by {@link SpectralAverager}.
+ *
+ * @author georgrem, stockan1
+ */
+
+public enum AveragingMode {
+    NONE("None"), WELCH("Welch"), EXPONENTIAL("Exponential");
+
+    private String stringValue = "";
+
+    AveragingMode(String toString) {
+        stringValue = toString;
+    }
+
+    @Override
+    public String toString() {
+        return stringValue;
+    }
+}
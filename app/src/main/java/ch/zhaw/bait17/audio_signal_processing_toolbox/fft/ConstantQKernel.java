@@ -0,0 +1,216 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.fft;
+
+import org.jtransforms.fft.FloatFFT_1D;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
+
+/**
+ * <p>
+ *     Precomputed sparse spectral kernels of the constant-Q transform. <br>
+ *     Kernels are immutable and cached per (sample rate, bins per octave, minimum frequency),
+ *     so that they are computed only once and can be shared between threads.
+ *     The cache keeps only the most recently used kernels.
+ * </p>
+ * <p>
+ *     J. C. Brown and M. S. Puckette, An efficient algorithm for the calculation of a
+ *     constant Q transform, J. Acoust. Soc. Am. 92(5), 1992.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+final class ConstantQKernel {
+
+    // Spectral kernel values below this magnitude are discarded (Brown and Puckette)
+    private static final float MIN_KERNEL_MAGNITUDE = 0.0054f;
+    private static final Map<String, ConstantQKernel> CACHE =
+            new LinkedHashMap<String, ConstantQKernel>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ConstantQKernel> eldest) {
+                    return size() > Constants.CONSTANT_Q_KERNEL_CACHE_SIZE;
+                }
+            };
+
+    private final int sampleRate;
+    private final int binsPerOctave;
+    private final float minFrequency;
+    private final int fftSize;
+    private final float[] centreFrequencies;
+    // Sparse kernel k occupies the range [offsets[k], offsets[k+1]) of the arrays below
+    private final int[] offsets;
+    private final int[] fftBins;
+    private final float[] kernelReal;
+    private final float[] kernelImag;
+
+    /**
+     * Returns the cached kernel for the given parameters. The kernel is computed on first use.
+     *
+     * @param sampleRate        sample rate in Hz
+     * @param binsPerOctave     number of bins per octave
+     * @param minFrequency      centre frequency of the lowest bin in Hz
+     * @return                  the sparse kernel
+     */
+    static ConstantQKernel getKernel(int sampleRate, int binsPerOctave, float minFrequency) {
+        String key = sampleRate + ":" + binsPerOctave + ":" + Float.floatToIntBits(minFrequency);
+        synchronized (CACHE) {
+            ConstantQKernel kernel = CACHE.get(key);
+            if (kernel == null) {
+                kernel = new ConstantQKernel(sampleRate, binsPerOctave, minFrequency);
+                CACHE.put(key, kernel);
+            }
+            return kernel;
+        }
+    }
+
+    private ConstantQKernel(int sampleRate, int binsPerOctave, float minFrequency) {
+        this.sampleRate = sampleRate;
+        this.binsPerOctave = binsPerOctave;
+        this.minFrequency = minFrequency;
+
+        final double q = 1.0 / (Math.pow(2, 1.0 / binsPerOctave) - 1);
+        final int bins = (int) Math.floor(binsPerOctave *
+                Math.log(sampleRate / 2.0 / minFrequency) / Math.log(2));
+        fftSize = nextPowerOfTwo((int) Math.ceil(q * sampleRate / minFrequency));
+        centreFrequencies = new float[bins];
+        offsets = new int[bins + 1];
+
+        int[][] indices = new int[bins][];
+        float[][] real = new float[bins][];
+        float[][] imag = new float[bins][];
+        int total = 0;
+
+        FloatFFT_1D fft = new FloatFFT_1D(fftSize);
+        float[] buffer = new float[2 * fftSize];
+        int[] tmpIndices = new int[fftSize / 2 + 1];
+        Window hamming = new Window(WindowType.HAMMING);
+
+        for (int k = 0; k < bins; k++) {
+            double fk = minFrequency * Math.pow(2, k / (double) binsPerOctave);
+            centreFrequencies[k] = (float) fk;
+            int nk = (int) Math.ceil(q * sampleRate / fk);
+            float[] window = hamming.getWindow(nk);
+
+            // Temporal kernel at the end of the FFT frame, on the most recent samples
+            Arrays.fill(buffer, 0);
+            int start = fftSize - nk;
+            for (int n = 0; n < nk; n++) {
+                double arg = 2 * Math.PI * q * n / nk;
+                buffer[2 * (start + n)] = (float) (window[n] / nk * Math.cos(arg));
+                buffer[2 * (start + n) + 1] = (float) (window[n] / nk * Math.sin(arg));
+            }
+            fft.complexForward(buffer);
+
+            // Keep only the significant values of the positive frequencies
+            int count = 0;
+            for (int j = 0; j <= fftSize / 2; j++) {
+                float re = buffer[2 * j];
+                float im = buffer[2 * j + 1];
+                if (Math.sqrt(re * re + im * im) > MIN_KERNEL_MAGNITUDE) {
+                    tmpIndices[count++] = j;
+                }
+            }
+            indices[k] = Arrays.copyOf(tmpIndices, count);
+            real[k] = new float[count];
+            imag[k] = new float[count];
+            for (int i = 0; i < count; i++) {
+                int j = tmpIndices[i];
+                // Normalised for Parseval's theorem, the conjugate is applied in apply()
+                real[k][i] = buffer[2 * j] / fftSize;
+                imag[k][i] = buffer[2 * j + 1] / fftSize;
+            }
+            total += count;
+        }
+
+        fftBins = new int[total];
+        kernelReal = new float[total];
+        kernelImag = new float[total];
+        for (int k = 0; k < bins; k++) {
+            offsets[k + 1] = offsets[k] + indices[k].length;
+            System.arraycopy(indices[k], 0, fftBins, offsets[k], indices[k].length);
+            System.arraycopy(real[k], 0, kernelReal, offsets[k], real[k].length);
+            System.arraycopy(imag[k], 0, kernelImag, offsets[k], imag[k].length);
+        }
+    }
+
+    /**
+     * <p>
+     *     Applies the sparse kernels to a spectrum in the packed format of
+     *     {@link FloatFFT_1D#realForward(float[])} and writes the power of every
+     *     constant-Q bin to {@code output}.
+     * </p>
+     *
+     * @param spectrum  packed real FFT of length {@link #getFFTSize()}
+     * @param output    array of length {@link #getNumberOfBins()}
+     */
+    void apply(float[] spectrum, float[] output) {
+        final int nyquist = fftSize / 2;
+        for (int k = 0; k < centreFrequencies.length; k++) {
+            float re = 0;
+            float im = 0;
+            for (int i = offsets[k]; i < offsets[k + 1]; i++) {
+                int j = fftBins[i];
+                float xr;
+                float xi;
+                if (j == 0) {
+                    xr = spectrum[0];
+                    xi = 0;
+                } else if (j == nyquist) {
+                    xr = spectrum[1];
+                    xi = 0;
+                } else {
+                    xr = spectrum[2 * j];
+                    xi = spectrum[2 * j + 1];
+                }
+                // X * conj(K)
+                re += xr * kernelReal[i] + xi * kernelImag[i];
+                im += xi * kernelReal[i] - xr * kernelImag[i];
+            }
+            output[k] = re * re + im * im;
+        }
+    }
+
+    int getSampleRate() {
+        return sampleRate;
+    }
+
+    int getBinsPerOctave() {
+        return binsPerOctave;
+    }
+
+    float getMinFrequency() {
+        return minFrequency;
+    }
+
+    int getFFTSize() {
+        return fftSize;
+    }
+
+    int getNumberOfBins() {
+        return centreFrequencies.length;
+    }
+
+    float getCentreFrequency(int bin) {
+        return centreFrequencies[bin];
+    }
+
+    /**
+     * Returns the number of non-zero kernel values, i.e. the number of complex
+     * multiplications per frame.
+     *
+     * @return  number of non-zero kernel values
+     */
+    int getNonZeroCount() {
+        return fftBins.length;
+    }
+
+    private static int nextPowerOfTwo(int n) {
+        int power = 1;
+        while (power < n) {
+            power <<= 1;
+        }
+        return power;
+    }
+}
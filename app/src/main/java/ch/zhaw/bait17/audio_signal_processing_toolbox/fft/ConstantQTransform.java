@@ -0,0 +1,179 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.fft;
+
+import android.support.annotation.NonNull;
+
+import org.jtransforms.fft.FloatFFT_1D;
+
+import java.util.Arrays;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.PCMUtil;
+
+/**
+ * <p>
+ *     Computes the constant-Q transform (CQT) of a signal. <br>
+ *     The centre frequencies of the CQT bins are geometrically spaced, which gives every octave
+ *     the same number of bins - the musical resolution a log-frequency display needs.
+ * </p>
+ * <p>
+ *     The transform is computed as one FFT followed by a sparse multiplication with precomputed
+ *     spectral kernels. Kernels are cached per (sample rate, bins per octave, minimum frequency)
+ *     and shared between all instances with the same parameters.
+ * </p>
+ * <p>
+ *     The lowest bin needs a long FFT frame, e.g. 16384 samples for 12 bins per octave from
+ *     55 Hz at 44.1 kHz, which is far longer than a block of the audio player. The last
+ *     {@link #getFFTSize()} samples are kept, so every block is analysed together with its
+ *     predecessors. The kernel of a bin covers the most recent samples at the end of the
+ *     frame, so the latency of a bin is half its kernel length and high bins follow the
+ *     signal closely while low bins integrate over a longer time.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class ConstantQTransform {
+
+    private final ConstantQKernel kernel;
+    private final FloatFFT_1D fft;
+    private final float[] buffer;
+    // The most recent samples, oldest first
+    private final float[] history;
+
+    /**
+     * Creates an instance of {@code ConstantQTransform}.
+     * The highest bin lies just below the Nyquist frequency.
+     *
+     * @param sampleRate                    sample rate in Hz
+     * @param binsPerOctave                 number of bins per octave, e.g. 12 for semitones
+     * @param minFrequency                  centre frequency of the lowest bin in Hz
+     * @throws IllegalArgumentException     if sampleRate <= 0, binsPerOctave <= 0 or
+     *                                      minFrequency is not in the range (0, sampleRate / 2)
+     */
+    public ConstantQTransform(int sampleRate, int binsPerOctave, float minFrequency) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate must be greater than 0.");
+        }
+        if (binsPerOctave <= 0) {
+            throw new IllegalArgumentException("Bins per octave must be greater than 0.");
+        }
+        if (minFrequency <= 0 || minFrequency >= sampleRate / 2.0f) {
+            throw new IllegalArgumentException("Minimum frequency must lie in (0, fs/2).");
+        }
+        kernel = ConstantQKernel.getKernel(sampleRate, binsPerOctave, minFrequency);
+        fft = new FloatFFT_1D(kernel.getFFTSize());
+        buffer = new float[kernel.getFFTSize()];
+        history = new float[kernel.getFFTSize()];
+    }
+
+    /**
+     * <p>
+     *     Computes the constant-Q power spectrum of the given audio samples and the samples
+     *     of the previous calls. <br>
+     *     Multi-channel samples are mixed down to mono.
+     * </p>
+     *
+     * @param samples   a block of PCM samples
+     * @param channels  the number of channels contained in the PCM samples
+     * @return          constant-Q power spectrum
+     * @throws IllegalArgumentException     if channels < 1
+     */
+    public float[] getPowerSpectrum(@NonNull short[] samples, int channels) {
+        if (channels < 1) {
+            throw new IllegalArgumentException("Channels must be >= 1.");
+        }
+        float[] mono = new float[samples.length / channels];
+        for (int i = 0; i < mono.length; i++) {
+            float sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += PCMUtil.short2Float(samples[i * channels + c]);
+            }
+            mono[i] = sum / channels;
+        }
+        float[] output = new float[getNumberOfBins()];
+        transform(mono, output);
+        return output;
+    }
+
+    /**
+     * <p>
+     *     Appends mono samples to the kept samples and computes the constant-Q power spectrum
+     *     of the last {@link #getFFTSize()} samples. <br>
+     *     No memory is allocated.
+     * </p>
+     *
+     * @param samples   mono samples
+     * @param output    array of length {@link #getNumberOfBins()} that will hold the power spectrum
+     */
+    public void transform(@NonNull float[] samples, @NonNull float[] output) {
+        int length = Math.min(samples.length, history.length);
+        System.arraycopy(history, length, history, 0, history.length - length);
+        System.arraycopy(samples, samples.length - length, history, history.length - length,
+                length);
+        System.arraycopy(history, 0, buffer, 0, buffer.length);
+        fft.realForward(buffer);
+        kernel.apply(buffer, output);
+    }
+
+    /**
+     * Discards the kept samples, e.g. when a new track starts.
+     */
+    public void reset() {
+        Arrays.fill(history, 0);
+    }
+
+    /**
+     * Applies the constant-Q kernels to a spectrum that was already computed with
+     * {@link FloatFFT_1D#realForward(float[])} of size {@link #getFFTSize()}.
+     *
+     * @param spectrum  packed real FFT output
+     * @param output    array of length {@link #getNumberOfBins()} that will hold the power spectrum
+     */
+    public void applyKernels(@NonNull float[] spectrum, @NonNull float[] output) {
+        kernel.apply(spectrum, output);
+    }
+
+    /**
+     * Returns the FFT size needed to resolve the lowest bin.
+     *
+     * @return  FFT size
+     */
+    public int getFFTSize() {
+        return kernel.getFFTSize();
+    }
+
+    /**
+     * Returns the number of constant-Q bins.
+     *
+     * @return  number of bins
+     */
+    public int getNumberOfBins() {
+        return kernel.getNumberOfBins();
+    }
+
+    /**
+     * Returns the centre frequency of a constant-Q bin.
+     *
+     * @param bin   bin index
+     * @return      centre frequency in Hz
+     */
+    public float getCentreFrequency(int bin) {
+        return kernel.getCentreFrequency(bin);
+    }
+
+    /**
+     * Returns the sample rate.
+     *
+     * @return  sample rate in Hz
+     */
+    public int getSampleRate() {
+        return kernel.getSampleRate();
+    }
+
+    /**
+     * Returns the number of bins per octave.
+     *
+     * @return  bins per octave
+     */
+    public int getBinsPerOctave() {
+        return kernel.getBinsPerOctave();
+    }
+}
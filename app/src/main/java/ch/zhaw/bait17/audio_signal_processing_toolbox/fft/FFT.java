@@ -26,6 +26,7 @@ public class FFT {
     private FloatFFT_1D fft_1D;
     private int sampleSize = 0;
     private float[] window = null;
+    private float coherentGain = 0;
 
     /**
      * Creates an instance of {@code FFT} with a Hamming window and default FFT resolution.
@@ -201,6 +202,19 @@ public class FFT {
         this.fftResolution = fftResolution;
     }
 
+    /**
+     * <p>
+     *     Returns the coherent gain of the window, i.e. the sum of its coefficients. A
+     *     sinusoid of amplitude A has a power of about (A * gain / 2)^2 in its bin of the
+     *     power spectrum.
+     * </p>
+     *
+     * @return  the coherent gain, 0 before the first spectrum is computed
+     */
+    public float getCoherentGain() {
+        return coherentGain;
+    }
+
     /**
      * Returns the window type used by this instance of {@code FFT}.
      *
@@ -284,8 +298,14 @@ public class FFT {
     private void createWindow() {
         if (sampleSize > 0) {
             window = new Window(windowType).getWindow(sampleSize);
+            float sum = 0;
+            for (float w : window) {
+                sum += w;
+            }
+            coherentGain = sum;
         } else {
             window = null;
+            coherentGain = 0;
         }
     }
 }
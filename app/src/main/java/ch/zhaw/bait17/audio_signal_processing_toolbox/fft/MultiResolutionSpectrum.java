@@ -0,0 +1,297 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.fft;
+
+import android.support.annotation.NonNull;
+
+import org.jtransforms.fft.FloatFFT_1D;
+
+import java.util.Arrays;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.PCMUtil;
+
+/**
+ * <p>
+ *     Multi-resolution spectrum analyser. <br>
+ *     Several short-time Fourier transforms of different sizes run over the same sample
+ *     stream. Long transforms resolve the bass, short transforms follow transients in the
+ *     treble. The results are stitched together into a single log-frequency spectrum.
+ * </p>
+ * <p>
+ *     All transforms advance by a common hop and end at the same sample, so the stitched
+ *     spectrum shows one moment of the signal. Every output bin is taken from the shortest
+ *     transform whose bin spacing is finer than the width of the output bin. An update
+ *     computes all transforms, the cost per sample is about
+ *     sum(N * log2(N)) / hop for the FFT sizes N, so the hop should be as long as the
+ *     display allows, e.g. the samples per frame of the view. The default hop is half the
+ *     longest FFT size.
+ * </p>
+ * <p>
+ *     Powers are normalised by the squared window sum, so a sinusoid shows the same level
+ *     regardless of the transform it is taken from. Within an output bin the maximum power of
+ *     the covered FFT bins is used.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class MultiResolutionSpectrum {
+
+    private final int sampleRate;
+    private final int[] fftSizes;
+    private final FloatFFT_1D[] ffts;
+    private final float[][] windows;
+    private final float[][] buffers;
+    private final float[] normalisation;
+    private final int hopSize;
+    private int samplesUntilUpdate;
+
+    // Sample history, length is the largest FFT size (power of 2)
+    private final float[] history;
+    private final int historyMask;
+    private int historyIndex = 0;
+
+    private final float[] frequencies;
+    private final int[] binResolution;
+    private final int[] binStart;
+    private final int[] binEnd;
+    private final float[] powerSpectrum;
+
+    /**
+     * Creates an instance of {@code MultiResolutionSpectrum} which is updated every half
+     * longest FFT size.
+     *
+     * @param sampleRate                    sample rate in Hz
+     * @param fftSizes                      FFT sizes, powers of 2, e.g. {8192, 2048, 512}
+     * @param minFrequency                  frequency of the lowest output bin in Hz
+     * @param binsPerOctave                 number of log-spaced output bins per octave
+     * @throws IllegalArgumentException     if a parameter is out of range or an FFT size is
+     *                                      not a power of 2
+     */
+    public MultiResolutionSpectrum(int sampleRate, @NonNull int[] fftSizes, float minFrequency,
+                                   int binsPerOctave) {
+        this(sampleRate, fftSizes, minFrequency, binsPerOctave, getMax(fftSizes) / 2);
+    }
+
+    /**
+     * Creates an instance of {@code MultiResolutionSpectrum}.
+     *
+     * @param sampleRate                    sample rate in Hz
+     * @param fftSizes                      FFT sizes, powers of 2, e.g. {8192, 2048, 512}
+     * @param minFrequency                  frequency of the lowest output bin in Hz
+     * @param binsPerOctave                 number of log-spaced output bins per octave
+     * @param hopSize                       number of mono samples between two updates
+     * @throws IllegalArgumentException     if a parameter is out of range or an FFT size is
+     *                                      not a power of 2
+     */
+    public MultiResolutionSpectrum(int sampleRate, @NonNull int[] fftSizes, float minFrequency,
+                                   int binsPerOctave, int hopSize) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate must be greater than 0.");
+        }
+        if (fftSizes.length == 0) {
+            throw new IllegalArgumentException("At least one FFT size is required.");
+        }
+        if (minFrequency <= 0 || minFrequency >= sampleRate / 2.0f) {
+            throw new IllegalArgumentException("Minimum frequency must lie in (0, fs/2).");
+        }
+        if (binsPerOctave <= 0) {
+            throw new IllegalArgumentException("Bins per octave must be greater than 0.");
+        }
+        if (hopSize <= 0) {
+            throw new IllegalArgumentException("Hop size must be greater than 0.");
+        }
+        for (int size : fftSizes) {
+            if (size < 2 || Integer.bitCount(size) != 1) {
+                throw new IllegalArgumentException("FFT sizes must be powers of 2.");
+            }
+        }
+
+        this.sampleRate = sampleRate;
+        // Shortest transform first
+        this.fftSizes = fftSizes.clone();
+        Arrays.sort(this.fftSizes);
+        int count = this.fftSizes.length;
+        ffts = new FloatFFT_1D[count];
+        windows = new float[count][];
+        buffers = new float[count][];
+        normalisation = new float[count];
+        this.hopSize = hopSize;
+        samplesUntilUpdate = hopSize;
+        for (int r = 0; r < count; r++) {
+            int size = this.fftSizes[r];
+            ffts[r] = new FloatFFT_1D(size);
+            windows[r] = new Window(WindowType.HANN).getWindow(size);
+            buffers[r] = new float[size];
+            float sum = 0;
+            for (float w : windows[r]) {
+                sum += w;
+            }
+            // A sinusoid of amplitude A yields a peak power of A^2 / 4 (one-sided)
+            normalisation[r] = 1.0f / (sum * sum);
+        }
+        history = new float[this.fftSizes[count - 1]];
+        historyMask = history.length - 1;
+
+        // Log-spaced output bins
+        final double ratio = Math.pow(2, 1.0 / binsPerOctave);
+        int bins = (int) Math.floor(binsPerOctave *
+                Math.log(sampleRate / 2.0 / minFrequency) / Math.log(2));
+        frequencies = new float[bins];
+        binResolution = new int[bins];
+        binStart = new int[bins];
+        binEnd = new int[bins];
+        powerSpectrum = new float[bins];
+        for (int k = 0; k < bins; k++) {
+            double f = minFrequency * Math.pow(ratio, k);
+            double lower = f / Math.sqrt(ratio);
+            double upper = f * Math.sqrt(ratio);
+            frequencies[k] = (float) f;
+            int r = 0;
+            while (r < count - 1 && sampleRate / (double) this.fftSizes[r] > upper - lower) {
+                r++;
+            }
+            int size = this.fftSizes[r];
+            binResolution[k] = r;
+            binStart[k] = (int) Math.max(1, Math.round(lower * size / sampleRate));
+            binEnd[k] = (int) Math.min(size / 2 - 1, Math.round(upper * size / sampleRate));
+            if (binEnd[k] < binStart[k]) {
+                binEnd[k] = binStart[k];
+            }
+        }
+    }
+
+    /**
+     * Feeds a block of mono samples into the analyser.
+     *
+     * @param samples   mono samples
+     * @return          true if the spectrum has been updated
+     */
+    public boolean process(@NonNull float[] samples) {
+        boolean updated = false;
+        for (float sample : samples) {
+            updated |= processSample(sample);
+        }
+        return updated;
+    }
+
+    /**
+     * Feeds a block of PCM samples into the analyser. Multi-channel samples are mixed down to mono.
+     *
+     * @param samples   a block of PCM samples
+     * @param channels  the number of channels contained in the PCM samples
+     * @return          true if the spectrum has been updated
+     */
+    public boolean process(@NonNull short[] samples, int channels) {
+        channels = Math.max(1, channels);
+        boolean updated = false;
+        for (int i = 0; i + channels <= samples.length; i += channels) {
+            float sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += PCMUtil.short2Float(samples[i + c]);
+            }
+            updated |= processSample(sum / channels);
+        }
+        return updated;
+    }
+
+    /**
+     * Returns the stitched log-frequency power spectrum.
+     *
+     * @return  the power spectrum, the returned array is updated in place
+     */
+    public float[] getPowerSpectrum() {
+        return powerSpectrum;
+    }
+
+    /**
+     * Returns the centre frequency of an output bin.
+     *
+     * @param bin   bin index
+     * @return      frequency in Hz
+     */
+    public float getFrequency(int bin) {
+        return frequencies[bin];
+    }
+
+    /**
+     * Returns the number of output bins.
+     *
+     * @return  number of bins
+     */
+    public int getNumberOfBins() {
+        return frequencies.length;
+    }
+
+    /**
+     * Returns the FFT size an output bin is taken from.
+     *
+     * @param bin   bin index
+     * @return      FFT size
+     */
+    public int getFFTSize(int bin) {
+        return fftSizes[binResolution[bin]];
+    }
+
+    /**
+     * Returns the number of mono samples between two updates.
+     *
+     * @return  hop size
+     */
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    /**
+     * Returns the sample rate.
+     *
+     * @return  sample rate in Hz
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    private boolean processSample(float sample) {
+        history[historyIndex] = sample;
+        historyIndex = (historyIndex + 1) & historyMask;
+        if (--samplesUntilUpdate == 0) {
+            samplesUntilUpdate = hopSize;
+            for (int r = 0; r < fftSizes.length; r++) {
+                transform(r);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static int getMax(int[] values) {
+        int max = 0;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    private void transform(int resolution) {
+        final int size = fftSizes[resolution];
+        final float[] buffer = buffers[resolution];
+        final float[] window = windows[resolution];
+        int start = (historyIndex - size) & historyMask;
+        for (int i = 0; i < size; i++) {
+            buffer[i] = history[(start + i) & historyMask] * window[i];
+        }
+        ffts[resolution].realForward(buffer);
+
+        final float norm = normalisation[resolution];
+        for (int k = 0; k < powerSpectrum.length; k++) {
+            if (binResolution[k] != resolution) {
+                continue;
+            }
+            float max = 0;
+            for (int j = binStart[k]; j <= binEnd[k]; j++) {
+                float power = buffer[2 * j] * buffer[2 * j] + buffer[2 * j + 1] * buffer[2 * j + 1];
+                if (power > max) {
+                    max = power;
+                }
+            }
+            powerSpectrum[k] = max * norm;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.fft;
+
+import android.support.annotation.NonNull;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.pcm.PCMSampleBlock;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.PCMUtil;
+
+/**
+ * <p>
+ *     A bank of sliding DFT filters that tracks a few selected frequencies, e.g. pilot tones
+ *     or mains hum at 50/100/150 Hz. <br>
+ *     Instead of transforming a whole block with an FFT, every tracked frequency is updated
+ *     with each new sample. An update costs O(k) for k tracked frequencies, so magnitude and
+ *     phase are available per sample.
+ * </p>
+ * <p>
+ *     The sliding DFT over the last N samples at angular frequency w is computed recursively:
+ *     <pre>
+ *         S[n] = x[n] + r e^(-jw) S[n-1] - r^N e^(-jwN) x[n-N]
+ *     </pre>
+ *     The damping factor r < 1 keeps the recursion stable. Without it, rounding errors would
+ *     accumulate on the unit circle pole and never decay. The frequencies do not need to be
+ *     integer multiples of fs / N.
+ * </p>
+ * <p>
+ *     E. Jacobsen and R. Lyons, The sliding DFT, IEEE Signal Processing Magazine, March 2003.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class SlidingDFTBank {
+
+    private static final double DAMPING_FACTOR = 0.999999;
+
+    private final int windowLength;
+    private final float[] frequencies;
+    private final float[] history;
+    private int historyIndex = 0;
+
+    // r * e^(-jw)
+    private final double[] rotationReal;
+    private final double[] rotationImag;
+    // r^N * e^(-jwN)
+    private final double[] combReal;
+    private final double[] combImag;
+    // current DFT values
+    private final double[] real;
+    private final double[] imag;
+
+    private boolean postFilterSamples = false;
+
+    /**
+     * Creates an instance of {@code SlidingDFTBank}.
+     *
+     * @param sampleRate                    sample rate in Hz
+     * @param windowLength                  length N of the sliding window in samples,
+     *                                      the frequency resolution is sampleRate / N
+     * @param frequencies                   the frequencies to track in Hz
+     * @throws IllegalArgumentException     if sampleRate <= 0, windowLength <= 0 or
+     *                                      no frequencies are given
+     */
+    public SlidingDFTBank(int sampleRate, int windowLength, @NonNull float... frequencies) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate must be greater than 0.");
+        }
+        if (windowLength <= 0) {
+            throw new IllegalArgumentException("Window length must be greater than 0.");
+        }
+        if (frequencies.length == 0) {
+            throw new IllegalArgumentException("At least one frequency must be tracked.");
+        }
+        this.windowLength = windowLength;
+        this.frequencies = frequencies.clone();
+        history = new float[windowLength];
+        rotationReal = new double[frequencies.length];
+        rotationImag = new double[frequencies.length];
+        combReal = new double[frequencies.length];
+        combImag = new double[frequencies.length];
+        real = new double[frequencies.length];
+        imag = new double[frequencies.length];
+
+        double rN = Math.pow(DAMPING_FACTOR, windowLength);
+        for (int k = 0; k < frequencies.length; k++) {
+            double w = 2 * Math.PI * frequencies[k] / sampleRate;
+            rotationReal[k] = DAMPING_FACTOR * Math.cos(w);
+            rotationImag[k] = -DAMPING_FACTOR * Math.sin(w);
+            combReal[k] = rN * Math.cos(w * windowLength);
+            combImag[k] = -rN * Math.sin(w * windowLength);
+        }
+    }
+
+    /**
+     * Advances all tracked frequencies by one sample.
+     *
+     * @param sample    the new mono sample
+     */
+    public void update(float sample) {
+        float oldest = history[historyIndex];
+        history[historyIndex] = sample;
+        if (++historyIndex == windowLength) {
+            historyIndex = 0;
+        }
+        for (int k = 0; k < real.length; k++) {
+            double re = real[k];
+            double im = imag[k];
+            real[k] = sample + rotationReal[k] * re - rotationImag[k] * im - combReal[k] * oldest;
+            imag[k] = rotationReal[k] * im + rotationImag[k] * re - combImag[k] * oldest;
+        }
+    }
+
+    /**
+     * <p>
+     *     Processes a block of mono samples and writes the magnitude of every tracked
+     *     frequency after each sample to {@code magnitudes[k][i]}. <br>
+     *     No memory is allocated.
+     * </p>
+     *
+     * @param samples       mono samples
+     * @param magnitudes    array of size [number of frequencies][samples.length] or
+     *                      {@code null} if only the final state is of interest
+     */
+    public void process(@NonNull float[] samples, float[][] magnitudes) {
+        for (int i = 0; i < samples.length; i++) {
+            update(samples[i]);
+            if (magnitudes != null) {
+                for (int k = 0; k < real.length; k++) {
+                    magnitudes[k][i] = getMagnitude(k);
+                }
+            }
+        }
+    }
+
+    /**
+     * EventBus subscriber - receives {@code PCMSampleBlock}s from the publisher
+     * {@link ch.zhaw.bait17.audio_signal_processing_toolbox.player.AudioPlayer}.
+     * Runs on a background thread, so the playback thread does not wait for the filter
+     * bank. Read the magnitudes and phases on the same thread, or feed the blocks from a
+     * thread of your own. Multi-channel samples are mixed down to mono.
+     *
+     * @param sampleBlock a {@code PCMSampleBlock}
+     */
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onPCMSampleBlockReceived(PCMSampleBlock sampleBlock) {
+        if (sampleBlock != null) {
+            short[] samples = postFilterSamples ? sampleBlock.getPostFilterSamples()
+                    : sampleBlock.getPreFilterSamples();
+            int channels = Math.max(1, sampleBlock.getChannels());
+            for (int i = 0; i + channels <= samples.length; i += channels) {
+                float sum = 0;
+                for (int c = 0; c < channels; c++) {
+                    sum += PCMUtil.short2Float(samples[i + c]);
+                }
+                update(sum / channels);
+            }
+        }
+    }
+
+    /**
+     * Subscribes the filter bank to the PCM sample blocks published by the audio player.
+     */
+    public void register() {
+        if (!EventBus.getDefault().isRegistered(this)) {
+            EventBus.getDefault().register(this);
+        }
+    }
+
+    /**
+     * Unsubscribes the filter bank from the PCM sample blocks.
+     */
+    public void unregister() {
+        if (EventBus.getDefault().isRegistered(this)) {
+            EventBus.getDefault().unregister(this);
+        }
+    }
+
+    /**
+     * Selects whether the filtered (post FX) or unfiltered (pre FX) samples are tracked.
+     *
+     * @param postFilterSamples     true to track the post FX samples
+     */
+    public void setPostFilterSamples(boolean postFilterSamples) {
+        this.postFilterSamples = postFilterSamples;
+    }
+
+    /**
+     * Returns the amplitude of a sinusoid at the tracked frequency, estimated over the
+     * last N samples.
+     *
+     * @param index     index of the tracked frequency
+     * @return          amplitude
+     */
+    public float getMagnitude(int index) {
+        return (float) (2 * Math.sqrt(real[index] * real[index] + imag[index] * imag[index])
+                / windowLength);
+    }
+
+    /**
+     * Returns the phase of the tracked frequency relative to the most recent sample.
+     *
+     * @param index     index of the tracked frequency
+     * @return          phase in radians in the range [-pi, pi]
+     */
+    public float getPhase(int index) {
+        return (float) Math.atan2(imag[index], real[index]);
+    }
+
+    /**
+     * Returns the tracked frequency.
+     *
+     * @param index     index of the tracked frequency
+     * @return          frequency in Hz
+     */
+    public float getFrequency(int index) {
+        return frequencies[index];
+    }
+
+    /**
+     * Returns the number of tracked frequencies.
+     *
+     * @return  number of tracked frequencies
+     */
+    public int getNumberOfFrequencies() {
+        return frequencies.length;
+    }
+
+    /**
+     * Clears the history and the state of all filters.
+     */
+    public void reset() {
+        for (int i = 0; i < history.length; i++) {
+            history[i] = 0;
+        }
+        for (int k = 0; k < real.length; k++) {
+            real[k] = 0;
+            imag[k] = 0;
+        }
+        historyIndex = 0;
+    }
+}
@@ -0,0 +1,289 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.fft;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ *     Incrementally averages power spectra computed by {@link FFT}. <br>
+ *     Every frame contributes to the average, even if the view displaying it is refreshed
+ *     less often.
+ * </p>
+ * <p>
+ *     Supported averaging modes (see {@link AveragingMode}):
+ *     <ul>
+ *         <li>Welch: arithmetic mean over the last N frames, kept as a running sum over a
+ *         ring of frames.</li>
+ *         <li>Exponential: first-order recursive average with a configurable time constant.</li>
+ *     </ul>
+ *     Independently of the averaging mode a peak-hold spectrum with exponential decay is tracked.
+ * </p>
+ * <p>
+ *     Each update costs O(bins). Buffers are only reallocated when the number of bins changes,
+ *     e.g. after the FFT resolution has been changed.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class SpectralAverager {
+
+    private static final float DEFAULT_FRAME_DURATION = 0.02f;
+
+    private AveragingMode averagingMode;
+    private final int welchFrames;
+    private float frameDuration = DEFAULT_FRAME_DURATION;
+    private float timeConstant;
+    private float peakDecay;
+    private float alpha;
+    private float peakDecayFactor;
+
+    private int bins = 0;
+    private float[][] ring;
+    private double[] runningSum;
+    private int ringPosition = 0;
+    private int ringCount = 0;
+    private float[] average;
+    private float[] peak;
+    private boolean empty = true;
+
+    /**
+     * Creates an instance of {@code SpectralAverager}.
+     *
+     * @param averagingMode                 the averaging mode
+     * @param welchFrames                   the number of frames averaged in {@code WELCH} mode
+     * @param timeConstant                  the time constant in seconds used in
+     *                                      {@code EXPONENTIAL} mode
+     * @param peakDecay                     the peak-hold decay in dB per second
+     * @throws IllegalArgumentException     if welchFrames < 1, timeConstant < 0 or peakDecay < 0
+     */
+    public SpectralAverager(@NonNull AveragingMode averagingMode, int welchFrames,
+                            float timeConstant, float peakDecay) {
+        if (welchFrames < 1) {
+            throw new IllegalArgumentException("Number of averaged frames must be >= 1.");
+        }
+        if (timeConstant < 0) {
+            throw new IllegalArgumentException("Time constant must be >= 0.");
+        }
+        if (peakDecay < 0) {
+            throw new IllegalArgumentException("Peak decay must be >= 0.");
+        }
+        this.averagingMode = averagingMode;
+        this.welchFrames = welchFrames;
+        this.timeConstant = timeConstant;
+        this.peakDecay = peakDecay;
+        updateCoefficients();
+    }
+
+    /**
+     * <p>
+     *     Adds a power spectrum to the average. <br>
+     *     If the number of bins differs from the previous frame, the averager is reset.
+     *     Empty spectra are ignored.
+     * </p>
+     *
+     * @param powerSpectrum     a power spectrum as returned by {@link FFT#getPowerSpectrum}
+     */
+    public void add(@NonNull float[] powerSpectrum) {
+        if (powerSpectrum.length == 0) {
+            return;
+        }
+        if (powerSpectrum.length != bins) {
+            allocate(powerSpectrum.length);
+        }
+
+        switch (averagingMode) {
+            case WELCH:
+                addWelch(powerSpectrum);
+                break;
+            case EXPONENTIAL:
+                addExponential(powerSpectrum);
+                break;
+            default:
+                System.arraycopy(powerSpectrum, 0, average, 0, bins);
+                break;
+        }
+
+        for (int i = 0; i < bins; i++) {
+            float decayed = peak[i] * peakDecayFactor;
+            peak[i] = average[i] > decayed ? average[i] : decayed;
+        }
+        empty = false;
+    }
+
+    /**
+     * Returns a copy of the averaged power spectrum.
+     *
+     * @return      the averaged power spectrum, or an empty array if no frame was added yet
+     */
+    public float[] getAverage() {
+        return empty ? new float[0] : Arrays.copyOf(average, bins);
+    }
+
+    /**
+     * Copies the averaged power spectrum into an array, so a renderer can reuse its buffer.
+     *
+     * @param destination   array of length {@link #getNumberOfBins()}
+     * @return              false if no frame was added yet or the length does not match
+     */
+    public boolean getAverage(@NonNull float[] destination) {
+        return copy(average, destination);
+    }
+
+    /**
+     * Returns a copy of the peak-hold power spectrum.
+     *
+     * @return      the peak-hold spectrum, or an empty array if no frame was added yet
+     */
+    public float[] getPeakHold() {
+        return empty ? new float[0] : Arrays.copyOf(peak, bins);
+    }
+
+    /**
+     * Copies the peak-hold power spectrum into an array, so a renderer can reuse its buffer.
+     *
+     * @param destination   array of length {@link #getNumberOfBins()}
+     * @return              false if no frame was added yet or the length does not match
+     */
+    public boolean getPeakHold(@NonNull float[] destination) {
+        return copy(peak, destination);
+    }
+
+    /**
+     * Returns the number of bins of the spectra.
+     *
+     * @return      the number of bins, 0 if no frame was added yet
+     */
+    public int getNumberOfBins() {
+        return empty ? 0 : bins;
+    }
+
+    /**
+     * Clears all accumulated frames.
+     */
+    public void reset() {
+        if (bins > 0) {
+            for (float[] frame : ring) {
+                Arrays.fill(frame, 0);
+            }
+            Arrays.fill(runningSum, 0);
+            Arrays.fill(average, 0);
+            Arrays.fill(peak, 0);
+        }
+        ringPosition = 0;
+        ringCount = 0;
+        empty = true;
+    }
+
+    /**
+     * Returns the averaging mode.
+     *
+     * @return      {@code AveragingMode}
+     */
+    public AveragingMode getAveragingMode() {
+        return averagingMode;
+    }
+
+    /**
+     * Sets the averaging mode. Accumulated frames are discarded.
+     *
+     * @param averagingMode     the averaging mode
+     */
+    public void setAveragingMode(@NonNull AveragingMode averagingMode) {
+        if (this.averagingMode != averagingMode) {
+            this.averagingMode = averagingMode;
+            reset();
+        }
+    }
+
+    /**
+     * Sets the time between two consecutive frames. Used to derive the exponential averaging
+     * coefficient and the peak decay per frame.
+     *
+     * @param frameDuration     frame duration in seconds, must be > 0
+     */
+    public void setFrameDuration(float frameDuration) {
+        if (frameDuration > 0 && frameDuration != this.frameDuration) {
+            this.frameDuration = frameDuration;
+            updateCoefficients();
+        }
+    }
+
+    /**
+     * Sets the time constant used in {@code EXPONENTIAL} mode.
+     *
+     * @param timeConstant  time constant in seconds, 0 disables averaging
+     */
+    public void setTimeConstant(float timeConstant) {
+        if (timeConstant >= 0) {
+            this.timeConstant = timeConstant;
+            updateCoefficients();
+        }
+    }
+
+    /**
+     * Sets the peak-hold decay.
+     *
+     * @param peakDecay     decay in dB per second
+     */
+    public void setPeakDecay(float peakDecay) {
+        if (peakDecay >= 0) {
+            this.peakDecay = peakDecay;
+            updateCoefficients();
+        }
+    }
+
+    private void addWelch(float[] powerSpectrum) {
+        float[] oldest = ring[ringPosition];
+        if (ringCount < welchFrames) {
+            ringCount++;
+        }
+        float norm = 1.0f / ringCount;
+        for (int i = 0; i < bins; i++) {
+            double sum = runningSum[i] - oldest[i] + powerSpectrum[i];
+            // Guard against negative values caused by rounding errors
+            if (sum < 0) {
+                sum = 0;
+            }
+            runningSum[i] = sum;
+            oldest[i] = powerSpectrum[i];
+            average[i] = (float) sum * norm;
+        }
+        ringPosition = (ringPosition + 1) % welchFrames;
+    }
+
+    private void addExponential(float[] powerSpectrum) {
+        if (empty) {
+            System.arraycopy(powerSpectrum, 0, average, 0, bins);
+            return;
+        }
+        for (int i = 0; i < bins; i++) {
+            average[i] += alpha * (powerSpectrum[i] - average[i]);
+        }
+    }
+
+    private boolean copy(float[] spectrum, float[] destination) {
+        if (empty || destination.length != bins) {
+            return false;
+        }
+        System.arraycopy(spectrum, 0, destination, 0, bins);
+        return true;
+    }
+
+    private void allocate(int bins) {
+        this.bins = bins;
+        ring = new float[welchFrames][bins];
+        runningSum = new double[bins];
+        average = new float[bins];
+        peak = new float[bins];
+        ringPosition = 0;
+        ringCount = 0;
+        empty = true;
+    }
+
+    private void updateCoefficients() {
+        alpha = timeConstant > 0 ? (float) (1 - Math.exp(-frameDuration / timeConstant)) : 1.0f;
+        // Power spectrum: dB = 10 * log10(P)
+        peakDecayFactor = (float) Math.pow(10, -peakDecay * frameDuration / 10.0);
+    }
+}
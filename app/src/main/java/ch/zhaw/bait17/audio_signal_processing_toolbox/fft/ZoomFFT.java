@@ -0,0 +1,274 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox.fft;
+
+import android.support.annotation.NonNull;
+
+import org.jtransforms.fft.FloatFFT_1D;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.HalfBandDecimator;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.PCMUtil;
+
+/**
+ * <p>
+ *     Zoom FFT: high resolution spectrum of a narrow frequency band. <br>
+ *     The band of interest is mixed down to baseband with a complex oscillator, low-pass
+ *     filtered and decimated by 2^stages with a cascade of half-band filters and finally
+ *     transformed with a small complex FFT.
+ * </p>
+ * <p>
+ *     The frequency resolution is sampleRate / (decimation * fftSize). A zoom by a factor
+ *     of 128 with a 512 point FFT gives the same resolution as a 65536 point FFT of the
+ *     full band at a fraction of the cost.
+ * </p>
+ * <p>
+ *     Streaming usage: feed blocks of samples with {@link #process(float[])}, which returns
+ *     true whenever a new spectrum is available. Spectra overlap by 50%.
+ * </p>
+ *
+ * @author georgrem, stockan1
+ */
+public class ZoomFFT {
+
+    // Usable one-sided bandwidth of each half-band stage relative to its input rate
+    private static final float HALF_BAND_PASS_EDGE = 0.2f;
+    private static final int HALF_BAND_LENGTH = 63;
+    private static final int MAX_STAGES = 12;
+
+    private final int sampleRate;
+    private final int fftSize;
+    private final FloatFFT_1D fft;
+    private final float[] window;
+    private final float[] fftBuffer;
+    private final float[] ringReal;
+    private final float[] ringImag;
+    private final float[] halfBand;
+    private int ringIndex = 0;
+    private int samplesSinceSpectrum = 0;
+    private int ringCount = 0;
+    private float[] powerSpectrum;
+
+    private float centreFrequency;
+    private int decimation;
+    // Decimation stages, one half-band decimator each for the real and the imaginary part
+    private HalfBandDecimator[] stagesReal;
+    private HalfBandDecimator[] stagesImag;
+
+    // Complex oscillator, rotated by a fixed phasor per sample
+    private double oscReal = 1;
+    private double oscImag = 0;
+    private double stepReal;
+    private double stepImag;
+
+    /**
+     * Creates an instance of {@code ZoomFFT}.
+     *
+     * @param sampleRate                    sample rate in Hz
+     * @param centreFrequency               centre of the band of interest in Hz
+     * @param bandwidth                     width of the band of interest in Hz
+     * @param fftSize                       size of the complex FFT, a power of 2
+     * @throws IllegalArgumentException     if sampleRate <= 0, fftSize is not a power of 2,
+     *                                      bandwidth <= 0 or the centre frequency does not lie
+     *                                      in [0, sampleRate / 2]
+     */
+    public ZoomFFT(int sampleRate, float centreFrequency, float bandwidth, int fftSize) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate must be greater than 0.");
+        }
+        if (fftSize < 2 || Integer.bitCount(fftSize) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of 2.");
+        }
+        this.sampleRate = sampleRate;
+        this.fftSize = fftSize;
+        fft = new FloatFFT_1D(fftSize);
+        window = new Window(WindowType.HANN).getWindow(fftSize);
+        fftBuffer = new float[2 * fftSize];
+        ringReal = new float[fftSize];
+        ringImag = new float[fftSize];
+        powerSpectrum = new float[fftSize];
+        halfBand = HalfBandDecimator.designHalfBand(HALF_BAND_LENGTH);
+        setBand(centreFrequency, bandwidth);
+    }
+
+    /**
+     * <p>
+     *     Selects the band of interest. The decimation factor is the largest power of 2 that
+     *     keeps the whole band inside the pass band of the decimation filters. <br>
+     *     Filter states are reset.
+     * </p>
+     *
+     * @param centreFrequency               centre of the band in Hz
+     * @param bandwidth                     width of the band in Hz
+     * @throws IllegalArgumentException     if bandwidth <= 0 or the centre frequency does not
+     *                                      lie in [0, sampleRate / 2]
+     */
+    public void setBand(float centreFrequency, float bandwidth) {
+        if (bandwidth <= 0) {
+            throw new IllegalArgumentException("Bandwidth must be greater than 0.");
+        }
+        if (centreFrequency < 0 || centreFrequency > sampleRate / 2.0f) {
+            throw new IllegalArgumentException("Centre frequency must lie in [0, fs/2].");
+        }
+        this.centreFrequency = centreFrequency;
+        int numberOfStages = 0;
+        while (numberOfStages < MAX_STAGES &&
+                2 * HALF_BAND_PASS_EDGE * sampleRate / (1 << (numberOfStages + 1)) >= bandwidth) {
+            numberOfStages++;
+        }
+        decimation = 1 << numberOfStages;
+        stagesReal = new HalfBandDecimator[numberOfStages];
+        stagesImag = new HalfBandDecimator[numberOfStages];
+        for (int i = 0; i < numberOfStages; i++) {
+            stagesReal[i] = new HalfBandDecimator(halfBand);
+            stagesImag[i] = new HalfBandDecimator(halfBand);
+        }
+
+        double w = -2 * Math.PI * centreFrequency / sampleRate;
+        stepReal = Math.cos(w);
+        stepImag = Math.sin(w);
+        oscReal = 1;
+        oscImag = 0;
+        ringIndex = 0;
+        ringCount = 0;
+        samplesSinceSpectrum = 0;
+    }
+
+    /**
+     * Feeds a block of mono samples into the analyser.
+     *
+     * @param samples   mono samples
+     * @return          true if a new spectrum is available
+     */
+    public boolean process(@NonNull float[] samples) {
+        boolean spectrumAvailable = false;
+        for (float sample : samples) {
+            spectrumAvailable |= processSample(sample);
+        }
+        normaliseOscillator();
+        return spectrumAvailable;
+    }
+
+    /**
+     * Feeds a block of PCM samples into the analyser. Multi-channel samples are mixed down to mono.
+     *
+     * @param samples   a block of PCM samples
+     * @param channels  the number of channels contained in the PCM samples
+     * @return          true if a new spectrum is available
+     */
+    public boolean process(@NonNull short[] samples, int channels) {
+        channels = Math.max(1, channels);
+        boolean spectrumAvailable = false;
+        for (int i = 0; i + channels <= samples.length; i += channels) {
+            float sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += PCMUtil.short2Float(samples[i + c]);
+            }
+            spectrumAvailable |= processSample(sum / channels);
+        }
+        normaliseOscillator();
+        return spectrumAvailable;
+    }
+
+    /**
+     * <p>
+     *     Returns the most recent power spectrum of the band of interest. <br>
+     *     Bin i corresponds to the frequency {@link #getFrequency(int)}, the centre frequency
+     *     lies at bin fftSize / 2.
+     * </p>
+     *
+     * @return      the power spectrum, the returned array is reused by the next spectrum
+     */
+    public float[] getPowerSpectrum() {
+        return powerSpectrum;
+    }
+
+    /**
+     * Returns the frequency of a bin of the zoomed spectrum.
+     *
+     * @param bin   bin index in [0, fftSize)
+     * @return      frequency in Hz
+     */
+    public float getFrequency(int bin) {
+        return centreFrequency + (bin - fftSize / 2) * getResolution();
+    }
+
+    /**
+     * Returns the frequency resolution of the zoomed spectrum.
+     *
+     * @return      bin spacing in Hz
+     */
+    public float getResolution() {
+        return sampleRate / (float) (decimation * fftSize);
+    }
+
+    /**
+     * Returns the decimation factor.
+     *
+     * @return      decimation factor, a power of 2
+     */
+    public int getDecimation() {
+        return decimation;
+    }
+
+    /**
+     * Returns the FFT size.
+     *
+     * @return      FFT size
+     */
+    public int getFFTSize() {
+        return fftSize;
+    }
+
+    private boolean processSample(float sample) {
+        // Mix down to baseband
+        float re = (float) (sample * oscReal);
+        float im = (float) (sample * oscImag);
+        double tmp = oscReal * stepReal - oscImag * stepImag;
+        oscImag = oscReal * stepImag + oscImag * stepReal;
+        oscReal = tmp;
+
+        // Decimate
+        for (int i = 0; i < stagesReal.length; i++) {
+            stagesImag[i].processSample(im);
+            if (!stagesReal[i].processSample(re)) {
+                return false;
+            }
+            re = stagesReal[i].getOutput();
+            im = stagesImag[i].getOutput();
+        }
+
+        ringReal[ringIndex] = re;
+        ringImag[ringIndex] = im;
+        ringIndex = (ringIndex + 1) % fftSize;
+        if (ringCount < fftSize) {
+            ringCount++;
+        }
+        if (++samplesSinceSpectrum >= fftSize / 2 && ringCount == fftSize) {
+            samplesSinceSpectrum = 0;
+            computeSpectrum();
+            return true;
+        }
+        return false;
+    }
+
+    private void computeSpectrum() {
+        for (int i = 0; i < fftSize; i++) {
+            int j = (ringIndex + i) % fftSize;
+            fftBuffer[2 * i] = ringReal[j] * window[i];
+            fftBuffer[2 * i + 1] = ringImag[j] * window[i];
+        }
+        fft.complexForward(fftBuffer);
+        // Swap halves so that the centre frequency lies in the middle
+        int half = fftSize / 2;
+        for (int i = 0; i < fftSize; i++) {
+            int j = (i + half) % fftSize;
+            float re = fftBuffer[2 * j];
+            float im = fftBuffer[2 * j + 1];
+            powerSpectrum[i] = re * re + im * im;
+        }
+    }
+
+    private void normaliseOscillator() {
+        double magnitude = Math.sqrt(oscReal * oscReal + oscImag * oscImag);
+        oscReal /= magnitude;
+        oscImag /= magnitude;
+    }
+}
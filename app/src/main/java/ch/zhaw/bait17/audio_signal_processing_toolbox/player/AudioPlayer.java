@@ -16,6 +16,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.Collections;
 import java.util.List;
 
 import ch.zhaw.bait17.audio_signal_processing_toolbox.decoder.AudioDecoder;
@@ -23,6 +24,7 @@ import ch.zhaw.bait17.audio_signal_processing_toolbox.decoder.DecoderException;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.decoder.MP3Decoder;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.decoder.WaveDecoder;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.EffectChain;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.Limiter;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.pcm.PCMSampleBlock;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.util.ApplicationContext;
@@ -50,7 +52,7 @@ public final class AudioPlayer {
     private static short[] decodedSamples;
     private static AudioDecoder decoder;
     private static AudioTrack audioTrack;
-    private List<AudioEffect> audioEffects;
+    private final EffectChain effectChain = new EffectChain();
     private Limiter limiter;
     private static EventBus eventBus;
     private PlaybackListener listener;
@@ -62,8 +64,8 @@ public final class AudioPlayer {
     private int channels;
     private boolean sampleRateHasChanged = false;
     private boolean channelsHasChanged = false;
-    private boolean overrideFXChain = false;
-    private float gain = Constants.GAIN_DEFAULT;
+    private volatile boolean overrideFXChain = false;
+    private volatile float gain = Constants.GAIN_DEFAULT;
 
     private enum PlayState {
         PLAY, STOP, PAUSE
@@ -270,13 +272,17 @@ public final class AudioPlayer {
     }
 
     /**
-     * Sets the {@code AudioEffect}s
+     * <p>
+     * Sets the {@code AudioEffect}s. </br>
+     * The new chain is primed on the calling thread and crossfaded with the running chain
+     * at the beginning of the next block, see {@link EffectChain}.
+     * </p>
      *
      * @param audioEffects list of {@code AudioEffect}s
      */
     public void setAudioEffects(List<AudioEffect> audioEffects) {
-        this.audioEffects = audioEffects;
-        setSampleRateInAudioEffects();
+        effectChain.setAudioEffects(audioEffects != null ? audioEffects
+                : Collections.<AudioEffect>emptyList());
     }
 
     /**
@@ -288,6 +294,27 @@ public final class AudioPlayer {
         this.overrideFXChain = overrideFXChain;
     }
 
+    /**
+     * <p>
+     * Sets the peak level below which a block is treated as silent. </br>
+     * Effects with silent input and an expired tail are skipped.
+     * </p>
+     *
+     * @param silenceThreshold  linear level, 0 disables the silence detection
+     */
+    public void setSilenceThreshold(float silenceThreshold) {
+        effectChain.setSilenceThreshold(silenceThreshold);
+    }
+
+    /**
+     * Returns the number of effect blocks skipped because of silent input.
+     *
+     * @return  number of skipped blocks
+     */
+    public long getSkippedEffectBlocks() {
+        return effectChain.getSkippedBlocks();
+    }
+
     /**
      * <p>
      * Sets the post fx gain. </br>
@@ -317,6 +344,7 @@ public final class AudioPlayer {
             }
             if (decoder != null) {
                 decoder.setSource(is);
+                effectChain.setBlockSize(decoder.getSampleBlockSize());
                 int newSampleRate = decoder.getSampleRate();
                 if (newSampleRate != sampleRate) {
                     sampleRateHasChanged = true;
@@ -368,8 +396,8 @@ public final class AudioPlayer {
                             decodedSamples = decoder.getNextSampleBlock();
                             if (decodedSamples != null) {
                                 float[] filteredSamples = PCMUtil.short2FloatArray(decodedSamples);
-                                if (audioEffects != null && !overrideFXChain) {
-                                    applyAudioEffects(PCMUtil.short2FloatArray(decodedSamples),
+                                if (!overrideFXChain) {
+                                    effectChain.apply(PCMUtil.short2FloatArray(decodedSamples),
                                             filteredSamples);
                                 }
                                 limiter.apply(filteredSamples, gain);
@@ -418,29 +446,10 @@ public final class AudioPlayer {
     }
 
     private void setSampleRateInAudioEffects() {
-        if (audioEffects != null) {
-            for (AudioEffect audioEffect : audioEffects) {
-                audioEffect.setSamplingFrequency(sampleRate);
-            }
-        }
-    }
-
-    /**
-     * Applies the {@code AudioEffect}(s) to the supplied audio samples block.
-     * Input and output arrays must have the same length.
-     *
-     * @param input  an array of {@code float}
-     * @param output an array of {@code float}
-     */
-    private void applyAudioEffects(@NonNull float[] input, @NonNull float[] output) {
-        if (audioEffects != null && input.length == output.length) {
-            for (AudioEffect fx : audioEffects) {
-                if (fx != null) {
-                    fx.apply(input, output);
-                    input = output;
-                }
-            }
-        }
+        limiter.setSamplingFrequency(sampleRate);
+        limiter.setChannels(channels);
+        effectChain.setSamplingFrequency(sampleRate);
+        effectChain.setChannels(channels);
     }
 
     /**
@@ -15,26 +15,30 @@ import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.SwitchCompat;
 import android.support.v7.widget.Toolbar;
-import android.util.TypedValue;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.CompoundButton;
 import android.widget.Toast;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import ch.zhaw.bait17.audio_signal_processing_toolbox.R;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.EffectGraph;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.MultibandEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.OversampledEffect;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.delay.Flanger;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion.Bitcrusher;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion.SoftClipper;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion.TubeDistortion;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion.Waveshaper;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.Filter;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.FilterBank;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.FilterUtil;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.IIRDesignMethod;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.modulation.RingModulation;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.modulation.Tremolo;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.time.WahWah;
@@ -235,6 +239,9 @@ public class MainActivity extends AppCompatActivity implements
     @Nullable
     public AudioEffect getAudioEffectFromType(Class<? extends AudioEffect> clazz) {
         for (AudioEffect fx : audioEffects) {
+            if (fx instanceof OversampledEffect) {
+                fx = ((OversampledEffect) fx).getEffect();
+            }
             if (fx != null && fx.getClass().isAssignableFrom(clazz)) {
                 return fx;
             }
@@ -380,24 +387,23 @@ public class MainActivity extends AppCompatActivity implements
     }
 
     /**
-     * Finds all filter spec files in the raw resources folder and returns a list of
-     * {@code Filter} objects.
+     * Opens the filter bank asset and returns a list of {@code Filter} objects. The FIR
+     * filters read their coefficients on first use. Every FIR filter is followed by an
+     * elliptic IIR filter designed for the same specification.
      *
      * @return a list of {@code Filter}s
      */
     private List<Filter> getAllFilters() {
         List<Filter> filters = new ArrayList<>();
-        Field[] fields = R.raw.class.getFields();
-        for (Field field : fields) {
-            int rawId = getResources().getIdentifier(field.getName(), "raw",
-                    ApplicationContext.getAppContext().getPackageName());
-            if (rawId != 0) {
-                TypedValue value = new TypedValue();
-                getResources().getValue(rawId, value, true);
-                String[] s = value.string.toString().split("/");
-                String filename = s[s.length - 1];
-                if (filename.startsWith("b_fir")) {
-                    filters.add(FilterUtil.getFilter(getResources().openRawResource(rawId)));
+        FilterBank filterBank = FilterUtil.getFilterBank(getAssets(), Constants.FILTER_BANK_ASSET);
+        if (filterBank != null) {
+            for (int i = 0; i < filterBank.size(); i++) {
+                Filter filter = filterBank.getFilter(i);
+                filters.add(filter);
+                // IIR filter for the same specification next to the FIR version
+                Filter iirFilter = FilterUtil.getIIRFilter(filter, IIRDesignMethod.ELLIPTIC);
+                if (iirFilter != null) {
+                    filters.add(iirFilter);
                 }
             }
         }
@@ -412,13 +418,52 @@ public class MainActivity extends AppCompatActivity implements
                 Constants.BITCRUSHER_DEFAULT_BITS));
         audioEffects.add(new Waveshaper(Constants.WAVESHAPER_DEFAULT_THRESHOLD));
         audioEffects.add(new SoftClipper(Constants.SOFT_CLIPPER_DEFAULT_CLIPPING_FACTOR));
-        audioEffects.add(new TubeDistortion());
+        // The tube characteristic creates strong harmonics, which would alias at the base rate
+        audioEffects.add(new OversampledEffect(new TubeDistortion(),
+                Constants.OVERSAMPLING_DEFAULT_FACTOR));
         audioEffects.add(new RingModulation(Constants.RING_MODULATOR_DEFAULT_FREQUENCY));
         audioEffects.add(new Tremolo(Constants.TREMOLO_DEFAULT_MOD_FREQUENCY,
                 Constants.TREMOLO_DEFAULT_AMPLITUDE));
         audioEffects.add(new Flanger(Constants.FLANGER_DEFAULT_RATE,
                 Constants.FLANGER_DEFAULT_AMPLITUDE, Constants.FLANGER_DEFAULT_DELAY));
         audioEffects.add(new WahWah());
+        audioEffects.add(getMultibandEffect());
+        audioEffects.add(getEffectGraph());
+    }
+
+    /**
+     * Creates a three band effect with soft clipping on the mids and tremolo on the highs.
+     *
+     * @return a {@code MultibandEffect}
+     */
+    private MultibandEffect getMultibandEffect() {
+        MultibandEffect multibandEffect = new MultibandEffect(new float[] {
+                Constants.MULTIBAND_DEFAULT_LOW_CROSSOVER, Constants.MULTIBAND_DEFAULT_HIGH_CROSSOVER});
+        multibandEffect.setBandEffects(1, Collections.<AudioEffect>singletonList(
+                new SoftClipper(Constants.SOFT_CLIPPER_DEFAULT_CLIPPING_FACTOR)));
+        multibandEffect.setBandEffects(2, Collections.<AudioEffect>singletonList(
+                new Tremolo(Constants.TREMOLO_DEFAULT_MOD_FREQUENCY, Constants.TREMOLO_DEFAULT_AMPLITUDE)));
+        return multibandEffect;
+    }
+
+    /**
+     * Creates an effect graph with a flanger and a soft clipped tremolo in parallel,
+     * mixed with the dry signal.
+     *
+     * @return an {@code EffectGraph}
+     */
+    private EffectGraph getEffectGraph() {
+        EffectGraph.Builder builder = new EffectGraph.Builder();
+        int flanger = builder.addEffect(new Flanger(Constants.FLANGER_DEFAULT_RATE,
+                Constants.FLANGER_DEFAULT_AMPLITUDE, Constants.FLANGER_DEFAULT_DELAY),
+                EffectGraph.INPUT);
+        int tremolo = builder.addEffect(new Tremolo(Constants.TREMOLO_DEFAULT_MOD_FREQUENCY,
+                Constants.TREMOLO_DEFAULT_AMPLITUDE), EffectGraph.INPUT);
+        int clipper = builder.addEffect(new SoftClipper(Constants.SOFT_CLIPPER_DEFAULT_CLIPPING_FACTOR),
+                tremolo);
+        int mixer = builder.addMixer(new int[] {EffectGraph.INPUT, flanger, clipper},
+                new float[] {0.4f, 0.3f, 0.3f});
+        return builder.build(mixer);
     }
 
     private void initAudioPlayerFragment() {
@@ -16,11 +16,15 @@ import org.greenrobot.eventbus.ThreadMode;
 import java.util.List;
 
 import ch.zhaw.bait17.audio_signal_processing_toolbox.R;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.fft.AveragingMode;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.fft.FFT;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.fft.SlidingDFTBank;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.fft.SpectralAverager;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.fft.WindowType;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.pcm.PCMSampleBlock;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.util.ApplicationContext;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Colour;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.util.Constants;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.visualisation.AudioView;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.visualisation.FrequencyView;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.visualisation.SpectrogramView;
@@ -35,8 +39,21 @@ import ch.zhaw.bait17.audio_signal_processing_toolbox.visualisation.Visualisatio
 public class VisualisationFragment extends Fragment {
 
     private static final int SPECTRUM_VIEW_RENDER_INTERVAL = 5;
+    private static final float[] EMPTY_SPECTRUM = new float[0];
+    private static final float HUM_POWER_FLOOR = 1e-20f;
 
     private FFT fft;
+    private SpectralAverager preFilterAverager = createSpectralAverager();
+    private SpectralAverager postFilterAverager = createSpectralAverager();
+    // Rendered spectra, reallocated only when the number of bins changes
+    private float[] preFilterAverage = EMPTY_SPECTRUM;
+    private float[] postFilterAverage = EMPTY_SPECTRUM;
+    private float[] preFilterPeak = EMPTY_SPECTRUM;
+    private float[] postFilterPeak = EMPTY_SPECTRUM;
+    // Tracks the mains hum per sample, recreated when the sample rate changes
+    private SlidingDFTBank humTracker;
+    private int humTrackerSampleRate;
+    private final float[] humPowers = new float[Constants.HUM_FREQUENCIES.length];
     private List<AudioView> views;
     private View rootView;
     private int frequencyViewUpdateCounter = SPECTRUM_VIEW_RENDER_INTERVAL;
@@ -92,6 +109,11 @@ public class VisualisationFragment extends Fragment {
         EventBus.getDefault().register(this);
         int fftResolution = ApplicationContext.getPreferredFFTResolution();
         fft = new FFT(fftResolution);
+        preFilterAverager.reset();
+        postFilterAverager.reset();
+        if (humTracker != null) {
+            humTracker.reset();
+        }
         setFFTResolution(fftResolution);
         WindowType window = ApplicationContext.getPreferredWindow();
         setWindowType(window);
@@ -244,6 +266,11 @@ public class VisualisationFragment extends Fragment {
      * </p>
      * <p>
      * The FFT resolution is controlled via the {@code FFT} instance.
+     * The {@code SpectrumView} displays the averaged power spectral density with its peak
+     * hold. Every sample block contributes to the average, although the view is only rendered
+     * every {@link #SPECTRUM_VIEW_RENDER_INTERVAL} blocks. The levels of the mains hum
+     * harmonics are tracked sample by sample on this thread and drawn as points, converted
+     * to the power they would have in the spectrum.
      * </p>
      *
      * @param frequencyView a {@code FrequencyView}
@@ -251,15 +278,49 @@ public class VisualisationFragment extends Fragment {
      */
     private void setFrequencyViewParameters(@NonNull FrequencyView frequencyView,
                                             @NonNull PCMSampleBlock sampleBlock) {
+        VisualisationType visualisationType = frequencyView.getVisualisationType();
         if (frequencyView instanceof SpectrumView) {
+            updateSpectralAverages(visualisationType, sampleBlock);
+            updateHumTracker(visualisationType, sampleBlock);
             if (frequencyViewUpdateCounter < SPECTRUM_VIEW_RENDER_INTERVAL) {
                 frequencyViewUpdateCounter++;
                 return;
             }
             frequencyViewUpdateCounter = 0;
+            if (visualisationType != VisualisationType.POST_FX) {
+                preFilterAverage = getSpectrum(preFilterAverager, false, preFilterAverage);
+                preFilterPeak = getSpectrum(preFilterAverager, true, preFilterPeak);
+            }
+            if (visualisationType != VisualisationType.PRE_FX) {
+                postFilterAverage = getSpectrum(postFilterAverager, false, postFilterAverage);
+                postFilterPeak = getSpectrum(postFilterAverager, true, postFilterPeak);
+            }
+            SpectrumView spectrumView = (SpectrumView) frequencyView;
+            if (humTracker != null) {
+                // The power a sinusoid of the tracked amplitude has in the spectrum
+                float gain = fft.getCoherentGain() / 2;
+                for (int k = 0; k < humPowers.length; k++) {
+                    float amplitude = humTracker.getMagnitude(k) * gain;
+                    humPowers[k] = Math.max(amplitude * amplitude, HUM_POWER_FLOOR);
+                }
+                spectrumView.setTrackedTones(Constants.HUM_FREQUENCIES, humPowers);
+            }
+            switch (visualisationType) {
+                case PRE_FX:
+                    spectrumView.setSpectralDensity(preFilterAverage, EMPTY_SPECTRUM,
+                            preFilterPeak, EMPTY_SPECTRUM);
+                    break;
+                case POST_FX:
+                    spectrumView.setSpectralDensity(EMPTY_SPECTRUM, postFilterAverage,
+                            EMPTY_SPECTRUM, postFilterPeak);
+                    break;
+                default:
+                    spectrumView.setSpectralDensity(preFilterAverage, postFilterAverage,
+                            preFilterPeak, postFilterPeak);
+            }
+            return;
         }
 
-        VisualisationType visualisationType = frequencyView.getVisualisationType();
         switch (visualisationType) {
             case PRE_FX:
                 frequencyView.setSpectralDensity(
@@ -277,4 +338,79 @@ public class VisualisationFragment extends Fragment {
                         fft.getPowerSpectrum(sampleBlock.getPostFilterSamples(), sampleBlock.getChannels()));
         }
     }
+
+    /**
+     * Adds the power spectral density of the sample block to the spectral averages.
+     *
+     * @param visualisationType     the type of visualisation
+     * @param sampleBlock           a {@code SampleBlock}
+     */
+    private void updateSpectralAverages(@NonNull VisualisationType visualisationType,
+                                        @NonNull PCMSampleBlock sampleBlock) {
+        short[] preFilterSamples = sampleBlock.getPreFilterSamples();
+        int frames = preFilterSamples.length / Math.max(1, sampleBlock.getChannels());
+        if (sampleBlock.getSampleRate() > 0 && frames > 0) {
+            float frameDuration = frames / (float) sampleBlock.getSampleRate();
+            preFilterAverager.setFrameDuration(frameDuration);
+            postFilterAverager.setFrameDuration(frameDuration);
+        }
+        if (visualisationType != VisualisationType.POST_FX) {
+            preFilterAverager.add(fft.getPowerSpectrum(preFilterSamples, sampleBlock.getChannels()));
+        }
+        if (visualisationType != VisualisationType.PRE_FX) {
+            postFilterAverager.add(fft.getPowerSpectrum(sampleBlock.getPostFilterSamples(),
+                    sampleBlock.getChannels()));
+        }
+    }
+
+    /**
+     * Feeds the sample block to the hum tracker. The post FX samples are tracked unless only
+     * the pre FX spectrum is shown.
+     *
+     * @param visualisationType     the type of visualisation
+     * @param sampleBlock           a {@code SampleBlock}
+     */
+    private void updateHumTracker(@NonNull VisualisationType visualisationType,
+                                  @NonNull PCMSampleBlock sampleBlock) {
+        int sampleRate = sampleBlock.getSampleRate();
+        if (sampleRate <= 0) {
+            return;
+        }
+        if (humTracker == null || humTrackerSampleRate != sampleRate) {
+            humTracker = new SlidingDFTBank(sampleRate,
+                    Math.round(sampleRate * Constants.HUM_TRACKING_WINDOW_DURATION),
+                    Constants.HUM_FREQUENCIES);
+            humTrackerSampleRate = sampleRate;
+        }
+        humTracker.setPostFilterSamples(visualisationType != VisualisationType.PRE_FX);
+        humTracker.onPCMSampleBlockReceived(sampleBlock);
+    }
+
+    /**
+     * Copies the average or the peak hold of an averager into the buffer, which is only
+     * reallocated when the number of bins changes.
+     *
+     * @return  the buffer, or an empty array if no frame was added yet
+     */
+    private static float[] getSpectrum(@NonNull SpectralAverager averager, boolean peakHold,
+                                       @NonNull float[] buffer) {
+        int bins = averager.getNumberOfBins();
+        if (bins == 0) {
+            return EMPTY_SPECTRUM;
+        }
+        if (buffer.length != bins) {
+            buffer = new float[bins];
+        }
+        if (peakHold) {
+            averager.getPeakHold(buffer);
+        } else {
+            averager.getAverage(buffer);
+        }
+        return buffer;
+    }
+
+    private static SpectralAverager createSpectralAverager() {
+        return new SpectralAverager(AveragingMode.WELCH, Constants.SPECTRUM_AVERAGING_FRAMES,
+                Constants.SPECTRUM_AVERAGING_TIME_CONSTANT, Constants.SPECTRUM_PEAK_DECAY);
+    }
 }
@@ -11,12 +11,13 @@ import java.util.List;
 
 import ch.zhaw.bait17.audio_signal_processing_toolbox.R;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.OversampledEffect;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.delay.Flanger;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion.Bitcrusher;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion.SoftClipper;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion.TubeDistortion;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion.Waveshaper;
-import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.FIRFilter;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.Filter;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.modulation.RingModulation;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.modulation.Tremolo;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.util.ApplicationContext;
@@ -60,8 +61,12 @@ public class AudioEffectAdapter extends BaseAdapter {
         if (audioEffect != null) {
             name.setText(audioEffect.getLabel());
             description.setText(audioEffect.getDescription());
-            if (audioEffect instanceof FIRFilter) {
-                switch (((FIRFilter) audioEffect).getFilterSpec().getFilterType()) {
+            if (audioEffect instanceof OversampledEffect) {
+                // Same icon as the wrapped effect
+                audioEffect = ((OversampledEffect) audioEffect).getEffect();
+            }
+            if (audioEffect instanceof Filter) {
+                switch (((Filter) audioEffect).getFilterSpec().getFilterType()) {
                     case LOWPASS:
                         icon.setImageResource(R.mipmap.icon_lowpass);
                         break;
@@ -15,6 +15,18 @@ public interface Constants {
     int DEFAULT_CHANNELS = 2;
     WindowType DEFAULT_WINDOW = WindowType.HAMMING;
 
+    // Spectral averaging
+    int SPECTRUM_AVERAGING_FRAMES = 8;
+    float SPECTRUM_AVERAGING_TIME_CONSTANT = 0.3f;
+    float SPECTRUM_PEAK_DECAY = 20.0f;
+
+    // Hum tracking, the window of 0.1 s resolves the harmonics 10 Hz apart
+    float[] HUM_FREQUENCIES = {50, 100, 150};
+    float HUM_TRACKING_WINDOW_DURATION = 0.1f;
+
+    // Constant-Q transform
+    int CONSTANT_Q_KERNEL_CACHE_SIZE = 4;
+
     // FIR Filter
     String FREQUENCY_PASS_1 = "fpass1";
     String FREQUENCY_PASS_2 = "fpass2";
@@ -24,6 +36,53 @@ public interface Constants {
     String AMOUNT_RIPPLE_PASS_2 = "Apass2";
     String ATTENUATION_STOP_1 = "Astop1";
     String ATTENUATION_STOP_2 = "Astop2";
+    int FIR_FFT_CONVOLUTION_MIN_ORDER = 64;
+    float FILTER_DEFAULT_PASS_BAND_RIPPLE = 0.1f;
+    float FILTER_DEFAULT_STOP_BAND_ATTENUATION = 60;
+    String FILTER_BANK_ASSET = "filterbank.bin";
+    int FILTER_BANK_SAMPLE_RATE = 48000;
+
+    // IIR Filter
+    int IIR_MAX_PROTOTYPE_ORDER = 32;
+    float IIR_SMOOTHING_TIME = 0.02f;
+
+    // Effect parameters
+    float PARAMETER_DEFAULT_RAMP_TIME = 0.02f;
+
+    // Effect chain
+    float EFFECT_CHAIN_CROSSFADE_TIME = 0.01f;
+    float EFFECT_CHAIN_MAX_WARM_UP_TIME = 0.2f;
+
+    // Silence detection, the threshold is about -100 dBFS
+    float SILENCE_THRESHOLD = 1e-5f;
+    float DENORMAL_THRESHOLD = 1e-15f;
+
+    // Effect graph
+    int EFFECT_GRAPH_MAX_WORKER_THREADS = 3;
+    float EFFECT_GRAPH_PARALLEL_LOAD = 0.05f;
+
+    // Partitioned convolution
+    int CONVOLUTION_DEFAULT_PARTITION_SIZE = 256;
+    int CONVOLUTION_MAX_PARTITION_SIZE = 8192;
+    int CONVOLUTION_PARTITIONS_PER_SEGMENT = 8;
+
+    // Multiband effect
+    float MULTIBAND_DEFAULT_LOW_CROSSOVER = 250;
+    float MULTIBAND_DEFAULT_HIGH_CROSSOVER = 4000;
+    int MULTIBAND_MAX_WORKER_THREADS = 3;
+    float MULTIBAND_PARALLEL_LOAD = 0.05f;
+
+    // Oversampling
+    int OVERSAMPLING_HALF_BAND_LENGTH = 63;
+    int OVERSAMPLING_UPPER_HALF_BAND_LENGTH = 15;
+    int OVERSAMPLING_MAX_FACTOR = 8;
+    int OVERSAMPLING_DEFAULT_FACTOR = 4;
+
+    // Frequency response analyser
+    int FREQUENCY_RESPONSE_DEFAULT_FFT_SIZE = 4096;
+    int FREQUENCY_RESPONSE_CACHE_SIZE = 32;
+    float FREQUENCY_RESPONSE_MEASUREMENT_LEVEL = 0.5f;
+    float FREQUENCY_RESPONSE_SWEEP_START = 20;
 
     // FIR comb filter
     float FIR_COMB_FILTER_MAX_DELAY = 0.1f;
@@ -41,6 +100,9 @@ public interface Constants {
     float WAVESHAPER_DEFAULT_THRESHOLD = 5.0f;
     float WAVESHAPER_MAX_THRESHOLD = 25.0f;
 
+    // Lookup table waveshaper
+    int WAVESHAPER_TABLE_SIZE = 4096;
+
     // Soft clipper
     float SOFT_CLIPPER_MAX_CLIPPING_FACTOR = 100.0f;
     float SOFT_CLIPPER_DEFAULT_CLIPPING_FACTOR = 20.0f;
@@ -51,6 +113,9 @@ public interface Constants {
     float TUBE_DISTORTION_MAX_MIX = 1;
     float TUBE_DISTORTION_DEFAULT_MIX = 0.5f;
 
+    // Oscillator
+    int OSCILLATOR_TABLE_BITS = 11;
+
     // Ring modulator
     int RING_MODULATOR_MAX_MOD_FREQUENCY = 800;
     int RING_MODULATOR_DEFAULT_FREQUENCY = 50;
@@ -68,8 +133,20 @@ public interface Constants {
     float FLANGER_DEFAULT_AMPLITUDE = 0.7f;
     float FLANGER_MAX_DELAY = 0.015f;
     float FLANGER_DEFAULT_DELAY = 0.003f;
+    float FLANGER_MAX_FEEDBACK = 0.95f;
+    float FLANGER_DEFAULT_FEEDBACK = 0.0f;
+    float FLANGER_DEFAULT_STEREO_PHASE = 90.0f;
 
     // Linear gain
     float GAIN_DEFAULT = 1.0f;
     float GAIN_MAX = 2.0f;
+
+    // Look-ahead limiter
+    float LIMITER_DEFAULT_CEILING = 1.0f;
+    float LIMITER_MIN_LOOK_AHEAD = 0.001f;
+    float LIMITER_MAX_LOOK_AHEAD = 0.01f;
+    float LIMITER_DEFAULT_LOOK_AHEAD = 0.005f;
+    float LIMITER_RELEASE_TIME = 0.05f;
+    int LIMITER_TRUE_PEAK_FACTOR = 4;
+    int LIMITER_TRUE_PEAK_FILTER_LENGTH = 48;
 }
@@ -11,6 +11,7 @@ import com.jjoe64.graphview.LegendRenderer;
 import com.jjoe64.graphview.Viewport;
 import com.jjoe64.graphview.series.DataPoint;
 import com.jjoe64.graphview.series.LineGraphSeries;
+import com.jjoe64.graphview.series.PointsGraphSeries;
 
 import ch.zhaw.bait17.audio_signal_processing_toolbox.R;
 import ch.zhaw.bait17.audio_signal_processing_toolbox.util.ApplicationContext;
@@ -26,6 +27,11 @@ public class SpectrumView extends FrequencyView {
     private GraphView graphView;
     private LineGraphSeries<DataPoint> preFilterSeries;
     private LineGraphSeries<DataPoint> postFilterSeries;
+    private LineGraphSeries<DataPoint> preFilterPeakSeries;
+    private LineGraphSeries<DataPoint> postFilterPeakSeries;
+    private PointsGraphSeries<DataPoint> trackedToneSeries;
+    private float[] toneFrequencies = new float[0];
+    private float[] tonePowers = new float[0];
     private int fftResolution;
     private String windowName;
 
@@ -44,27 +50,76 @@ public class SpectrumView extends FrequencyView {
 
     @Override
     public void setSpectralDensity(@NonNull float[] preFilterMagnitude, @NonNull float[] postFilterMagnitude) {
+        setSpectralDensity(preFilterMagnitude, postFilterMagnitude, new float[0], new float[0]);
+    }
+
+    /**
+     * Sets the spectra together with their peak-hold spectra, which are drawn as thin lines.
+     * A spectrum with a peak hold is drawn relative to the maximum of the peak hold, so it
+     * stays below its peak-hold line. Empty arrays are not drawn. The tracked tones are
+     * drawn relative to the same maximum as the post filter spectrum, or the pre filter
+     * spectrum if only that one is given.
+     *
+     * @param preFilterMagnitude    the pre filter power spectrum
+     * @param postFilterMagnitude   the post filter power spectrum
+     * @param preFilterPeak         the pre filter peak-hold spectrum
+     * @param postFilterPeak        the post filter peak-hold spectrum
+     */
+    public void setSpectralDensity(@NonNull float[] preFilterMagnitude, @NonNull float[] postFilterMagnitude,
+                                   @NonNull float[] preFilterPeak, @NonNull float[] postFilterPeak) {
+        float[] toneReference = null;
         if (preFilterMagnitude.length > 0) {
-            preFilterSeries = new LineGraphSeries(getDataPoints(preFilterMagnitude));
+            float[] reference = preFilterPeak.length > 0 ? preFilterPeak : preFilterMagnitude;
+            toneReference = reference;
+            preFilterSeries = new LineGraphSeries(getDataPoints(preFilterMagnitude, reference));
             initPreFilterSeries();
+            preFilterPeakSeries = preFilterPeak.length > 0
+                    ? new LineGraphSeries(getDataPoints(preFilterPeak, reference)) : null;
+            initPeakSeries(preFilterPeakSeries, "PRE_FX peak", Color.GRAY);
         }
         if (postFilterMagnitude.length > 0) {
-            postFilterSeries = new LineGraphSeries(getDataPoints(postFilterMagnitude));
+            float[] reference = postFilterPeak.length > 0 ? postFilterPeak : postFilterMagnitude;
+            toneReference = reference;
+            postFilterSeries = new LineGraphSeries(getDataPoints(postFilterMagnitude, reference));
             initPostFilterSeries();
+            postFilterPeakSeries = postFilterPeak.length > 0
+                    ? new LineGraphSeries(getDataPoints(postFilterPeak, reference)) : null;
+            initPeakSeries(postFilterPeakSeries, "POST_FX peak", Color.rgb(255, 160, 160));
         }
+        trackedToneSeries = toneReference != null && toneFrequencies.length > 0
+                ? new PointsGraphSeries<>(getTonePoints(toneReference)) : null;
+        initTrackedToneSeries();
 
         graphView.post(new Runnable() {
             @Override
             public void run() {
                 graphView.removeAllSeries();
+                if (preFilterPeakSeries != null)
+                    graphView.addSeries(preFilterPeakSeries);
+                if (postFilterPeakSeries != null)
+                    graphView.addSeries(postFilterPeakSeries);
                 if (preFilterSeries != null)
                     graphView.addSeries(preFilterSeries);
                 if (postFilterSeries != null)
                     graphView.addSeries(postFilterSeries);
+                if (trackedToneSeries != null)
+                    graphView.addSeries(trackedToneSeries);
             }
         });
     }
 
+    /**
+     * Sets the levels of tracked tones, e.g. the mains hum, which are drawn as points
+     * with the next spectra.
+     *
+     * @param frequencies   the tracked frequencies in Hz
+     * @param powers        the power of every tracked tone on the scale of the spectra
+     */
+    public void setTrackedTones(@NonNull float[] frequencies, @NonNull float[] powers) {
+        toneFrequencies = frequencies.clone();
+        tonePowers = powers.clone();
+    }
+
     @Override
     public AudioView getInflatedView() {
         return new SpectrumView(context);
@@ -149,19 +204,32 @@ public class SpectrumView extends FrequencyView {
         postFilterSeries.setThickness(2);
     }
 
-    private DataPoint[] getDataPoints(float[] values) {
-        int fs = getSampleRate();
-        double deltaFreq = (fs / 2.0d) / values.length;
-        int count = (int) (MAX_FREQUENCY / deltaFreq);
-        float[] dBMag = new float[count];
+    private void initTrackedToneSeries() {
+        if (trackedToneSeries != null) {
+            // styling series
+            trackedToneSeries.setTitle("Hum");
+            trackedToneSeries.setColor(Color.BLUE);
+            trackedToneSeries.setSize(6);
+            trackedToneSeries.setShape(PointsGraphSeries.Shape.TRIANGLE);
+        }
+    }
 
-        float dBMax = Float.MIN_VALUE;
-        for (int i = 0; i < count; i++) {
-            dBMag[i] = (float) (10 * Math.log10(values[i]));
-            if (dBMag[i] > dBMax) {
-                dBMax = dBMag[i];
-            }
+    private void initPeakSeries(LineGraphSeries<DataPoint> series, String title, int colour) {
+        if (series != null) {
+            // styling series
+            series.setTitle(title);
+            series.setColor(colour);
+            series.setThickness(1);
         }
+    }
+
+    /**
+     * Returns the data points in dB relative to the maximum of the reference spectrum.
+     */
+    private DataPoint[] getDataPoints(float[] values, float[] reference) {
+        double deltaFreq = getDeltaFrequency(values);
+        int count = (int) (MAX_FREQUENCY / deltaFreq);
+        float dBMax = getMaxDB(reference, count);
 
         DataPoint[] dataPoints = new DataPoint[count];
         for (int i = 0; i < count; i++) {
@@ -169,4 +237,35 @@ public class SpectrumView extends FrequencyView {
         }
         return dataPoints;
     }
+
+    /**
+     * Returns the tracked tones in dB relative to the maximum of the reference spectrum.
+     */
+    private DataPoint[] getTonePoints(float[] reference) {
+        float dBMax = getMaxDB(reference, (int) (MAX_FREQUENCY / getDeltaFrequency(reference)));
+        DataPoint[] dataPoints = new DataPoint[toneFrequencies.length];
+        for (int i = 0; i < toneFrequencies.length; i++) {
+            dataPoints[i] = new DataPoint(toneFrequencies[i],
+                    (10 * Math.log10(tonePowers[i])) - dBMax);
+        }
+        return dataPoints;
+    }
+
+    private double getDeltaFrequency(float[] values) {
+        return (getSampleRate() / 2.0d) / values.length;
+    }
+
+    /**
+     * Returns the maximum of the first {@code count} bins of a spectrum in dB.
+     */
+    private static float getMaxDB(float[] spectrum, int count) {
+        float dBMax = Float.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            float dBMag = (float) (10 * Math.log10(spectrum[i]));
+            if (dBMag > dBMax) {
+                dBMax = dBMag;
+            }
+        }
+        return dBMax;
+    }
 }
@@ -0,0 +1,145 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox;
+
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.AudioEffect;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.EffectChain;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.FIRFilter;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.FilterSpec;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.FilterType;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Local unit tests of the effect chain swap.
+ * See class under test: {@link EffectChain}
+ *
+ * @author georgrem, stockan1.
+ */
+public class EffectChainTest {
+
+    private static final float TOLERANCE = 1e-5f;
+    private static final int BLOCK_LENGTH = 256;
+    private static final int BLOCKS = 30;
+    private static final int SWAP_BLOCK = 10;
+    private Random random;
+    private float[] signal;
+    private float[] h;
+
+    /**
+     * Sets up test fixture.
+     * Called before every test case method.
+     */
+    @Before
+    public void setUp() {
+        random = new Random(42);
+        signal = new float[BLOCKS * BLOCK_LENGTH];
+        for (int i = 0; i < signal.length; i++) {
+            signal[i] = (float) random.nextGaussian();
+        }
+        h = new float[64];
+        for (int i = 0; i < h.length; i++) {
+            h[i] = (float) random.nextGaussian() * 0.1f;
+        }
+    }
+
+    /**
+     * Appending an effect keeps the first effect running with its state, the output must
+     * not change if the appended effect passes the signal through.
+     */
+    @Test
+    public void testSharedPrefixKeepsRunning() {
+        FIRFilter filter = createFilter(h);
+        float[] output = process(new AudioEffect[] {filter},
+                new AudioEffect[] {filter, createFilter(new float[] {1})});
+        assertArrayEquals(reference(), output, TOLERANCE);
+    }
+
+    /**
+     * Removing the last effect crossfades it out, afterwards only the shared first effect
+     * is heard.
+     */
+    @Test
+    public void testRemovedSuffixFadesOut() {
+        FIRFilter filter = createFilter(h);
+        float[] output = process(new AudioEffect[] {filter, createFilter(new float[] {0.5f})},
+                new AudioEffect[] {filter});
+        int settled = (SWAP_BLOCK + 3) * BLOCK_LENGTH;
+        assertArrayEquals(Arrays.copyOfRange(reference(), settled, signal.length),
+                Arrays.copyOfRange(output, settled, signal.length), TOLERANCE);
+    }
+
+    /**
+     * An effect which throws is bypassed, the playback continues with the other effects.
+     */
+    @Test
+    public void testFailingEffectIsBypassed() {
+        AudioEffect failing = new AudioEffect() {
+            @Override
+            public void apply(@NonNull float[] input, @NonNull float[] output) {
+                throw new IllegalStateException("Not configured.");
+            }
+
+            @Override
+            public String getLabel() {
+                return "Failing";
+            }
+
+            @Override
+            public String getDescription() {
+                return "Throws on every block";
+            }
+
+            @Override
+            public int describeContents() {
+                return 0;
+            }
+
+            @Override
+            public void writeToParcel(Parcel dest, int flags) {
+            }
+        };
+        FIRFilter filter = createFilter(h);
+        float[] output = process(new AudioEffect[] {failing, filter},
+                new AudioEffect[] {failing, filter});
+        assertArrayEquals(reference(), output, TOLERANCE);
+    }
+
+    private float[] process(AudioEffect[] before, AudioEffect[] after) {
+        EffectChain chain = new EffectChain();
+        chain.setChannels(1);
+        chain.setAudioEffects(Arrays.asList(before));
+        float[] output = new float[signal.length];
+        for (int i = 0; i < BLOCKS; i++) {
+            if (i == SWAP_BLOCK) {
+                chain.setAudioEffects(Arrays.asList(after));
+            }
+            float[] input = Arrays.copyOfRange(signal, i * BLOCK_LENGTH, (i + 1) * BLOCK_LENGTH);
+            float[] block = new float[BLOCK_LENGTH];
+            chain.apply(input, block);
+            System.arraycopy(block, 0, output, i * BLOCK_LENGTH, BLOCK_LENGTH);
+        }
+        assertFalse(chain.isCrossfading());
+        return output;
+    }
+
+    private float[] reference() {
+        FIRFilter filter = createFilter(h);
+        float[] output = new float[signal.length];
+        filter.apply(signal, output);
+        return output;
+    }
+
+    private FIRFilter createFilter(float[] h) {
+        return new FIRFilter(new FilterSpec.Builder(FilterType.LOWPASS, h.length - 1).build(),
+                h, 1);
+    }
+}
@@ -0,0 +1,110 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.FIRDesignMethod;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.FIRDesigner;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.FilterSpec;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.FilterType;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of the FIR filter design.
+ * See class under test: {@link FIRDesigner}
+ *
+ * @author georgrem, stockan1.
+ */
+public class FIRDesignerTest {
+
+    private static final int SAMPLE_RATE = 48000;
+    private static final int RESPONSE_POINTS = 4000;
+    private static final float PASS_BAND = 250;
+    private static final float STOP_BAND = 750;
+    private static final float MAX_RIPPLE = 0.01f;
+    private static final float MIN_ATTENUATION = 80;
+    private FilterSpec filterSpec;
+
+    /**
+     * Sets up test fixture.
+     * Called before every test case method.
+     */
+    @Before
+    public void setUp() {
+        FIRDesigner.clearCache();
+        filterSpec = new FilterSpec.Builder(FilterType.LOWPASS, 394)
+                .frequencyPassBand1(PASS_BAND)
+                .amountRipplePassBand1(MAX_RIPPLE)
+                .frequencyStopBand1(STOP_BAND)
+                .attenuationStopBand1(MIN_ATTENUATION)
+                .build();
+    }
+
+    /**
+     * The filter bank lowpass designed with Parks-McClellan meets its specification,
+     * which the window method cannot meet at the same order.
+     */
+    @Test
+    public void testParksMcClellanMeetsSpecification() {
+        float[] h = FIRDesigner.design(filterSpec, SAMPLE_RATE,
+                FIRDesignMethod.PARKS_MCCLELLAN).getCoefficients();
+        assertTrue(getPassBandRipple(h) <= MAX_RIPPLE);
+        assertTrue(getStopBandLevel(h) <= -MIN_ATTENUATION);
+
+        float[] kaiser = FIRDesigner.design(filterSpec, SAMPLE_RATE,
+                FIRDesignMethod.KAISER).getCoefficients();
+        assertTrue(getStopBandLevel(kaiser) > -MIN_ATTENUATION);
+    }
+
+    @Test
+    public void testDesignIsCached() {
+        assertFalse(FIRDesigner.isDesigned(filterSpec, SAMPLE_RATE,
+                FIRDesignMethod.PARKS_MCCLELLAN));
+        float[] first = FIRDesigner.design(filterSpec, SAMPLE_RATE,
+                FIRDesignMethod.PARKS_MCCLELLAN).getCoefficients();
+        assertTrue(FIRDesigner.isDesigned(filterSpec, SAMPLE_RATE,
+                FIRDesignMethod.PARKS_MCCLELLAN));
+        float[] second = FIRDesigner.design(filterSpec, SAMPLE_RATE,
+                FIRDesignMethod.PARKS_MCCLELLAN).getCoefficients();
+        assertArrayEquals(first, second, 0);
+    }
+
+    private static double getPassBandRipple(float[] h) {
+        double ripple = 0;
+        for (int i = 0; i <= RESPONSE_POINTS; i++) {
+            double frequency = 0.5 * SAMPLE_RATE * i / RESPONSE_POINTS;
+            if (frequency <= PASS_BAND) {
+                ripple = Math.max(ripple, Math.abs(getMagnitude(h, frequency)));
+            }
+        }
+        return ripple;
+    }
+
+    private static double getStopBandLevel(float[] h) {
+        double level = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i <= RESPONSE_POINTS; i++) {
+            double frequency = 0.5 * SAMPLE_RATE * i / RESPONSE_POINTS;
+            if (frequency >= STOP_BAND) {
+                level = Math.max(level, getMagnitude(h, frequency));
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Returns the magnitude of the frequency response in dB.
+     */
+    private static double getMagnitude(float[] h, double frequency) {
+        double omega = 2 * Math.PI * frequency / SAMPLE_RATE;
+        double re = 0;
+        double im = 0;
+        for (int n = 0; n < h.length; n++) {
+            re += h[n] * Math.cos(omega * n);
+            im -= h[n] * Math.sin(omega * n);
+        }
+        return 20 * Math.log10(Math.hypot(re, im));
+    }
+}
@@ -0,0 +1,364 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.ConvolutionMode;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.FIRFilter;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.FilterSpec;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.FilterType;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of the FIRFilter class.
+ * See class under test: {@link FIRFilter}
+ *
+ * @author georgrem, stockan1.
+ */
+public class FIRFilterTest {
+
+    private static final float TOLERANCE = 1e-4f;
+    private static final int SIGNAL_LENGTH = 10000;
+    // Varying block lengths, shorter and longer than the impulse response
+    private static final int[] BLOCK_LENGTHS = {1, 7, 100, 1152, 3, 2304, 50, 4096};
+    // Benchmarks: runs to warm up the JIT, then timed runs of which the fastest counts
+    private static final int WARM_UP_RUNS = 20;
+    private static final int TIMED_RUNS = 40;
+    private static final double MAX_STEREO_COST = 1.1;
+    private Random random;
+    private float[] signal;
+
+    /**
+     * Sets up test fixture.
+     * Called before every test case method.
+     */
+    @Before
+    public void setUp() {
+        random = new Random(42);
+        signal = createSignal();
+    }
+
+    @Test
+    public void testDirectFormOddLength() {
+        float[] h = createSymmetricImpulseResponse(145);
+        assertArrayEquals(convolve(h, signal), filter(h, ConvolutionMode.DIRECT), TOLERANCE);
+    }
+
+    @Test
+    public void testDirectFormEvenLength() {
+        float[] h = createSymmetricImpulseResponse(96);
+        assertArrayEquals(convolve(h, signal), filter(h, ConvolutionMode.DIRECT), TOLERANCE);
+    }
+
+    @Test
+    public void testDirectFormNonSymmetric() {
+        float[] h = new float[67];
+        for (int i = 0; i < h.length; i++) {
+            h[i] = (float) random.nextGaussian() * 0.1f;
+        }
+        assertArrayEquals(convolve(h, signal), filter(h, ConvolutionMode.DIRECT), TOLERANCE);
+    }
+
+    /**
+     * The output side direct form must produce the same output as the input side block
+     * convolution, which allocates the full convolution per block and carries the overlap
+     * separately.
+     */
+    @Test
+    public void testDirectFormMatchesInputSide() {
+        float[] h = createSymmetricImpulseResponse(145);
+        int blockLength = 1152;
+        FIRFilter filter = createFilter(h);
+        filter.setConvolutionMode(ConvolutionMode.DIRECT);
+        float[] outputSide = new float[SIGNAL_LENGTH];
+        float[] inputSide = new float[SIGNAL_LENGTH];
+        float[] overlap = new float[h.length - 1];
+        for (int offset = 0; offset < SIGNAL_LENGTH; offset += blockLength) {
+            processBlock(filter, offset, Math.min(blockLength, SIGNAL_LENGTH - offset), outputSide);
+            convolveBlock(h, offset, Math.min(blockLength, SIGNAL_LENGTH - offset), inputSide, overlap);
+        }
+        assertArrayEquals(inputSide, outputSide, TOLERANCE);
+    }
+
+    /**
+     * Compares the run time of the output side direct form with the input side block
+     * convolution. Wall-clock times depend on the machine, so the times are only printed.
+     */
+    @Ignore("Benchmark, run manually")
+    @Test
+    public void testDirectFormBenchmark() {
+        float[] h = createSymmetricImpulseResponse(145);
+        int blockLength = 1152;
+        FIRFilter filter = createFilter(h);
+        filter.setConvolutionMode(ConvolutionMode.DIRECT);
+        float[] outputSide = new float[SIGNAL_LENGTH];
+        float[] inputSide = new float[SIGNAL_LENGTH];
+        float[] overlap = new float[h.length - 1];
+
+        long outputSideTime = Long.MAX_VALUE;
+        long inputSideTime = Long.MAX_VALUE;
+        for (int run = 0; run < WARM_UP_RUNS + TIMED_RUNS; run++) {
+            long start = System.nanoTime();
+            for (int offset = 0; offset < SIGNAL_LENGTH; offset += blockLength) {
+                processBlock(filter, offset, Math.min(blockLength, SIGNAL_LENGTH - offset), outputSide);
+            }
+            long middle = System.nanoTime();
+            for (int offset = 0; offset < SIGNAL_LENGTH; offset += blockLength) {
+                convolveBlock(h, offset, Math.min(blockLength, SIGNAL_LENGTH - offset), inputSide, overlap);
+            }
+            if (run >= WARM_UP_RUNS) {
+                outputSideTime = Math.min(outputSideTime, middle - start);
+                inputSideTime = Math.min(inputSideTime, System.nanoTime() - middle);
+            }
+        }
+        System.out.println("Output side: " + outputSideTime / 1000 + " us, input side: "
+                + inputSideTime / 1000 + " us");
+    }
+
+    /**
+     * A stereo filter must produce the same output as two mono filters, one per channel.
+     */
+    @Test
+    public void testStereoMatchesIndependentMono() {
+        float[] h = createSymmetricImpulseResponse(229);
+        float[] right = createSignal();
+        float[] stereoSignal = interleave(signal, right);
+        for (ConvolutionMode mode : ConvolutionMode.values()) {
+            FIRFilter stereo = createFilter(h, 2);
+            stereo.setConvolutionMode(mode);
+            float[] output = new float[stereoSignal.length];
+            int offset = 0;
+            for (int i = 0; offset < stereoSignal.length; i++) {
+                int length = Math.min(2 * BLOCK_LENGTHS[i % BLOCK_LENGTHS.length],
+                        stereoSignal.length - offset);
+                float[] block = new float[length];
+                System.arraycopy(stereoSignal, offset, block, 0, length);
+                // In place, as in the effect chain of the audio player
+                stereo.apply(block, block);
+                System.arraycopy(block, 0, output, offset, length);
+                offset += length;
+            }
+            assertArrayEquals(interleave(filter(h, mode, signal), filter(h, mode, right)),
+                    output, TOLERANCE);
+        }
+    }
+
+    /**
+     * A filter switched from stereo to mono must filter like a mono filter.
+     */
+    @Test
+    public void testSetChannels() {
+        float[] h = createSymmetricImpulseResponse(145);
+        FIRFilter filter = createFilter(h, 2);
+        processBlock(filter, interleave(signal, signal), 0, 2 * BLOCK_LENGTHS[3],
+                new float[2 * SIGNAL_LENGTH]);
+        filter.setChannels(1);
+        float[] output = new float[SIGNAL_LENGTH];
+        int offset = 0;
+        for (int i = 0; offset < SIGNAL_LENGTH; i++) {
+            int length = Math.min(BLOCK_LENGTHS[i % BLOCK_LENGTHS.length], SIGNAL_LENGTH - offset);
+            processBlock(filter, offset, length, output);
+            offset += length;
+        }
+        assertArrayEquals(convolve(h, signal), output, TOLERANCE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIncompleteFrame() {
+        createFilter(createSymmetricImpulseResponse(145), 2).apply(new float[3], new float[3]);
+    }
+
+    /**
+     * A stereo filter may cost at most {@link #MAX_STEREO_COST} times a mono filter running
+     * over the interleaved samples, which was the cost of the shared filter state.
+     */
+    @Test
+    public void testStereoBenchmark() {
+        float[] h = createSymmetricImpulseResponse(145);
+        float[] right = createSignal();
+        float[] stereoSignal = interleave(signal, right);
+        int blockLength = 2 * 1000;
+        FIRFilter stereo = createFilter(h, 2);
+        FIRFilter interleaved = createFilter(h, 1);
+        stereo.setConvolutionMode(ConvolutionMode.DIRECT);
+        interleaved.setConvolutionMode(ConvolutionMode.DIRECT);
+        float[] block = new float[blockLength];
+        float[] output = new float[stereoSignal.length];
+
+        long stereoTime = Long.MAX_VALUE;
+        long interleavedTime = Long.MAX_VALUE;
+        for (int run = 0; run < WARM_UP_RUNS + TIMED_RUNS; run++) {
+            long start = System.nanoTime();
+            for (int offset = 0; offset < stereoSignal.length; offset += blockLength) {
+                System.arraycopy(stereoSignal, offset, block, 0, blockLength);
+                stereo.apply(block, block);
+                if (run == 0) {
+                    System.arraycopy(block, 0, output, offset, blockLength);
+                }
+            }
+            long middle = System.nanoTime();
+            for (int offset = 0; offset < stereoSignal.length; offset += blockLength) {
+                System.arraycopy(stereoSignal, offset, block, 0, blockLength);
+                interleaved.apply(block, block);
+            }
+            if (run >= WARM_UP_RUNS) {
+                stereoTime = Math.min(stereoTime, middle - start);
+                interleavedTime = Math.min(interleavedTime, System.nanoTime() - middle);
+            }
+        }
+        float[] expected = interleave(filter(h, ConvolutionMode.DIRECT, signal),
+                filter(h, ConvolutionMode.DIRECT, right));
+        assertArrayEquals(expected, output, TOLERANCE);
+        assertTrue(stereoTime <= MAX_STEREO_COST * interleavedTime);
+    }
+
+    @Test
+    public void testFFTMatchesDirectForm() {
+        float[] h = createSymmetricImpulseResponse(395);
+        assertArrayEquals(filter(h, ConvolutionMode.DIRECT), filter(h, ConvolutionMode.FFT), TOLERANCE);
+    }
+
+    @Test
+    public void testAutoMatchesDirectForm() {
+        float[] h = createSymmetricImpulseResponse(229);
+        assertArrayEquals(filter(h, ConvolutionMode.DIRECT), filter(h, ConvolutionMode.AUTO), TOLERANCE);
+    }
+
+    /**
+     * Switching the algorithm in the middle of a stream must not interrupt the output.
+     */
+    @Test
+    public void testSwitchConvolutionMode() {
+        float[] h = createSymmetricImpulseResponse(105);
+        FIRFilter filter = createFilter(h);
+        float[] output = new float[SIGNAL_LENGTH];
+        int blockLength = 500;
+        for (int offset = 0; offset < SIGNAL_LENGTH; offset += blockLength) {
+            filter.setConvolutionMode(offset / blockLength % 2 == 0 ? ConvolutionMode.FFT
+                    : ConvolutionMode.DIRECT);
+            processBlock(filter, offset, blockLength, output);
+        }
+        assertArrayEquals(convolve(h, signal), output, TOLERANCE);
+    }
+
+    @Test
+    public void testAutoSelection() {
+        FIRFilter shortFilter = createFilter(createSymmetricImpulseResponse(11));
+        shortFilter.apply(new float[1152], new float[1152]);
+        assertFalse(shortFilter.isFFTConvolutionActive());
+
+        FIRFilter longFilter = createFilter(createSymmetricImpulseResponse(395));
+        longFilter.apply(new float[1152], new float[1152]);
+        assertTrue(longFilter.isFFTConvolutionActive());
+    }
+
+    private float[] filter(float[] h, ConvolutionMode mode) {
+        return filter(h, mode, signal);
+    }
+
+    private float[] filter(float[] h, ConvolutionMode mode, float[] x) {
+        FIRFilter filter = createFilter(h);
+        filter.setConvolutionMode(mode);
+        float[] output = new float[x.length];
+        int offset = 0;
+        for (int i = 0; offset < x.length; i++) {
+            int length = Math.min(BLOCK_LENGTHS[i % BLOCK_LENGTHS.length], x.length - offset);
+            processBlock(filter, x, offset, length, output);
+            offset += length;
+        }
+        return output;
+    }
+
+    private void processBlock(FIRFilter filter, int offset, int length, float[] output) {
+        processBlock(filter, signal, offset, length, output);
+    }
+
+    private void processBlock(FIRFilter filter, float[] x, int offset, int length, float[] output) {
+        float[] input = new float[length];
+        float[] block = new float[length];
+        System.arraycopy(x, offset, input, 0, length);
+        filter.apply(input, block);
+        System.arraycopy(block, 0, output, offset, length);
+    }
+
+    private FIRFilter createFilter(float[] h) {
+        return createFilter(h, 1);
+    }
+
+    private FIRFilter createFilter(float[] h, int channels) {
+        return new FIRFilter(new FilterSpec.Builder(FilterType.LOWPASS, h.length - 1).build(),
+                h, channels);
+    }
+
+    private float[] createSignal() {
+        float[] x = new float[SIGNAL_LENGTH];
+        for (int i = 0; i < SIGNAL_LENGTH; i++) {
+            x[i] = (float) random.nextGaussian();
+        }
+        return x;
+    }
+
+    private static float[] interleave(float[] left, float[] right) {
+        float[] stereo = new float[2 * left.length];
+        for (int i = 0; i < left.length; i++) {
+            stereo[2 * i] = left[i];
+            stereo[2 * i + 1] = right[i];
+        }
+        return stereo;
+    }
+
+    private float[] createSymmetricImpulseResponse(int length) {
+        float[] h = new float[length];
+        for (int i = 0; i <= (length - 1) / 2; i++) {
+            h[i] = (float) random.nextGaussian() * 0.1f;
+            h[length - 1 - i] = h[i];
+        }
+        return h;
+    }
+
+    /**
+     * Input side block convolution with a symmetric impulse response, as used before the
+     * output side direct form.
+     */
+    private void convolveBlock(float[] h, int offset, int length, float[] output, float[] overlap) {
+        float[] full = new float[length + overlap.length];
+        int half = h.length / 2;
+        for (int i = 0; i < length; i++) {
+            float x = signal[offset + i];
+            for (int j = 0; j < half; j++) {
+                float temp = h[j] * x;
+                full[i + j] += temp;
+                full[i + h.length - j - 1] += temp;
+            }
+            if (h.length % 2 != 0) {
+                full[i + half] += h[half] * x;
+            }
+        }
+        for (int k = 0; k < overlap.length; k++) {
+            full[k] += overlap[k];
+        }
+        System.arraycopy(full, 0, output, offset, length);
+        System.arraycopy(full, length, overlap, 0, overlap.length);
+    }
+
+    /**
+     * Reference convolution in double precision, truncated to the input length.
+     */
+    private static float[] convolve(float[] h, float[] x) {
+        float[] y = new float[x.length];
+        for (int n = 0; n < x.length; n++) {
+            double sum = 0;
+            for (int k = 0; k < h.length && k <= n; k++) {
+                sum += h[k] * x[n - k];
+            }
+            y[n] = (float) sum;
+        }
+        return y;
+    }
+}
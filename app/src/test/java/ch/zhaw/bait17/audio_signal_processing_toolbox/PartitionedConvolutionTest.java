@@ -0,0 +1,179 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.PartitionedConvolution;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.filter.PartitionedConvolver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of the partitioned convolution.
+ * See classes under test: {@link PartitionedConvolver}, {@link PartitionedConvolution}
+ *
+ * @author georgrem, stockan1.
+ */
+public class PartitionedConvolutionTest {
+
+    private static final float TOLERANCE = 1e-4f;
+    private static final int SIGNAL_LENGTH = 12000;
+    private static final int PARTITION_SIZE = 64;
+    private static final int[] BLOCK_LENGTHS = {1152, 7, 100, 64, 3, 2304, 50};
+    private Random random;
+    private float[] signal;
+
+    /**
+     * Sets up test fixture.
+     * Called before every test case method.
+     */
+    @Before
+    public void setUp() {
+        random = new Random(42);
+        signal = createSignal();
+    }
+
+    @Test
+    public void testConvolverMatchesReference() {
+        float[] h = createImpulseResponse(1000);
+        PartitionedConvolver convolver = new PartitionedConvolver(h, PARTITION_SIZE);
+        assertArrayEquals(delay(convolve(h, signal), PARTITION_SIZE),
+                process(convolver, signal, false), TOLERANCE);
+    }
+
+    /**
+     * The effect chain applies every effect after the first in place.
+     */
+    @Test
+    public void testConvolverInPlace() {
+        float[] h = createImpulseResponse(1000);
+        float[] outOfPlace = process(new PartitionedConvolver(h, PARTITION_SIZE), signal, false);
+        float[] inPlace = process(new PartitionedConvolver(h, PARTITION_SIZE), signal, true);
+        assertArrayEquals(outOfPlace, inPlace, 0);
+    }
+
+    @Test
+    public void testNonUniformMatchesUniform() {
+        float[] h = createImpulseResponse(5000);
+        PartitionedConvolution uniform = new PartitionedConvolution(h, PARTITION_SIZE, false, 1);
+        PartitionedConvolution nonUniform = new PartitionedConvolution(h, PARTITION_SIZE, true, 1);
+        assertTrue(nonUniform.getNumberOfSegments() > 1);
+        assertArrayEquals(apply(uniform, signal), apply(nonUniform, signal), TOLERANCE);
+    }
+
+    @Test
+    public void testLongImpulseResponseIsNonUniform() {
+        PartitionedConvolution shortResponse = new PartitionedConvolution(
+                createImpulseResponse(100), PARTITION_SIZE);
+        PartitionedConvolution longResponse = new PartitionedConvolution(
+                createImpulseResponse(5000), PARTITION_SIZE);
+        assertEquals(1, shortResponse.getNumberOfSegments());
+        assertTrue(longResponse.getNumberOfSegments() > 1);
+    }
+
+    /**
+     * A stereo convolution must produce the same output as two mono convolutions, one per
+     * channel, also when it is applied in place.
+     */
+    @Test
+    public void testStereoMatchesIndependentMono() {
+        float[] h = createImpulseResponse(5000);
+        float[] right = createSignal();
+        float[] expected = interleave(
+                apply(new PartitionedConvolution(h, PARTITION_SIZE, true, 1), signal),
+                apply(new PartitionedConvolution(h, PARTITION_SIZE, true, 1), right));
+        PartitionedConvolution stereo = new PartitionedConvolution(h, PARTITION_SIZE, true, 2);
+        float[] stereoSignal = interleave(signal, right);
+        float[] output = new float[stereoSignal.length];
+        int offset = 0;
+        for (int i = 0; offset < stereoSignal.length; i++) {
+            int length = Math.min(2 * BLOCK_LENGTHS[i % BLOCK_LENGTHS.length],
+                    stereoSignal.length - offset);
+            float[] block = new float[length];
+            System.arraycopy(stereoSignal, offset, block, 0, length);
+            stereo.apply(block, block);
+            System.arraycopy(block, 0, output, offset, length);
+            offset += length;
+        }
+        assertArrayEquals(expected, output, TOLERANCE);
+    }
+
+    private float[] process(PartitionedConvolver convolver, float[] x, boolean inPlace) {
+        float[] output = new float[x.length];
+        int offset = 0;
+        for (int i = 0; offset < x.length; i++) {
+            int length = Math.min(BLOCK_LENGTHS[i % BLOCK_LENGTHS.length], x.length - offset);
+            float[] input = new float[length];
+            System.arraycopy(x, offset, input, 0, length);
+            float[] block = inPlace ? input : new float[length];
+            convolver.process(input, block);
+            System.arraycopy(block, 0, output, offset, length);
+            offset += length;
+        }
+        return output;
+    }
+
+    private float[] apply(PartitionedConvolution convolution, float[] x) {
+        float[] output = new float[x.length];
+        int offset = 0;
+        for (int i = 0; offset < x.length; i++) {
+            int length = Math.min(BLOCK_LENGTHS[i % BLOCK_LENGTHS.length], x.length - offset);
+            float[] block = new float[length];
+            System.arraycopy(x, offset, block, 0, length);
+            convolution.apply(block, block);
+            System.arraycopy(block, 0, output, offset, length);
+            offset += length;
+        }
+        return output;
+    }
+
+    private float[] createSignal() {
+        float[] x = new float[SIGNAL_LENGTH];
+        for (int i = 0; i < SIGNAL_LENGTH; i++) {
+            x[i] = (float) random.nextGaussian();
+        }
+        return x;
+    }
+
+    private float[] createImpulseResponse(int length) {
+        float[] h = new float[length];
+        for (int i = 0; i < length; i++) {
+            h[i] = (float) (random.nextGaussian() * Math.exp(-4.0 * i / length)) * 0.05f;
+        }
+        return h;
+    }
+
+    private static float[] interleave(float[] left, float[] right) {
+        float[] stereo = new float[2 * left.length];
+        for (int i = 0; i < left.length; i++) {
+            stereo[2 * i] = left[i];
+            stereo[2 * i + 1] = right[i];
+        }
+        return stereo;
+    }
+
+    private static float[] delay(float[] x, int delay) {
+        float[] y = new float[x.length];
+        System.arraycopy(x, 0, y, delay, x.length - delay);
+        return y;
+    }
+
+    /**
+     * Reference convolution in double precision, truncated to the input length.
+     */
+    private static float[] convolve(float[] h, float[] x) {
+        float[] y = new float[x.length];
+        for (int n = 0; n < x.length; n++) {
+            double sum = 0;
+            for (int k = 0; k < h.length && k <= n; k++) {
+                sum += h[k] * x[n - k];
+            }
+            y[n] = (float) sum;
+        }
+        return y;
+    }
+}
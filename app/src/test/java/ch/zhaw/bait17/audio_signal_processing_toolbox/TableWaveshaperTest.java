@@ -0,0 +1,155 @@
+package ch.zhaw.bait17.audio_signal_processing_toolbox;
+
+import org.junit.Test;
+
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion.GloubiBoulga;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion.SoftClipper;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion.TableWaveshaper;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion.TransferFunction;
+import ch.zhaw.bait17.audio_signal_processing_toolbox.dsp.distortion.TubeDistortion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests of the TableWaveshaper class and the distortion effects built on it.
+ * The outputs are compared with the exact transfer functions in double precision.
+ * See class under test: {@link TableWaveshaper}
+ *
+ * @author georgrem, stockan1.
+ */
+public class TableWaveshaperTest {
+
+    // Worst case error of the interpolated tables, relative to a full scale output of 1
+    private static final double ERROR_BOUND = 1e-4;
+    private static final int POINTS = 200001;
+
+    @Test
+    public void testSoftClipperErrorBound() {
+        for (float clippingFactor : new float[] {1, 20, 100, 1000}) {
+            SoftClipper softClipper = new SoftClipper(clippingFactor);
+            float[] x = createRamp(-1.5f, 1.5f);
+            float[] y = new float[x.length];
+            softClipper.apply(x, y);
+            double maxError = 0;
+            for (int i = 0; i < x.length; i++) {
+                double exact = Math.atan(x[i] * (double) clippingFactor) / Math.atan(clippingFactor);
+                maxError = Math.max(maxError, Math.abs(y[i] - exact));
+            }
+            assertTrue(maxError < ERROR_BOUND);
+        }
+    }
+
+    @Test
+    public void testGloubiBoulgaErrorBound() {
+        GloubiBoulga gloubiBoulga = new GloubiBoulga();
+        // Beyond the table range of 8 / 0.686306
+        float[] x = createRamp(-16, 16);
+        float[] y = new float[x.length];
+        gloubiBoulga.apply(x, y);
+        double maxError = 0;
+        for (int i = 0; i < x.length; i++) {
+            double v = x[i] * 0.686306;
+            double a = 1 + Math.exp(Math.sqrt(Math.abs(v)) * -0.75);
+            double exact = (Math.exp(v) - Math.exp(-v * a)) / (Math.exp(v) + Math.exp(-v));
+            // Relative error, the function is not bounded for negative inputs
+            maxError = Math.max(maxError, Math.abs(y[i] - exact) / Math.max(1, Math.abs(exact)));
+        }
+        assertTrue(maxError < ERROR_BOUND);
+    }
+
+    @Test
+    public void testTubeDistortionErrorBound() {
+        float[][] parameters = {{-0.1f, 8}, {0, 8}, {-0.5f, 2}, {-0.05f, 20}, {0.2f, 1}};
+        for (float[] p : parameters) {
+            float q = p[0];
+            int dist = (int) p[1];
+            TubeDistortion tube = new TubeDistortion();
+            tube.setGain(10);
+            tube.setMix(1);
+            tube.setQ(q);
+            tube.setDist(dist);
+            // Full scale ramp: max = 1, the output is z(10 * x) / max|z|
+            float[] x = createRamp(-1, 1);
+            float[] y = new float[x.length];
+            tube.apply(x, y);
+            double[] z = new double[x.length];
+            double maxZ = 0.01;
+            for (int i = 0; i < x.length; i++) {
+                z[i] = tube(10.0 * x[i], q, dist);
+                maxZ = Math.max(maxZ, Math.abs(z[i]));
+            }
+            double maxError = 0;
+            for (int i = 0; i < x.length; i++) {
+                maxError = Math.max(maxError, Math.abs(y[i] - z[i] / maxZ));
+            }
+            assertTrue(maxError < ERROR_BOUND);
+        }
+    }
+
+    /**
+     * The table is built once per transfer function and rebuilt before the next block
+     * after the function changed.
+     */
+    @Test
+    public void testLazyRebuild() {
+        CountingFunction square = new CountingFunction(2);
+        CountingFunction cube = new CountingFunction(3);
+        TableWaveshaper waveshaper = new TableWaveshaper(square, 2, 64);
+        assertEquals(0, square.evaluations);
+
+        float[] block = new float[16];
+        waveshaper.apply(block, block, 1);
+        waveshaper.apply(block, block, 1);
+        assertEquals(65, square.evaluations);
+        assertEquals(0.25f, waveshaper.evaluate(0.5f), 1e-6f);
+
+        waveshaper.setFunction(cube);
+        assertEquals(0, cube.evaluations);
+        assertEquals(0.125f, waveshaper.evaluate(0.5f), 1e-6f);
+        assertEquals(65, cube.evaluations);
+        // Outside the table
+        assertEquals(27f, waveshaper.evaluate(3), 1e-6f);
+    }
+
+    private static float[] createRamp(float from, float to) {
+        float[] x = new float[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            x[i] = from + (to - from) * i / (POINTS - 1);
+        }
+        return x;
+    }
+
+    /**
+     * Static characteristic of the tube distortion, DAFX second edition, page 122.
+     */
+    private static double tube(double x, double q, int dist) {
+        double c = q == 0 ? 0 : q / (1 - Math.exp(dist * q));
+        double v = x - q;
+        if (Math.abs(v) < 1e-9) {
+            return 1.0 / dist + c;
+        }
+        return v / (1 - Math.exp(-dist * v)) + c;
+    }
+
+    private static class CountingFunction extends TransferFunction {
+
+        private final int power;
+        private int evaluations = 0;
+
+        CountingFunction(int power) {
+            this.power = power;
+        }
+
+        @Override
+        public double evaluate(double x) {
+            evaluations++;
+            return Math.pow(x, power);
+        }
+
+        @Override
+        public float asymptote(float x) {
+            return (float) Math.pow(x, power);
+        }
+    }
+}